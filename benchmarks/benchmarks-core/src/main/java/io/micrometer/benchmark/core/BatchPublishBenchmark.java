@@ -0,0 +1,129 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.influx.InfluxConfig;
+import io.micrometer.influx.InfluxMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes to a local HTTP stub of InfluxDB that takes {@code latencyMillis} to respond to each request, standing in
+ * for the round trip to a remote backend. With one thread, batches are serialized and sent one after another as
+ * they were before publishing was pipelined.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BatchPublishBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BatchPublishBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({"60000"})
+    private int meters;
+
+    @Param({"1000"})
+    private int batchSize;
+
+    @Param({"20"})
+    private int latencyMillis;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private ExecutorService stubExecutor;
+    private HttpServer stub;
+    private PublishingInfluxMeterRegistry registry;
+
+    @Setup
+    public void setup() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stubExecutor = Executors.newCachedThreadPool();
+        stub.setExecutor(stubExecutor);
+        stub.createContext("/write", exchange -> {
+            byte[] drain = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read(drain) != -1) {
+                    // discard the points
+                }
+            }
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        stub.start();
+
+        Map<String, String> config = new HashMap<>();
+        config.put("influx.uri", "http://localhost:" + stub.getAddress().getPort());
+        config.put("influx.autoCreateDb", "false");
+        config.put("influx.enabled", "false");
+        config.put("influx.batchSize", Integer.toString(batchSize));
+        config.put("influx.numThreads", Integer.toString(threads));
+
+        registry = new PublishingInfluxMeterRegistry(config::get);
+        for (int i = 0; i < meters; i++) {
+            registry.counter("counter", "id", Integer.toString(i)).increment();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.close();
+        stub.stop(0);
+        stubExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public void publish() {
+        registry.publishNow();
+    }
+
+    private static class PublishingInfluxMeterRegistry extends InfluxMeterRegistry {
+        PublishingInfluxMeterRegistry(InfluxConfig config) {
+            super(config, Clock.SYSTEM);
+        }
+
+        void publishNow() {
+            publish();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.CachedClock;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording into a timer publishing a percentile histogram, whose every sample checks the wall clock for
+ * rotation, with the system clock or a {@link CachedClock}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CachedClockTimerBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(CachedClockTimerBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({"system", "cached"})
+    private String clock;
+
+    private CachedClock cachedClock;
+    private Timer timer;
+
+    @Setup
+    public void setup() {
+        Clock registryClock = Clock.SYSTEM;
+        if (clock.equals("cached")) {
+            cachedClock = new CachedClock(Clock.SYSTEM);
+            registryClock = cachedClock;
+        }
+
+        timer = Timer.builder("timer")
+                .publishPercentileHistogram()
+                .register(new SimpleMeterRegistry(SimpleConfig.DEFAULT, registryClock));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (cachedClock != null) {
+            cachedClock.close();
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        timer.record(ThreadLocalRandom.current().nextLong(1, 1000), TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public void recordRunnable() {
+        timer.record(() -> {
+        });
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.PercentileHistogramBuckets;
+import io.micrometer.core.instrument.distribution.TimeWindowFixedBoundaryHistogram;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording into a percentile histogram shared by all benchmark threads. Run once per thread count, since
+ * {@code main} runs with 1, 4, 16 and 64 threads; from the command line, use {@code -t}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FixedBoundaryHistogramBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            Options opt = new OptionsBuilder()
+                    .include(FixedBoundaryHistogramBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .warmupIterations(5)
+                    .measurementIterations(10)
+                    .forks(1)
+                    .build();
+
+            new Runner(opt).run();
+        }
+    }
+
+    /**
+     * {@code rotateOnRecord}, {@code rotationFree} or {@code striped}.
+     */
+    @Param({"rotateOnRecord", "rotationFree", "striped"})
+    private String mode;
+
+    /**
+     * {@code percentiles} to locate samples in percentile histogram buckets by arithmetic, or {@code sla} to locate
+     * them by binary search over the same boundaries given as SLAs.
+     */
+    @Param({"percentiles", "sla"})
+    private String buckets;
+
+    private TimeWindowFixedBoundaryHistogram histogram;
+
+    @Setup
+    public void setup() {
+        DistributionStatisticConfig percentiles = DistributionStatisticConfig.builder()
+                .percentilesHistogram(true)
+                .minimumExpectedValue(Duration.ofMillis(1).toNanos())
+                .maximumExpectedValue(Duration.ofSeconds(10).toNanos())
+                .build();
+
+        long[] slas = PercentileHistogramBuckets.buckets(percentiles).stream().mapToLong(Long::longValue).toArray();
+
+        histogram = new TimeWindowFixedBoundaryHistogram(Clock.SYSTEM, DistributionStatisticConfig.builder()
+                .percentilesHistogram(buckets.equals("percentiles"))
+                .sla(buckets.equals("sla") ? slas : null)
+                .minimumExpectedValue(percentiles.getMinimumExpectedValue())
+                .maximumExpectedValue(percentiles.getMaximumExpectedValue())
+                .stripedHistogram(mode.equals("striped"))
+                .build()
+                .merge(DistributionStatisticConfig.DEFAULT), true, mode.equals("rotateOnRecord"));
+    }
+
+    @Benchmark
+    public void record() {
+        histogram.recordLong(ThreadLocalRandom.current().nextLong(1_000_000, 100_000_000));
+    }
+}
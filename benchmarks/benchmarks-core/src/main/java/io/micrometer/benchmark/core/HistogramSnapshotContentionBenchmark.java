@@ -0,0 +1,98 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.distribution.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of recording into a histogram while another thread continuously takes snapshots of it. The ring buffer
+ * rotates every 10ms, so that samples regularly fall due to rotate it while a snapshot is being computed. Read the
+ * high percentiles of {@code contended:record}, such as {@code p0.9999}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistogramSnapshotContentionBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(HistogramSnapshotContentionBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    /**
+     * {@code hdr} for HdrHistogram-based percentiles, {@code sketch}, or {@code fixed} for fixed boundary histogram
+     * counts only.
+     */
+    @Param({"hdr", "sketch", "fixed"})
+    private String engine;
+
+    private Histogram histogram;
+
+    @Setup
+    public void setup() {
+        DistributionStatisticConfig config = DistributionStatisticConfig.builder()
+                .percentiles(engine.equals("fixed") ? null : new double[]{0.5, 0.9, 0.95, 0.99, 0.999})
+                .percentilesHistogram(true)
+                .percentileSketch(engine.equals("sketch"))
+                .minimumExpectedValue(Duration.ofMillis(1).toNanos())
+                .maximumExpectedValue(Duration.ofSeconds(10).toNanos())
+                .expiry(Duration.ofMillis(30))
+                .bufferLength(3)
+                .build()
+                .merge(DistributionStatisticConfig.DEFAULT);
+
+        switch (engine) {
+            case "hdr":
+                histogram = new TimeWindowPercentileHistogram(Clock.SYSTEM, config, true);
+                break;
+            case "sketch":
+                histogram = new TimeWindowSketchHistogram(Clock.SYSTEM, config, true);
+                break;
+            default:
+                histogram = new TimeWindowFixedBoundaryHistogram(Clock.SYSTEM, config, true);
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void record() {
+        histogram.recordLong(ThreadLocalRandom.current().nextLong(Duration.ofMillis(1).toNanos(),
+                Duration.ofSeconds(1).toNanos()));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public HistogramSnapshot snapshot() {
+        return histogram.takeSnapshot(0, 0, 0);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.ipc.http.HttpSender;
+import io.micrometer.influx.InfluxConfig;
+import io.micrometer.influx.InfluxMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serializes a batch of meters into the InfluxDB line protocol and discards the request, isolating the cost of
+ * serialization and compression from the network. Run with {@code -prof gc} to compare allocation per publish.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InfluxSerializationBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(InfluxSerializationBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .addProfiler("gc")
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({"10000"})
+    private int meters;
+
+    @Param({"true", "false"})
+    private boolean compressed;
+
+    private PublishingInfluxMeterRegistry registry;
+
+    @Setup
+    public void setup() {
+        Map<String, String> config = new HashMap<>();
+        config.put("influx.autoCreateDb", "false");
+        config.put("influx.enabled", "false");
+        config.put("influx.batchSize", Integer.toString(meters));
+        config.put("influx.compressed", Boolean.toString(compressed));
+
+        OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        registry = new PublishingInfluxMeterRegistry(config::get, request -> {
+            if (request.getBody() != null) {
+                request.getBody().writeTo(discard);
+            }
+            return new HttpSender.Response(204, null);
+        });
+
+        for (int i = 0; i < meters; i++) {
+            String id = Integer.toString(i);
+            switch (i % 3) {
+                case 0:
+                    registry.counter("counter", "id", id).increment(i);
+                    break;
+                case 1:
+                    Timer timer = registry.timer("timer", "id", id);
+                    timer.record(i, TimeUnit.MILLISECONDS);
+                    timer.record(2 * i, TimeUnit.MILLISECONDS);
+                    break;
+                default:
+                    registry.gauge("gauge", Tags.of("id", id), new AtomicLong(i));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Benchmark
+    public void publish() {
+        registry.publishNow();
+    }
+
+    private static class PublishingInfluxMeterRegistry extends InfluxMeterRegistry {
+        PublishingInfluxMeterRegistry(InfluxConfig config, HttpSender httpSender) {
+            super(config, Clock.SYSTEM, Executors.defaultThreadFactory(), httpSender);
+        }
+
+        void publishNow() {
+            publish();
+        }
+    }
+}
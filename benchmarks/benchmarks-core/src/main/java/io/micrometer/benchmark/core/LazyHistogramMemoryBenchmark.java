@@ -0,0 +1,75 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory taken by 50,000 timers publishing a percentile histogram, of which only a fraction ever record a sample, as
+ * is typical of tags like uri and status. Nearly everything allocated by a run stays reachable from the registry, so
+ * run with the GC profiler and read {@code gc.alloc.rate.norm} as the footprint of all 50,000 timers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LazyHistogramMemoryBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(LazyHistogramMemoryBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    private static final int TIMERS = 50_000;
+
+    /**
+     * The fraction of timers that record a sample.
+     */
+    @Param({"0.01", "1"})
+    private double activeFraction;
+
+    @Benchmark
+    public MeterRegistry registerTimers() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        int every = (int) Math.round(1 / activeFraction);
+        for (int i = 0; i < TIMERS; i++) {
+            Timer timer = Timer.builder("http.server.requests")
+                    .tag("uri", "/api/" + i)
+                    .publishPercentileHistogram()
+                    .register(registry);
+
+            if (i % every == 0) {
+                timer.record(1 + i % 500, TimeUnit.MILLISECONDS);
+            }
+        }
+        return registry;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package io.micrometer.benchmark.core;
 
+import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.openjdk.jmh.annotations.*;
@@ -23,7 +24,9 @@ import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 @State(Scope.Benchmark)
 @OutputTimeUnit(TimeUnit.MICROSECONDS)
@@ -53,6 +56,44 @@ public class MeterRegistrationBenchmark {
         return sum();
     }
 
+    @State(Scope.Benchmark)
+    public static class Registrations {
+        @Param({"10000", "100000"})
+        int meterCount;
+
+        MeterRegistry populatedRegistry;
+
+        @Setup
+        public void setup() {
+            populatedRegistry = new SimpleMeterRegistry();
+            for (int i = 0; i < meterCount; i++) {
+                populatedRegistry.counter("my.counter", "k" + i, "v1");
+            }
+        }
+    }
+
+    @Benchmark
+    public int insert(Registrations registrations) {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        for (int i = 0; i < registrations.meterCount; i++) {
+            registry.counter("my.counter", "k" + i, "v1");
+        }
+        return sum();
+    }
+
+    @Benchmark
+    public int insertConcurrently(Registrations registrations) {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        IntStream.range(0, registrations.meterCount).parallel()
+                .forEach(i -> registry.counter("my.counter", "k" + i, "v1"));
+        return sum();
+    }
+
+    @Benchmark
+    public List<Meter> getMeters(Registrations registrations) {
+        return registrations.populatedRegistry.getMeters();
+    }
+
     @Benchmark
     public int sum() {
         return x + y;
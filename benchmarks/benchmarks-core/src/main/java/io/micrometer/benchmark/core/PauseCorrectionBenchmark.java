@@ -0,0 +1,97 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.pause.ClockDriftPauseDetector;
+import io.micrometer.core.instrument.distribution.pause.PauseCorrector;
+import io.micrometer.core.instrument.distribution.pause.PauseDetector;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a pause event as the number of timers correcting for pauses grows: noting the pause, and then having every
+ * timer record a sample, which applies the pause.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PauseCorrectionBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PauseCorrectionBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({"1", "1000", "20000"})
+    private int timerCount;
+
+    private MockClock clock;
+    private PauseCorrector corrector;
+    private Timer[] timers;
+
+    @Setup
+    public void setup() {
+        clock = new MockClock();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+
+        // pauses are only simulated
+        PauseDetector pauseDetector = new ClockDriftPauseDetector(Duration.ofSeconds(1), Duration.ofHours(1));
+        corrector = PauseCorrector.forDetector(pauseDetector);
+
+        timers = new Timer[timerCount];
+        for (int i = 0; i < timerCount; i++) {
+            timers[i] = Timer.builder("timer").tag("i", Integer.toString(i)).pauseDetector(pauseDetector).register(registry);
+        }
+
+        // enough samples for each timer to estimate the interval between them
+        for (int j = 0; j < 200; j++) {
+            clock.add(1, TimeUnit.MILLISECONDS);
+            for (Timer timer : timers) {
+                timer.record(1, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Benchmark
+    public void pauseEvent() {
+        clock.add(10, TimeUnit.MILLISECONDS);
+        corrector.handlePauseEvent(TimeUnit.MILLISECONDS.toNanos(10), clock.monotonicTime());
+    }
+
+    @Benchmark
+    public void pauseEventAppliedByEveryTimer() {
+        pauseEvent();
+        clock.add(1, TimeUnit.MILLISECONDS);
+        for (Timer timer : timers) {
+            timer.record(1, TimeUnit.MILLISECONDS);
+        }
+    }
+}
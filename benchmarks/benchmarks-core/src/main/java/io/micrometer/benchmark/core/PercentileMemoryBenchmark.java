@@ -0,0 +1,89 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory taken by 10,000 timers publishing percentiles, each with a few recorded samples. Nearly everything allocated
+ * by a run stays reachable from the registry, so run with the GC profiler and read {@code gc.alloc.rate.norm} as the
+ * footprint of all 10,000 timers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PercentileMemoryBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PercentileMemoryBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    private static final int TIMERS = 10_000;
+
+    /**
+     * {@code hdr} for HdrHistogram-based percentiles, {@code sketch}, or {@code none} for the footprint of the timers
+     * and their percentile gauges without any histogram.
+     */
+    @Param({"hdr", "sketch", "none"})
+    private String engine;
+
+    @Benchmark
+    public MeterRegistry registerTimers() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        if (engine.equals("sketch")) {
+            registry.config().meterFilter(new MeterFilter() {
+                @Override
+                public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                    return DistributionStatisticConfig.builder().percentileSketch(true).build().merge(config);
+                }
+            });
+        }
+
+        Random random = new Random(0);
+        for (int i = 0; i < TIMERS; i++) {
+            Timer timer = Timer.builder("http.server.requests")
+                    .tag("uri", "/api/" + i)
+                    .publishPercentiles(engine.equals("none") ? null : new double[]{0.5, 0.95, 0.99})
+                    .register(registry);
+
+            for (int j = 0; j < 10; j++) {
+                timer.record(1 + random.nextInt(500), TimeUnit.MILLISECONDS);
+            }
+        }
+        return registry;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares streaming a scrape straight from the meters with writing it from the
+ * {@link io.prometheus.client.CollectorRegistry}'s metric family samples. Run with the GC profiler to see
+ * bytes allocated per scrape ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PrometheusScrapeBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PrometheusScrapeBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    /**
+     * Each timer contributes 15 series (10 buckets, +Inf, count, sum, max and a counter alongside it).
+     */
+    @Param({"2700"})
+    private int timers;
+
+    private PrometheusMeterRegistry registry;
+
+    private final Writer discard = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Setup
+    public void setup() {
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        Duration[] slas = new Duration[10];
+        for (int i = 0; i < slas.length; i++) {
+            slas[i] = Duration.ofMillis(10L << i);
+        }
+
+        for (int i = 0; i < timers; i++) {
+            String uri = "/api/resource/" + i;
+            Timer timer = Timer.builder("http.server.requests")
+                    .tags("method", "GET", "status", "200", "uri", uri)
+                    .sla(slas)
+                    .register(registry);
+            timer.record(i % 2000, TimeUnit.MILLISECONDS);
+
+            Counter.builder("http.server.bytes").tags("uri", uri).register(registry).increment(i);
+        }
+    }
+
+    @Benchmark
+    public void streaming() throws IOException {
+        registry.scrape(discard);
+    }
+
+    @Benchmark
+    public void collectorRegistry() throws IOException {
+        TextFormat.write004(discard, registry.getPrometheusRegistry().metricFamilySamples());
+    }
+}
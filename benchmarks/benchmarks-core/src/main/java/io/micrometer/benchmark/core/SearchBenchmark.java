@@ -0,0 +1,84 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.search.Search;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(SearchBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .mode(Mode.SampleTime)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({"10000", "100000"})
+    private int meterCount;
+
+    private MeterRegistry registry;
+    private Tag tag = Tag.of("k", "v42");
+
+    @Setup
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        for (int i = 0; i < meterCount; i++) {
+            // 100 distinct names, each with meterCount / 100 tag values
+            registry.counter("my.counter." + (i % 100), "k", "v" + (i / 100));
+        }
+    }
+
+    @Benchmark
+    public Counter findByName() {
+        return registry.find("my.counter.42").tags(tag.getKey(), tag.getValue()).counter();
+    }
+
+    /**
+     * The linear scan {@link Search} performed before meters were indexed by name.
+     */
+    @Benchmark
+    public Counter findByScan() {
+        return registry.getMeters().stream()
+                .filter(m -> m.getId().getName().equals("my.counter.42"))
+                .filter(m -> m.getId().getTags().contains(tag))
+                .filter(Counter.class::isInstance)
+                .map(Counter.class::cast)
+                .findAny()
+                .orElse(null);
+    }
+
+    @Benchmark
+    public Counter findByNamePredicate() {
+        return Search.in(registry).name(n -> n.equals("my.counter.42")).tags(tag.getKey(), tag.getValue()).counter();
+    }
+}
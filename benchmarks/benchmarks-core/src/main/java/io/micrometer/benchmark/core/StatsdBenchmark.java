@@ -0,0 +1,183 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.statsd.StatsdConfig;
+import io.micrometer.statsd.StatsdMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends counter increments to a UDP receiver on localhost, reporting the datagrams and CPU time it took to deliver
+ * them with and without packing lines into shared datagrams. The deliveries are reported alongside the throughput as
+ * secondary results, per second of the measurement.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StatsdBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(StatsdBenchmark.class.getSimpleName())
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .mode(Mode.Throughput)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({"true", "false"})
+    private boolean buffered;
+
+    @Param({"false", "true"})
+    private boolean aggregated;
+
+    private DatagramSocket receiver;
+    private final AtomicLong datagrams = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+
+    private StatsdMeterRegistry registry;
+    private Counter counter;
+
+    @Setup
+    public void setup() throws SocketException {
+        receiver = new DatagramSocket(0);
+        Thread receiverThread = new Thread(this::receive, "statsd-benchmark-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+
+        int port = receiver.getLocalPort();
+        StatsdConfig config = new StatsdConfig() {
+            @Override
+            public String get(String key) {
+                return null;
+            }
+
+            @Override
+            public int port() {
+                return port;
+            }
+
+            @Override
+            public boolean buffered() {
+                return buffered;
+            }
+
+            @Override
+            public boolean aggregated() {
+                return aggregated;
+            }
+
+            @Override
+            public Duration pollingFrequency() {
+                return Duration.ofSeconds(1);
+            }
+
+            @Override
+            public int maxPacketLength() {
+                return 1432;
+            }
+        };
+
+        registry = new StatsdMeterRegistry(config, Clock.SYSTEM);
+        counter = registry.counter("my.counter", "k", "v");
+    }
+
+    private void receive() {
+        DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+        while (!receiver.isClosed()) {
+            try {
+                receiver.receive(packet);
+                datagrams.incrementAndGet();
+                long newlines = 1;
+                for (int i = 0; i < packet.getLength(); i++) {
+                    if (packet.getData()[i] == '\n')
+                        newlines++;
+                }
+                lines.addAndGet(newlines);
+            } catch (IOException ignored) {
+                // socket closed
+            }
+        }
+    }
+
+    @Benchmark
+    public void increment(Delivery delivery) {
+        counter.increment();
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.close();
+        receiver.close();
+    }
+
+    /**
+     * What the receiver got, and the CPU time the process used, during an iteration. JMH divides each of these by
+     * the length of the iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Delivery {
+        private StatsdBenchmark benchmark;
+        private long startDatagrams;
+        private long startLines;
+        private long startCpuNanos;
+
+        @Setup(Level.Iteration)
+        public void start(StatsdBenchmark benchmark) {
+            this.benchmark = benchmark;
+            startDatagrams = benchmark.datagrams.get();
+            startLines = benchmark.lines.get();
+            startCpuNanos = processCpuNanos();
+        }
+
+        public long datagrams() {
+            return benchmark.datagrams.get() - startDatagrams;
+        }
+
+        public long lines() {
+            return benchmark.lines.get() - startLines;
+        }
+
+        public double cpuSeconds() {
+            return (processCpuNanos() - startCpuNanos) / 1e9;
+        }
+    }
+
+    private static long processCpuNanos() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+}
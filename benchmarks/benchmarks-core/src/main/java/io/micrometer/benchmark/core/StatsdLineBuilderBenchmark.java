@@ -0,0 +1,88 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.config.NamingConvention;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.core.instrument.util.HierarchicalNameMapper;
+import io.micrometer.statsd.StatsdFlavor;
+import io.micrometer.statsd.StatsdLineBuilder;
+import io.micrometer.statsd.internal.FlavorStatsdLineBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing a single StatsD line in each flavor. Run with the GC profiler to see bytes allocated per line
+ * ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StatsdLineBuilderBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(StatsdLineBuilderBenchmark.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({"ETSY", "DATADOG", "TELEGRAF", "SYSDIG"})
+    private StatsdFlavor flavor;
+
+    private StatsdLineBuilder lineBuilder;
+
+    private long count = 42;
+    private double gauge = 1234.5;
+    private double timingMs = 17.25;
+
+    @Setup
+    public void setup() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        registry.config().namingConvention(NamingConvention.dot);
+
+        Meter.Id id = registry.counter("http.server.requests",
+                Tags.of("method", "GET", "status", "200", "uri", "/api/people")).getId();
+        lineBuilder = new FlavorStatsdLineBuilder(id, flavor, HierarchicalNameMapper.DEFAULT, registry.config());
+    }
+
+    @Benchmark
+    public String count() {
+        return lineBuilder.count(count);
+    }
+
+    @Benchmark
+    public String gauge() {
+        return lineBuilder.gauge(gauge);
+    }
+
+    @Benchmark
+    public String timing() {
+        return lineBuilder.timing(timingMs);
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.benchmark.core;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.TimeWindowMax;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording into a decaying max shared by all benchmark threads. Run once per thread count, since
+ * {@code main} runs with 1, 4 and 16 threads; from the command line, use {@code -t}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeWindowMaxBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16}) {
+            Options opt = new OptionsBuilder()
+                    .include(TimeWindowMaxBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .warmupIterations(5)
+                    .measurementIterations(10)
+                    .forks(1)
+                    .build();
+
+            new Runner(opt).run();
+        }
+    }
+
+    private TimeWindowMax max;
+
+    @Setup
+    public void setup() {
+        max = new TimeWindowMax(Clock.SYSTEM, DistributionStatisticConfig.DEFAULT);
+    }
+
+    @Benchmark
+    public void record() {
+        max.record(ThreadLocalRandom.current().nextInt(1, 1000), TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public double recordAndPoll() {
+        max.record(ThreadLocalRandom.current().nextInt(1, 1000), TimeUnit.MILLISECONDS);
+        return max.poll(TimeUnit.MILLISECONDS);
+    }
+}
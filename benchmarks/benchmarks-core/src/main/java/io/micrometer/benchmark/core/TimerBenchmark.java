@@ -16,10 +16,12 @@
 package io.micrometer.benchmark.core;
 
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
 import io.micrometer.prometheus.PrometheusConfig;
 import io.micrometer.prometheus.PrometheusMeterRegistry;
 import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
@@ -36,6 +38,7 @@ public class TimerBenchmark {
                 .warmupIterations(5)
                 .measurementIterations(10)
                 .mode(Mode.SampleTime)
+                .addProfiler(GCProfiler.class)
                 .forks(1)
                 .build();
 
@@ -45,6 +48,9 @@ public class TimerBenchmark {
     private MeterRegistry registry;
     private Timer timer;
 
+    private MeterRegistry registryWithCommonTags;
+    private Tags requestTags = Tags.of("method", "GET", "status", "200", "uri", "/api/people");
+
     int x = 923;
     int y = 123;
 
@@ -52,6 +58,10 @@ public class TimerBenchmark {
     public void setup() {
         registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
         timer = registry.timer("timer");
+
+        registryWithCommonTags = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        registryWithCommonTags.config().commonTags("application", "benchmark", "region", "us-east-1");
+        registryWithCommonTags.timer("http.server.requests", requestTags);
     }
 
     @Benchmark
@@ -72,6 +82,15 @@ public class TimerBenchmark {
         return registry.timer("timer").record(this::sum);
     }
 
+    /**
+     * Representative of per-request timers whose tags are only known at the time of recording, in a registry with
+     * common tags configured.
+     */
+    @Benchmark
+    public int sumTimedWithRegistryLookupAndTags() {
+        return registryWithCommonTags.timer("http.server.requests", requestTags).record(this::sum);
+    }
+
     @Benchmark
     public int sum() {
         return x + y;
@@ -16,17 +16,17 @@
 package io.micrometer.datadog;
 
 import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.config.NamingConvention;
+import io.micrometer.core.instrument.step.BatchPublisher;
 import io.micrometer.core.instrument.step.StepMeterRegistry;
-import io.micrometer.core.instrument.util.IOUtils;
-import io.micrometer.core.instrument.util.MeterPartition;
-import io.micrometer.core.instrument.util.URIUtils;
+import io.micrometer.core.instrument.util.MeterEncodingCache;
+import io.micrometer.core.ipc.http.HttpSender;
 import io.micrometer.core.lang.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.net.*;
-import java.util.HashMap;
+import java.io.IOException;
+import java.net.URLEncoder;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,97 +44,63 @@ import static java.util.stream.StreamSupport.stream;
  * @author Jon Schneider
  */
 public class DatadogMeterRegistry extends StepMeterRegistry {
-    private final URL postTimeSeriesEndpoint;
+    private final String postTimeSeriesEndpoint;
 
     private final Logger logger = LoggerFactory.getLogger(DatadogMeterRegistry.class);
     private final DatadogConfig config;
+    private final HttpSender httpClient;
 
     /**
      * Metric names for which we have posted metadata concerning type and base unit
      */
     private final Set<String> verifiedMetadata = ConcurrentHashMap.newKeySet();
 
+    private final MeterEncodingCache<Series> encodedSeries = new MeterEncodingCache<>(this);
+
     public DatadogMeterRegistry(DatadogConfig config, Clock clock) {
         this(config, clock, Executors.defaultThreadFactory());
     }
 
     public DatadogMeterRegistry(DatadogConfig config, Clock clock, ThreadFactory threadFactory) {
+        this(config, clock, threadFactory, defaultHttpSender(config));
+    }
+
+    public DatadogMeterRegistry(DatadogConfig config, Clock clock, ThreadFactory threadFactory, HttpSender httpClient) {
         super(config, clock);
         requireNonNull(config.apiKey());
 
         this.config().namingConvention(new DatadogNamingConvention());
 
-        this.postTimeSeriesEndpoint = URIUtils.toURL(config.uri() + "/api/v1/series?api_key=" + config.apiKey());
+        this.postTimeSeriesEndpoint = config.uri() + "/api/v1/series?api_key=" + config.apiKey();
 
         this.config = config;
+        this.httpClient = httpClient;
 
         if(config.enabled())
             start(threadFactory);
     }
 
+    @Override
+    public void close() {
+        super.close();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("failed to close the http sender", e);
+        }
+    }
+
     @Override
     protected void publish() {
-        Map<String, DatadogMetricMetadata> metadataToSend = new HashMap<>();
+        // filled in concurrently by the threads serializing each batch
+        Map<String, DatadogMetricMetadata> metadataToSend = new ConcurrentHashMap<>();
 
         try {
-            HttpURLConnection con = null;
-
-            for (List<Meter> batch : MeterPartition.partition(this, config.batchSize())) {
-                try {
-                    con = (HttpURLConnection) postTimeSeriesEndpoint.openConnection();
-                    con.setConnectTimeout((int) config.connectTimeout().toMillis());
-                    con.setReadTimeout((int) config.readTimeout().toMillis());
-                    con.setRequestMethod("POST");
-                    con.setRequestProperty("Content-Type", "application/json");
-                    con.setDoOutput(true);
-
-                    /*
-                    Example post body from Datadog API docs. Host and tags are optional.
-                    "{ \"series\" :
-                            [{\"metric\":\"test.metric\",
-                              \"points\":[[$currenttime, 20]],
-                              \"host\":\"test.example.com\",
-                              \"tags\":[\"environment:test\"]}
-                            ]
-                    }"
-                    */
-
-                    String body = "{\"series\":[" +
-                            batch.stream().flatMap(m -> {
-                                if (m instanceof Timer) {
-                                    return writeTimer((Timer) m, metadataToSend);
-                                }
-                                if (m instanceof DistributionSummary) {
-                                    return writeSummary((DistributionSummary) m, metadataToSend);
-                                }
-                                if (m instanceof FunctionTimer) {
-                                    return writeTimer((FunctionTimer) m, metadataToSend);
-                                }
-                                return writeMeter(m, metadataToSend);
-                            }).collect(joining(",")) +
-                            "]}";
-
-                    logger.debug(body);
-
-                    try (OutputStream os = con.getOutputStream()) {
-                        os.write(body.getBytes());
-                        os.flush();
-                    }
-
-                    int status = con.getResponseCode();
+            BatchPublisher.Result result = publishBatches(batch -> writeBatch(batch, metadataToSend), this::sendBatch);
 
-                    if (status >= 200 && status < 300) {
-                        logger.info("successfully sent {} metrics to datadog", batch.size());
-                    } else if (status >= 400) {
-                        if (logger.isErrorEnabled()) {
-                            logger.error("failed to send metrics: {}", IOUtils.toString(con.getErrorStream()));
-                        }
-                    } else {
-                        logger.error("failed to send metrics: http {}", status);
-                    }
-                } finally {
-                    quietlyCloseUrlConnection(con);
-                }
+            result.failures().forEach(e -> logger.warn("failed to send metrics", e));
+            if (result.abandoned() > 0) {
+                logger.warn("failed to send {} batches of metrics within {}", result.abandoned(), config.publishDeadline());
             }
         } catch (Throwable e) {
             logger.warn("failed to send metrics", e);
@@ -143,13 +109,42 @@ public class DatadogMeterRegistry extends StepMeterRegistry {
         metadataToSend.forEach(this::postMetricMetadata);
     }
 
-    private void quietlyCloseUrlConnection(@Nullable HttpURLConnection con) {
-        try {
-            if (con != null) {
-                con.disconnect();
-            }
-        } catch (Exception ignore) {
-        }
+    private String writeBatch(List<Meter> batch, Map<String, DatadogMetricMetadata> metadataToSend) {
+        /*
+        Example post body from Datadog API docs. Host and tags are optional.
+        "{ \"series\" :
+                [{\"metric\":\"test.metric\",
+                  \"points\":[[$currenttime, 20]],
+                  \"host\":\"test.example.com\",
+                  \"tags\":[\"environment:test\"]}
+                ]
+        }"
+        */
+
+        return "{\"series\":[" +
+                batch.stream().flatMap(m -> {
+                    if (m instanceof Timer) {
+                        return writeTimer((Timer) m, metadataToSend);
+                    }
+                    if (m instanceof DistributionSummary) {
+                        return writeSummary((DistributionSummary) m, metadataToSend);
+                    }
+                    if (m instanceof FunctionTimer) {
+                        return writeTimer((FunctionTimer) m, metadataToSend);
+                    }
+                    return writeMeter(m, metadataToSend);
+                }).collect(joining(",")) +
+                "]}";
+    }
+
+    private void sendBatch(List<Meter> batch, String body) throws IOException {
+        logger.debug(body);
+
+        httpClient.post(postTimeSeriesEndpoint)
+                .withJsonContent(body)
+                .send()
+                .onSuccess(response -> logger.info("successfully sent {} metrics to datadog", batch.size()))
+                .onError(response -> logger.error("failed to send metrics: http {} {}", response.code(), response.body()));
     }
 
     private Stream<String> writeTimer(FunctionTimer timer, Map<String, DatadogMetricMetadata> metadata) {
@@ -157,15 +152,11 @@ public class DatadogMeterRegistry extends StepMeterRegistry {
 
         Meter.Id id = timer.getId();
 
-        addToMetadataList(metadata, id, "count", Statistic.COUNT, "occurrence");
-        addToMetadataList(metadata, id, "avg", Statistic.VALUE, null);
-        addToMetadataList(metadata, id, "sum", Statistic.TOTAL_TIME, null);
-
         // we can't know anything about max and percentiles originating from a function timer
         return Stream.of(
-                writeMetric(id, "count", wallTime, timer.count()),
-                writeMetric(id, "avg", wallTime, timer.mean(getBaseTimeUnit())),
-                writeMetric(id, "sum", wallTime, timer.totalTime(getBaseTimeUnit())));
+                writeMetric(series(id, "count"), wallTime, timer.count(), metadata, Statistic.COUNT, "occurrence"),
+                writeMetric(series(id, "avg"), wallTime, timer.mean(getBaseTimeUnit()), metadata, Statistic.VALUE, null),
+                writeMetric(series(id, "sum"), wallTime, timer.totalTime(getBaseTimeUnit()), metadata, Statistic.TOTAL_TIME, null));
     }
 
     private Stream<String> writeTimer(Timer timer, Map<String, DatadogMetricMetadata> metadata) {
@@ -173,15 +164,10 @@ public class DatadogMeterRegistry extends StepMeterRegistry {
         final Stream.Builder<String> metrics = Stream.builder();
 
         Meter.Id id = timer.getId();
-        metrics.add(writeMetric(id, "sum", wallTime, timer.totalTime(getBaseTimeUnit())));
-        metrics.add(writeMetric(id, "count", wallTime, timer.count()));
-        metrics.add(writeMetric(id, "avg", wallTime, timer.mean(getBaseTimeUnit())));
-        metrics.add(writeMetric(id, "max", wallTime, timer.max(getBaseTimeUnit())));
-
-        addToMetadataList(metadata, id, "sum", Statistic.TOTAL_TIME, null);
-        addToMetadataList(metadata, id, "count", Statistic.COUNT, "occurrence");
-        addToMetadataList(metadata, id, "avg", Statistic.VALUE, null);
-        addToMetadataList(metadata, id, "max", Statistic.MAX, null);
+        metrics.add(writeMetric(series(id, "sum"), wallTime, timer.totalTime(getBaseTimeUnit()), metadata, Statistic.TOTAL_TIME, null));
+        metrics.add(writeMetric(series(id, "count"), wallTime, timer.count(), metadata, Statistic.COUNT, "occurrence"));
+        metrics.add(writeMetric(series(id, "avg"), wallTime, timer.mean(getBaseTimeUnit()), metadata, Statistic.VALUE, null));
+        metrics.add(writeMetric(series(id, "max"), wallTime, timer.max(getBaseTimeUnit()), metadata, Statistic.MAX, null));
 
         return metrics.build();
     }
@@ -191,66 +177,84 @@ public class DatadogMeterRegistry extends StepMeterRegistry {
         final Stream.Builder<String> metrics = Stream.builder();
 
         Meter.Id id = summary.getId();
-        metrics.add(writeMetric(id, "sum", wallTime, summary.totalAmount()));
-        metrics.add(writeMetric(id, "count", wallTime, summary.count()));
-        metrics.add(writeMetric(id, "avg", wallTime, summary.mean()));
-        metrics.add(writeMetric(id, "max", wallTime, summary.max()));
-
-        addToMetadataList(metadata, id, "sum", Statistic.TOTAL, null);
-        addToMetadataList(metadata, id, "count", Statistic.COUNT, "occurrence");
-        addToMetadataList(metadata, id, "avg", Statistic.VALUE, null);
-        addToMetadataList(metadata, id, "max", Statistic.MAX, null);
+        metrics.add(writeMetric(series(id, "sum"), wallTime, summary.totalAmount(), metadata, Statistic.TOTAL, null));
+        metrics.add(writeMetric(series(id, "count"), wallTime, summary.count(), metadata, Statistic.COUNT, "occurrence"));
+        metrics.add(writeMetric(series(id, "avg"), wallTime, summary.mean(), metadata, Statistic.VALUE, null));
+        metrics.add(writeMetric(series(id, "max"), wallTime, summary.max(), metadata, Statistic.MAX, null));
 
         return metrics.build();
     }
 
     private Stream<String> writeMeter(Meter m, Map<String, DatadogMetricMetadata> metadata) {
         long wallTime = clock.wallTime();
+        Meter.Id id = m.getId();
         return stream(m.measure().spliterator(), false)
                 .map(ms -> {
-                    Meter.Id id = m.getId().withTag(ms.getStatistic());
-                    addToMetadataList(metadata, id, null, ms.getStatistic(), null);
-                    return writeMetric(id, null, wallTime, ms.getValue());
+                    Series series = encodedSeries.get(id, ms.getStatistic(),
+                            convention -> new Series(id.withTag(ms.getStatistic()), convention));
+                    return writeMetric(series, wallTime, ms.getValue(), metadata, ms.getStatistic(), null);
                 });
     }
 
-    private void addToMetadataList(Map<String, DatadogMetricMetadata> metadata, Meter.Id id, @Nullable String suffix,
-                                   Statistic stat, @Nullable String overrideBaseUnit) {
+    private String writeMetric(Series series, long wallTime, double value, Map<String, DatadogMetricMetadata> metadata,
+                               Statistic stat, @Nullable String overrideBaseUnit) {
+        addToMetadataList(metadata, series, stat, overrideBaseUnit);
+        return series.write(wallTime, value);
+    }
+
+    private void addToMetadataList(Map<String, DatadogMetricMetadata> metadata, Series series, Statistic stat,
+                                   @Nullable String overrideBaseUnit) {
         if (config.applicationKey() == null)
             return; // we can't set metadata correctly without the application key
 
-        Meter.Id fullId = id;
-        if (suffix != null)
-            fullId = idWithSuffix(id, suffix);
-
-        String metricName = getConventionName(fullId);
-        if (!verifiedMetadata.contains(metricName)) {
-            metadata.put(metricName, new DatadogMetricMetadata(fullId, stat, config.descriptions(), overrideBaseUnit));
+        if (!verifiedMetadata.contains(series.metricName)) {
+            metadata.put(series.metricName, new DatadogMetricMetadata(series.id, stat, config.descriptions(), overrideBaseUnit));
         }
     }
 
     //VisibleForTesting
     String writeMetric(Meter.Id id, @Nullable String suffix, long wallTime, double value) {
-        Meter.Id fullId = id;
-        if (suffix != null)
-            fullId = idWithSuffix(id, suffix);
-
-        Iterable<Tag> tags = getConventionTags(fullId);
-
-        String host = config.hostTag() == null ? "" : stream(tags.spliterator(), false)
-                .filter(t -> requireNonNull(config.hostTag()).equals(t.getKey()))
-                .findAny()
-                .map(t -> ",\"host\":\"" + t.getValue() + "\"")
-                .orElse("");
-
-        String tagsArray = tags.iterator().hasNext() ?
-                ",\"tags\":[" +
-                        stream(tags.spliterator(), false)
-                                .map(t -> "\"" + t.getKey() + ":" + t.getValue() + "\"")
-                                .collect(joining(",")) + "]" : "";
-
-        return "{\"metric\":\"" + getConventionName(fullId) + "\"," +
-                "\"points\":[[" + (wallTime / 1000) + ", " + value + "]]" + host + tagsArray + "}";
+        return series(id, suffix).write(wallTime, value);
+    }
+
+    private Series series(Meter.Id id, @Nullable String suffix) {
+        return encodedSeries.get(id, suffix, convention -> new Series(suffix == null ? id : idWithSuffix(id, suffix), convention));
+    }
+
+    /**
+     * A series as it is written to the request body, around its points.
+     */
+    private class Series {
+        final Meter.Id id;
+        final String metricName;
+        final String beforePoints;
+        final String afterPoints;
+
+        Series(Meter.Id id, NamingConvention convention) {
+            this.id = id;
+            this.metricName = id.getConventionName(convention);
+
+            List<Tag> tags = id.getConventionTags(convention);
+
+            String host = config.hostTag() == null ? "" : tags.stream()
+                    .filter(t -> requireNonNull(config.hostTag()).equals(t.getKey()))
+                    .findAny()
+                    .map(t -> ",\"host\":\"" + t.getValue() + "\"")
+                    .orElse("");
+
+            String tagsArray = tags.isEmpty() ? "" :
+                    ",\"tags\":[" +
+                            tags.stream()
+                                    .map(t -> "\"" + t.getKey() + ":" + t.getValue() + "\"")
+                                    .collect(joining(",")) + "]";
+
+            this.beforePoints = "{\"metric\":\"" + metricName + "\",\"points\":[[";
+            this.afterPoints = "]]" + host + tagsArray + "}";
+        }
+
+        String write(long wallTime, double value) {
+            return beforePoints + (wallTime / 1000) + ", " + value + afterPoints;
+        }
     }
 
     /**
@@ -261,42 +265,23 @@ public class DatadogMeterRegistry extends StepMeterRegistry {
         if (verifiedMetadata.contains(metricName))
             return;
 
-        HttpURLConnection con = null;
         try {
-            con = (HttpURLConnection) URI.create(config.uri() + "/api/v1/metrics/" + URLEncoder.encode(metricName, "UTF-8")
-                    + "?api_key=" + config.apiKey() + "&application_key=" + config.applicationKey()).toURL().openConnection();
-            con.setConnectTimeout((int) config.connectTimeout().toMillis());
-            con.setReadTimeout((int) config.readTimeout().toMillis());
-            con.setRequestMethod("PUT");
-            con.setRequestProperty("Content-Type", "application/json");
-            con.setDoOutput(true);
-
-            try (OutputStream os = con.getOutputStream()) {
-                os.write(metadata.editMetadataBody().getBytes());
-                os.flush();
-            }
-
-            int status = con.getResponseCode();
-
-            if (status >= 200 && status < 300) {
-                verifiedMetadata.add(metricName);
-            } else if (status >= 400) {
-                String msg = IOUtils.toString(con.getErrorStream());
-
-                // Ignore when the response content contains "metric_name not found".
-                // Metrics that are newly created in Datadog are not immediately available
-                // for metadata modification. We will keep trying this request on subsequent publishes,
-                // where it will eventually succeed.
-                if (!msg.contains("metric_name not found")) {
-                    logger.error("failed to send metric metadata: {}", msg);
-                }
-            } else {
-                logger.error("failed to send metric metadata: http {}", status);
-            }
+            httpClient.put(config.uri() + "/api/v1/metrics/" + URLEncoder.encode(metricName, "UTF-8")
+                    + "?api_key=" + config.apiKey() + "&application_key=" + config.applicationKey())
+                    .withJsonContent(metadata.editMetadataBody())
+                    .send()
+                    .onSuccess(response -> verifiedMetadata.add(metricName))
+                    .onError(response -> {
+                        // Ignore when the response content contains "metric_name not found".
+                        // Metrics that are newly created in Datadog are not immediately available
+                        // for metadata modification. We will keep trying this request on subsequent publishes,
+                        // where it will eventually succeed.
+                        if (!response.body().contains("metric_name not found")) {
+                            logger.error("failed to send metric metadata: http {} {}", response.code(), response.body());
+                        }
+                    });
         } catch (IOException e) {
             logger.warn("failed to send metric metadata", e);
-        } finally {
-            quietlyCloseUrlConnection(con);
         }
     }
 
@@ -24,18 +24,17 @@ import io.micrometer.core.instrument.LongTaskTimer;
 import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.NamingConvention;
 import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.step.BatchPublisher;
 import io.micrometer.core.instrument.step.StepMeterRegistry;
-import io.micrometer.core.instrument.util.IOUtils;
-import io.micrometer.core.instrument.util.MeterPartition;
-import io.micrometer.core.instrument.util.URIUtils;
+import io.micrometer.core.instrument.util.MeterEncodingCache;
+import io.micrometer.core.ipc.http.HttpSender;
+import io.micrometer.core.lang.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,7 +42,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -63,74 +61,103 @@ public class DynatraceMeterRegistry extends StepMeterRegistry {
      * Metric names for which we have created the custom metric in the API
      */
     private final Set<String> createdCustomMetrics = ConcurrentHashMap.newKeySet();
-    private final URL customMetricEndpointTemplate;
-    private final URL customDeviceMetricEndpoint;
+    private final String customMetricEndpointTemplate;
+    private final String customDeviceMetricEndpoint;
+    private final HttpSender httpClient;
+    private final MeterEncodingCache<Series> encodedSeries = new MeterEncodingCache<>(this);
 
     public DynatraceMeterRegistry(DynatraceConfig config, Clock clock) {
         this(config, clock, Executors.defaultThreadFactory());
     }
 
     public DynatraceMeterRegistry(DynatraceConfig config, Clock clock, ThreadFactory threadFactory) {
+        this(config, clock, threadFactory, defaultHttpSender(config));
+    }
+
+    public DynatraceMeterRegistry(DynatraceConfig config, Clock clock, ThreadFactory threadFactory, HttpSender httpClient) {
         super(config, clock);
         this.config = config;
+        this.httpClient = httpClient;
 
         this.config().namingConvention(new DynatraceNamingConvention());
 
-        this.customMetricEndpointTemplate = URIUtils.toURL(config.uri() + "/api/v1/timeseries/");
-        this.customDeviceMetricEndpoint = URIUtils.toURL(config.uri() +
-            "/api/v1/entity/infrastructure/custom/" + config.deviceId() + "?api-token=" + config.apiToken());
+        this.customMetricEndpointTemplate = config.uri() + "/api/v1/timeseries/";
+        this.customDeviceMetricEndpoint = config.uri() +
+            "/api/v1/entity/infrastructure/custom/" + config.deviceId() + "?api-token=" + config.apiToken();
 
         if (config.enabled())
             start(threadFactory);
     }
 
+    @Override
+    public void close() {
+        super.close();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("failed to close the http sender", e);
+        }
+    }
+
     @Override
     protected void publish() {
-        for (List<Meter> batch : MeterPartition.partition(this, config.batchSize())) {
-            final List<DynatraceCustomMetric> series = batch.stream()
-                .flatMap(meter -> {
-                    if (meter instanceof Timer) {
-                        return createCustomMetric((Timer) meter);
-                    } else if (meter instanceof FunctionTimer) {
-                        return createCustomMetric((FunctionTimer) meter);
-                    } else if (meter instanceof DistributionSummary) {
-                        return createCustomMetric((DistributionSummary) meter);
-                    } else if (meter instanceof LongTaskTimer) {
-                        return createCustomMetric((LongTaskTimer) meter);
-                    } else {
-                        return createCustomMetric(meter);
-                    }
-                })
-                .collect(Collectors.toList());
-
-            series.stream()
-                .map(DynatraceCustomMetric::getMetricDefinition)
-                .filter(this::isCustomMetricNotCreated)
-                .forEach(this::putCustomMetric);
-
-            if (!createdCustomMetrics.isEmpty() && !series.isEmpty()) {
-                postCustomMetricValues(
-                    config.technologyType(),
-                    series.stream()
-                        .map(DynatraceCustomMetric::getTimeSeries)
-                        .filter(this::isCustomMetricCreated)
-                        .collect(Collectors.toList()));
-            }
+        BatchPublisher.Result result = publishBatches(this::createCustomMetrics, this::sendBatch);
+
+        result.failures().forEach(e -> logger.warn("failed to send metrics", e));
+        if (result.abandoned() > 0) {
+            logger.warn("failed to send {} batches of metrics within {}", result.abandoned(), config.publishDeadline());
+        }
+    }
+
+    @Nullable
+    private List<DynatraceCustomMetric> createCustomMetrics(final List<Meter> batch) {
+        final List<DynatraceCustomMetric> series = batch.stream()
+            .flatMap(meter -> {
+                if (meter instanceof Timer) {
+                    return createCustomMetric((Timer) meter);
+                } else if (meter instanceof FunctionTimer) {
+                    return createCustomMetric((FunctionTimer) meter);
+                } else if (meter instanceof DistributionSummary) {
+                    return createCustomMetric((DistributionSummary) meter);
+                } else if (meter instanceof LongTaskTimer) {
+                    return createCustomMetric((LongTaskTimer) meter);
+                } else {
+                    return createCustomMetric(meter);
+                }
+            })
+            .collect(Collectors.toList());
+
+        return series.isEmpty() ? null : series;
+    }
+
+    private void sendBatch(final List<Meter> batch, final List<DynatraceCustomMetric> series) {
+        series.stream()
+            .map(DynatraceCustomMetric::getMetricDefinition)
+            .filter(this::isCustomMetricNotCreated)
+            .forEach(this::putCustomMetric);
+
+        if (!createdCustomMetrics.isEmpty()) {
+            postCustomMetricValues(
+                config.technologyType(),
+                series.stream()
+                    .map(DynatraceCustomMetric::getTimeSeries)
+                    .filter(this::isCustomMetricCreated)
+                    .collect(Collectors.toList()));
         }
     }
 
     private Stream<DynatraceCustomMetric> createCustomMetric(final Meter meter) {
         final long wallTime = clock.wallTime();
         return StreamSupport.stream(meter.measure().spliterator(), false)
-            .map(ms -> createCustomMetric(meter.getId(), wallTime, ms.getValue()));
+            .map(ms -> createCustomMetric(meter.getId(), null, wallTime, ms.getValue()));
     }
 
     private Stream<DynatraceCustomMetric> createCustomMetric(final LongTaskTimer longTaskTimer) {
         final long wallTime = clock.wallTime();
         final Meter.Id id = longTaskTimer.getId();
         return Stream.of(
-            createCustomMetric(idWithSuffix(id, "activeTasks"), wallTime, longTaskTimer.activeTasks(), DynatraceUnit.Count),
-            createCustomMetric(idWithSuffix(id, "count"), wallTime, longTaskTimer.duration(getBaseTimeUnit())));
+            createCustomMetric(id, "activeTasks", wallTime, longTaskTimer.activeTasks(), DynatraceUnit.Count),
+            createCustomMetric(id, "count", wallTime, longTaskTimer.duration(getBaseTimeUnit())));
     }
 
     private Stream<DynatraceCustomMetric> createCustomMetric(final DistributionSummary summary) {
@@ -139,10 +166,10 @@ public class DynatraceMeterRegistry extends StepMeterRegistry {
         final HistogramSnapshot snapshot = summary.takeSnapshot();
 
         return Stream.of(
-            createCustomMetric(idWithSuffix(id, "sum"), wallTime, snapshot.total(getBaseTimeUnit())),
-            createCustomMetric(idWithSuffix(id, "count"), wallTime, snapshot.count(), DynatraceUnit.Count),
-            createCustomMetric(idWithSuffix(id, "avg"), wallTime, snapshot.mean(getBaseTimeUnit())),
-            createCustomMetric(idWithSuffix(id, "max"), wallTime, snapshot.max(getBaseTimeUnit())));
+            createCustomMetric(id, "sum", wallTime, snapshot.total(getBaseTimeUnit())),
+            createCustomMetric(id, "count", wallTime, snapshot.count(), DynatraceUnit.Count),
+            createCustomMetric(id, "avg", wallTime, snapshot.mean(getBaseTimeUnit())),
+            createCustomMetric(id, "max", wallTime, snapshot.max(getBaseTimeUnit())));
     }
 
     private Stream<DynatraceCustomMetric> createCustomMetric(final FunctionTimer timer) {
@@ -150,9 +177,9 @@ public class DynatraceMeterRegistry extends StepMeterRegistry {
         final Meter.Id id = timer.getId();
 
         return Stream.of(
-            createCustomMetric(idWithSuffix(id, "count"), wallTime, timer.count(), DynatraceUnit.Count),
-            createCustomMetric(idWithSuffix(id, "avg"), wallTime, timer.mean(getBaseTimeUnit())),
-            createCustomMetric(idWithSuffix(id, "sum"), wallTime, timer.totalTime(getBaseTimeUnit())));
+            createCustomMetric(id, "count", wallTime, timer.count(), DynatraceUnit.Count),
+            createCustomMetric(id, "avg", wallTime, timer.mean(getBaseTimeUnit())),
+            createCustomMetric(id, "sum", wallTime, timer.totalTime(getBaseTimeUnit())));
     }
 
     private Stream<DynatraceCustomMetric> createCustomMetric(final Timer timer) {
@@ -161,22 +188,38 @@ public class DynatraceMeterRegistry extends StepMeterRegistry {
         final HistogramSnapshot snapshot = timer.takeSnapshot();
 
         return Stream.of(
-            createCustomMetric(idWithSuffix(id, "sum"), wallTime, snapshot.total(getBaseTimeUnit())),
-            createCustomMetric(idWithSuffix(id, "count"), wallTime, snapshot.count(), DynatraceUnit.Count),
-            createCustomMetric(idWithSuffix(id, "avg"), wallTime, snapshot.mean(getBaseTimeUnit())),
-            createCustomMetric(idWithSuffix(id, "max"), wallTime, snapshot.max(getBaseTimeUnit())));
+            createCustomMetric(id, "sum", wallTime, snapshot.total(getBaseTimeUnit())),
+            createCustomMetric(id, "count", wallTime, snapshot.count(), DynatraceUnit.Count),
+            createCustomMetric(id, "avg", wallTime, snapshot.mean(getBaseTimeUnit())),
+            createCustomMetric(id, "max", wallTime, snapshot.max(getBaseTimeUnit())));
     }
 
-    private DynatraceCustomMetric createCustomMetric(final Meter.Id id, final long time, final Number value) {
-        return createCustomMetric(id, time, value, DynatraceUnit.fromPlural(id.getBaseUnit()));
+    private DynatraceCustomMetric createCustomMetric(final Meter.Id id, @Nullable final String suffix, final long time, final Number value) {
+        return createCustomMetric(id, suffix, time, value, DynatraceUnit.fromPlural(id.getBaseUnit()));
     }
 
-    private DynatraceCustomMetric createCustomMetric(final Meter.Id id, final long time, final Number value, final DynatraceUnit unit) {
-        final String metricId = getConventionName(id);
-        final List<Tag> tags = getConventionTags(id);
+    private DynatraceCustomMetric createCustomMetric(final Meter.Id id, @Nullable final String suffix, final long time, final Number value,
+                                                     @Nullable final DynatraceUnit unit) {
+        final Series series = encodedSeries.get(id, suffix,
+            convention -> new Series(suffix == null ? id : idWithSuffix(id, suffix), unit, convention));
         return new DynatraceCustomMetric(
-            new DynatraceMetricDefinition(metricId, id.getDescription(), unit, extractDimensions(tags),  new String[]{config.technologyType()}),
-            new DynatraceTimeSeries(metricId, time, value.doubleValue(), extractDimensionValues(tags)));
+            series.metricDefinition,
+            new DynatraceTimeSeries(series.metricDefinition.getMetricId(), time, value.doubleValue(), series.dimensionValues));
+    }
+
+    /**
+     * The custom metric of a series and the values of its dimensions.
+     */
+    private class Series {
+        final DynatraceMetricDefinition metricDefinition;
+        final Map<String, String> dimensionValues;
+
+        Series(final Meter.Id id, @Nullable final DynatraceUnit unit, final NamingConvention convention) {
+            final List<Tag> tags = id.getConventionTags(convention);
+            this.metricDefinition = new DynatraceMetricDefinition(id.getConventionName(convention), id.getDescription(), unit,
+                extractDimensions(tags), new String[]{config.technologyType()});
+            this.dimensionValues = extractDimensionValues(tags);
+        }
     }
 
     private Set<String> extractDimensions(List<Tag> tags) {
@@ -196,71 +239,40 @@ public class DynatraceMeterRegistry extends StepMeterRegistry {
     }
 
     private void putCustomMetric(final DynatraceMetricDefinition customMetric) {
-        try {
-            final URL customMetricEndpoint = new URL(customMetricEndpointTemplate +
-                customMetric.getMetricId() + "?api-token=" + config.apiToken());
-
-            executeHttpCall(customMetricEndpoint, "PUT", customMetric.asJson(),
-                status -> {
-                    logger.debug("created '{}' as custom metric", customMetric.getMetricId());
-                    createdCustomMetrics.add(customMetric.getMetricId());
-                },
-                (status, errorMsg) -> logger.error("failed to create custom metric '{}', status: {} message: {}",
-                    customMetric.getMetricId(), status, errorMsg));
-        } catch (final MalformedURLException e) {
-            logger.warn("Failed to compose URL for custom metric '{}'", customMetric.getMetricId());
-        }
+        final String customMetricEndpoint = customMetricEndpointTemplate +
+            customMetric.getMetricId() + "?api-token=" + config.apiToken();
+
+        executeHttpCall(httpClient.put(customMetricEndpoint).withJsonContent(customMetric.asJson()),
+            response -> {
+                logger.debug("created '{}' as custom metric", customMetric.getMetricId());
+                createdCustomMetrics.add(customMetric.getMetricId());
+            },
+            response -> logger.error("failed to create custom metric '{}', status: {} message: {}",
+                customMetric.getMetricId(), response.code(), response.body()));
     }
 
     private void postCustomMetricValues(final String type, final List<DynatraceTimeSeries> timeSeries) {
-        executeHttpCall(customDeviceMetricEndpoint, "POST",
+        executeHttpCall(httpClient.post(customDeviceMetricEndpoint).withJsonContent(
             "{\"type\":\"" + type + "\"" +
                 ",\"series\":[" +
                 timeSeries.stream()
                     .map(DynatraceTimeSeries::asJson)
                     .collect(joining(",")) +
-                "]}",
-            status -> logger.info("successfully sent {} timeSeries to Dynatrace", timeSeries.size()),
-            (status, errorBody) -> logger.error("failed to send timeSeries, status: {} body: {}", status, errorBody));
+                "]}"),
+            response -> logger.info("successfully sent {} timeSeries to Dynatrace", timeSeries.size()),
+            response -> logger.error("failed to send timeSeries, status: {} body: {}", response.code(), response.body()));
     }
 
-    private void executeHttpCall(final URL url,
-                                 final String method,
-                                 final String body,
-                                 final Consumer<Integer> successHandler,
-                                 final BiConsumer<Integer, String> errorHandler) {
-        HttpURLConnection con = null;
-
+    private void executeHttpCall(final HttpSender.Request.Builder request,
+                                 final Consumer<HttpSender.Response> successHandler,
+                                 final Consumer<HttpSender.Response> errorHandler) {
+        final HttpSender.Request built = request.build();
         try {
-            con = (HttpURLConnection) url.openConnection();
-            con.setConnectTimeout((int) config.connectTimeout().toMillis());
-            con.setReadTimeout((int) config.readTimeout().toMillis());
-            con.setRequestMethod(method);
-            con.setRequestProperty("Content-Type", "application/json");
-
-            con.setDoOutput(true);
-
-            try (final OutputStream os = con.getOutputStream()) {
-                os.write(body.getBytes());
-                os.flush();
-            }
-
-            final int status = con.getResponseCode();
-
-            if (status >= 200 && status < 300) {
-                successHandler.accept(status);
-            } else  {
-                errorHandler.accept(status, IOUtils.toString(con.getErrorStream()));
-            }
+            httpClient.send(built)
+                .onSuccess(successHandler)
+                .onError(errorHandler);
         } catch (final Throwable e) {
-            logger.warn("failed to execute http call to '{}' using method '{}'", url, method, e);
-        } finally {
-            try {
-                if (con != null) {
-                    con.disconnect();
-                }
-            } catch (Exception ignore) {
-            }
+            logger.warn("failed to execute http call to '{}' using method '{}'", built.getUrl(), built.getMethod(), e);
         }
     }
 
@@ -17,31 +17,29 @@ package io.micrometer.elastic;
 
 import io.micrometer.core.instrument.*;
 import io.micrometer.core.instrument.config.NamingConvention;
+import io.micrometer.core.instrument.step.BatchPublisher;
 import io.micrometer.core.instrument.step.StepMeterRegistry;
 import io.micrometer.core.instrument.util.DoubleFormat;
-import io.micrometer.core.instrument.util.IOUtils;
-import io.micrometer.core.instrument.util.MeterPartition;
-import io.micrometer.core.instrument.util.StringUtils;
+import io.micrometer.core.instrument.util.MeterEncodingCache;
+import io.micrometer.core.ipc.http.HttpSender;
 import io.micrometer.core.lang.NonNull;
+import io.micrometer.core.lang.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
-import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -53,12 +51,20 @@ public class ElasticMeterRegistry extends StepMeterRegistry {
     private final Logger logger = LoggerFactory.getLogger(ElasticMeterRegistry.class);
 
     private final ElasticConfig config;
-    private boolean checkedForIndexTemplate = false;
+    private final HttpSender httpClient;
+    private final MeterEncodingCache<String> documentFields = new MeterEncodingCache<>(this);
+    private volatile boolean checkedForIndexTemplate = false;
 
     public ElasticMeterRegistry(ElasticConfig config, Clock clock, NamingConvention namingConvention, ThreadFactory threadFactory) {
+        this(config, clock, namingConvention, threadFactory, defaultHttpSender(config));
+    }
+
+    public ElasticMeterRegistry(ElasticConfig config, Clock clock, NamingConvention namingConvention, ThreadFactory threadFactory,
+                                HttpSender httpClient) {
         super(config, clock);
         this.config().namingConvention(namingConvention);
         this.config = config;
+        this.httpClient = httpClient;
 
         start(threadFactory);
     }
@@ -71,44 +77,44 @@ public class ElasticMeterRegistry extends StepMeterRegistry {
         if (!config.autoCreateIndex()) {
             return;
         }
-        try {
-            HttpURLConnection connection = openConnection("/_template/metrics_template", "HEAD");
-            if (connection == null) {
-                if (logger.isErrorEnabled()) {
-                    logger.error("Could not connect to any configured elasticsearch instances: {}", Arrays.asList(config.hosts()));
-                }
-                return;
+        HttpSender.Response templateResponse = sendToAnyHost(HttpSender.Method.HEAD, "/_template/metrics_template", null);
+        if (templateResponse == null) {
+            if (logger.isErrorEnabled()) {
+                logger.error("Could not connect to any configured elasticsearch instances: {}", Arrays.asList(config.hosts()));
             }
-            connection.disconnect();
+            return;
+        }
 
-            boolean isTemplateMissing = connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND;
-            if (!isTemplateMissing) {
-                checkedForIndexTemplate = true;
-                logger.debug("Metrics template already setup");
-                return;
-            }
+        boolean isTemplateMissing = templateResponse.code() == HttpURLConnection.HTTP_NOT_FOUND;
+        if (!isTemplateMissing) {
+            checkedForIndexTemplate = true;
+            logger.debug("Metrics template already setup");
+            return;
+        }
 
-            logger.debug("No metrics template found in elasticsearch. Adding...");
-            HttpURLConnection putTemplateConnection = openConnection("/_template/metrics_template", "PUT");
-            if (putTemplateConnection == null) {
-                logger.error("Error adding metrics template to elasticsearch");
-                return;
-            }
+        logger.debug("No metrics template found in elasticsearch. Adding...");
+        HttpSender.Response putTemplateResponse = sendToAnyHost(HttpSender.Method.PUT, "/_template/metrics_template",
+                "{\"template\":\"metrics*\",\"mappings\":{\"_default_\":{\"_all\":{\"enabled\":false},\"properties\":{\"name\":{\"type\":\"keyword\"}}}}}");
+        if (putTemplateResponse == null) {
+            logger.error("Error adding metrics template to elasticsearch");
+            return;
+        }
 
-            try (OutputStream outputStream = putTemplateConnection.getOutputStream()) {
-                outputStream.write("{\"template\":\"metrics*\",\"mappings\":{\"_default_\":{\"_all\":{\"enabled\":false},\"properties\":{\"name\":{\"type\":\"keyword\"}}}}}".getBytes());
-                outputStream.flush();
-            }
+        if (putTemplateResponse.code() != 200) {
+            logger.error("Error adding metrics template to elasticsearch: {}/{}", putTemplateResponse.code(), putTemplateResponse.body());
+            return;
+        }
 
-            putTemplateConnection.disconnect();
-            if (putTemplateConnection.getResponseCode() != 200) {
-                logger.error("Error adding metrics template to elasticsearch: {}/{}" + putTemplateConnection.getResponseCode(), putTemplateConnection.getResponseMessage());
-                return;
-            }
+        checkedForIndexTemplate = true;
+    }
 
-            checkedForIndexTemplate = true;
-        } catch (IOException ex) {
-            logger.error("Error when checking/adding metrics template to elasticsearch", ex);
+    @Override
+    public void close() {
+        super.close();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("failed to close the http sender", e);
         }
     }
 
@@ -118,72 +124,73 @@ public class ElasticMeterRegistry extends StepMeterRegistry {
             createIndexIfNeeded();
         }
 
-        for (List<Meter> batch : MeterPartition.partition(this, config.batchSize())) {
-            long wallTime = config().clock().wallTime();
-
-            String bulkPayload = batch.stream().flatMap(m -> {
-                if (m instanceof TimeGauge) {
-                    return writeGauge((TimeGauge) m, wallTime);
-                } else if (m instanceof Gauge) {
-                    return writeGauge((Gauge) m, wallTime);
-                } else if (m instanceof Counter) {
-                    return writeCounter((Counter) m, wallTime);
-                } else if (m instanceof FunctionCounter) {
-                    return writeCounter((FunctionCounter) m, wallTime);
-                } else if (m instanceof Timer) {
-                    return writeTimer((Timer) m, wallTime);
-                } else if (m instanceof FunctionTimer) {
-                    return writeTimer((FunctionTimer) m, wallTime);
-                } else if (m instanceof DistributionSummary) {
-                    return writeSummary((DistributionSummary) m, wallTime);
-                } else if (m instanceof LongTaskTimer) {
-                    return writeLongTaskTimer((LongTaskTimer) m, wallTime);
-                } else {
-                    return writeMeter(m, wallTime);
-                }
-            }).collect(Collectors.joining("\n")) + "\n";
+        // once a batch fails, don't try batches that haven't been sent yet
+        AtomicBoolean failed = new AtomicBoolean();
+        BatchPublisher.Result result = publishBatches(this::writeBatch, (batch, bulkPayload) -> {
+            if (!failed.get() && !sendBatch(batch, bulkPayload)) {
+                failed.set(true);
+            }
+        });
 
-            HttpURLConnection connection = openConnection("/_bulk", "POST");
-            if (connection == null) {
-                if (logger.isErrorEnabled()) {
-                    logger.error("Could not connect to any configured elasticsearch instances: {}", Arrays.asList(config.hosts()));
-                }
-                return;
+        result.failures().forEach(e -> logger.error("failed to send metrics to elasticsearch", e));
+        if (result.abandoned() > 0) {
+            logger.error("failed to send {} batches of metrics to elasticsearch within {}", result.abandoned(),
+                    config.publishDeadline());
+        }
+    }
+
+    private String writeBatch(List<Meter> batch) {
+        long wallTime = config().clock().wallTime();
+
+        return batch.stream().flatMap(m -> {
+            if (m instanceof TimeGauge) {
+                return writeGauge((TimeGauge) m, wallTime);
+            } else if (m instanceof Gauge) {
+                return writeGauge((Gauge) m, wallTime);
+            } else if (m instanceof Counter) {
+                return writeCounter((Counter) m, wallTime);
+            } else if (m instanceof FunctionCounter) {
+                return writeCounter((FunctionCounter) m, wallTime);
+            } else if (m instanceof Timer) {
+                return writeTimer((Timer) m, wallTime);
+            } else if (m instanceof FunctionTimer) {
+                return writeTimer((FunctionTimer) m, wallTime);
+            } else if (m instanceof DistributionSummary) {
+                return writeSummary((DistributionSummary) m, wallTime);
+            } else if (m instanceof LongTaskTimer) {
+                return writeLongTaskTimer((LongTaskTimer) m, wallTime);
+            } else {
+                return writeMeter(m, wallTime);
             }
+        }).collect(Collectors.joining("\n")) + "\n";
+    }
 
-            try (OutputStream outputStream = connection.getOutputStream()) {
-                outputStream.write(bulkPayload.getBytes());
-                outputStream.flush();
-
-                if (connection.getResponseCode() >= 400) {
-                    if (logger.isErrorEnabled()) {
-                        try {
-                            logger.error("failed to send metrics to elasticsearch (HTTP {}). Cause: {}", connection.getResponseCode(), IOUtils.toString(connection.getErrorStream(), StandardCharsets.UTF_8));
-                        } catch (IOException ignored) {
-                        }
-                    }
-                    return; // don't try another batch
-                } else {
-                    try {
-                        // It's not enough to look at response code. ES could return {"errors":true} in body:
-                        // {"took":16,"errors":true,"items":[{"index":{"_index":"metrics-2018-03","_type":"timer","_id":"i8kdBmIBmtn9wpUGezjX","status":400,"error":{"type":"illegal_argument_exception","reason":"Rejecting mapping update to [metrics-2018-03] as the final mapping would have more than 1 type: [metric, doc]"}}}]}
-                        String response = IOUtils.toString(connection.getInputStream(), StandardCharsets.UTF_8);
-                        if (response.contains("\"errors\":true")) {
-                            logger.warn("failed to send metrics to elasticsearch (HTTP {}). Cause: {}", connection.getResponseCode(), response);
-                            return;
-                        } else {
-                            logger.info("successfully sent {} metrics to elasticsearch", batch.size());
-                        }
-                    } catch (IOException ignored) {
-                    }
-                }
-            } catch (IOException e) {
-                logger.error("Could not serialize meter", e);
-                return;
-            } finally {
-                connection.disconnect();
+    /**
+     * @return {@code false} if the batch failed in a way that later batches are likely to fail too.
+     */
+    private boolean sendBatch(List<Meter> batch, String bulkPayload) {
+        HttpSender.Response response = sendToAnyHost(HttpSender.Method.POST, "/_bulk", bulkPayload);
+        if (response == null) {
+            if (logger.isErrorEnabled()) {
+                logger.error("Could not connect to any configured elasticsearch instances: {}", Arrays.asList(config.hosts()));
             }
+            return false;
+        }
+
+        if (response.code() >= 400) {
+            logger.error("failed to send metrics to elasticsearch (HTTP {}). Cause: {}", response.code(), response.body());
+            return false;
+        }
+
+        // It's not enough to look at response code. ES could return {"errors":true} in body:
+        // {"took":16,"errors":true,"items":[{"index":{"_index":"metrics-2018-03","_type":"timer","_id":"i8kdBmIBmtn9wpUGezjX","status":400,"error":{"type":"illegal_argument_exception","reason":"Rejecting mapping update to [metrics-2018-03] as the final mapping would have more than 1 type: [metric, doc]"}}}]}
+        if (response.body().contains("\"errors\":true")) {
+            logger.warn("failed to send metrics to elasticsearch (HTTP {}). Cause: {}", response.code(), response.body());
+            return false;
         }
+
+        logger.info("successfully sent {} metrics to elasticsearch", batch.size());
+        return true;
     }
 
     // VisibleForTesting
@@ -256,26 +263,38 @@ public class ElasticMeterRegistry extends StepMeterRegistry {
     }
 
     private IndexBuilder index(Meter meter, long wallTime) {
-        return new IndexBuilder(config, getConventionName(meter.getId()), meter.getId().getType().toString().toLowerCase(), getConventionTags(meter.getId()), wallTime);
+        Meter.Id id = meter.getId();
+        String fields = documentFields.get(id, convention -> IndexBuilder.fields(id.getConventionName(convention),
+                id.getType().toString().toLowerCase(), id.getConventionTags(convention)));
+        return new IndexBuilder(config, fields, wallTime);
     }
 
     // VisibleForTesting
     IndexBuilder index(String name, String type, long wallTime) {
-        return new IndexBuilder(config, name, type, Collections.emptyList(), wallTime);
+        return new IndexBuilder(config, IndexBuilder.fields(name, type, Collections.emptyList()), wallTime);
     }
 
     static class IndexBuilder {
         private StringBuilder indexLine = new StringBuilder();
 
-        private IndexBuilder(ElasticConfig config, String name, String type, List<Tag> tags, long wallTime) {
+        /**
+         * @param fields The name, type, and tag fields of the document, as rendered by {@link #fields(String, String, List)}.
+         */
+        private IndexBuilder(ElasticConfig config, String fields, long wallTime) {
             indexLine.append(indexLine(config, wallTime))
                     .append("{\"").append(config.timestampFieldName()).append("\":\"").append(timestamp(wallTime)).append("\"")
+                    .append(fields);
+        }
+
+        static String fields(String name, String type, List<Tag> tags) {
+            StringBuilder fields = new StringBuilder()
                     .append(",\"name\":\"").append(name).append("\"")
                     .append(",\"type\":\"").append(type).append("\"");
 
             for (Tag tag : tags) {
-                field(tag.getKey(), tag.getValue());
+                fields.append(",\"").append(tag.getKey()).append("\":\"").append(tag.getValue()).append("\"");
             }
+            return fields.toString();
         }
 
         IndexBuilder field(String name, double value) {
@@ -310,29 +329,23 @@ public class ElasticMeterRegistry extends StepMeterRegistry {
         return TimeUnit.MILLISECONDS;
     }
 
-    private HttpURLConnection openConnection(String uri, String method) {
+    /**
+     * Sends a request to each configured host in turn until one of them responds.
+     *
+     * @return The response, or {@code null} if none of the hosts could be reached.
+     */
+    @Nullable
+    private HttpSender.Response sendToAnyHost(HttpSender.Method method, String uri, @Nullable String body) {
         for (String host : config.hosts()) {
             try {
-                URL templateUrl = new URL(host + uri);
-                HttpURLConnection connection = (HttpURLConnection) templateUrl.openConnection();
-                connection.setRequestMethod(method);
-                connection.setConnectTimeout((int) config.connectTimeout().toMillis());
-                connection.setReadTimeout((int) config.readTimeout().toMillis());
-                connection.setUseCaches(false);
-                connection.setRequestProperty("Content-Type", "application/json");
-                if (method.equalsIgnoreCase("POST") || method.equalsIgnoreCase("PUT")) {
-                    connection.setDoOutput(true);
-                }
-
-                if (StringUtils.isNotBlank(config.userName()) && StringUtils.isNotBlank(config.password())) {
-                    byte[] authBinary = (config.userName() + ":" + config.password()).getBytes(StandardCharsets.UTF_8);
-                    String authEncoded = Base64.getEncoder().encodeToString(authBinary);
-                    connection.setRequestProperty("Authorization", "Basic " + authEncoded);
+                HttpSender.Request.Builder request = httpClient.newRequest(host + uri)
+                        .withMethod(method)
+                        .withHeader("Content-Type", "application/json")
+                        .withBasicAuthentication(config.userName(), config.password());
+                if (body != null) {
+                    request.withJsonContent(body);
                 }
-
-                connection.connect();
-
-                return connection;
+                return request.send();
             } catch (IOException e) {
                 logger.error("Error connecting to {}: {}", host, e);
             }
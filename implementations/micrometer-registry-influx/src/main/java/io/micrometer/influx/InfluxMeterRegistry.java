@@ -16,41 +16,68 @@
 package io.micrometer.influx;
 
 import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.step.BatchPublisher;
 import io.micrometer.core.instrument.step.StepMeterRegistry;
-import io.micrometer.core.instrument.util.DoubleFormat;
-import io.micrometer.core.instrument.util.IOUtils;
-import io.micrometer.core.instrument.util.MeterPartition;
+import io.micrometer.core.instrument.util.MeterEncodingCache;
 import io.micrometer.core.instrument.util.StringUtils;
-import io.micrometer.core.lang.Nullable;
+import io.micrometer.core.ipc.http.HttpSender;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.net.*;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Stream;
 import java.util.zip.GZIPOutputStream;
 
 import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toList;
 
 /**
  * @author Jon Schneider
  */
 public class InfluxMeterRegistry extends StepMeterRegistry {
+    private static final byte[] VALUE = LineProtocolWriter.fieldKey("value");
+    private static final byte[] SUM = LineProtocolWriter.fieldKey("sum");
+    private static final byte[] COUNT = LineProtocolWriter.fieldKey("count");
+    private static final byte[] MEAN = LineProtocolWriter.fieldKey("mean");
+    private static final byte[] UPPER = LineProtocolWriter.fieldKey("upper");
+    private static final byte[] ACTIVE_TASKS = LineProtocolWriter.fieldKey("active_tasks");
+    private static final byte[] DURATION = LineProtocolWriter.fieldKey("duration");
+    private static final Map<Statistic, byte[]> STATISTIC_FIELD_KEYS = new EnumMap<>(Statistic.class);
+
+    static {
+        for (Statistic statistic : Statistic.values()) {
+            STATISTIC_FIELD_KEYS.put(statistic, LineProtocolWriter.fieldKey(statistic.toString()
+                    .replaceAll("(.)(\\p{Upper})", "$1_$2").toLowerCase()));
+        }
+    }
+
     private final InfluxConfig config;
     private final Logger logger = LoggerFactory.getLogger(InfluxMeterRegistry.class);
-    private boolean databaseExists = false;
+    private final HttpSender httpClient;
+    private volatile boolean databaseExists = false;
+
+    private final MeterEncodingCache<byte[]> seriesKeys = new MeterEncodingCache<>(this);
+
+    private volatile int lastPayloadSize = 1024;
 
     public InfluxMeterRegistry(InfluxConfig config, Clock clock, ThreadFactory threadFactory) {
+        this(config, clock, threadFactory, defaultHttpSender(config));
+    }
+
+    public InfluxMeterRegistry(InfluxConfig config, Clock clock, ThreadFactory threadFactory, HttpSender httpClient) {
         super(config, clock);
         this.config().namingConvention(new InfluxNamingConvention());
         this.config = config;
+        this.httpClient = httpClient;
         start(threadFactory);
     }
 
@@ -62,30 +89,29 @@ public class InfluxMeterRegistry extends StepMeterRegistry {
         if (!config.autoCreateDb() || databaseExists)
             return;
 
-        HttpURLConnection con = null;
         try {
-            URL queryEndpoint = URI.create(config.uri() + "/query?q=" + URLEncoder.encode("CREATE DATABASE \"" + config.db() + "\"", "UTF-8")).toURL();
-
-            con = (HttpURLConnection) queryEndpoint.openConnection();
-            con.setConnectTimeout((int) config.connectTimeout().toMillis());
-            con.setReadTimeout((int) config.readTimeout().toMillis());
-            con.setRequestMethod("POST");
-            authenticateRequest(con);
-
-            int status = con.getResponseCode();
-
-            if (status >= 200 && status < 300) {
-                logger.debug("influx database {} is ready to receive metrics", config.db());
-                databaseExists = true;
-            } else if (status >= 400) {
-                if (logger.isErrorEnabled()) {
-                    logger.error("unable to create database '{}': {}", config.db(), IOUtils.toString(con.getErrorStream()));
-                }
-            }
+            String createDatabaseQuery = URLEncoder.encode("CREATE DATABASE \"" + config.db() + "\"", "UTF-8");
+
+            httpClient.post(config.uri() + "/query?q=" + createDatabaseQuery)
+                    .withBasicAuthentication(config.userName(), config.password())
+                    .send()
+                    .onSuccess(response -> {
+                        logger.debug("influx database {} is ready to receive metrics", config.db());
+                        databaseExists = true;
+                    })
+                    .onError(response -> logger.error("unable to create database '{}': {}", config.db(), response.body()));
         } catch (Throwable e) {
             logger.error("unable to create database '{}'", config.db(), e);
-        } finally {
-            quietlyCloseUrlConnection(con);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("failed to close the http sender", e);
         }
     }
 
@@ -98,193 +124,154 @@ public class InfluxMeterRegistry extends StepMeterRegistry {
             if (StringUtils.isNotBlank(config.retentionPolicy())) {
                 write += "&rp=" + config.retentionPolicy();
             }
-            URL influxEndpoint = URI.create(config.uri() + write).toURL();
-            HttpURLConnection con = null;
-
-            for (List<Meter> batch : MeterPartition.partition(this, config.batchSize())) {
-                try {
-                    con = (HttpURLConnection) influxEndpoint.openConnection();
-                    con.setConnectTimeout((int) config.connectTimeout().toMillis());
-                    con.setReadTimeout((int) config.readTimeout().toMillis());
-                    con.setRequestMethod("POST");
-                    con.setRequestProperty("Content-Type", "plain/text");
-                    con.setDoOutput(true);
-
-                    authenticateRequest(con);
-
-                    List<String> bodyLines = batch.stream()
-                            .flatMap(m -> {
-                                if (m instanceof Timer) {
-                                    return writeTimer((Timer) m);
-                                }
-                                if (m instanceof DistributionSummary) {
-                                    return writeSummary((DistributionSummary) m);
-                                }
-                                if (m instanceof FunctionTimer) {
-                                    return writeTimer((FunctionTimer) m);
-                                }
-                                if (m instanceof TimeGauge) {
-                                    return writeGauge(m.getId(), ((TimeGauge) m).value(getBaseTimeUnit()));
-                                }
-                                if (m instanceof Gauge) {
-                                    return writeGauge(m.getId(), ((Gauge) m).value());
-                                }
-                                if (m instanceof FunctionCounter) {
-                                    return writeCounter(m.getId(), ((FunctionCounter) m).count());
-                                }
-                                if (m instanceof Counter) {
-                                    return writeCounter(m.getId(), ((Counter) m).count());
-                                }
-                                if (m instanceof LongTaskTimer) {
-                                    return writeLongTaskTimer((LongTaskTimer) m);
-                                }
-                                return writeMeter(m);
-                            })
-                            .collect(toList());
-
-                    String body = String.join("\n", bodyLines);
-
-                    if (config.compressed())
-                        con.setRequestProperty("Content-Encoding", "gzip");
-
-                    try (OutputStream os = con.getOutputStream()) {
-                        if (config.compressed()) {
-                            try (GZIPOutputStream gz = new GZIPOutputStream(os)) {
-                                gz.write(body.getBytes());
-                                gz.flush();
-                            }
-                        } else {
-                            os.write(body.getBytes());
-                        }
-                        os.flush();
-                    }
-
-                    int status = con.getResponseCode();
-
-                    if (status >= 200 && status < 300) {
-                        logger.info("successfully sent {} metrics to influx", batch.size());
-                        databaseExists = true;
-                    } else if (status >= 400) {
-                        if (logger.isErrorEnabled()) {
-                            logger.error("failed to send metrics: {}", IOUtils.toString(con.getErrorStream()));
-                        }
-                    } else {
-                        logger.error("failed to send metrics: http {}", status);
-                    }
-
-                } finally {
-                    quietlyCloseUrlConnection(con);
-                }
+            String influxEndpoint = config.uri() + write;
+
+            BatchPublisher.Result result = publishBatches(this::writeBatch,
+                    (batch, body) -> sendBatch(influxEndpoint, batch, body));
+
+            result.failures().forEach(e -> logger.error("failed to send metrics", e));
+            if (result.abandoned() > 0) {
+                logger.error("failed to send {} batches of metrics within {}", result.abandoned(), config.publishDeadline());
             }
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException("Malformed InfluxDB publishing endpoint, see '" + config.prefix() + ".uri'", e);
         } catch (Throwable e) {
             logger.error("failed to send metrics", e);
         }
     }
 
-    private void authenticateRequest(HttpURLConnection con) {
-        if (config.userName() != null && config.password() != null) {
-            String encoded = Base64.getEncoder().encodeToString((config.userName() + ":" +
-                    config.password()).getBytes(StandardCharsets.UTF_8));
-            con.setRequestProperty("Authorization", "Basic " + encoded);
-        }
-    }
-
-    private void quietlyCloseUrlConnection(@Nullable HttpURLConnection con) {
-        try {
-            if (con != null) {
-                con.disconnect();
+    private Payload writeBatch(List<Meter> batch) {
+        long time = clock.wallTime();
+
+        // sized from the previous batch, so the payload rarely has to grow
+        Payload payload = new Payload(lastPayloadSize);
+        try (OutputStream out = config.compressed() ? new GZIPOutputStream(payload, 8192) : payload) {
+            LineProtocolWriter writer = new LineProtocolWriter(out);
+            for (Meter m : batch) {
+                if (m instanceof Timer) {
+                    writeTimer(writer, (Timer) m, time);
+                } else if (m instanceof DistributionSummary) {
+                    writeSummary(writer, (DistributionSummary) m, time);
+                } else if (m instanceof FunctionTimer) {
+                    writeTimer(writer, (FunctionTimer) m, time);
+                } else if (m instanceof TimeGauge) {
+                    writeGauge(writer, m.getId(), ((TimeGauge) m).value(getBaseTimeUnit()), time);
+                } else if (m instanceof Gauge) {
+                    writeGauge(writer, m.getId(), ((Gauge) m).value(), time);
+                } else if (m instanceof FunctionCounter) {
+                    writeCounter(writer, m.getId(), ((FunctionCounter) m).count(), time);
+                } else if (m instanceof Counter) {
+                    writeCounter(writer, m.getId(), ((Counter) m).count(), time);
+                } else if (m instanceof LongTaskTimer) {
+                    writeLongTaskTimer(writer, (LongTaskTimer) m, time);
+                } else {
+                    writeMeter(writer, m, time);
+                }
             }
-        } catch (Exception ignore) {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+
+        lastPayloadSize = payload.size();
+        return payload;
     }
 
-    class Field {
-        final String key;
-        final double value;
+    private void sendBatch(String influxEndpoint, List<Meter> batch, Payload body) throws IOException {
+        HttpSender.Request.Builder request = httpClient.post(influxEndpoint)
+                .withBasicAuthentication(config.userName(), config.password())
+                .withContent("plain/text", body);
+
+        if (config.compressed())
+            request.withHeader("Content-Encoding", "gzip");
 
-        Field(String key, double value) {
-            this.key = key;
-            this.value = value;
+        request.send()
+                .onSuccess(response -> {
+                    logger.info("successfully sent {} metrics to influx", batch.size());
+                    databaseExists = true;
+                })
+                .onError(response -> logger.error("failed to send metrics: http {} {}", response.code(), response.body()));
+    }
+
+    /**
+     * A serialized batch, sent straight from the buffer it was written to.
+     */
+    static class Payload extends ByteArrayOutputStream implements HttpSender.Body {
+        Payload(int size) {
+            super(size);
         }
 
         @Override
-        public String toString() {
-            return key + "=" + DoubleFormat.decimalOrNan(value);
+        public long contentLength() {
+            return count;
         }
     }
 
-    private Stream<String> writeMeter(Meter m) {
-        Stream.Builder<Field> fields = Stream.builder();
-
+    private void writeMeter(LineProtocolWriter writer, Meter m, long time) throws IOException {
+        writer.startLine(seriesKey(m.getId(), "unknown"));
         for (Measurement measurement : m.measure()) {
-            String fieldKey = measurement.getStatistic().toString()
-                    .replaceAll("(.)(\\p{Upper})", "$1_$2").toLowerCase();
-            fields.add(new Field(fieldKey, measurement.getValue()));
+            writer.field(STATISTIC_FIELD_KEYS.get(measurement.getStatistic()), measurement.getValue());
         }
-
-        return Stream.of(influxLineProtocol(m.getId(), "unknown", fields.build(), clock.wallTime()));
+        writer.endLine(time);
     }
 
-    private Stream<String> writeLongTaskTimer(LongTaskTimer timer) {
-        Stream<Field> fields = Stream.of(
-                new Field("active_tasks", timer.activeTasks()),
-                new Field("duration", timer.duration(getBaseTimeUnit()))
-        );
-        return Stream.of(influxLineProtocol(timer.getId(), "long_task_timer", fields, clock.wallTime()));
+    private void writeLongTaskTimer(LineProtocolWriter writer, LongTaskTimer timer, long time) throws IOException {
+        writer.startLine(seriesKey(timer.getId(), "long_task_timer"));
+        writer.field(ACTIVE_TASKS, timer.activeTasks());
+        writer.field(DURATION, timer.duration(getBaseTimeUnit()));
+        writer.endLine(time);
     }
 
-    private Stream<String> writeCounter(Meter.Id id, double count) {
-        return Stream.of(influxLineProtocol(id, "counter", Stream.of(new Field("value", count)), clock.wallTime()));
+    private void writeCounter(LineProtocolWriter writer, Meter.Id id, double count, long time) throws IOException {
+        writer.startLine(seriesKey(id, "counter"));
+        writer.field(VALUE, count);
+        writer.endLine(time);
     }
 
-    private Stream<String> writeGauge(Meter.Id id, Double value) {
-        return value.isNaN() ? Stream.empty() :
-            Stream.of(influxLineProtocol(id, "gauge", Stream.of(new Field("value", value)), clock.wallTime()));
+    private void writeGauge(LineProtocolWriter writer, Meter.Id id, double value, long time) throws IOException {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        writer.startLine(seriesKey(id, "gauge"));
+        writer.field(VALUE, value);
+        writer.endLine(time);
     }
 
-    private Stream<String> writeTimer(FunctionTimer timer) {
-        Stream<Field> fields = Stream.of(
-                new Field("sum", timer.totalTime(getBaseTimeUnit())),
-                new Field("count", timer.count()),
-                new Field("mean", timer.mean(getBaseTimeUnit()))
-        );
-
-        return Stream.of(influxLineProtocol(timer.getId(), "histogram", fields, clock.wallTime()));
+    private void writeTimer(LineProtocolWriter writer, FunctionTimer timer, long time) throws IOException {
+        writer.startLine(seriesKey(timer.getId(), "histogram"));
+        writer.field(SUM, timer.totalTime(getBaseTimeUnit()));
+        writer.field(COUNT, timer.count());
+        writer.field(MEAN, timer.mean(getBaseTimeUnit()));
+        writer.endLine(time);
     }
 
-    private Stream<String> writeTimer(Timer timer) {
-        final Stream.Builder<Field> fields = Stream.builder();
-
-        fields.add(new Field("sum", timer.totalTime(getBaseTimeUnit())));
-        fields.add(new Field("count", timer.count()));
-        fields.add(new Field("mean", timer.mean(getBaseTimeUnit())));
-        fields.add(new Field("upper", timer.max(getBaseTimeUnit())));
-
-        return Stream.of(influxLineProtocol(timer.getId(), "histogram", fields.build(), clock.wallTime()));
+    private void writeTimer(LineProtocolWriter writer, Timer timer, long time) throws IOException {
+        writer.startLine(seriesKey(timer.getId(), "histogram"));
+        writer.field(SUM, timer.totalTime(getBaseTimeUnit()));
+        writer.field(COUNT, timer.count());
+        writer.field(MEAN, timer.mean(getBaseTimeUnit()));
+        writer.field(UPPER, timer.max(getBaseTimeUnit()));
+        writer.endLine(time);
     }
 
-    private Stream<String> writeSummary(DistributionSummary summary) {
-        final Stream.Builder<Field> fields = Stream.builder();
-
-        fields.add(new Field("sum", summary.totalAmount()));
-        fields.add(new Field("count", summary.count()));
-        fields.add(new Field("mean", summary.mean()));
-        fields.add(new Field("upper", summary.max()));
-
-        return Stream.of(influxLineProtocol(summary.getId(), "histogram", fields.build(), clock.wallTime()));
+    private void writeSummary(LineProtocolWriter writer, DistributionSummary summary, long time) throws IOException {
+        writer.startLine(seriesKey(summary.getId(), "histogram"));
+        writer.field(SUM, summary.totalAmount());
+        writer.field(COUNT, summary.count());
+        writer.field(MEAN, summary.mean());
+        writer.field(UPPER, summary.max());
+        writer.endLine(time);
     }
 
-    private String influxLineProtocol(Meter.Id id, String metricType, Stream<Field> fields, long time) {
-        String tags = getConventionTags(id).stream()
-                .map(t -> "," + t.getKey() + "=" + t.getValue())
-                .collect(joining(""));
-
-        return getConventionName(id)
-                + tags + ",metric_type=" + metricType + " "
-                + fields.map(Field::toString).collect(joining(","))
-                + " " + time;
+    /**
+     * @return The measurement name and tag set of a meter's lines, followed by a space, encoded once per meter.
+     */
+    private byte[] seriesKey(Meter.Id id, String metricType) {
+        return seriesKeys.get(id, convention -> {
+            String tags = id.getConventionTags(convention).stream()
+                    .map(t -> "," + t.getKey() + "=" + t.getValue())
+                    .collect(joining(""));
+
+            return (id.getConventionName(convention) + tags + ",metric_type=" + metricType + " ").getBytes(StandardCharsets.UTF_8);
+        });
     }
 
     @Override
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.influx;
+
+import io.micrometer.core.instrument.util.DoubleFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes lines of the InfluxDB line protocol into a stream through a reusable buffer, so that a batch is never held
+ * as strings and can be written straight into a {@link java.util.zip.GZIPOutputStream}. Series keys and field keys are
+ * supplied already encoded, so that they can be computed once and reused for every line.
+ */
+final class LineProtocolWriter {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    /**
+     * Holds each number while it is formatted.
+     */
+    private final StringBuilder number = new StringBuilder(32);
+
+    private boolean firstLine = true;
+    private boolean firstField;
+
+    LineProtocolWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @param key A field key, followed by {@code =}.
+     * @return The encoded key.
+     */
+    static byte[] fieldKey(String key) {
+        return (key + "=").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param seriesKey The encoded measurement name and tag set of the line, followed by a space.
+     */
+    void startLine(byte[] seriesKey) throws IOException {
+        if (!firstLine) {
+            write((byte) '\n');
+        }
+        firstLine = false;
+        firstField = true;
+        write(seriesKey);
+    }
+
+    /**
+     * @param key   The encoded field key, followed by {@code =}.
+     * @param value The field value.
+     */
+    void field(byte[] key, double value) throws IOException {
+        if (!firstField) {
+            write((byte) ',');
+        }
+        firstField = false;
+        write(key);
+        number.setLength(0);
+        writeAscii(DoubleFormat.appendDecimalOrNan(number, value));
+    }
+
+    void endLine(long time) throws IOException {
+        write((byte) ' ');
+        number.setLength(0);
+        writeAscii(number.append(time));
+    }
+
+    /**
+     * Writes whatever is buffered to the underlying stream.
+     */
+    void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private void write(byte b) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = b;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            flush();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Formatted numbers are plain ASCII, so each character is a byte, except for infinity.
+     */
+    private void writeAscii(CharSequence chars) throws IOException {
+        int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            if (chars.charAt(i) > 0x7F) {
+                write(chars.toString().getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+
+        if (length > buffer.length - position) {
+            flush();
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) chars.charAt(i);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.influx;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LineProtocolWriterTest {
+
+    private Locale originalLocale = Locale.getDefault();
+
+    @AfterEach
+    void cleanUp() {
+        Locale.setDefault(this.originalLocale);
+    }
+
+    private static String field(double value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LineProtocolWriter writer = new LineProtocolWriter(out);
+        writer.startLine(new byte[0]);
+        writer.field(LineProtocolWriter.fieldKey("value"), value);
+        writer.flush();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testWithEnglishLocale() throws IOException {
+        Locale.setDefault(Locale.ENGLISH);
+        assertThat(field(0.01)).isEqualTo("value=0.01");
+    }
+
+    @Test
+    void testWithEnglishLocaleWithLargerResolution() throws IOException {
+        Locale.setDefault(Locale.ENGLISH);
+        assertThat(field(0.0000009)).isEqualTo("value=0.000001");
+    }
+
+    @Test
+    void testWithSwedishLocale() throws IOException {
+        Locale.setDefault(new Locale("sv", "SE"));
+        assertThat(field(0.01)).isEqualTo("value=0.01");
+    }
+
+    @Test
+    void linesLargerThanTheBuffer() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LineProtocolWriter writer = new LineProtocolWriter(out);
+        StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++) {
+            String seriesKey = "my_counter,id=" + i + ",metric_type=counter ";
+            writer.startLine(seriesKey.getBytes(StandardCharsets.UTF_8));
+            writer.field(LineProtocolWriter.fieldKey("value"), i);
+            writer.field(LineProtocolWriter.fieldKey("infinite"), Double.POSITIVE_INFINITY);
+            writer.endLine(1000L + i);
+
+            expected.append(i == 0 ? "" : "\n").append(seriesKey).append("value=").append(i)
+                    .append(",infinite=∞ ").append(1000 + i);
+        }
+        writer.flush();
+
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(expected.toString());
+    }
+}
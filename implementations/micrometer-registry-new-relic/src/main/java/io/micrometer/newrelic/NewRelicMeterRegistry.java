@@ -19,16 +19,11 @@ import io.micrometer.core.instrument.*;
 import io.micrometer.core.instrument.config.NamingConvention;
 import io.micrometer.core.instrument.step.StepMeterRegistry;
 import io.micrometer.core.instrument.util.DoubleFormat;
-import io.micrometer.core.instrument.util.IOUtils;
-import io.micrometer.core.lang.Nullable;
+import io.micrometer.core.ipc.http.HttpSender;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URI;
-import java.net.URL;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -49,6 +44,7 @@ import static java.util.stream.StreamSupport.stream;
  */
 public class NewRelicMeterRegistry extends StepMeterRegistry {
     private final NewRelicConfig config;
+    private final HttpSender httpClient;
     private final Logger logger = LoggerFactory.getLogger(NewRelicMeterRegistry.class);
 
     public NewRelicMeterRegistry(NewRelicConfig config, Clock clock) {
@@ -56,8 +52,13 @@ public class NewRelicMeterRegistry extends StepMeterRegistry {
     }
 
     public NewRelicMeterRegistry(NewRelicConfig config, Clock clock, ThreadFactory threadFactory) {
+        this(config, clock, threadFactory, defaultHttpSender(config));
+    }
+
+    public NewRelicMeterRegistry(NewRelicConfig config, Clock clock, ThreadFactory threadFactory, HttpSender httpClient) {
         super(config, clock);
         this.config = config;
+        this.httpClient = httpClient;
 
         requireNonNull(config.accountId());
         requireNonNull(config.apiKey());
@@ -66,10 +67,20 @@ public class NewRelicMeterRegistry extends StepMeterRegistry {
         start(threadFactory);
     }
 
+    @Override
+    public void close() {
+        super.close();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("failed to close the http sender", e);
+        }
+    }
+
     @Override
     protected void publish() {
         try {
-            URL insightsEndpoint = URI.create(config.uri() + "/v1/accounts/" + config.accountId() + "/events").toURL();
+            String insightsEndpoint = config.uri() + "/v1/accounts/" + config.accountId() + "/events";
 
             // New Relic's Insights API limits us to 1000 events per call
             final int batchSize = Math.min(config.batchSize(), 1000);
@@ -108,8 +119,6 @@ public class NewRelicMeterRegistry extends StepMeterRegistry {
             if (!events.isEmpty()) {
                 sendEvents(insightsEndpoint, events);
             }
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException("malformed New Relic insights endpoint -- see the 'uri' configuration", e);
         } catch (Throwable t) {
             logger.warn("failed to send metrics", t);
         }
@@ -202,55 +211,21 @@ public class NewRelicMeterRegistry extends StepMeterRegistry {
                         .collect(Collectors.joining("")) + tagsJson.toString() + "}";
     }
 
-    private void sendEvents(URL insightsEndpoint, List<String> events) {
-
-        HttpURLConnection con = null;
-
+    private void sendEvents(String insightsEndpoint, List<String> events) {
         try {
-            con = (HttpURLConnection) insightsEndpoint.openConnection();
-            con.setConnectTimeout((int) config.connectTimeout().toMillis());
-            con.setReadTimeout((int) config.readTimeout().toMillis());
-            con.setRequestMethod("POST");
-            con.setRequestProperty("Content-Type", "application/json");
-            con.setRequestProperty("X-Insert-Key", config.apiKey());
-
-            con.setDoOutput(true);
-
             String body = "[" + events.stream().collect(Collectors.joining(",")) + "]";
 
             logger.trace("Sending payload to New Relic:");
             logger.trace(body);
 
-            try (OutputStream os = con.getOutputStream()) {
-                os.write(body.getBytes());
-                os.flush();
-            }
-
-            int status = con.getResponseCode();
-
-            if (status >= 200 && status < 300) {
-                logger.info("successfully sent {} events to New Relic", events.size());
-            } else if (status >= 400) {
-                if (logger.isErrorEnabled()) {
-                    logger.error("failed to send metrics: {}", IOUtils.toString(con.getErrorStream()));
-                }
-            } else {
-                logger.error("failed to send metrics: http {}", status);
-            }
-
+            httpClient.post(insightsEndpoint)
+                    .withHeader("X-Insert-Key", config.apiKey())
+                    .withJsonContent(body)
+                    .send()
+                    .onSuccess(response -> logger.info("successfully sent {} events to New Relic", events.size()))
+                    .onError(response -> logger.error("failed to send metrics: http {} {}", response.code(), response.body()));
         } catch (Throwable e) {
             logger.warn("failed to send metrics", e);
-        } finally {
-            quietlyCloseUrlConnection(con);
-        }
-    }
-
-    private void quietlyCloseUrlConnection(@Nullable HttpURLConnection con) {
-        try {
-            if (con != null) {
-                con.disconnect();
-            }
-        } catch (Exception ignore) {
         }
     }
 
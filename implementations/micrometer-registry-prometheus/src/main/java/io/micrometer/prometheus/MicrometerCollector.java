@@ -20,40 +20,106 @@ import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.config.NamingConvention;
 import io.prometheus.client.Collector;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.toList;
 
 /**
  * @author Jon Schneider
  */
 class MicrometerCollector extends Collector {
+    /**
+     * Reports the samples of a single meter.
+     */
     interface Child {
-        Stream<Family> samples(String conventionName, List<String> tagKeys);
+        void samples(Samples samples);
     }
 
-    static class Family {
-        final Type type;
-        final String conventionName;
-        final Stream<MetricFamilySamples.Sample> samples;
+    /**
+     * Receives a meter's samples, each labeled with the meter's tags and, optionally, one extra label such as
+     * {@code le} or {@code quantile}.
+     */
+    interface Samples {
+        /**
+         * @param suffix Appended to the collector's name to form the sample name, e.g. {@code _count}.
+         * @param value  The sample value.
+         */
+        void add(String suffix, double value);
 
-        Family(Type type, String conventionName, Stream<MetricFamilySamples.Sample> samples) {
-            this.type = type;
-            this.conventionName = conventionName;
-            this.samples = samples;
+        /**
+         * @param suffix Appended to the collector's name to form the sample name, e.g. {@code _bucket}.
+         * @param labels The meter's labels and an extra label, prepared by {@link #labels(List, String, List)}.
+         * @param value  The sample value.
+         */
+        void add(String suffix, Labels labels, double value);
+
+        /**
+         * @param value The sample value in the gauge family named after the meter with a {@code _max} suffix.
+         */
+        void addMax(double value);
+    }
+
+    /**
+     * The labels of one sample row of a meter, such as a single histogram bucket, rendered once when the meter is
+     * created so that scrapes neither copy label lists nor format bucket boundaries.
+     */
+    static final class Labels {
+        final List<String> keys;
+        final List<String> values;
+
+        /**
+         * The text format rendering of the labels, e.g. {@code method="GET",le="0.1",}.
+         */
+        final String text;
+
+        private Labels(List<String> keys, List<String> values) {
+            this.keys = keys;
+            this.values = values;
+
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < keys.size(); i++) {
+                PrometheusTextFormatWriter.appendLabel(text, keys.get(i), values.get(i));
+            }
+            this.text = text.toString();
         }
+    }
 
-        String getConventionName() {
-            return conventionName;
+    private static class Entry {
+        final List<String> tagValues;
+        final Type type;
+        final Child child;
+
+        /**
+         * The text format rendering of the meter's labels, e.g. {@code method="GET",status="200",}.
+         */
+        final String labels;
+
+        Entry(List<String> tagKeys, List<String> tagValues, Type type, Child child) {
+            this.tagValues = tagValues;
+            this.type = type;
+            this.child = child;
+            this.labels = new Labels(tagKeys, tagValues).text;
         }
     }
 
+    /**
+     * The collectors this thread has already streamed for the scrape it is writing, so that {@link #collect()} does
+     * not repeat them when the {@link io.prometheus.client.CollectorRegistry} is enumerated for collectors registered
+     * by other means, including those of other registries sharing it.
+     */
+    static final ThreadLocal<Set<MicrometerCollector>> STREAMED = ThreadLocal.withInitial(Collections::emptySet);
+
     private final Meter.Id id;
-    private final List<Child> children = new CopyOnWriteArrayList<>();
+    private final Map<List<String>, Entry> children = new ConcurrentHashMap<>();
     private final String conventionName;
     private final List<String> tagKeys;
     private final PrometheusConfig config;
@@ -65,26 +131,112 @@ class MicrometerCollector extends Collector {
         this.config = config;
     }
 
-    public void add(Child child) {
-        children.add(child);
+    public void add(List<String> tagValues, Type type, Child child) {
+        children.put(tagValues, new Entry(tagKeys, tagValues, type, child));
+    }
+
+    public void remove(List<String> tagValues) {
+        children.remove(tagValues);
+    }
+
+    /**
+     * @param tagValues  The meter's tag values.
+     * @param key        The extra label's key.
+     * @param values     The values the extra label takes, one per sample row.
+     * @return Labels for each row, in the order of {@code values}.
+     */
+    public Labels[] labels(List<String> tagValues, String key, List<String> values) {
+        List<String> keys = new ArrayList<>(tagKeys);
+        keys.add(key);
+        List<String> immutableKeys = Collections.unmodifiableList(keys);
+
+        Labels[] labels = new Labels[values.size()];
+        for (int i = 0; i < labels.length; i++) {
+            List<String> rowValues = new ArrayList<>(tagValues);
+            rowValues.add(values.get(i));
+            labels[i] = new Labels(immutableKeys, Collections.unmodifiableList(rowValues));
+        }
+        return labels;
+    }
+
+    public boolean isEmpty() {
+        return children.isEmpty();
     }
 
     public List<String> getTagKeys() {
         return tagKeys;
     }
 
+    private String help() {
+        return config.descriptions() ? Optional.ofNullable(id.getDescription()).orElse(" ") : " ";
+    }
+
     @Override
     public List<MetricFamilySamples> collect() {
-        final String help = config.descriptions() ? Optional.ofNullable(id.getDescription()).orElse(" ") : " ";
-
-        return children.stream()
-            .flatMap(child -> child.samples(conventionName, tagKeys))
-            .collect(Collectors.groupingBy(
-                Family::getConventionName,
-                Collectors.reducing((a, b) -> new Family(a.type, a.conventionName, Stream.concat(a.samples, b.samples)))))
-            .values().stream()
-            .map(Optional::get)
-            .map(family -> new MetricFamilySamples(family.conventionName, family.type, help, family.samples.collect(toList())))
-            .collect(toList());
+        if (STREAMED.get().contains(this) || children.isEmpty()) {
+            return emptyList();
+        }
+
+        List<MetricFamilySamples.Sample> samples = new ArrayList<>();
+        List<MetricFamilySamples.Sample> maxSamples = new ArrayList<>();
+
+        Type type = null;
+        for (Entry entry : children.values()) {
+            if (type == null) {
+                type = entry.type;
+            }
+
+            entry.child.samples(new Samples() {
+                @Override
+                public void add(String suffix, double value) {
+                    samples.add(new MetricFamilySamples.Sample(conventionName + suffix, tagKeys, entry.tagValues, value));
+                }
+
+                @Override
+                public void add(String suffix, Labels labels, double value) {
+                    samples.add(new MetricFamilySamples.Sample(conventionName + suffix, labels.keys, labels.values, value));
+                }
+
+                @Override
+                public void addMax(double value) {
+                    maxSamples.add(new MetricFamilySamples.Sample(conventionName + "_max", tagKeys, entry.tagValues, value));
+                }
+            });
+        }
+
+        String help = help();
+        List<MetricFamilySamples> families = new ArrayList<>(2);
+        families.add(new MetricFamilySamples(conventionName, type, help, samples));
+        if (!maxSamples.isEmpty()) {
+            families.add(new MetricFamilySamples(conventionName + "_max", Type.GAUGE, help, maxSamples));
+        }
+        return families;
+    }
+
+    /**
+     * Write this collector's families in the text exposition format directly from the meters, without building
+     * {@link MetricFamilySamples}.
+     *
+     * @param writer The destination of the scrape.
+     * @throws IOException If the writer fails.
+     */
+    void write(PrometheusTextFormatWriter writer) throws IOException {
+        Iterator<Entry> entries = children.values().iterator();
+        if (!entries.hasNext()) {
+            return;
+        }
+
+        Entry entry = entries.next();
+        String help = help();
+        writer.beginFamily(conventionName, entry.type, help);
+        while (true) {
+            writer.beginChild(entry.labels);
+            entry.child.samples(writer);
+            if (!entries.hasNext()) {
+                break;
+            }
+            entry = entries.next();
+        }
+        writer.endFamily(help);
     }
 }
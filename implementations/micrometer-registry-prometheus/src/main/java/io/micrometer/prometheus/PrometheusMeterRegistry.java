@@ -20,6 +20,7 @@ import io.micrometer.core.instrument.cumulative.CumulativeFunctionCounter;
 import io.micrometer.core.instrument.cumulative.CumulativeFunctionTimer;
 import io.micrometer.core.instrument.distribution.CountAtBucket;
 import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
 import io.micrometer.core.instrument.distribution.ValueAtPercentile;
 import io.micrometer.core.instrument.distribution.pause.PauseDetector;
 import io.micrometer.core.instrument.internal.DefaultGauge;
@@ -33,18 +34,18 @@ import io.prometheus.client.exporter.common.TextFormat;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.ToDoubleFunction;
 import java.util.function.ToLongFunction;
-import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.StreamSupport.stream;
 
 /**
  * @author Jon Schneider
@@ -63,6 +64,7 @@ public class PrometheusMeterRegistry extends MeterRegistry {
         this.registry = registry;
         this.config().namingConvention(new PrometheusNamingConvention());
         this.prometheusConfig = config;
+        this.config().onMeterRemoved(this::onMeterRemoved);
     }
 
     /**
@@ -72,7 +74,7 @@ public class PrometheusMeterRegistry extends MeterRegistry {
     public String scrape() {
         Writer writer = new StringWriter();
         try {
-            TextFormat.write004(writer, registry.metricFamilySamples());
+            scrape(writer);
         } catch (IOException e) {
             // This actually never happens since StringWriter::write() doesn't throw any IOException
             throw new RuntimeException(e);
@@ -80,76 +82,90 @@ public class PrometheusMeterRegistry extends MeterRegistry {
         return writer.toString();
     }
 
+    /**
+     * Write the content that should be included in the response body for an endpoint designated for Prometheus to
+     * scrape from. Samples are streamed from the meters to the writer, rather than first being gathered as
+     * {@link Collector.MetricFamilySamples}.
+     *
+     * @param writer Where to write the scrape.
+     * @throws IOException If writing fails.
+     */
+    public void scrape(Writer writer) throws IOException {
+        PrometheusTextFormatWriter textFormatWriter = new PrometheusTextFormatWriter(writer);
+        Set<MicrometerCollector> streamed = new HashSet<>();
+        for (MicrometerCollector collector : collectorMap.values()) {
+            collector.write(textFormatWriter);
+            streamed.add(collector);
+        }
+        textFormatWriter.flush();
+
+        // collectors that were registered directly with the underlying CollectorRegistry, or by other registries
+        Set<MicrometerCollector> outer = MicrometerCollector.STREAMED.get();
+        MicrometerCollector.STREAMED.set(streamed);
+        try {
+            TextFormat.write004(writer, registry.metricFamilySamples());
+        } finally {
+            MicrometerCollector.STREAMED.set(outer);
+        }
+    }
+
     @Override
     public Counter newCounter(Meter.Id id) {
-        MicrometerCollector collector = collectorByName(id);
         PrometheusCounter counter = new PrometheusCounter(id);
-        List<String> tagValues = tagValues(id);
-
-        collector.add((conventionName, tagKeys) -> Stream.of(new MicrometerCollector.Family(Collector.Type.COUNTER, conventionName,
-                Stream.of(new Collector.MetricFamilySamples.Sample(conventionName, tagKeys, tagValues, counter.count())))));
-
+        collectorByName(id).add(tagValues(id), Collector.Type.COUNTER, samples -> samples.add("", counter.count()));
         return counter;
     }
 
     @Override
     public DistributionSummary newDistributionSummary(Meter.Id id, DistributionStatisticConfig distributionStatisticConfig, double scale) {
-        MicrometerCollector collector = collectorByName(id);
         PrometheusDistributionSummary summary = new PrometheusDistributionSummary(id, clock, distributionStatisticConfig, scale);
-        List<String> tagValues = tagValues(id);
 
-        collector.add((conventionName, tagKeys) -> {
-            Stream.Builder<Collector.MetricFamilySamples.Sample> samples = Stream.builder();
+        // Prometheus doesn't balk at a metric being BOTH a histogram and a summary
+        Collector.Type type = distributionStatisticConfig.isPublishingHistogram() ? Collector.Type.HISTOGRAM : Collector.Type.SUMMARY;
 
-            final ValueAtPercentile[] percentileValues = summary.takeSnapshot().percentileValues();
-            final CountAtBucket[] histogramCounts = summary.histogramCounts();
-            double count = summary.count();
+        MicrometerCollector collector = collectorByName(id);
+        List<String> tagValues = tagValues(id);
 
-            if (percentileValues.length > 0) {
-                List<String> quantileKeys = new LinkedList<>(tagKeys);
-                quantileKeys.add("quantile");
+        // percentiles and bucket boundaries are fixed for the life of the meter, so their label rows are rendered once
+        HistogramSnapshot initial = summary.takeSnapshot();
+        List<String> percentiles = new ArrayList<>();
+        for (ValueAtPercentile v : initial.percentileValues()) {
+            percentiles.add(Collector.doubleToGoString(v.percentile()));
+        }
+        MicrometerCollector.Labels[] quantileLabels = collector.labels(tagValues, "quantile", percentiles);
 
-                // satisfies https://prometheus.io/docs/concepts/metric_types/#summary
-                for (ValueAtPercentile v : percentileValues) {
-                    List<String> quantileValues = new LinkedList<>(tagValues);
-                    quantileValues.add(Collector.doubleToGoString(v.percentile()));
-                    samples.add(new Collector.MetricFamilySamples.Sample(
-                            conventionName, quantileKeys, quantileValues, v.value()));
-                }
+        List<String> buckets = new ArrayList<>();
+        for (CountAtBucket c : initial.histogramCounts()) {
+            buckets.add(Collector.doubleToGoString(c.bucket()));
+        }
+        buckets.add("+Inf");
+        MicrometerCollector.Labels[] bucketLabels = collector.labels(tagValues, "le", buckets);
+
+        collector.add(tagValues, type, samples -> {
+            HistogramSnapshot snapshot = summary.takeSnapshot();
+            double count = snapshot.count();
+
+            // satisfies https://prometheus.io/docs/concepts/metric_types/#summary
+            ValueAtPercentile[] percentileValues = snapshot.percentileValues();
+            for (int i = 0; i < percentileValues.length; i++) {
+                ValueAtPercentile v = percentileValues[i];
+                samples.add("", quantileLabels[i], v.value());
             }
 
-            Collector.Type type = Collector.Type.SUMMARY;
+            CountAtBucket[] histogramCounts = snapshot.histogramCounts();
             if (histogramCounts.length > 0) {
-                // Prometheus doesn't balk at a metric being BOTH a histogram and a summary
-                type = Collector.Type.HISTOGRAM;
-
-                List<String> histogramKeys = new LinkedList<>(tagKeys);
-                histogramKeys.add("le");
-
                 // satisfies https://prometheus.io/docs/concepts/metric_types/#histogram
-                for (CountAtBucket c : histogramCounts) {
-                    final List<String> histogramValues = new LinkedList<>(tagValues);
-                    histogramValues.add(Collector.doubleToGoString(c.bucket()));
-                    samples.add(new Collector.MetricFamilySamples.Sample(
-                            conventionName + "_bucket", histogramKeys, histogramValues, c.count()));
+                for (int i = 0; i < histogramCounts.length; i++) {
+                    samples.add("_bucket", bucketLabels[i], histogramCounts[i].count());
                 }
 
                 // the +Inf bucket should always equal `count`
-                final List<String> histogramValues = new LinkedList<>(tagValues);
-                histogramValues.add("+Inf");
-                samples.add(new Collector.MetricFamilySamples.Sample(
-                        conventionName + "_bucket", histogramKeys, histogramValues, count));
+                samples.add("_bucket", bucketLabels[histogramCounts.length], count);
             }
 
-            samples.add(new Collector.MetricFamilySamples.Sample(
-                    conventionName + "_count", tagKeys, tagValues, count));
-
-            samples.add(new Collector.MetricFamilySamples.Sample(
-                    conventionName + "_sum", tagKeys, tagValues, summary.totalAmount()));
-
-            return Stream.of(new MicrometerCollector.Family(type, conventionName, samples.build()),
-                    new MicrometerCollector.Family(Collector.Type.GAUGE, conventionName + "_max", Stream.of(
-                            new Collector.MetricFamilySamples.Sample(conventionName + "_max", tagKeys, tagValues, summary.max()))));
+            samples.add("_count", count);
+            samples.add("_sum", summary.totalAmount());
+            samples.addMax(summary.max());
         });
 
         return summary;
@@ -157,63 +173,54 @@ public class PrometheusMeterRegistry extends MeterRegistry {
 
     @Override
     protected io.micrometer.core.instrument.Timer newTimer(Meter.Id id, DistributionStatisticConfig distributionStatisticConfig, PauseDetector pauseDetector) {
-        MicrometerCollector collector = collectorByName(id);
         PrometheusTimer timer = new PrometheusTimer(id, clock, distributionStatisticConfig, pauseDetector);
-        List<String> tagValues = tagValues(id);
 
-        collector.add((conventionName, tagKeys) -> {
-            Stream.Builder<Collector.MetricFamilySamples.Sample> samples = Stream.builder();
+        // Prometheus doesn't balk at a metric being BOTH a histogram and a summary
+        Collector.Type type = distributionStatisticConfig.isPublishingHistogram() ? Collector.Type.HISTOGRAM : Collector.Type.SUMMARY;
 
-            final ValueAtPercentile[] percentileValues = timer.takeSnapshot().percentileValues();
-            final CountAtBucket[] histogramCounts = timer.histogramCounts();
-            double count = timer.count();
+        MicrometerCollector collector = collectorByName(id);
+        List<String> tagValues = tagValues(id);
 
-            if (percentileValues.length > 0) {
-                List<String> quantileKeys = new LinkedList<>(tagKeys);
-                quantileKeys.add("quantile");
+        // percentiles and bucket boundaries are fixed for the life of the meter, so their label rows are rendered once
+        HistogramSnapshot initial = timer.takeSnapshot();
+        List<String> percentiles = new ArrayList<>();
+        for (ValueAtPercentile v : initial.percentileValues()) {
+            percentiles.add(Collector.doubleToGoString(v.percentile()));
+        }
+        MicrometerCollector.Labels[] quantileLabels = collector.labels(tagValues, "quantile", percentiles);
 
-                // satisfies https://prometheus.io/docs/concepts/metric_types/#summary
-                for (ValueAtPercentile v : percentileValues) {
-                    List<String> quantileValues = new LinkedList<>(tagValues);
-                    quantileValues.add(Collector.doubleToGoString(v.percentile()));
-                    samples.add(new Collector.MetricFamilySamples.Sample(
-                            conventionName, quantileKeys, quantileValues, v.value(TimeUnit.SECONDS)));
-                }
+        List<String> buckets = new ArrayList<>();
+        for (CountAtBucket c : initial.histogramCounts()) {
+            buckets.add(Collector.doubleToGoString(c.bucket(TimeUnit.SECONDS)));
+        }
+        buckets.add("+Inf");
+        MicrometerCollector.Labels[] bucketLabels = collector.labels(tagValues, "le", buckets);
+
+        collector.add(tagValues, type, samples -> {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            double count = snapshot.count();
+
+            // satisfies https://prometheus.io/docs/concepts/metric_types/#summary
+            ValueAtPercentile[] percentileValues = snapshot.percentileValues();
+            for (int i = 0; i < percentileValues.length; i++) {
+                ValueAtPercentile v = percentileValues[i];
+                samples.add("", quantileLabels[i], v.value(TimeUnit.SECONDS));
             }
 
-            Collector.Type type = distributionStatisticConfig.isPublishingHistogram() ? Collector.Type.HISTOGRAM : Collector.Type.SUMMARY;
+            CountAtBucket[] histogramCounts = snapshot.histogramCounts();
             if (histogramCounts.length > 0) {
-                // Prometheus doesn't balk at a metric being BOTH a histogram and a summary
-                type = Collector.Type.HISTOGRAM;
-
-                List<String> histogramKeys = new LinkedList<>(tagKeys);
-                histogramKeys.add("le");
-
                 // satisfies https://prometheus.io/docs/concepts/metric_types/#histogram
-                for (CountAtBucket c : histogramCounts) {
-                    final List<String> histogramValues = new LinkedList<>(tagValues);
-                    histogramValues.add(Collector.doubleToGoString(c.bucket(TimeUnit.SECONDS)));
-                    samples.add(new Collector.MetricFamilySamples.Sample(
-                            conventionName + "_bucket", histogramKeys, histogramValues, c.count()));
+                for (int i = 0; i < histogramCounts.length; i++) {
+                    samples.add("_bucket", bucketLabels[i], histogramCounts[i].count());
                 }
 
                 // the +Inf bucket should always equal `count`
-                final List<String> histogramValues = new LinkedList<>(tagValues);
-                histogramValues.add("+Inf");
-                samples.add(new Collector.MetricFamilySamples.Sample(
-                        conventionName + "_bucket", histogramKeys, histogramValues, count));
+                samples.add("_bucket", bucketLabels[histogramCounts.length], count);
             }
 
-            samples.add(new Collector.MetricFamilySamples.Sample(
-                    conventionName + "_count", tagKeys, tagValues, count));
-
-            samples.add(new Collector.MetricFamilySamples.Sample(
-                    conventionName + "_sum", tagKeys, tagValues, timer.totalTime(TimeUnit.SECONDS)));
-
-            return Stream.of(new MicrometerCollector.Family(type, conventionName, samples.build()),
-                    new MicrometerCollector.Family(Collector.Type.GAUGE, conventionName + "_max", Stream.of(
-                            new Collector.MetricFamilySamples.Sample(conventionName + "_max", tagKeys, tagValues,
-                                    timer.max(getBaseTimeUnit())))));
+            samples.add("_count", count);
+            samples.add("_sum", timer.totalTime(TimeUnit.SECONDS));
+            samples.addMax(timer.max(getBaseTimeUnit()));
         });
 
         return timer;
@@ -222,55 +229,35 @@ public class PrometheusMeterRegistry extends MeterRegistry {
     @SuppressWarnings("unchecked")
     @Override
     protected <T> io.micrometer.core.instrument.Gauge newGauge(Meter.Id id, @Nullable T obj, ToDoubleFunction<T> valueFunction) {
-        MicrometerCollector collector = collectorByName(id);
         Gauge gauge = new DefaultGauge(id, obj, valueFunction);
-        List<String> tagValues = tagValues(id);
-
-        collector.add((conventionName, tagKeys) -> Stream.of(new MicrometerCollector.Family(Collector.Type.GAUGE, conventionName, Stream.of(
-                new Collector.MetricFamilySamples.Sample(conventionName, tagKeys, tagValues, gauge.value())
-        ))));
-
+        collectorByName(id).add(tagValues(id), Collector.Type.GAUGE, samples -> samples.add("", gauge.value()));
         return gauge;
     }
 
     @Override
     protected LongTaskTimer newLongTaskTimer(Meter.Id id) {
-        MicrometerCollector collector = collectorByName(id);
         LongTaskTimer ltt = new DefaultLongTaskTimer(id, clock);
-        List<String> tagValues = tagValues(id);
-
-        collector.add((conventionName, tagKeys) -> Stream.of(new MicrometerCollector.Family(Collector.Type.UNTYPED, conventionName, Stream.of(
-                new Collector.MetricFamilySamples.Sample(conventionName + "_active_count", tagKeys, tagValues, ltt.activeTasks()),
-                new Collector.MetricFamilySamples.Sample(conventionName + "_duration_sum", tagKeys, tagValues, ltt.duration(TimeUnit.SECONDS))
-        ))));
-
+        collectorByName(id).add(tagValues(id), Collector.Type.UNTYPED, samples -> {
+            samples.add("_active_count", ltt.activeTasks());
+            samples.add("_duration_sum", ltt.duration(TimeUnit.SECONDS));
+        });
         return ltt;
     }
 
     @Override
     protected <T> FunctionTimer newFunctionTimer(Meter.Id id, T obj, ToLongFunction<T> countFunction, ToDoubleFunction<T> totalTimeFunction, TimeUnit totalTimeFunctionUnit) {
-        MicrometerCollector collector = collectorByName(id);
         FunctionTimer ft = new CumulativeFunctionTimer<>(id, obj, countFunction, totalTimeFunction, totalTimeFunctionUnit, getBaseTimeUnit());
-        List<String> tagValues = tagValues(id);
-
-        collector.add((conventionName, tagKeys) -> Stream.of(new MicrometerCollector.Family(Collector.Type.SUMMARY, conventionName, Stream.of(
-                new Collector.MetricFamilySamples.Sample(conventionName + "_count", tagKeys, tagValues, ft.count()),
-                new Collector.MetricFamilySamples.Sample(conventionName + "_sum", tagKeys, tagValues, ft.totalTime(TimeUnit.SECONDS))
-        ))));
-
+        collectorByName(id).add(tagValues(id), Collector.Type.SUMMARY, samples -> {
+            samples.add("_count", ft.count());
+            samples.add("_sum", ft.totalTime(TimeUnit.SECONDS));
+        });
         return ft;
     }
 
     @Override
     protected <T> FunctionCounter newFunctionCounter(Meter.Id id, T obj, ToDoubleFunction<T> countFunction) {
-        MicrometerCollector collector = collectorByName(id);
         FunctionCounter fc = new CumulativeFunctionCounter<>(id, obj, countFunction);
-        List<String> tagValues = tagValues(id);
-
-        collector.add((conventionName, tagKeys) -> Stream.of(new MicrometerCollector.Family(Collector.Type.COUNTER, conventionName, Stream.of(
-                new Collector.MetricFamilySamples.Sample(conventionName, tagKeys, tagValues, fc.count())
-        ))));
-
+        collectorByName(id).add(tagValues(id), Collector.Type.COUNTER, samples -> samples.add("", fc.count()));
         return fc;
     }
 
@@ -290,39 +277,27 @@ public class PrometheusMeterRegistry extends MeterRegistry {
                 break;
         }
 
-        MicrometerCollector collector = collectorByName(id);
-        List<String> tagValues = tagValues(id);
+        collectorByName(id).add(tagValues(id), promType, samples -> {
+            for (Measurement m : measurements) {
+                String suffix = "";
+                switch (m.getStatistic()) {
+                    case TOTAL:
+                    case TOTAL_TIME:
+                        suffix = "_sum";
+                        break;
+                    case MAX:
+                        suffix = "_max";
+                        break;
+                    case ACTIVE_TASKS:
+                        suffix = "_active_count";
+                        break;
+                    case DURATION:
+                        suffix = "_duration_sum";
+                        break;
+                }
 
-        final Collector.Type finalPromType = promType;
-        collector.add((conventionName, tagKeys) -> {
-            List<String> statKeys = new LinkedList<>(tagKeys);
-            statKeys.add("statistic");
-
-            return Stream.of(new MicrometerCollector.Family(finalPromType, conventionName,
-                    stream(measurements.spliterator(), false)
-                            .map(m -> {
-                                List<String> statValues = new LinkedList<>(tagValues);
-                                statValues.add(m.getStatistic().toString());
-
-                                String name = conventionName;
-                                switch (m.getStatistic()) {
-                                    case TOTAL:
-                                    case TOTAL_TIME:
-                                        name += "_sum";
-                                        break;
-                                    case MAX:
-                                        name += "_max";
-                                        break;
-                                    case ACTIVE_TASKS:
-                                        name += "_active_count";
-                                        break;
-                                    case DURATION:
-                                        name += "_duration_sum";
-                                        break;
-                                }
-
-                                return new Collector.MetricFamilySamples.Sample(name, tagKeys, tagValues, m.getValue());
-                            })));
+                samples.add(suffix, m.getValue());
+            }
         });
 
         return new DefaultMeter(id, type, measurements);
@@ -344,6 +319,18 @@ public class PrometheusMeterRegistry extends MeterRegistry {
         return id.getTags().stream().map(Tag::getValue).collect(toList());
     }
 
+    private void onMeterRemoved(Meter meter) {
+        Meter.Id id = meter.getId();
+        collectorMap.computeIfPresent(getConventionName(id), (name, collector) -> {
+            collector.remove(tagValues(id));
+            if (collector.isEmpty()) {
+                registry.unregister(collector);
+                return null;
+            }
+            return collector;
+        });
+    }
+
     private MicrometerCollector collectorByName(Meter.Id id) {
         return collectorMap.compute(getConventionName(id), (name, existingCollector) -> {
             if (existingCollector == null) {
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.prometheus;
+
+import io.prometheus.client.Collector;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the Prometheus text exposition format (version 0.0.4) as samples are reported, producing the same output
+ * as {@link io.prometheus.client.exporter.common.TextFormat#write004(Writer, java.util.Enumeration)}. Output is staged
+ * in a reused buffer, and label text is precomputed per meter and sample row, so a scrape allocates little beyond the buffer.
+ */
+class PrometheusTextFormatWriter implements MicrometerCollector.Samples {
+    private static final int FLUSH_THRESHOLD = 8192;
+
+    private final Writer writer;
+    private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 1024);
+    private final char[] chunk = new char[FLUSH_THRESHOLD];
+
+    /**
+     * Samples of the {@code _max} gauge family, which can only be written after the family they accompany.
+     */
+    private final StringBuilder maxSamples = new StringBuilder();
+
+    private String family = "";
+    private String labels = "";
+
+    PrometheusTextFormatWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    void beginFamily(String name, Collector.Type type, String help) throws IOException {
+        flushIfFull();
+        family = name;
+        appendHeader(buffer, name, type, help);
+    }
+
+    void beginChild(String labels) throws IOException {
+        flushIfFull();
+        this.labels = labels;
+    }
+
+    void endFamily(String help) {
+        if (maxSamples.length() > 0) {
+            appendHeader(buffer, family + "_max", Collector.Type.GAUGE, help);
+            buffer.append(maxSamples);
+            maxSamples.setLength(0);
+        }
+    }
+
+    @Override
+    public void add(String suffix, double value) {
+        appendSample(buffer, suffix, labels, value);
+    }
+
+    @Override
+    public void add(String suffix, MicrometerCollector.Labels labels, double value) {
+        appendSample(buffer, suffix, labels.text, value);
+    }
+
+    @Override
+    public void addMax(double value) {
+        appendSample(maxSamples, "_max", labels, value);
+    }
+
+    void flush() throws IOException {
+        writeBuffer();
+        writer.flush();
+    }
+
+    private void flushIfFull() throws IOException {
+        if (buffer.length() >= FLUSH_THRESHOLD) {
+            writeBuffer();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        // Writer#append(CharSequence) would copy the buffer into a String first
+        int length = buffer.length();
+        for (int offset = 0; offset < length; offset += chunk.length) {
+            int n = Math.min(chunk.length, length - offset);
+            buffer.getChars(offset, offset + n, chunk, 0);
+            writer.write(chunk, 0, n);
+        }
+        buffer.setLength(0);
+    }
+
+    private void appendSample(StringBuilder out, String suffix, String labels, double value) {
+        out.append(family).append(suffix);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        appendGoDouble(out, value);
+        out.append('\n');
+    }
+
+    private static void appendHeader(StringBuilder out, String name, Collector.Type type, String help) {
+        out.append("# HELP ").append(name).append(' ');
+        for (int i = 0; i < help.length(); i++) {
+            char c = help.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+        out.append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(typeString(type)).append('\n');
+    }
+
+    static void appendLabel(StringBuilder out, String key, String value) {
+        out.append(key).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\"':
+                    out.append("\\\"");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+        out.append("\",");
+    }
+
+    /**
+     * Same representation as {@link Collector#doubleToGoString(double)}, appended without an intermediate string.
+     */
+    private static void appendGoDouble(StringBuilder out, double d) {
+        if (d == Double.POSITIVE_INFINITY) {
+            out.append("+Inf");
+        } else if (d == Double.NEGATIVE_INFINITY) {
+            out.append("-Inf");
+        } else if (Double.isNaN(d)) {
+            out.append("NaN");
+        } else {
+            out.append(d);
+        }
+    }
+
+    private static String typeString(Collector.Type type) {
+        switch (type) {
+            case GAUGE:
+                return "gauge";
+            case COUNTER:
+                return "counter";
+            case SUMMARY:
+                return "summary";
+            case HISTOGRAM:
+                return "histogram";
+            default:
+                return "untyped";
+        }
+    }
+}
@@ -21,11 +21,14 @@ import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
 import io.prometheus.client.Collector;
 import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
 import org.assertj.core.api.Condition;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
@@ -399,4 +402,84 @@ class PrometheusMeterRegistryTest {
 
         assertThat(timer.takeSnapshot().percentileValues()[0].value()).isEqualTo(2.0, offset(0.2));
     }
+
+    @Test
+    void removedMetersAreNoLongerScraped() {
+        Counter c1 = registry.counter("my.counter", "k", "v1");
+        registry.counter("my.counter", "k", "v2");
+
+        registry.remove(c1);
+        assertThat(registry.scrape())
+                .doesNotContain("my_counter_total{k=\"v1\",}")
+                .contains("my_counter_total{k=\"v2\",}");
+    }
+
+    @DisplayName("once every meter with a name is removed, the name may be reused with a different set of tag keys")
+    @Test
+    void removingLastMeterUnregistersCollector() {
+        registry.remove(registry.counter("my.counter", "k", "v1"));
+
+        registry.counter("my.counter", "other", "v1");
+        assertThat(registry.scrape()).contains("my_counter_total{other=\"v1\",}");
+    }
+
+    @Test
+    void streamedScrapeMatchesTextFormatOfCollectedSamples() throws IOException {
+        registry.counter("my.counter", "k", "v\"quoted\"").increment();
+        registry.gauge("my.gauge", Tags.of("k", "v"), 1.5);
+        Timer timer = Timer.builder("my.timer").publishPercentiles(0.5).sla(Duration.ofMillis(10)).register(registry);
+        timer.record(5, TimeUnit.MILLISECONDS);
+        DistributionSummary.builder("my.summary").description("multi\nline").sla(1, 5).register(registry).record(3);
+        registry.more().longTaskTimer("my.ltt").start();
+        registry.more().timer("my.function.timer", emptyList(), 1, n -> 2, n -> 3, TimeUnit.SECONDS);
+        registry.more().counter("my.function.counter", emptyList(), 1, n -> 4);
+        Meter.builder("my.custom", Meter.Type.OTHER, Collections.singletonList(new Measurement(() -> 6.0, Statistic.TOTAL)))
+                .register(registry);
+
+        StringWriter collected = new StringWriter();
+        TextFormat.write004(collected, prometheusRegistry.metricFamilySamples());
+
+        assertThat(registry.scrape().split("\n")).containsExactlyInAnyOrder(collected.toString().split("\n"));
+    }
+
+    @Test
+    void precomputedBucketAndQuantileLabelsIncludeMeterTags() {
+        Timer timer = Timer.builder("my.timer").tags("k", "v").publishPercentiles(0.5).sla(Duration.ofMillis(10))
+                .register(registry);
+        timer.record(5, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 2; i++) {
+            assertThat(registry.scrape())
+                    .contains("my_timer_duration_seconds{k=\"v\",quantile=\"0.5\",}")
+                    .contains("my_timer_duration_seconds_bucket{k=\"v\",le=\"0.01\",}")
+                    .contains("my_timer_duration_seconds_bucket{k=\"v\",le=\"+Inf\",} 1.0");
+        }
+    }
+
+    @Test
+    void scrapeIncludesCollectorsRegisteredDirectlyWithCollectorRegistry() {
+        registry.counter("my.counter").increment();
+        io.prometheus.client.Counter.build("native_counter", "help").register(prometheusRegistry).inc();
+
+        assertThat(registry.scrape())
+                .contains("my_counter_total 1.0")
+                .contains("native_counter 1.0");
+    }
+
+    @Test
+    void scrapeIncludesMetersOfOtherRegistriesSharingTheCollectorRegistry() {
+        PrometheusMeterRegistry other = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT, prometheusRegistry, clock);
+        registry.counter("my.counter").increment();
+        other.counter("other.counter").increment();
+
+        String scrape = registry.scrape();
+        assertThat(scrape)
+                .contains("my_counter_total 1.0")
+                .contains("other_counter_total 1.0");
+        assertThat(scrape.split("my_counter_total 1.0", -1)).hasSize(2);
+
+        assertThat(other.scrape())
+                .contains("my_counter_total 1.0")
+                .contains("other_counter_total 1.0");
+    }
 }
@@ -25,12 +25,14 @@ import com.signalfx.metrics.protobuf.SignalFxProtocolBuffers;
 import io.micrometer.core.instrument.*;
 import io.micrometer.core.instrument.config.NamingConvention;
 import io.micrometer.core.instrument.step.StepMeterRegistry;
+import io.micrometer.core.instrument.util.MeterEncodingCache;
 import io.micrometer.core.instrument.util.MeterPartition;
 import io.micrometer.core.lang.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executors;
@@ -47,6 +49,7 @@ public class SignalFxMeterRegistry extends StepMeterRegistry {
     private final Logger logger = LoggerFactory.getLogger(SignalFxMeterRegistry.class);
     private final SignalFxConfig config;
     private final AggregateMetricSender metricSender;
+    private final MeterEncodingCache<Series> encodedSeries = new MeterEncodingCache<>(this);
 
     public SignalFxMeterRegistry(SignalFxConfig config, Clock clock) {
         this(config, clock, Executors.defaultThreadFactory());
@@ -142,23 +145,36 @@ public class SignalFxMeterRegistry extends StepMeterRegistry {
                 datumBuilder.setIntValue((Long) value)
         ).build();
 
-        String metricName = config().namingConvention().name(statSuffix == null ? meter.getId().getName() : meter.getId().getName() + "." + statSuffix,
-                meter.getId().getType(), meter.getId().getBaseUnit());
+        Meter.Id id = meter.getId();
+        Series series = encodedSeries.get(id, statSuffix, convention -> new Series(id, statSuffix, convention));
 
-        SignalFxProtocolBuffers.DataPoint.Builder dataPointBuilder = SignalFxProtocolBuffers.DataPoint.newBuilder()
-                .setMetric(metricName)
+        session.setDatapoint(SignalFxProtocolBuffers.DataPoint.newBuilder()
+                .setMetric(series.metricName)
                 .setMetricType(metricType)
                 .setValue(datum)
-                .setTimestamp(timestamp);
+                .setTimestamp(timestamp)
+                .addAllDimensions(series.dimensions)
+                .build());
+    }
 
-        for (Tag tag : getConventionTags(meter.getId())) {
-            dataPointBuilder.addDimensions(SignalFxProtocolBuffers.Dimension.newBuilder()
-                    .setKey(tag.getKey())
-                    .setValue(tag.getValue())
-                    .build());
+    /**
+     * The metric name and dimensions of a series.
+     */
+    private static class Series {
+        final String metricName;
+        final List<SignalFxProtocolBuffers.Dimension> dimensions = new ArrayList<>();
+
+        Series(Meter.Id id, @Nullable String statSuffix, NamingConvention convention) {
+            this.metricName = convention.name(statSuffix == null ? id.getName() : id.getName() + "." + statSuffix,
+                    id.getType(), id.getBaseUnit());
+
+            for (Tag tag : id.getConventionTags(convention)) {
+                dimensions.add(SignalFxProtocolBuffers.Dimension.newBuilder()
+                        .setKey(tag.getKey())
+                        .setValue(tag.getValue())
+                        .build());
+            }
         }
-
-        session.setDatapoint(dataPointBuilder.build());
     }
 
     private void addLongTaskTimer(LongTaskTimer longTaskTimer, AggregateMetricSender.Session session, long timestamp) {
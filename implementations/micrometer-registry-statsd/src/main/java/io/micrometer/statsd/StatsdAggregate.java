@@ -0,0 +1,64 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.statsd;
+
+import io.micrometer.core.instrument.Statistic;
+import org.reactivestreams.Subscriber;
+
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count, total and max of the samples recorded by a timer or distribution summary since they were last
+ * published, used when {@link StatsdConfig#aggregated()} replaces per-sample lines.
+ */
+final class StatsdAggregate {
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder total = new DoubleAdder();
+    private final DoubleAccumulator max = new DoubleAccumulator(Math::max, 0);
+
+    private final StatsdLineBuilder countLine;
+    private final StatsdLineBuilder totalLine;
+    private final StatsdLineBuilder maxLine;
+    private final Statistic totalStatistic;
+
+    StatsdAggregate(StatsdLineBuilder countLine, StatsdLineBuilder totalLine, StatsdLineBuilder maxLine, Statistic totalStatistic) {
+        this.countLine = countLine;
+        this.totalLine = totalLine;
+        this.maxLine = maxLine;
+        this.totalStatistic = totalStatistic;
+    }
+
+    void record(double amount) {
+        count.increment();
+        total.add(amount);
+        max.accumulate(amount);
+    }
+
+    void publish(Subscriber<String> publisher) {
+        long n = count.sumThenReset();
+        double t = total.sumThenReset();
+        double m = max.getThenReset();
+
+        // nothing recorded since the last poll, and StatsD agents report zero for counters they haven't seen
+        if (n > 0) {
+            publisher.onNext(countLine.count(n));
+            publisher.onNext(totalLine.count(t, totalStatistic));
+            publisher.onNext(maxLine.gauge(m, Statistic.MAX));
+        }
+    }
+}
@@ -95,6 +95,25 @@ public interface StatsdConfig extends MeterRegistryConfig {
         return (v == null) ? 1400 : Integer.parseInt(v);
     }
 
+    /**
+     * @return {@code true} if lines should be packed into UDP datagrams of up to {@link #maxPacketLength()} bytes
+     * rather than sent in a datagram each. Default is {@code true}.
+     */
+    default boolean buffered() {
+        String v = get(prefix() + ".buffered");
+        return v == null || Boolean.valueOf(v);
+    }
+
+    /**
+     * When {@link #buffered()}, the longest a line is held back waiting for more lines to share its datagram.
+     *
+     * @return The maximum buffering latency. The default is 1 second.
+     */
+    default Duration maxBufferLatency() {
+        String v = get(prefix() + ".maxBufferLatency");
+        return v == null ? Duration.ofSeconds(1) : Duration.parse(v);
+    }
+
     /**
      * Determines how often gauges will be polled. When a gauge is polled, its value is recalculated. If the value has changed,
      * it is sent to the StatsD server.
@@ -107,17 +126,34 @@ public interface StatsdConfig extends MeterRegistryConfig {
     }
 
     /**
-     * Governs the maximum size of the queue of items waiting to be sent to a StatsD agent over UDP.
+     * Governs the maximum size of the queue of items waiting to be sent to a StatsD agent over UDP. Once full, lines
+     * are dropped according to {@link #queueOverflow()}. A bounded queue is preallocated, so size it to absorb bursts
+     * rather than to hold every line produced during an agent outage.
      *
-     * @return Maximum queue size.
-     * @deprecated No longer configurable and unbounded queue will be always used instead.
+     * @return Maximum queue size. The default, {@link Integer#MAX_VALUE}, leaves the queue unbounded.
      */
-    @Deprecated
     default int queueSize() {
         String v = get(prefix() + ".queueSize");
         return v == null ? Integer.MAX_VALUE : Integer.parseInt(v);
     }
 
+    /**
+     * @return Which line to drop when a bounded {@link #queueSize()} is reached. Default is
+     * {@link StatsdQueueOverflow#DROP_NEWEST}.
+     */
+    default StatsdQueueOverflow queueOverflow() {
+        String v = get(prefix() + ".queueOverflow");
+        if (v == null)
+            return StatsdQueueOverflow.DROP_NEWEST;
+
+        for (StatsdQueueOverflow overflow : StatsdQueueOverflow.values()) {
+            if (overflow.toString().equalsIgnoreCase(v))
+                return overflow;
+        }
+
+        throw new IllegalArgumentException("Unrecognized statsd queue overflow policy '" + v + "' (check property " + prefix() + ".queueOverflow)");
+    }
+
     /**
      * @return The step size to use in computing windowed statistics like max. The default is 1 minute.
      * To get the most out of these statistics, align the step interval to be close to your scrape interval.
@@ -135,4 +171,31 @@ public interface StatsdConfig extends MeterRegistryConfig {
         return v == null || Boolean.valueOf(v);
     }
 
+    /**
+     * @return {@code true} if counters, timers and distribution summaries should be accumulated locally and published
+     * once per {@link #pollingFrequency()} rather than on every increment or recording. Timers and distribution
+     * summaries are then published as {@code .count}, {@code .sum} and {@code .max} meters instead of as individual
+     * samples. Default is {@code false}.
+     */
+    default boolean aggregated() {
+        String v = get(prefix() + ".aggregated");
+        return Boolean.valueOf(v);
+    }
+
+    /**
+     * When not {@link #aggregated()}, the fraction of timer and distribution summary recordings that are sent to the
+     * StatsD agent. Sent lines carry an {@code @rate} annotation so the agent can scale its counts back up.
+     *
+     * @return The sample rate, between 0 (exclusive) and 1 (inclusive). Default is {@code 1.0}, sending every recording.
+     */
+    default double sampleRate() {
+        String v = get(prefix() + ".sampleRate");
+        if (v == null)
+            return 1.0;
+
+        double rate = Double.parseDouble(v);
+        if (rate <= 0 || rate > 1)
+            throw new IllegalArgumentException("StatsD sample rate must be in (0, 1] but was " + v + " (check property " + prefix() + ".sampleRate)");
+        return rate;
+    }
 }
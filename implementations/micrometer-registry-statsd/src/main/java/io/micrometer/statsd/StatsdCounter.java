@@ -18,6 +18,7 @@ package io.micrometer.statsd;
 import io.micrometer.core.instrument.AbstractMeter;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.util.MeterEquivalence;
+import io.micrometer.core.lang.Nullable;
 import org.reactivestreams.Subscriber;
 
 import java.util.concurrent.atomic.DoubleAdder;
@@ -25,22 +26,47 @@ import java.util.concurrent.atomic.DoubleAdder;
 /**
  * @author Jon Schneider
  */
-public class StatsdCounter extends AbstractMeter implements Counter {
+public class StatsdCounter extends AbstractMeter implements Counter, StatsdPollable {
     private DoubleAdder count = new DoubleAdder();
     private final StatsdLineBuilder lineBuilder;
     private final Subscriber<String> publisher;
 
-    StatsdCounter(Id id, StatsdLineBuilder lineBuilder, Subscriber<String> publisher) {
+    /**
+     * Increments not yet published, when aggregating.
+     */
+    @Nullable
+    private final DoubleAdder pending;
+
+    StatsdCounter(Id id, StatsdLineBuilder lineBuilder, Subscriber<String> publisher, boolean aggregated) {
         super(id);
         this.lineBuilder = lineBuilder;
         this.publisher = publisher;
+        this.pending = aggregated ? new DoubleAdder() : null;
     }
 
     @Override
     public void increment(double amount) {
         if (amount > 0) {
             count.add(amount);
-            publisher.onNext(lineBuilder.count((long) amount));
+            if (pending != null) {
+                pending.add(amount);
+            } else {
+                publisher.onNext(lineBuilder.count((long) amount));
+            }
+        }
+    }
+
+    @Override
+    public void poll() {
+        if (pending != null) {
+            double amount = pending.sumThenReset();
+            long whole = (long) amount;
+            if (whole > 0) {
+                publisher.onNext(lineBuilder.count(whole));
+            }
+
+            // carry fractional increments over to the next poll rather than losing them
+            pending.add(amount - whole);
         }
     }
 
@@ -24,10 +24,11 @@ import io.micrometer.core.instrument.util.MeterEquivalence;
 import io.micrometer.core.lang.Nullable;
 import org.reactivestreams.Subscriber;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.DoubleAdder;
 import java.util.concurrent.atomic.LongAdder;
 
-public class StatsdDistributionSummary extends AbstractDistributionSummary {
+public class StatsdDistributionSummary extends AbstractDistributionSummary implements StatsdPollable {
     private final LongAdder count = new LongAdder();
     private final DoubleAdder amount = new DoubleAdder();
     private final TimeWindowMax max;
@@ -35,12 +36,19 @@ public class StatsdDistributionSummary extends AbstractDistributionSummary {
     private final StatsdLineBuilder lineBuilder;
     private final Subscriber<String> publisher;
 
+    @Nullable
+    private final StatsdAggregate aggregate;
+    private final double sampleRate;
+
     StatsdDistributionSummary(Meter.Id id, StatsdLineBuilder lineBuilder, Subscriber<String> publisher, Clock clock,
-                              DistributionStatisticConfig distributionStatisticConfig, double scale) {
+                              DistributionStatisticConfig distributionStatisticConfig, double scale,
+                              @Nullable StatsdAggregate aggregate, double sampleRate) {
         super(id, clock, distributionStatisticConfig, scale, false);
         this.max = new TimeWindowMax(clock, distributionStatisticConfig);
         this.lineBuilder = lineBuilder;
         this.publisher = publisher;
+        this.aggregate = aggregate;
+        this.sampleRate = sampleRate;
     }
 
     @Override
@@ -49,7 +57,20 @@ public class StatsdDistributionSummary extends AbstractDistributionSummary {
             count.increment();
             this.amount.add(amount);
             max.record(amount);
-            publisher.onNext(lineBuilder.histogram(amount));
+            if (aggregate != null) {
+                aggregate.record(amount);
+            } else if (sampleRate >= 1) {
+                publisher.onNext(lineBuilder.histogram(amount));
+            } else if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                publisher.onNext(lineBuilder.histogram(amount, sampleRate));
+            }
+        }
+    }
+
+    @Override
+    public void poll() {
+        if (aggregate != null) {
+            aggregate.publish(publisher);
         }
     }
 
@@ -17,6 +17,7 @@ package io.micrometer.statsd;
 
 import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.Statistic;
+import io.micrometer.core.instrument.util.DoubleFormat;
 
 /**
  * A StatsD format serializer for an individual {@link Meter}. There is an instance per
@@ -32,6 +33,15 @@ public interface StatsdLineBuilder {
 
     String count(long amount, Statistic stat);
 
+    /**
+     * @param amount A fractional count, such as the total of a distribution summary.
+     * @param stat   The statistic being counted.
+     * @return A count line. Unless overridden, the amount is rounded to the nearest whole number.
+     */
+    default String count(double amount, Statistic stat) {
+        return count(Math.round(amount), stat);
+    }
+
     default String gauge(double amount) {
         return gauge(amount, Statistic.VALUE);
     }
@@ -40,5 +50,23 @@ public interface StatsdLineBuilder {
 
     String histogram(double amount);
 
+    /**
+     * @param amount     The sampled amount.
+     * @param sampleRate The fraction of recordings that are sent to the agent.
+     * @return A histogram line annotated with its sample rate.
+     */
+    default String histogram(double amount, double sampleRate) {
+        return sampleRate >= 1 ? histogram(amount) : histogram(amount) + "|@" + DoubleFormat.decimalOrNan(sampleRate);
+    }
+
     String timing(double timeMs);
+
+    /**
+     * @param timeMs     The sampled timing, in milliseconds.
+     * @param sampleRate The fraction of recordings that are sent to the agent.
+     * @return A timing line annotated with its sample rate.
+     */
+    default String timing(double timeMs, double sampleRate) {
+        return sampleRate >= 1 ? timing(timeMs) : timing(timeMs) + "|@" + DoubleFormat.decimalOrNan(sampleRate);
+    }
 }
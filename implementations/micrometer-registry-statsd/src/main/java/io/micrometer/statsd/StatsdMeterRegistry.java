@@ -24,9 +24,12 @@ import io.micrometer.core.instrument.distribution.pause.PauseDetector;
 import io.micrometer.core.instrument.internal.DefaultMeter;
 import io.micrometer.core.instrument.util.HierarchicalNameMapper;
 import io.micrometer.core.lang.Nullable;
+import io.micrometer.statsd.internal.BufferingFlux;
+import io.micrometer.statsd.internal.DroppingBoundedQueue;
 import io.micrometer.statsd.internal.FlavorStatsdLineBuilder;
 import io.micrometer.statsd.internal.LogbackMetricsSuppressingUnicastProcessor;
 import org.reactivestreams.Processor;
+import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 import reactor.core.Disposable;
@@ -37,8 +40,8 @@ import reactor.ipc.netty.NettyPipeline;
 import reactor.ipc.netty.udp.UdpClient;
 import reactor.util.concurrent.Queues;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
+import java.util.Queue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -55,6 +58,7 @@ public class StatsdMeterRegistry extends MeterRegistry {
     private final HierarchicalNameMapper nameMapper;
     private final Collection<StatsdPollable> pollableMeters = new CopyOnWriteArrayList<>();
     Processor<String, String> publisher;
+    private final Queue<String> queue;
 
     private final AtomicBoolean started = new AtomicBoolean(false);
 
@@ -155,8 +159,12 @@ public class StatsdMeterRegistry extends MeterRegistry {
         this.lineBuilderFunction = lineBuilderFunction;
         this.lineSink = lineSink;
         config().namingConvention(namingConvention);
+        config().onMeterRemoved(this::onMeterRemoved);
 
-        UnicastProcessor<String> processor = UnicastProcessor.create(Queues.<String>unboundedMultiproducer().get());
+        this.queue = config.queueSize() == Integer.MAX_VALUE ?
+                Queues.<String>unboundedMultiproducer().get() :
+                new DroppingBoundedQueue<>(config.queueSize(), config.queueOverflow() == StatsdQueueOverflow.DROP_OLDEST);
+        UnicastProcessor<String> processor = UnicastProcessor.create(queue);
 
         try {
             Class.forName("ch.qos.logback.classic.turbo.TurboFilter", false, getClass().getClassLoader());
@@ -201,10 +209,14 @@ public class StatsdMeterRegistry extends MeterRegistry {
 
     public void start() {
         if (started.compareAndSet(false, true) && lineSink == null) {
+            Publisher<String> datagrams = statsdConfig.buffered() ?
+                    BufferingFlux.create(publisher, statsdConfig.maxPacketLength(), statsdConfig.maxBufferLatency()) :
+                    publisher;
+
             UdpClient.create(statsdConfig.host(), statsdConfig.port())
                     .newHandler((in, out) -> out
                             .options(NettyPipeline.SendOptions::flushOnEach)
-                            .sendString(publisher)
+                            .sendString(datagrams)
                             .neverComplete()
                     )
                     .subscribe(client -> {
@@ -225,6 +237,13 @@ public class StatsdMeterRegistry extends MeterRegistry {
         }
     }
 
+    private void onMeterRemoved(Meter meter) {
+        if (meter instanceof StatsdPollable && pollableMeters.remove(meter)) {
+            // publish whatever was accumulated since the last poll
+            ((StatsdPollable) meter).poll();
+        }
+    }
+
     @Override
     public void close() {
         pollableMeters.forEach(StatsdPollable::poll);
@@ -248,7 +267,11 @@ public class StatsdMeterRegistry extends MeterRegistry {
 
     @Override
     protected Counter newCounter(Meter.Id id) {
-        return new StatsdCounter(id, lineBuilder(id), publisher);
+        StatsdCounter counter = new StatsdCounter(id, lineBuilder(id), publisher, statsdConfig.aggregated());
+        if (statsdConfig.aggregated()) {
+            pollableMeters.add(counter);
+        }
+        return counter;
     }
 
     @Override
@@ -262,8 +285,11 @@ public class StatsdMeterRegistry extends MeterRegistry {
     @Override
     protected Timer newTimer(Meter.Id id, DistributionStatisticConfig distributionStatisticConfig, PauseDetector
             pauseDetector) {
-        Timer timer = new StatsdTimer(id, lineBuilder(id), publisher, clock, distributionStatisticConfig, pauseDetector, getBaseTimeUnit(),
-                statsdConfig.step().toMillis());
+        StatsdTimer timer = new StatsdTimer(id, lineBuilder(id), publisher, clock, distributionStatisticConfig, pauseDetector, getBaseTimeUnit(),
+                statsdConfig.step().toMillis(), aggregate(id, Statistic.TOTAL_TIME), statsdConfig.sampleRate());
+        if (statsdConfig.aggregated()) {
+            pollableMeters.add(timer);
+        }
         HistogramGauges.registerWithCommonFormat(timer, this);
         return timer;
     }
@@ -272,11 +298,26 @@ public class StatsdMeterRegistry extends MeterRegistry {
     @Override
     protected DistributionSummary newDistributionSummary(Meter.Id id, DistributionStatisticConfig
             distributionStatisticConfig, double scale) {
-        DistributionSummary summary = new StatsdDistributionSummary(id, lineBuilder(id), publisher, clock, distributionStatisticConfig, scale);
+        StatsdDistributionSummary summary = new StatsdDistributionSummary(id, lineBuilder(id), publisher, clock, distributionStatisticConfig, scale,
+                aggregate(id, Statistic.TOTAL), statsdConfig.sampleRate());
+        if (statsdConfig.aggregated()) {
+            pollableMeters.add(summary);
+        }
         HistogramGauges.registerWithCommonFormat(summary, this);
         return summary;
     }
 
+    @Nullable
+    private StatsdAggregate aggregate(Meter.Id id, Statistic totalStatistic) {
+        if (!statsdConfig.aggregated()) {
+            return null;
+        }
+        return new StatsdAggregate(lineBuilder(id.withName(id.getName() + ".count")),
+                lineBuilder(id.withName(id.getName() + ".sum")),
+                lineBuilder(id.withName(id.getName() + ".max")),
+                totalStatistic);
+    }
+
     @Override
     protected <T> FunctionCounter newFunctionCounter(Meter.Id id, T obj, ToDoubleFunction<T> countFunction) {
         StatsdFunctionCounter fc = new StatsdFunctionCounter<>(id, obj, countFunction, lineBuilder(id), publisher);
@@ -329,21 +370,18 @@ public class StatsdMeterRegistry extends MeterRegistry {
     }
 
     public int queueSize() {
-        try {
-            return (Integer) publisher.getClass().getMethod("size").invoke(publisher);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            // should never happen
-            return 0;
-        }
+        return queue.size();
     }
 
     public int queueCapacity() {
-        try {
-            return (Integer) publisher.getClass().getMethod("getBufferSize").invoke(publisher);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            // should never happen
-            return 0;
-        }
+        return queue instanceof DroppingBoundedQueue ? ((DroppingBoundedQueue<String>) queue).capacity() : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return The number of lines dropped because the queue was at its {@link StatsdConfig#queueSize()}.
+     */
+    public long queueDropped() {
+        return queue instanceof DroppingBoundedQueue ? ((DroppingBoundedQueue<String>) queue).dropped() : 0;
     }
 
     private static NamingConvention namingConventionFromFlavor(StatsdFlavor flavor) {
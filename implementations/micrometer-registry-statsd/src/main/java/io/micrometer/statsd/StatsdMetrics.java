@@ -15,6 +15,7 @@
  */
 package io.micrometer.statsd;
 
+import io.micrometer.core.instrument.FunctionCounter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.binder.MeterBinder;
@@ -32,6 +33,10 @@ public class StatsdMetrics implements MeterBinder {
             Gauge.builder("statsd.queue.capacity", statsdRegistry, StatsdMeterRegistry::queueCapacity)
                     .description("The maximum number of StatsD events that can be queued for transmission")
                     .register(statsdRegistry);
+
+            FunctionCounter.builder("statsd.queue.dropped", statsdRegistry, StatsdMeterRegistry::queueDropped)
+                    .description("The total number of StatsD events dropped because the queue was full")
+                    .register(statsdRegistry);
         }
     }
 }
@@ -0,0 +1,31 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.statsd;
+
+/**
+ * What to do with a line when the queue of lines waiting to be sent to the StatsD agent is full.
+ */
+public enum StatsdQueueOverflow {
+    /**
+     * Discard the line being added, keeping the queued lines.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Discard the longest-queued line to make room for the line being added.
+     */
+    DROP_OLDEST
+}
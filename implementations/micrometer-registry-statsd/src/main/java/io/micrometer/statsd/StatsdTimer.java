@@ -21,13 +21,15 @@ import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
 import io.micrometer.core.instrument.distribution.pause.PauseDetector;
 import io.micrometer.core.instrument.step.StepDouble;
 import io.micrometer.core.instrument.util.TimeUtils;
+import io.micrometer.core.lang.Nullable;
 import org.reactivestreams.Subscriber;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.DoubleAdder;
 import java.util.concurrent.atomic.LongAdder;
 
-public class StatsdTimer extends AbstractTimer {
+public class StatsdTimer extends AbstractTimer implements StatsdPollable {
     private final LongAdder count = new LongAdder();
     private final DoubleAdder totalTime = new DoubleAdder();
     private StepDouble max;
@@ -35,12 +37,19 @@ public class StatsdTimer extends AbstractTimer {
     private final StatsdLineBuilder lineBuilder;
     private final Subscriber<String> publisher;
 
+    @Nullable
+    private final StatsdAggregate aggregate;
+    private final double sampleRate;
+
     StatsdTimer(Id id, StatsdLineBuilder lineBuilder, Subscriber<String> publisher, Clock clock,
-                DistributionStatisticConfig distributionStatisticConfig, PauseDetector pauseDetector, TimeUnit baseTimeUnit, long stepMillis) {
+                DistributionStatisticConfig distributionStatisticConfig, PauseDetector pauseDetector, TimeUnit baseTimeUnit, long stepMillis,
+                @Nullable StatsdAggregate aggregate, double sampleRate) {
         super(id, clock, distributionStatisticConfig, pauseDetector, baseTimeUnit, false);
         this.max = new StepDouble(clock, stepMillis);
         this.lineBuilder = lineBuilder;
         this.publisher = publisher;
+        this.aggregate = aggregate;
+        this.sampleRate = sampleRate;
     }
 
     @Override
@@ -54,7 +63,20 @@ public class StatsdTimer extends AbstractTimer {
             // not necessary to ship max, as most StatsD agents calculate this themselves
             max.getCurrent().add(Math.max(msAmount - max.getCurrent().doubleValue(), 0));
 
-            publisher.onNext(lineBuilder.timing(msAmount));
+            if (aggregate != null) {
+                aggregate.record(msAmount);
+            } else if (sampleRate >= 1) {
+                publisher.onNext(lineBuilder.timing(msAmount));
+            } else if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                publisher.onNext(lineBuilder.timing(msAmount, sampleRate));
+            }
+        }
+    }
+
+    @Override
+    public void poll() {
+        if (aggregate != null) {
+            aggregate.publish(publisher);
         }
     }
 
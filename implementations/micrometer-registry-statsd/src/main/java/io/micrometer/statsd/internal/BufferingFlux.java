@@ -0,0 +1,121 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.statsd.internal;
+
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Packs StatsD lines into newline-delimited payloads no longer than a maximum number of bytes, so that many lines
+ * share a single UDP datagram. A payload is emitted once the next line would no longer fit, or when lines have been
+ * waiting for at most {@code maxLatency}, whichever comes first.
+ */
+public final class BufferingFlux {
+    private static final String FLUSH = "";
+
+    private BufferingFlux() {
+    }
+
+    /**
+     * @param source          StatsD lines.
+     * @param maxPayloadBytes The maximum length in bytes of each payload. A single line longer than this is emitted on
+     *                        its own.
+     * @param maxLatency      The maximum amount of time a line is held back waiting for more lines to pack with it.
+     * @return Payloads of one or more newline-delimited lines.
+     */
+    public static Flux<String> create(Publisher<String> source, int maxPayloadBytes, Duration maxLatency) {
+        return Flux.defer(() -> {
+            DirectProcessor<Void> sourceTerminated = DirectProcessor.create();
+            PayloadSize payloadSize = new PayloadSize(maxPayloadBytes);
+
+            // a tick missed while the sink isn't requesting is harmless, as the next one flushes the same lines
+            Flux<String> flushes = Flux.interval(maxLatency)
+                    .onBackpressureDrop()
+                    .map(n -> FLUSH)
+                    .takeUntilOther(sourceTerminated);
+
+            return Flux.from(source)
+                    .doFinally(signal -> sourceTerminated.onComplete())
+                    .mergeWith(flushes)
+                    .bufferUntil(payloadSize::startsNewPayload, true)
+                    .map(BufferingFlux::join)
+                    .filter(payload -> !payload.isEmpty());
+        });
+    }
+
+    private static String join(List<String> lines) {
+        StringBuilder payload = new StringBuilder();
+        for (String line : lines) {
+            if (line.isEmpty())
+                continue;
+            if (payload.length() > 0)
+                payload.append('\n');
+            payload.append(line);
+        }
+        return payload.toString();
+    }
+
+    /**
+     * Tracks the size of the payload being accumulated. Only ever called serially.
+     */
+    private static class PayloadSize {
+        private final int maxPayloadBytes;
+        private int bytes = 0;
+
+        PayloadSize(int maxPayloadBytes) {
+            this.maxPayloadBytes = maxPayloadBytes;
+        }
+
+        boolean startsNewPayload(String line) {
+            if (line.isEmpty()) {
+                boolean flush = bytes > 0;
+                bytes = 0;
+                return flush;
+            }
+
+            int lineBytes = utf8Length(line);
+            if (bytes > 0 && bytes + 1 + lineBytes > maxPayloadBytes) {
+                bytes = lineBytes;
+                return true;
+            }
+
+            bytes += (bytes > 0 ? 1 : 0) + lineBytes;
+            return false;
+        }
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.statsd.internal;
+
+import io.micrometer.core.lang.Nullable;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free, array-backed queue (after Dmitry Vyukov's bounded MPMC queue) that never rejects an offer.
+ * When full, either the offered element or the oldest queued element is dropped and counted instead, so
+ * that a stalled consumer costs bounded memory rather than failing or blocking producers.
+ * <p>
+ * Iteration is weakly consistent: an iterator never fails because of concurrent offers or polls, and returns
+ * elements that were queued when it was created and are still queued when it reaches them. Elements removed
+ * through an iterator leave an empty slot that is skipped by consumers, so they are still counted by
+ * {@link #size()} until the consumer passes them.
+ *
+ * @param <E> The type of element held in the queue.
+ */
+public class DroppingBoundedQueue<E> extends AbstractQueue<E> {
+    private final int capacity;
+    private final boolean dropOldest;
+
+    private final AtomicReferenceArray<E> buffer;
+
+    /**
+     * For each slot, the position at which it next becomes writable (equal to the position) or readable
+     * (one past the position). Comparing a slot's sequence to a producer or consumer position is what lets
+     * either side claim slots with a single CAS.
+     */
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+
+    public DroppingBoundedQueue(int capacity, boolean dropOldest) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive but was " + capacity);
+        }
+        this.capacity = capacity;
+        this.dropOldest = dropOldest;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @param e The element to enqueue.
+     * @return Always {@code true}, even when an element had to be dropped to respect the capacity.
+     */
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        while (!tryOffer(e)) {
+            if (!dropOldest) {
+                dropped.increment();
+                return true;
+            }
+
+            // if the consumer got to the oldest element first, there is room again without dropping anything
+            if (poll() != null) {
+                dropped.increment();
+            }
+        }
+        return true;
+    }
+
+    private boolean tryOffer(E e) {
+        while (true) {
+            long pos = tail.get();
+            int index = index(pos);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer.lazySet(index, e);
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public E poll() {
+        while (true) {
+            long pos = head.get();
+            int index = index(pos);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, pos + capacity);
+                    if (e != null) {
+                        return e;
+                    }
+                    // the element was removed by an iterator, so move on to the next one
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public E peek() {
+        while (true) {
+            long pos = head.get();
+            int index = index(pos);
+            if (sequences.get(index) - (pos + 1) < 0) {
+                return null;
+            }
+            E e = buffer.get(index);
+            if (head.get() != pos) {
+                continue;
+            }
+            if (e != null) {
+                return e;
+            }
+            // skip the empty slot left by an element removed by an iterator
+            if (sequences.get(index) == pos + 1 && head.compareAndSet(pos, pos + 1)) {
+                sequences.set(index, pos + capacity);
+            }
+        }
+    }
+
+    private int index(long pos) {
+        return (int) (pos % capacity);
+    }
+
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    /**
+     * @return The element queued at the position, or {@code null} if the slot has since been consumed or reused.
+     */
+    @Nullable
+    private E elementAt(long pos) {
+        int index = index(pos);
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        E e = buffer.get(index);
+        return sequences.get(index) == pos + 1 ? e : null;
+    }
+
+    private class Itr implements Iterator<E> {
+        private final long end = tail.get();
+        private long pos = head.get();
+
+        @Nullable
+        private E next;
+
+        @Nullable
+        private E last;
+        private long lastPos;
+
+        Itr() {
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            // elements the consumer has already passed are no longer in the queue
+            for (pos = Math.max(pos, head.get()); pos < end; pos++) {
+                E e = elementAt(pos);
+                if (e != null) {
+                    next = e;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public E next() {
+            E e = next;
+            if (e == null) {
+                throw new NoSuchElementException();
+            }
+            last = e;
+            lastPos = pos++;
+            advance();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            E e = last;
+            if (e == null) {
+                throw new IllegalStateException();
+            }
+            last = null;
+            int index = index(lastPos);
+            if (sequences.get(index) == lastPos + 1) {
+                buffer.compareAndSet(index, e, null);
+            }
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of elements dropped because the queue was full.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+}
@@ -39,91 +39,152 @@ import static java.util.stream.Stream.of;
  * @author Jon Schneider
  */
 public class FlavorStatsdLineBuilder implements StatsdLineBuilder {
+    private static final int NO_STATISTIC = Statistic.values().length;
+
+    private static final ThreadLocal<StringBuilder> LINE = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
     private final Meter.Id id;
     private final StatsdFlavor flavor;
     private final HierarchicalNameMapper nameMapper;
     private final MeterRegistry.Config config;
 
-    private final Function<NamingConvention, String> datadogTagString;
-    private final Function<NamingConvention, String> defaultTagString;
+    private final Function<NamingConvention, LineParts> lineParts;
 
     public FlavorStatsdLineBuilder(Meter.Id id, StatsdFlavor flavor, HierarchicalNameMapper nameMapper, MeterRegistry.Config config) {
         this.id = id;
         this.flavor = flavor;
         this.nameMapper = nameMapper;
         this.config = config;
-
-        // service:payroll,region:us-west
-        this.datadogTagString = memoize(convention ->
-                id.getTags().iterator().hasNext() ?
-                        id.getConventionTags(convention).stream()
-                                .map(t -> t.getKey() + ":" + t.getValue())
-                                .collect(Collectors.joining(","))
-                        : null
-        );
-
-        // service=payroll,region=us-west
-        this.defaultTagString = memoize(convention ->
-                id.getTags().iterator().hasNext() ?
-                        id.getConventionTags(convention).stream()
-                                .map(t -> t.getKey() + "=" + t.getValue())
-                                .collect(Collectors.joining(","))
-                        : null
-        );
+        this.lineParts = memoize(LineParts::new);
     }
 
     @Override
     public String count(long amount, Statistic stat) {
-        return line(Long.toString(amount), stat, "c");
+        LineParts parts = lineParts.apply(config.namingConvention());
+        return parts.end(parts.begin(stat).append(amount), stat, "c");
+    }
+
+    @Override
+    public String count(double amount, Statistic stat) {
+        return line(amount, stat, "c");
     }
 
     @Override
     public String gauge(double amount, Statistic stat) {
-        return line(DoubleFormat.decimalOrNan(amount), stat, "g");
+        return line(amount, stat, "g");
     }
 
     @Override
     public String histogram(double amount) {
-        return line(DoubleFormat.decimalOrNan(amount), null, "h");
+        return line(amount, null, "h");
+    }
+
+    @Override
+    public String histogram(double amount, double sampleRate) {
+        return line(amount, null, sampled("h", sampleRate));
     }
 
     @Override
     public String timing(double timeMs) {
-        return line(DoubleFormat.decimalOrNan(timeMs), null, "ms");
+        return line(timeMs, null, "ms");
     }
 
-    private String line(String amount, @Nullable Statistic stat, String type) {
-        switch (flavor) {
-            case ETSY:
-                return metricName(stat) + ":" + amount + "|" + type;
-            case DATADOG:
-                return metricName(stat) + ":" + amount + "|" + type + tags(stat, datadogTagString.apply(config.namingConvention()),":", "|#");
-            case SYSDIG:
-                return metricName(stat) + tags(stat, defaultTagString.apply(config.namingConvention()), "=", "#") + ":" + amount + "|" + type;
-            case TELEGRAF:
-            default:
-                return metricName(stat) + tags(stat, defaultTagString.apply(config.namingConvention()),"=", ",") + ":" + amount + "|" + type;
-        }
+    @Override
+    public String timing(double timeMs, double sampleRate) {
+        return line(timeMs, null, sampled("ms", sampleRate));
     }
 
-    private String tags(@Nullable Statistic stat, String otherTags, String keyValueSeparator, String preamble) {
-        String tags = of(stat == null ? null : "statistic" + keyValueSeparator + stat.getTagValueRepresentation(), otherTags)
-                .filter(Objects::nonNull)
-                .collect(Collectors.joining(","));
+    private static String sampled(String type, double sampleRate) {
+        // in every flavor the sample rate follows the type, ahead of any Datadog tags
+        return sampleRate >= 1 ? type : type + "|@" + DoubleFormat.decimalOrNan(sampleRate);
+    }
 
-        if(!tags.isEmpty())
-            tags = preamble + tags;
-        return tags;
+    private String line(double amount, @Nullable Statistic stat, String type) {
+        LineParts parts = lineParts.apply(config.namingConvention());
+        return parts.end(DoubleFormat.appendDecimalOrNan(parts.begin(stat), amount), stat, type);
     }
 
-    private String metricName(@Nullable Statistic stat) {
-        switch (flavor) {
-            case ETSY:
-                return nameMapper.toHierarchicalName(stat != null ? id.withTag(stat) : id, config.namingConvention());
-            case DATADOG:
-            case TELEGRAF:
-            default:
-                return config.namingConvention().name(id.getName(), id.getType(), id.getBaseUnit());
+    /**
+     * Everything in a line but the amount and type depends only on the statistic and the naming convention, so it is
+     * rendered once per statistic and reused until the registry's naming convention changes. A line is then
+     * written as head, amount, type and tail into a reused builder.
+     */
+    private class LineParts {
+        private final NamingConvention convention;
+
+        // indexed by statistic ordinal, with a last slot for lines that carry no statistic; racing threads
+        // may both render a part, but they render the same immutable string
+        private final String[] heads = new String[NO_STATISTIC + 1];
+        private final String[] tails = new String[NO_STATISTIC + 1];
+
+        @Nullable
+        private final String tagString;
+
+        LineParts(NamingConvention convention) {
+            this.convention = convention;
+
+            // service:payroll,region:us-west or service=payroll,region=us-west
+            String keyValueSeparator = flavor == StatsdFlavor.DATADOG ? ":" : "=";
+            this.tagString = id.getTags().iterator().hasNext() ?
+                    id.getConventionTags(convention).stream()
+                            .map(t -> t.getKey() + keyValueSeparator + t.getValue())
+                            .collect(Collectors.joining(","))
+                    : null;
+        }
+
+        StringBuilder begin(@Nullable Statistic stat) {
+            int slot = stat == null ? NO_STATISTIC : stat.ordinal();
+            String head = heads[slot];
+            if (head == null) {
+                head = heads[slot] = head(stat);
+            }
+
+            StringBuilder line = LINE.get();
+            line.setLength(0);
+            return line.append(head);
+        }
+
+        String end(StringBuilder line, @Nullable Statistic stat, String type) {
+            int slot = stat == null ? NO_STATISTIC : stat.ordinal();
+            String tail = tails[slot];
+            if (tail == null) {
+                tail = tails[slot] = flavor == StatsdFlavor.DATADOG ? tags(stat, ":", "|#") : "";
+            }
+            return line.append('|').append(type).append(tail).toString();
+        }
+
+        private String head(@Nullable Statistic stat) {
+            switch (flavor) {
+                case ETSY:
+                case DATADOG:
+                    return metricName(stat) + ":";
+                case SYSDIG:
+                    return metricName(stat) + tags(stat, "=", "#") + ":";
+                case TELEGRAF:
+                default:
+                    return metricName(stat) + tags(stat, "=", ",") + ":";
+            }
+        }
+
+        private String tags(@Nullable Statistic stat, String keyValueSeparator, String preamble) {
+            String tags = of(stat == null ? null : "statistic" + keyValueSeparator + stat.getTagValueRepresentation(), tagString)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.joining(","));
+
+            if(!tags.isEmpty())
+                tags = preamble + tags;
+            return tags;
+        }
+
+        private String metricName(@Nullable Statistic stat) {
+            switch (flavor) {
+                case ETSY:
+                    return nameMapper.toHierarchicalName(stat != null ? id.withTag(stat) : id, convention);
+                case DATADOG:
+                case TELEGRAF:
+                default:
+                    return convention.name(id.getName(), id.getType(), id.getBaseUnit());
+            }
         }
     }
 }
@@ -33,6 +33,8 @@ import reactor.test.StepVerifier;
 import reactor.util.concurrent.Queues;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -312,6 +314,91 @@ class StatsdMeterRegistryTest {
         registry.counter("my.counter").increment();
     }
 
+    @Test
+    void aggregatedCounterPublishesOncePerPollingFrequency() {
+        final StatsdConfig config = aggregatedConfig();
+
+        StepVerifier
+                .withVirtualTime(() -> {
+                    final Processor<String, String> lines = lineProcessor();
+                    MeterRegistry registry = StatsdMeterRegistry.builder(config)
+                            .clock(clock)
+                            .lineSink(toSink(lines))
+                            .build();
+
+                    Counter counter = registry.counter("my.counter", "my.tag", "val");
+                    for (int i = 0; i < 3; i++) {
+                        counter.increment(1.5);
+                    }
+                    return lines;
+                })
+                .thenAwait(config.pollingFrequency())
+                .expectNext("my.counter:4|c|#statistic:count,my.tag:val")
+                .verifyComplete();
+    }
+
+    @Test
+    void aggregatedTimerPublishesCountSumAndMax() {
+        final StatsdConfig config = aggregatedConfig();
+
+        StepVerifier
+                .withVirtualTime(() -> {
+                    final Processor<String, String> lines = lineProcessor();
+                    MeterRegistry registry = StatsdMeterRegistry.builder(config)
+                            .clock(clock)
+                            .lineSink(toSink(lines, 3))
+                            .build();
+
+                    Timer timer = registry.timer("my.timer", "my.tag", "val");
+                    timer.record(1, TimeUnit.MILLISECONDS);
+                    timer.record(3, TimeUnit.MILLISECONDS);
+                    return lines;
+                })
+                .thenAwait(config.pollingFrequency())
+                .expectNext("my.timer.count:2|c|#statistic:count,my.tag:val")
+                .expectNext("my.timer.sum:4|c|#statistic:totalTime,my.tag:val")
+                .expectNext("my.timer.max:3|g|#statistic:max,my.tag:val")
+                .verifyComplete();
+    }
+
+    @Test
+    void sampledTimerLinesCarryTheSampleRate() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        MeterRegistry registry = StatsdMeterRegistry.builder(sampledConfig("0.5"))
+                .clock(clock)
+                .lineSink(lines::add)
+                .build();
+
+        Timer timer = registry.timer("my.timer", "my.tag", "val");
+        for (int i = 0; i < 1000; i++) {
+            timer.record(1, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(lines.size()).isBetween(1, 999);
+        assertThat(lines).containsOnly("my.timer:1|ms|@0.5|#my.tag:val");
+        assertThat(timer.count()).isEqualTo(1000);
+    }
+
+    private static StatsdConfig aggregatedConfig() {
+        return new StatsdConfig() {
+            @Override
+            @Nullable
+            public String get(String key) {
+                return "statsd.aggregated".equals(key) ? "true" : null;
+            }
+        };
+    }
+
+    private static StatsdConfig sampledConfig(String sampleRate) {
+        return new StatsdConfig() {
+            @Override
+            @Nullable
+            public String get(String key) {
+                return "statsd.sampleRate".equals(key) ? sampleRate : null;
+            }
+        };
+    }
+
     private static StatsdConfig configWithFlavor(StatsdFlavor flavor) {
         return new StatsdConfig() {
             @Override
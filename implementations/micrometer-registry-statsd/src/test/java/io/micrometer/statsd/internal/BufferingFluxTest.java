@@ -0,0 +1,70 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.statsd.internal;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+class BufferingFluxTest {
+    @Test
+    void packLinesUpToMaxPayloadSize() {
+        Flux<String> lines = Flux.just("one:1|c", "two:2|c", "three:3|c", "four:4|c");
+
+        StepVerifier.create(BufferingFlux.create(lines, 16, Duration.ofSeconds(10)))
+                .expectNext("one:1|c\ntwo:2|c")
+                .expectNext("three:3|c")
+                .expectNext("four:4|c")
+                .verifyComplete();
+    }
+
+    @Test
+    void lineLongerThanMaxPayloadSizeIsSentAlone() {
+        Flux<String> lines = Flux.just("a:1|c", "a.very.long.line:1|c", "b:1|c");
+
+        StepVerifier.create(BufferingFlux.create(lines, 10, Duration.ofSeconds(10)))
+                .expectNext("a:1|c")
+                .expectNext("a.very.long.line:1|c")
+                .expectNext("b:1|c")
+                .verifyComplete();
+    }
+
+    @Test
+    void flushPartialPayloadAfterMaxLatency() {
+        StepVerifier.withVirtualTime(() -> BufferingFlux.create(Flux.just("one:1|c").concatWith(Flux.never()), 1432,
+                Duration.ofSeconds(1)))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(999))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext("one:1|c")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void flushTicksAreDroppedWhileTheSinkIsNotRequesting() {
+        StepVerifier.withVirtualTime(() -> BufferingFlux.create(Flux.just("one:1|c").concatWith(Flux.never()), 1432,
+                Duration.ofSeconds(1)), 0)
+                .expectSubscription()
+                .thenAwait(Duration.ofSeconds(100))
+                .thenRequest(1)
+                .expectNext("one:1|c")
+                .thenCancel()
+                .verify();
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.statsd.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DroppingBoundedQueueTest {
+    @Test
+    void dropNewestWhenFull() {
+        DroppingBoundedQueue<String> queue = new DroppingBoundedQueue<>(2, false);
+        assertThat(queue.offer("a")).isTrue();
+        assertThat(queue.offer("b")).isTrue();
+        assertThat(queue.offer("c")).isTrue();
+
+        assertThat(queue.size()).isEqualTo(2);
+        assertThat(queue.dropped()).isEqualTo(1);
+        assertThat(queue.poll()).isEqualTo("a");
+        assertThat(queue.poll()).isEqualTo("b");
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    void dropOldestWhenFull() {
+        DroppingBoundedQueue<String> queue = new DroppingBoundedQueue<>(2, true);
+        queue.offer("a");
+        queue.offer("b");
+        queue.offer("c");
+
+        assertThat(queue.dropped()).isEqualTo(1);
+        assertThat(queue.peek()).isEqualTo("b");
+        assertThat(queue.poll()).isEqualTo("b");
+        assertThat(queue.poll()).isEqualTo("c");
+        assertThat(queue.isEmpty()).isTrue();
+    }
+
+    @Test
+    void concurrentProducersNeitherLoseNorDuplicateElements() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 10_000;
+        DroppingBoundedQueue<Integer> queue = new DroppingBoundedQueue<>(128, false);
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            int offset = p * perProducer;
+            executor.execute(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer(offset + i);
+                }
+                done.countDown();
+            });
+        }
+
+        Set<Integer> received = new HashSet<>();
+        while (done.getCount() > 0 || !queue.isEmpty()) {
+            Integer n = queue.poll();
+            if (n != null) {
+                assertThat(received.add(n)).isTrue();
+            }
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(received.size() + queue.dropped()).isEqualTo(producers * perProducer);
+    }
+
+    @Test
+    void collectionOperationsIterateOverQueuedElements() {
+        DroppingBoundedQueue<String> queue = new DroppingBoundedQueue<>(4, true);
+        for (String e : Arrays.asList("a", "b", "c", "d", "e")) {
+            queue.offer(e);
+        }
+
+        assertThat(queue).containsExactly("b", "c", "d", "e");
+        assertThat(queue.toString()).isEqualTo("[b, c, d, e]");
+        assertThat(queue.toArray()).containsExactly("b", "c", "d", "e");
+        assertThat(queue.contains("c")).isTrue();
+        assertThat(queue.contains("a")).isFalse();
+        assertThat(queue.containsAll(Arrays.asList("b", "e"))).isTrue();
+
+        queue.clear();
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.iterator().hasNext()).isFalse();
+    }
+
+    @Test
+    void removedElementsAreSkippedByConsumers() {
+        DroppingBoundedQueue<String> queue = new DroppingBoundedQueue<>(4, false);
+        queue.addAll(Arrays.asList("a", "b", "c"));
+
+        assertThat(queue.remove("b")).isTrue();
+        assertThat(queue.remove("b")).isFalse();
+        assertThat(queue).containsExactly("a", "c");
+
+        assertThat(queue.remove("a")).isTrue();
+        assertThat(queue.peek()).isEqualTo("c");
+        assertThat(queue.poll()).isEqualTo("c");
+        assertThat(queue.poll()).isNull();
+
+        // the slots emptied by removal can be reused
+        queue.addAll(Arrays.asList("d", "e", "f", "g"));
+        assertThat(queue.dropped()).isZero();
+        assertThat(queue).containsExactly("d", "e", "f", "g");
+    }
+
+    @Test
+    void iteratorSkipsElementsConsumedWhileIterating() {
+        DroppingBoundedQueue<String> queue = new DroppingBoundedQueue<>(4, true);
+        queue.addAll(Arrays.asList("a", "b", "c"));
+
+        Iterator<String> iterator = queue.iterator();
+        assertThat(iterator.next()).isEqualTo("a");
+        queue.poll();
+        queue.poll();
+        queue.poll();
+        queue.offer("d");
+
+        // "b" had already been found by the iterator when it was consumed, "c" had not
+        assertThat(iterator.next()).isEqualTo("b");
+        assertThat(iterator.hasNext()).isFalse();
+    }
+}
@@ -17,16 +17,17 @@ package io.micrometer.wavefront;
 
 import io.micrometer.core.instrument.*;
 import io.micrometer.core.instrument.config.MissingRequiredConfigurationException;
+import io.micrometer.core.instrument.config.NamingConvention;
+import io.micrometer.core.instrument.step.BatchPublisher;
 import io.micrometer.core.instrument.step.StepMeterRegistry;
 import io.micrometer.core.instrument.util.DoubleFormat;
-import io.micrometer.core.instrument.util.IOUtils;
-import io.micrometer.core.instrument.util.MeterPartition;
+import io.micrometer.core.instrument.util.MeterEncodingCache;
+import io.micrometer.core.ipc.http.HttpSender;
 import io.micrometer.core.lang.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.net.HttpURLConnection;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URL;
@@ -49,14 +50,21 @@ public class WavefrontMeterRegistry extends StepMeterRegistry {
     private final WavefrontConfig config;
     private final URI uri;
     private final boolean directToApi;
+    private final HttpSender httpClient;
+    private final MeterEncodingCache<Series> encodedSeries = new MeterEncodingCache<>(this);
 
     public WavefrontMeterRegistry(WavefrontConfig config, Clock clock) {
         this(config, clock, Executors.defaultThreadFactory());
     }
 
     public WavefrontMeterRegistry(WavefrontConfig config, Clock clock, ThreadFactory threadFactory) {
+        this(config, clock, threadFactory, defaultHttpSender(config));
+    }
+
+    public WavefrontMeterRegistry(WavefrontConfig config, Clock clock, ThreadFactory threadFactory, HttpSender httpClient) {
         super(config, clock);
         this.config = config;
+        this.httpClient = httpClient;
         this.uri = URI.create(config.uri());
         this.directToApi = !"proxy".equals(uri.getScheme());
 
@@ -69,71 +77,67 @@ public class WavefrontMeterRegistry extends StepMeterRegistry {
         start(threadFactory);
     }
 
+    @Override
+    public void close() {
+        super.close();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("failed to close the http sender", e);
+        }
+    }
+
     @Override
     protected void publish() {
         try {
-            for (List<Meter> batch : MeterPartition.partition(this, config.batchSize())) {
-                Stream<String> stream =
-                        batch.stream().flatMap(m -> {
-                            if (m instanceof Timer) {
-                                return writeTimer((Timer) m);
-                            }
-                            if (m instanceof DistributionSummary) {
-                                return writeSummary((DistributionSummary) m);
-                            }
-                            if (m instanceof FunctionTimer) {
-                                return writeTimer((FunctionTimer) m);
-                            }
-                            return writeMeter(m);
-                        });
-
-                if (directToApi) {
-                    HttpURLConnection con = null;
-                    try {
-                        URL url = new URL(uri.getScheme(), uri.getHost(), uri.getPort(), String.format("/report/metrics?t=%s&h=%s", config.apiToken(), config.source()));
-                        con = (HttpURLConnection) url.openConnection();
-                        con.setDoOutput(true);
-                        con.addRequestProperty("Content-Type", "application/json");
-                        con.addRequestProperty("Accept", "application/json");
-
-                        try (OutputStream os = con.getOutputStream();
-                             OutputStreamWriter writer = new OutputStreamWriter(os, "UTF-8")) {
-                            writer.write("{" + stream.collect(joining(",")) + "}");
-                            writer.flush();
-                        }
-
-                        int status = con.getResponseCode();
-                        if (status >= 200 && status < 300) {
-                            logger.info("successfully sent {} metrics to Wavefront", batch.size());
-                        } else {
-                            if (logger.isErrorEnabled()) {
-                                logger.error("failed to send metrics: {}", IOUtils.toString(con.getErrorStream()));
-                            }
-                        }
-                    } catch (Exception e) {
-                        logger.error(e.getMessage(), e);
-                    } finally {
-                        quietlyCloseUrlConnection(con);
-                    }
-                } else {
-                    try (Socket socket = new Socket(uri.getHost(), uri.getPort());
-                         OutputStreamWriter writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8")) {
-                        writer.write(stream.collect(joining("\n")) + "\n");
-                        writer.flush();
-                    }
-                }
+            BatchPublisher.Result result = publishBatches(this::writeBatch, this::sendBatch);
+
+            result.failures().forEach(e -> logger.warn("failed to send metrics", e));
+            if (result.abandoned() > 0) {
+                logger.warn("failed to send {} batches of metrics within {}", result.abandoned(), config.publishDeadline());
             }
         } catch (Throwable t) {
             logger.warn("failed to send metrics", t);
         }
     }
 
-    private void quietlyCloseUrlConnection(@Nullable HttpURLConnection con) {
-        try {
-            if (con != null) {
-                con.disconnect();
+    private String writeBatch(List<Meter> batch) {
+        Stream<String> stream =
+                batch.stream().flatMap(m -> {
+                    if (m instanceof Timer) {
+                        return writeTimer((Timer) m);
+                    }
+                    if (m instanceof DistributionSummary) {
+                        return writeSummary((DistributionSummary) m);
+                    }
+                    if (m instanceof FunctionTimer) {
+                        return writeTimer((FunctionTimer) m);
+                    }
+                    return writeMeter(m);
+                });
+
+        return directToApi ? "{" + stream.collect(joining(",")) + "}" : stream.collect(joining("\n")) + "\n";
+    }
+
+    private void sendBatch(List<Meter> batch, String body) throws IOException {
+        if (directToApi) {
+            try {
+                URL url = new URL(uri.getScheme(), uri.getHost(), uri.getPort(), String.format("/report/metrics?t=%s&h=%s", config.apiToken(), config.source()));
+                httpClient.post(url.toString())
+                        .withHeader("Accept", "application/json")
+                        .withJsonContent(body)
+                        .send()
+                        .onSuccess(response -> logger.info("successfully sent {} metrics to Wavefront", batch.size()))
+                        .onError(response -> logger.error("failed to send metrics: http {} {}", response.code(), response.body()));
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+        } else {
+            try (Socket socket = new Socket(uri.getHost(), uri.getPort());
+                 OutputStreamWriter writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8")) {
+                writer.write(body);
+                writer.flush();
             }
-        } catch (Exception ignore) {
         }
     }
 
@@ -177,64 +181,72 @@ public class WavefrontMeterRegistry extends StepMeterRegistry {
 
     private Stream<String> writeMeter(Meter m) {
         long wallTime = clock.wallTime();
+        Meter.Id id = m.getId();
         return stream(m.measure().spliterator(), false)
                 .map(ms -> {
-                    Meter.Id id = m.getId().withTag(ms.getStatistic());
-                    return writeMetric(id, null, wallTime, ms.getValue());
+                    Series series = encodedSeries.get(id, ms.getStatistic(),
+                            convention -> new Series(id.withTag(ms.getStatistic()), convention));
+                    return writeMetric(series, wallTime, ms.getValue());
                 });
     }
 
+    private String writeMetric(Meter.Id id, @Nullable String suffix, long wallTime, double value) {
+        Series series = encodedSeries.get(id, suffix,
+                convention -> new Series(suffix == null ? id : idWithSuffix(id, suffix), convention));
+        return writeMetric(series, wallTime, value);
+    }
+
     /**
      * The metric format is a little different depending on whether you are going straight to the
      * Wavefront API server or through a sidecar proxy.
      * <p>
      * https://docs.wavefront.com/wavefront_data_format.html#wavefront-data-format-syntax
      */
-    private String writeMetric(Meter.Id id, @Nullable String suffix, long wallTime, double value) {
+    private String writeMetric(Series series, long wallTime, double value) {
         return directToApi ?
-                writeMetricDirect(id, suffix, value) :
-                writeMetricProxy(id, suffix, wallTime, value);
+                writeMetricDirect(series, value) :
+                writeMetricProxy(series, wallTime, value);
     }
 
-    private String writeMetricProxy(Meter.Id id, @Nullable String suffix, long wallTime, double value) {
-        Meter.Id fullId = id;
-        if (suffix != null)
-            fullId = idWithSuffix(id, suffix);
-
+    private String writeMetricProxy(Series series, long wallTime, double value) {
         // surrounding the name with double quotes allows for / and , in names
-        return "\"" + getConventionName(fullId) + "\" " + DoubleFormat.decimalOrNan(value) + " " + (wallTime / 1000) +
-                " source=" + config.source() + " " +
-                getConventionTags(fullId)
-                        .stream()
-                        .map(t -> t.getKey() + "=\"" + t.getValue() + "\"")
-                        .collect(joining(" "));
+        return "\"" + series.name + "\" " + DoubleFormat.decimalOrNan(value) + " " + (wallTime / 1000) +
+                " source=" + config.source() + " " + series.tags;
     }
 
-    private String writeMetricDirect(Meter.Id id, @Nullable String suffix, double value) {
-        Meter.Id fullId = id;
-        if (suffix != null)
-            fullId = idWithSuffix(id, suffix);
-
-        List<Tag> conventionTags = getConventionTags(fullId);
-
-        String tags = conventionTags
-                .stream()
-                .map(t -> "\"" + t.getKey() + "\": \"" + t.getValue() + "\"")
-                .collect(joining(","));
-
+    private String writeMetricDirect(Series series, double value) {
         UUID uuid = UUID.randomUUID();
         String uniqueNameSuffix = ((Long) uuid.getMostSignificantBits()).toString() + uuid.getLeastSignificantBits();
 
         // To be valid JSON, the metric name must be unique. Since the same name can occur in multiple entries because of
         // variance in tag values, we need to append a suffix to the name. The suffix must be numeric, or Wavefront interprets
         // it as part of the name. Wavefront strips a $<NUMERIC> suffix from the name at parsing time.
-        return "\"" + getConventionName(fullId) + "$" + uniqueNameSuffix + "\"" +
+        return "\"" + series.name + "$" + uniqueNameSuffix + "\"" +
                 ": {" +
                 "\"value\": " + DoubleFormat.decimalOrNan(value) + "," +
-                "\"tags\": {" + tags + "}" +
+                "\"tags\": {" + series.tags + "}" +
                 "}";
     }
 
+    /**
+     * The name and tags of a series, rendered for the API server or the proxy.
+     */
+    private class Series {
+        final String name;
+        final String tags;
+
+        Series(Meter.Id id, NamingConvention convention) {
+            this.name = id.getConventionName(convention);
+            this.tags = directToApi ?
+                    id.getConventionTags(convention).stream()
+                            .map(t -> "\"" + t.getKey() + "\": \"" + t.getValue() + "\"")
+                            .collect(joining(",")) :
+                    id.getConventionTags(convention).stream()
+                            .map(t -> t.getKey() + "=\"" + t.getValue() + "\"")
+                            .collect(joining(" "));
+        }
+    }
+
     /**
      * Copy tags, unit, and description from an existing id, but change the name.
      */
@@ -28,13 +28,18 @@ public abstract class AbstractDistributionSummary extends AbstractMeter implemen
         super(id);
         this.scale = scale;
 
+        // histograms are built when the first sample is recorded
         if (distributionStatisticConfig.isPublishingPercentiles()) {
-            // hdr-based histogram
-            this.histogram = new TimeWindowPercentileHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles);
+            // hdr-based histogram, or a more compact sketch
+            this.histogram = new LazyHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles,
+                    () -> Boolean.TRUE.equals(distributionStatisticConfig.isPercentileSketch()) ?
+                            new TimeWindowSketchHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles) :
+                            new TimeWindowPercentileHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles));
         } else if (distributionStatisticConfig.isPublishingHistogram()) {
             // fixed boundary histograms, which have a slightly better memory footprint
             // when we don't need Micrometer-computed percentiles
-            this.histogram = new TimeWindowFixedBoundaryHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles);
+            this.histogram = new LazyHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles,
+                    () -> new TimeWindowFixedBoundaryHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles));
         } else {
             // noop histogram
             this.histogram = NoopHistogram.INSTANCE;
@@ -56,6 +61,12 @@ public abstract class AbstractDistributionSummary extends AbstractMeter implemen
         return histogram.takeSnapshot(count(), totalAmount(), max());
     }
 
+    @Nullable
+    @Override
+    public MergeableHistogramSnapshot takeMergeableSnapshot() {
+        return histogram.takeMergeableSnapshot(count(), totalAmount(), max());
+    }
+
     @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
     @Override
     public boolean equals(@Nullable Object o) {
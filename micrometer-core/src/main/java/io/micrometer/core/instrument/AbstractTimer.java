@@ -16,37 +16,23 @@
 package io.micrometer.core.instrument;
 
 import io.micrometer.core.instrument.distribution.*;
-import io.micrometer.core.instrument.distribution.pause.ClockDriftPauseDetector;
-import io.micrometer.core.instrument.distribution.pause.NoPauseDetector;
+import io.micrometer.core.instrument.distribution.pause.PauseCorrector;
 import io.micrometer.core.instrument.distribution.pause.PauseDetector;
 import io.micrometer.core.instrument.util.MeterEquivalence;
 import io.micrometer.core.lang.Nullable;
-import org.LatencyUtils.IntervalEstimator;
-import org.LatencyUtils.SimplePauseDetector;
-import org.LatencyUtils.TimeCappedMovingAverageIntervalEstimator;
 
-import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
-import static java.util.Objects.requireNonNull;
-
 public abstract class AbstractTimer extends AbstractMeter implements Timer {
-    private static Map<PauseDetector, org.LatencyUtils.PauseDetector> pauseDetectorCache =
-            new ConcurrentHashMap<>();
-
     protected final Clock clock;
     protected final Histogram histogram;
     private final TimeUnit baseTimeUnit;
 
     // Only used when pause detection is enabled
     @Nullable
-    private IntervalEstimator intervalEstimator = null;
-
-    @SuppressWarnings("NullableProblems")
-    private org.LatencyUtils.PauseDetector pauseDetector;
+    private final PauseCorrector.Correction pauseCorrection;
 
     /**
      * Creates a new timer.
@@ -81,59 +67,30 @@ public abstract class AbstractTimer extends AbstractMeter implements Timer {
         this.clock = clock;
         this.baseTimeUnit = baseTimeUnit;
 
-        initPauseDetector(pauseDetector);
+        PauseCorrector pauseCorrector = PauseCorrector.forDetector(pauseDetector);
+        this.pauseCorrection = pauseCorrector == null ? null : pauseCorrector.newCorrection(this::recordSynthetic);
 
+        // histograms are built when the first sample is recorded
         if (distributionStatisticConfig.isPublishingPercentiles()) {
-            // hdr-based histogram
-            this.histogram = new TimeWindowPercentileHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles);
+            // hdr-based histogram, or a more compact sketch
+            this.histogram = new LazyHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles,
+                    () -> Boolean.TRUE.equals(distributionStatisticConfig.isPercentileSketch()) ?
+                            new TimeWindowSketchHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles) :
+                            new TimeWindowPercentileHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles));
         } else if (distributionStatisticConfig.isPublishingHistogram()) {
             // fixed boundary histograms, which have a slightly better memory footprint
             // when we don't need Micrometer-computed percentiles
-            this.histogram = new TimeWindowFixedBoundaryHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles);
+            this.histogram = new LazyHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles,
+                    () -> new TimeWindowFixedBoundaryHistogram(clock, distributionStatisticConfig, supportsAggregablePercentiles));
         } else {
             // noop histogram
             this.histogram = NoopHistogram.INSTANCE;
         }
     }
 
-    private void initPauseDetector(PauseDetector pauseDetectorType) {
-        pauseDetector = requireNonNull(pauseDetectorCache.computeIfAbsent(pauseDetectorType, detector -> {
-            if (detector instanceof ClockDriftPauseDetector) {
-                ClockDriftPauseDetector clockDriftPauseDetector = (ClockDriftPauseDetector) detector;
-                return new SimplePauseDetector(clockDriftPauseDetector.getSleepInterval().toNanos(),
-                        clockDriftPauseDetector.getPauseThreshold().toNanos(), 1, false);
-            } else if (detector instanceof NoPauseDetector) {
-                return new NoopPauseDetector();
-            }
-            return new NoopPauseDetector();
-        }));
-
-        if(pauseDetector instanceof SimplePauseDetector) {
-            this.intervalEstimator = new TimeCappedMovingAverageIntervalEstimator(128,
-                    10000000000L, pauseDetector);
-
-            pauseDetector.addListener((pauseLength, pauseEndTime) -> {
-//            System.out.println("Pause of length " + (pauseLength / 1e6) + "ms, end time " + pauseEndTime);
-                if (intervalEstimator != null) {
-                    long estimatedInterval = intervalEstimator.getEstimatedInterval(pauseEndTime);
-                    long observedLatencyMinbar = pauseLength - estimatedInterval;
-                    if (observedLatencyMinbar >= estimatedInterval) {
-                        recordValueWithExpectedInterval(observedLatencyMinbar, estimatedInterval);
-                    }
-                }
-            });
-        }
-    }
-
-    private void recordValueWithExpectedInterval(long nanoValue, long expectedIntervalBetweenValueSamples) {
-        record(nanoValue, TimeUnit.NANOSECONDS);
-        if (expectedIntervalBetweenValueSamples <= 0)
-            return;
-        for (long missingValue = nanoValue - expectedIntervalBetweenValueSamples;
-             missingValue >= expectedIntervalBetweenValueSamples;
-             missingValue -= expectedIntervalBetweenValueSamples) {
-            record(missingValue, TimeUnit.NANOSECONDS);
-        }
+    private void recordSynthetic(long nanoValue) {
+        histogram.recordLong(nanoValue);
+        recordNonNegative(nanoValue, TimeUnit.NANOSECONDS);
     }
 
     @Override
@@ -175,8 +132,8 @@ public abstract class AbstractTimer extends AbstractMeter implements Timer {
             histogram.recordLong(TimeUnit.NANOSECONDS.convert(amount, unit));
             recordNonNegative(amount, unit);
 
-            if (intervalEstimator != null) {
-                intervalEstimator.recordInterval(clock.monotonicTime());
+            if (pauseCorrection != null) {
+                pauseCorrection.recordInterval(clock.monotonicTime());
             }
         }
     }
@@ -185,9 +142,23 @@ public abstract class AbstractTimer extends AbstractMeter implements Timer {
 
     @Override
     public HistogramSnapshot takeSnapshot() {
+        applyPauseCorrection();
         return histogram.takeSnapshot(count(), totalTime(baseTimeUnit), max(baseTimeUnit));
     }
 
+    @Nullable
+    @Override
+    public MergeableHistogramSnapshot takeMergeableSnapshot() {
+        applyPauseCorrection();
+        return histogram.takeMergeableSnapshot(count(), totalTime(TimeUnit.NANOSECONDS), max(TimeUnit.NANOSECONDS));
+    }
+
+    private void applyPauseCorrection() {
+        if (pauseCorrection != null) {
+            pauseCorrection.apply();
+        }
+    }
+
     @Override
     public TimeUnit baseTimeUnit() {
         return baseTimeUnit;
@@ -207,12 +178,5 @@ public abstract class AbstractTimer extends AbstractMeter implements Timer {
     @Override
     public void close() {
         histogram.close();
-        pauseDetector.shutdown();
-    }
-
-    private static class NoopPauseDetector extends org.LatencyUtils.PauseDetector {
-        NoopPauseDetector() {
-            shutdown();
-        }
     }
 }
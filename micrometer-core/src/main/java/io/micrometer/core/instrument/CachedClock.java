@@ -0,0 +1,84 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock whose wall time is read by a background ticker and cached, so that reading it costs no more than a
+ * volatile read. Monotonic time is read from the underlying clock every time, so durations stay precise.
+ * <p>
+ * Wall time is only used for timestamps and for deciding when to rotate time windows and steps, which a cache
+ * refreshed every millisecond serves as well as the system clock does, and samples recorded into histograms
+ * otherwise read the system clock each time to check for rotation. To use it, construct a registry with it:
+ * <pre>{@code
+ * CachedClock clock = new CachedClock(Clock.SYSTEM);
+ * MeterRegistry registry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+ * }</pre>
+ * and {@link #close()} it along with the registry to stop the ticker.
+ */
+public class CachedClock implements Clock, AutoCloseable {
+    private final Clock clock;
+    private final ScheduledExecutorService ticker;
+    private volatile long wallTime;
+
+    /**
+     * @param clock The underlying clock, with wall time refreshed every millisecond.
+     */
+    public CachedClock(Clock clock) {
+        this(clock, Duration.ofMillis(1));
+    }
+
+    /**
+     * @param clock       The underlying clock.
+     * @param refreshRate How often wall time is read from the underlying clock.
+     */
+    public CachedClock(Clock clock, Duration refreshRate) {
+        this.clock = clock;
+        this.wallTime = clock.wallTime();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "micrometer-cached-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> wallTime = clock.wallTime(), refreshRate.toNanos(), refreshRate.toNanos(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return Wall time in milliseconds, as of the ticker's last refresh.
+     */
+    @Override
+    public long wallTime() {
+        return wallTime;
+    }
+
+    @Override
+    public long monotonicTime() {
+        return clock.monotonicTime();
+    }
+
+    /**
+     * Stops the ticker. Wall time no longer advances afterwards.
+     */
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
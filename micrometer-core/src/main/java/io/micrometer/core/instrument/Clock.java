@@ -40,7 +40,8 @@ public interface Clock {
      * Current wall time in milliseconds since the epoch. Typically equivalent to
      * System.currentTimeMillis. Should not be used to determine durations. Used
      * for timestamping metrics being pushed to a monitoring system or for determination
-     * of step boundaries (e.g. {@link StepLong}.
+     * of step boundaries (e.g. {@link StepLong}. Histograms read it on every recording to decide whether to rotate;
+     * see {@link CachedClock} for a cheaper source with the same precision.
      *
      * @return Wall time in milliseconds
      */
@@ -21,8 +21,6 @@ import io.micrometer.core.lang.Nullable;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static java.util.stream.StreamSupport.stream;
-
 /**
  * A named and dimensioned producer of one or more measurements.
  *
@@ -65,6 +63,8 @@ public interface Meter extends AutoCloseable {
      * A meter is uniquely identified by its combination of name and tags.
      */
     class Id {
+        private static final Comparator<Tag> TAG_KEY_COMPARATOR = Comparator.comparing(Tag::getKey);
+
         private final String name;
         private final List<Tag> tags;
         private Type type;
@@ -78,10 +78,13 @@ public interface Meter extends AutoCloseable {
         public Id(String name, Iterable<Tag> tags, @Nullable String baseUnit, @Nullable String description, Type type) {
             this.name = name;
 
-            this.tags = Collections.unmodifiableList(stream(tags.spliterator(), false)
-                .sorted(Comparator.comparing(Tag::getKey))
-                .distinct()
-                .collect(Collectors.toList()));
+            List<Tag> sortedTags = new ArrayList<>();
+            for (Tag tag : tags) {
+                sortedTags.add(tag);
+            }
+            sortedTags.sort(TAG_KEY_COMPARATOR);
+            removeDuplicates(sortedTags);
+            this.tags = Collections.unmodifiableList(sortedTags);
 
             this.baseUnit = baseUnit;
             this.description = description;
@@ -89,6 +92,22 @@ public interface Meter extends AutoCloseable {
             this.type = type;
         }
 
+        /**
+         * Tags are sorted by key, so equal tags are always adjacent to one another or separated only by tags
+         * sharing the same key. Removes all but the first occurrence of each, in place.
+         */
+        private static void removeDuplicates(List<Tag> sortedTags) {
+            for (int i = sortedTags.size() - 1; i > 0; i--) {
+                Tag tag = sortedTags.get(i);
+                for (int j = i - 1; j >= 0 && sortedTags.get(j).getKey().equals(tag.getKey()); j--) {
+                    if (sortedTags.get(j).equals(tag)) {
+                        sortedTags.remove(i);
+                        break;
+                    }
+                }
+            }
+        }
+
         /**
          * Generate a new id with a different name.
          *
@@ -213,7 +232,9 @@ public interface Meter extends AutoCloseable {
 
         @Override
         public int hashCode() {
-            return Objects.hash(name, tags);
+            int result = name.hashCode();
+            result = 31 * result + tags.hashCode();
+            return result;
         }
 
         /**
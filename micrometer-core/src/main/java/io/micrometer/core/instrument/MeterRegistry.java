@@ -27,12 +27,13 @@ import io.micrometer.core.instrument.search.RequiredSearch;
 import io.micrometer.core.instrument.search.Search;
 import io.micrometer.core.instrument.util.TimeUtils;
 import io.micrometer.core.lang.Nullable;
-import org.pcollections.HashTreePMap;
-import org.pcollections.PMap;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.*;
@@ -55,9 +56,59 @@ public abstract class MeterRegistry implements AutoCloseable {
     private final Object meterMapLock = new Object();
     private final List<MeterFilter> filters = new CopyOnWriteArrayList<>();
     private final List<Consumer<Meter>> meterAddedListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<Meter>> meterRemovedListeners = new CopyOnWriteArrayList<>();
     private final Config config = new Config();
     private final More more = new More();
-    private volatile PMap<Id, Meter> meterMap = HashTreePMap.empty();
+    private final Map<Id, Meter> meterMap = new ConcurrentHashMap<>();
+
+    /**
+     * Snapshot of {@link #meterMap}'s values handed out by {@link #getMeters()}. Discarded whenever a meter is
+     * registered and rebuilt on the next call, so repeated calls against a stable set of meters don't copy.
+     */
+    @Nullable
+    private volatile List<Meter> meterList = emptyList();
+
+    /**
+     * The most ids before filtering that are cached for one meter. Filters that map many ids to one meter, like
+     * {@link MeterFilter#ignoreTags(String...)}, are usually there to bound the number of meters when a tag's values
+     * are unbounded, so caching every id they see would defeat them.
+     */
+    private static final int MAX_PRE_FILTER_IDS_PER_METER = 16;
+
+    /**
+     * Meters keyed by the id they were requested with, before any {@link MeterFilter} mapping was applied. Repeated
+     * lookups of the same name and tags (e.g. per-request timers) resolve here without running the filter chain.
+     * Cleared whenever the filter chain changes.
+     */
+    private final Map<Id, Meter> preFilterIdToMeterMap = new ConcurrentHashMap<>();
+
+    /**
+     * Registered meters grouped by name, so that searches by exact name only visit the meters they can match.
+     * Updated under {@link #meterMapLock}.
+     */
+    private final Map<String, Set<Meter>> metersByName = new ConcurrentHashMap<>();
+
+    /**
+     * The keys of {@link #preFilterIdToMeterMap} that resolve to each registered meter, so that they can be
+     * discarded when the meter is removed. Modified under {@link #meterMapLock}, and read without it to skip the lock
+     * once a meter has as many as it can cache.
+     */
+    private final Map<Id, Set<Id>> preFilterIdsByMappedId = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented under {@link #meterMapLock} whenever a filter is added, so that an id mapped with the filters in
+     * place before is not cached after the cache has been cleared for the new filter.
+     */
+    private volatile long filterGeneration;
+
+    /**
+     * Consecutive steps without a recording, by meter. Only accessed from the idle meter expiry thread.
+     */
+    private final Map<Id, IdleState> idleStates = new HashMap<>();
+
+    @Nullable
+    private ScheduledExecutorService idleMeterExpiryService;
+
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private PauseDetector pauseDetector = new ClockDriftPauseDetector(
             Duration.ofMillis(100),
@@ -286,7 +337,26 @@ public abstract class MeterRegistry implements AutoCloseable {
      * @return The set of registered meters.
      */
     public List<Meter> getMeters() {
-        return Collections.unmodifiableList(new ArrayList<>(meterMap.values()));
+        List<Meter> meters = meterList;
+        if (meters == null) {
+            synchronized (meterMapLock) {
+                meters = meterList;
+                if (meters == null) {
+                    meters = Collections.unmodifiableList(new ArrayList<>(meterMap.values()));
+                    meterList = meters;
+                }
+            }
+        }
+        return meters;
+    }
+
+    /**
+     * @param name The exact name of the meters to return.
+     * @return The set of registered meters with this name.
+     */
+    public Collection<Meter> getMeters(String name) {
+        Set<Meter> named = metersByName.get(name);
+        return named == null ? Collections.emptySet() : Collections.unmodifiableSet(named);
     }
 
     /**
@@ -298,6 +368,114 @@ public abstract class MeterRegistry implements AutoCloseable {
         meterMap.values().forEach(consumer);
     }
 
+    /**
+     * Remove a meter from the registry, e.g. one for a dimension value that will not be seen again. Recordings made
+     * to the meter after its removal are lost. A later request for a meter with the same name and tags creates a
+     * new one.
+     *
+     * @param meter The meter to remove.
+     * @return The removed meter, or {@code null} if it was not registered.
+     */
+    @Nullable
+    public Meter remove(Meter meter) {
+        return remove(meter.getId());
+    }
+
+    /**
+     * Remove the meter with the given id from the registry. The id is the one reported by the meter itself, i.e.
+     * after any {@link MeterFilter} mapping.
+     *
+     * @param mappedId The id of the meter to remove.
+     * @return The removed meter, or {@code null} if no such meter was registered.
+     */
+    @Nullable
+    public Meter remove(Meter.Id mappedId) {
+        if (!meterMap.containsKey(mappedId)) {
+            return null;
+        }
+
+        synchronized (meterMapLock) {
+            Meter m = meterMap.remove(mappedId);
+            if (m == null) {
+                return null;
+            }
+
+            meterList = null;
+            Set<Meter> named = metersByName.get(mappedId.getName());
+            if (named != null) {
+                named.remove(m);
+                if (named.isEmpty()) {
+                    metersByName.remove(mappedId.getName());
+                }
+            }
+
+            Set<Id> preFilterIds = preFilterIdsByMappedId.remove(mappedId);
+            if (preFilterIds != null) {
+                preFilterIds.forEach(preFilterIdToMeterMap::remove);
+            }
+
+            for (Consumer<Meter> onRemove : meterRemovedListeners) {
+                onRemove.accept(m);
+            }
+            return m;
+        }
+    }
+
+    /**
+     * Used by idle meter expiry to decide whether a counter, timer or distribution summary recorded anything
+     * during the last step.
+     *
+     * @param count         The meter's count now.
+     * @param previousCount The meter's count one step ago.
+     * @return {@code true} if the meter recorded anything during the last step.
+     * @see Config#idleMeterExpiry(Duration, int)
+     */
+    protected boolean recordedDuringStep(double count, double previousCount) {
+        return count != previousCount;
+    }
+
+    // VisibleForTesting
+    void expireIdleMeters(int idleSteps) {
+        synchronized (idleStates) {
+            idleStates.keySet().removeIf(id -> !meterMap.containsKey(id));
+
+            for (Map.Entry<Id, Meter> entry : meterMap.entrySet()) {
+                Meter meter = entry.getValue();
+                double count;
+                if (meter instanceof Counter) {
+                    count = ((Counter) meter).count();
+                } else if (meter instanceof Timer) {
+                    count = ((Timer) meter).count();
+                } else if (meter instanceof DistributionSummary) {
+                    count = ((DistributionSummary) meter).count();
+                } else {
+                    continue;
+                }
+
+                IdleState state = idleStates.get(entry.getKey());
+                if (state == null) {
+                    // the first observation only establishes a baseline
+                    idleStates.put(entry.getKey(), new IdleState(count));
+                } else if (recordedDuringStep(count, state.count)) {
+                    state.count = count;
+                    state.idleSteps = 0;
+                } else if (++state.idleSteps >= idleSteps) {
+                    idleStates.remove(entry.getKey());
+                    remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    private static class IdleState {
+        double count;
+        int idleSteps;
+
+        IdleState(double count) {
+            this.count = count;
+        }
+    }
+
     /**
      * @return A configuration object used to change the behavior of this registry.
      */
@@ -518,12 +696,17 @@ public abstract class MeterRegistry implements AutoCloseable {
     private <M extends Meter> M registerMeterIfNecessary(Class<M> meterClass, Meter.Id id,
                                                          @Nullable DistributionStatisticConfig config, BiFunction<Meter.Id, DistributionStatisticConfig, Meter> builder,
                                                          Function<Meter.Id, M> noopBuilder) {
-        Meter.Id mappedId = id;
-        for (MeterFilter filter : filters) {
-            mappedId = filter.map(mappedId);
-        }
+        Meter m = preFilterIdToMeterMap.get(id);
 
-        Meter m = getOrCreateMeter(config, builder, id, mappedId, noopBuilder);
+        if (m == null) {
+            long generation = filterGeneration;
+            Meter.Id mappedId = id;
+            for (MeterFilter filter : filters) {
+                mappedId = filter.map(mappedId);
+            }
+
+            m = getOrCreateMeter(config, builder, id, mappedId, noopBuilder, generation);
+        }
 
         if (!meterClass.isInstance(m)) {
             throw new IllegalArgumentException("There is already a registered meter of a different type with the same name");
@@ -534,44 +717,66 @@ public abstract class MeterRegistry implements AutoCloseable {
 
     private Meter getOrCreateMeter(@Nullable DistributionStatisticConfig config,
                                    BiFunction<Id, /*Nullable Generic*/ DistributionStatisticConfig, Meter> builder,
-                                   Id originalId, Id mappedId, Function<Meter.Id, ? extends Meter> noopBuilder) {
+                                   Id originalId, Id mappedId, Function<Meter.Id, ? extends Meter> noopBuilder,
+                                   long generation) {
         Meter m = meterMap.get(mappedId);
 
-        if (m == null) {
-            if (isClosed()) {
-                return noopBuilder.apply(mappedId);
+        if (m == null && isClosed()) {
+            return noopBuilder.apply(mappedId);
+        }
+
+        if (m != null) {
+            Set<Id> preFilterIds = preFilterIdsByMappedId.get(mappedId);
+            if (preFilterIds != null && preFilterIds.size() >= MAX_PRE_FILTER_IDS_PER_METER) {
+                return m;
             }
+        }
 
-            synchronized (meterMapLock) {
-                m = meterMap.get(mappedId);
+        synchronized (meterMapLock) {
+            m = meterMap.get(mappedId);
 
-                if (m == null) {
-                    if (!accept(originalId)) {
-                        //noinspection unchecked
-                        return noopBuilder.apply(mappedId);
-                    }
+            if (m == null) {
+                if (!accept(originalId)) {
+                    //noinspection unchecked
+                    return noopBuilder.apply(mappedId);
+                }
 
-                    if (config != null) {
-                        for (MeterFilter filter : filters) {
-                            DistributionStatisticConfig filteredConfig = filter.configure(mappedId, config);
-                            if (filteredConfig != null) {
-                                config = filteredConfig;
-                            }
+                if (config != null) {
+                    for (MeterFilter filter : filters) {
+                        DistributionStatisticConfig filteredConfig = filter.configure(mappedId, config);
+                        if (filteredConfig != null) {
+                            config = filteredConfig;
                         }
                     }
+                }
 
-                    m = builder.apply(mappedId, config);
-                    meterMap = meterMap.plus(mappedId, m);
-                    for (Consumer<Meter> onAdd : meterAddedListeners) {
-                        onAdd.accept(m);
-                    }
+                m = builder.apply(mappedId, config);
+                meterMap.put(mappedId, m);
+                metersByName.computeIfAbsent(mappedId.getName(), name -> ConcurrentHashMap.newKeySet()).add(m);
+                meterList = null;
+                for (Consumer<Meter> onAdd : meterAddedListeners) {
+                    onAdd.accept(m);
                 }
             }
+
+            // cached under the lock so a concurrent removal can't leave a stale entry behind
+            if (generation != filterGeneration) {
+                return m;
+            }
+            Set<Id> preFilterIds = preFilterIdsByMappedId.computeIfAbsent(mappedId, id -> ConcurrentHashMap.newKeySet());
+            if (preFilterIds.size() < MAX_PRE_FILTER_IDS_PER_METER && preFilterIds.add(originalId)) {
+                preFilterIdToMeterMap.put(originalId, m);
+            }
         }
 
         return m;
     }
 
+    // VisibleForTesting
+    int preFilterIdCacheSize() {
+        return preFilterIdToMeterMap.size();
+    }
+
     private boolean accept(Meter.Id id) {
         for (MeterFilter filter : filters) {
             switch (filter.accept(id)) {
@@ -618,7 +823,12 @@ public abstract class MeterRegistry implements AutoCloseable {
          * @return This configuration instance.
          */
         public Config meterFilter(MeterFilter filter) {
-            filters.add(filter);
+            synchronized (meterMapLock) {
+                filters.add(filter);
+                filterGeneration++;
+                preFilterIdToMeterMap.clear();
+                preFilterIdsByMappedId.clear();
+            }
             return this;
         }
 
@@ -633,6 +843,47 @@ public abstract class MeterRegistry implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Register an event listener for each meter removed from the registry.
+         *
+         * @param meter The meter that has just been removed
+         * @return This configuration instance.
+         */
+        public Config onMeterRemoved(Consumer<Meter> meter) {
+            meterRemovedListeners.add(meter);
+            return this;
+        }
+
+        /**
+         * Periodically remove counters, timers and distribution summaries that have not recorded anything for
+         * {@code idleSteps} consecutive steps. Other meter types are never expired. Calling this again replaces the
+         * previous policy.
+         *
+         * @param step      How often meters are checked for recordings.
+         * @param idleSteps The number of consecutive steps without a recording after which a meter is removed.
+         * @return This configuration instance.
+         */
+        public Config idleMeterExpiry(Duration step, int idleSteps) {
+            if (idleSteps < 1) {
+                throw new IllegalArgumentException("idleSteps must be at least 1");
+            }
+
+            synchronized (idleStates) {
+                if (idleMeterExpiryService != null) {
+                    idleMeterExpiryService.shutdown();
+                }
+
+                idleMeterExpiryService = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "micrometer-idle-meter-expiry");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                idleMeterExpiryService.scheduleAtFixedRate(() -> expireIdleMeters(idleSteps), step.toMillis(),
+                        step.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            return this;
+        }
+
         /**
          * Use the provided naming convention, overriding the default for your monitoring system.
          *
@@ -840,6 +1091,13 @@ public abstract class MeterRegistry implements AutoCloseable {
     @Override
     public void close() {
         if (closed.compareAndSet(false, true)) {
+            synchronized (idleStates) {
+                if (idleMeterExpiryService != null) {
+                    idleMeterExpiryService.shutdown();
+                    idleMeterExpiryService = null;
+                }
+            }
+
             synchronized (meterMapLock) {
                 for (Meter meter : meterMap.values()) {
                     meter.close();
@@ -82,6 +82,13 @@ abstract class AbstractCompositeMeter<T extends Meter> extends AbstractMeter imp
         }
     }
 
+    @Override
+    public final void removeChildMeters() {
+        for (Map.Entry<MeterRegistry, T> child : children.entrySet()) {
+            child.getKey().remove(child.getValue());
+        }
+    }
+
     /**
      * Does nothing. New registries added to the composite are automatically reflected in each meter
      * belonging to the composite.
@@ -20,22 +20,33 @@ import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.internal.DefaultMeter;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 class CompositeCustomMeter extends DefaultMeter implements CompositeMeter {
+    private final Map<MeterRegistry, Meter> children = new ConcurrentHashMap<>();
+
     CompositeCustomMeter(Id id, Type type, Iterable<Measurement> measurements) {
         super(id, type, measurements);
     }
 
     @Override
     public void add(MeterRegistry registry) {
-        Meter.builder(getId().getName(), getType(), measure())
+        Meter child = Meter.builder(getId().getName(), getType(), measure())
             .tags(getId().getTags())
             .description(getId().getDescription())
             .baseUnit(getId().getBaseUnit())
             .register(registry);
+        children.put(registry, child);
     }
 
     @Override
     public void remove(MeterRegistry registry) {
-        // do nothing
+        children.remove(registry);
+    }
+
+    @Override
+    public void removeChildMeters() {
+        children.forEach(MeterRegistry::remove);
     }
 }
@@ -22,4 +22,9 @@ interface CompositeMeter extends Meter {
     void add(MeterRegistry registry);
 
     void remove(MeterRegistry registry);
+
+    /**
+     * Remove each meter this composite registered in its descendant registries from those registries.
+     */
+    void removeChildMeters();
 }
@@ -63,6 +63,11 @@ public class CompositeMeterRegistry extends MeterRegistry {
                 }
             }
         });
+        config().onMeterRemoved(m -> {
+            if (m instanceof CompositeMeter) { // should always be
+                ((CompositeMeter) m).removeChildMeters();
+            }
+        });
     }
 
     public CompositeMeterRegistry(Clock clock, Iterable<MeterRegistry> registries) {
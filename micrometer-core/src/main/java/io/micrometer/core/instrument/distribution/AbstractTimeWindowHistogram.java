@@ -23,11 +23,16 @@ import java.io.PrintStream;
 import java.lang.reflect.Array;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * An abstract base class for histogram implementations who maintain samples in a ring buffer
  * to decay older samples and give greater weight to recent samples.
+ * <p>
+ * Recording never waits on a snapshot. Snapshots hold the ring buffer only long enough to capture what they read,
+ * then compute percentiles and counts from the capture while samples keep being recorded and the ring buffer keeps
+ * rotating. A sample that is due to rotate the ring buffer while it is held skips the rotation, leaving it to a later
+ * sample or snapshot.
  *
  * @param <T> the type of the buckets in a ring buffer
  * @param <U> the type of accumulated histogram
@@ -37,10 +42,6 @@ import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 @SuppressWarnings("ConstantConditions")
 abstract class AbstractTimeWindowHistogram<T, U> implements Histogram {
 
-    @SuppressWarnings("rawtypes")
-    private static final AtomicIntegerFieldUpdater<AbstractTimeWindowHistogram> rotatingUpdater =
-            AtomicIntegerFieldUpdater.newUpdater(AbstractTimeWindowHistogram.class, "rotating");
-
     final DistributionStatisticConfig distributionStatisticConfig;
 
     private final Clock clock;
@@ -51,11 +52,23 @@ abstract class AbstractTimeWindowHistogram<T, U> implements Histogram {
     private final long durationBetweenRotatesMillis;
     private volatile boolean accumulatedHistogramStale;
 
+    /**
+     * Whether the ring buffer has rotated since the accumulated histogram was last reset. Guarded by
+     * {@link #ringBufferLock}.
+     */
+    private boolean rotatedSinceAccumulation;
+
     private volatile long lastRotateTimestampMillis;
 
-    @SuppressWarnings({"unused", "FieldCanBeLocal"})
-    private volatile int rotating; // 0 - not rotating, 1 - rotating
+    /**
+     * Held while rotating and while snapshots capture the ring buffer. Snapshots are serialized by locking the
+     * histogram itself.
+     */
+    private final ReentrantLock ringBufferLock = new ReentrantLock();
 
+    /**
+     * Only read and written by snapshots.
+     */
     @Nullable
     private U accumulatedHistogram;
 
@@ -67,23 +80,19 @@ abstract class AbstractTimeWindowHistogram<T, U> implements Histogram {
         this.supportsAggregablePercentiles = supportsAggregablePercentiles;
 
         final int ageBuckets = distributionStatisticConfig.getBufferLength();
-        if (ageBuckets <= 0) {
-            rejectHistogramConfig("bufferLength (" + ageBuckets + ") must be greater than 0.");
-        }
-
         ringBuffer = (T[]) Array.newInstance(bucketType, ageBuckets);
-
         durationBetweenRotatesMillis = distributionStatisticConfig.getExpiry().toMillis() / ageBuckets;
-        if (durationBetweenRotatesMillis <= 0) {
-            rejectHistogramConfig("expiry (" + distributionStatisticConfig.getExpiry().toMillis() +
-                    "ms) / bufferLength (" + ageBuckets + ") must be greater than 0.");
-        }
 
         currentBucket = 0;
         lastRotateTimestampMillis = clock.wallTime();
     }
 
-    private static DistributionStatisticConfig validateDistributionConfig(DistributionStatisticConfig distributionStatisticConfig) {
+    /**
+     * @param distributionStatisticConfig A configuration to build a histogram from.
+     * @return The configuration.
+     * @throws InvalidConfigurationException if no histogram can be built from the configuration.
+     */
+    static DistributionStatisticConfig validateDistributionConfig(DistributionStatisticConfig distributionStatisticConfig) {
         if (distributionStatisticConfig.getPercentiles() != null) {
             for (double p : distributionStatisticConfig.getPercentiles()) {
                 if (p < 0 || p > 1) {
@@ -117,6 +126,16 @@ abstract class AbstractTimeWindowHistogram<T, U> implements Histogram {
             }
         }
 
+        final int ageBuckets = distributionStatisticConfig.getBufferLength();
+        if (ageBuckets <= 0) {
+            rejectHistogramConfig("bufferLength (" + ageBuckets + ") must be greater than 0.");
+        }
+
+        if (distributionStatisticConfig.getExpiry().toMillis() / ageBuckets <= 0) {
+            rejectHistogramConfig("expiry (" + distributionStatisticConfig.getExpiry().toMillis() +
+                    "ms) / bufferLength (" + ageBuckets + ") must be greater than 0.");
+        }
+
         return distributionStatisticConfig;
     }
 
@@ -152,14 +171,20 @@ abstract class AbstractTimeWindowHistogram<T, U> implements Histogram {
     void outputSummary(PrintStream out, double bucketScaling) {
     }
 
+    /**
+     * Called at the start of every snapshot with the ring buffer held, after any rotation and accumulation. Copies
+     * whatever {@link #valueAtPercentile(double)}, {@link #countAtValue(long)} and {@link #mergeableSnapshot} read
+     * other than the accumulated histogram, since the ring buffer may rotate while they run.
+     */
+    void capture() {
+    }
+
     @Override
     public final HistogramSnapshot takeSnapshot(long count, double total, double max) {
-        rotate();
-
         final ValueAtPercentile[] values;
         final CountAtBucket[] counts;
         synchronized (this) {
-            accumulateIfStale();
+            captureRingBuffer();
             values = takeValueSnapshot();
             counts = takeCountSnapshot();
         }
@@ -167,6 +192,46 @@ abstract class AbstractTimeWindowHistogram<T, U> implements Histogram {
         return new HistogramSnapshot(count, total, max, values, counts, this::outputSummary);
     }
 
+    @Override
+    public final MergeableHistogramSnapshot takeMergeableSnapshot(long count, double total, double max) {
+        synchronized (this) {
+            captureRingBuffer();
+            return mergeableSnapshot(count, total, max);
+        }
+    }
+
+    /**
+     * Called with the histogram locked and captured.
+     */
+    abstract MergeableHistogramSnapshot mergeableSnapshot(long count, double total, double max);
+
+    private void captureRingBuffer() {
+        ringBufferLock.lock();
+        try {
+            rotateIfDue();
+            if (rotatedSinceAccumulation) {
+                resetAccumulatedHistogram();
+                rotatedSinceAccumulation = false;
+            }
+            accumulateIfStale();
+            capture();
+        } finally {
+            ringBufferLock.unlock();
+        }
+    }
+
+    /**
+     * @return The buckets histogram counts are published at, if any.
+     */
+    long[] monitoredBuckets() {
+        if (!distributionStatisticConfig.isPublishingHistogram()) {
+            return new long[0];
+        }
+        return distributionStatisticConfig.getHistogramBuckets(supportsAggregablePercentiles).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
     private void accumulateIfStale() {
         if (accumulatedHistogramStale) {
             accumulate();
@@ -243,31 +308,42 @@ abstract class AbstractTimeWindowHistogram<T, U> implements Histogram {
             return;
         }
 
-        if (!rotatingUpdater.compareAndSet(this, 0, 1)) {
-            // Being rotated by other thread already.
+        if (!ringBufferLock.tryLock()) {
+            // Being rotated by other thread already, or captured by a snapshot that will rotate it when done.
             return;
         }
 
         try {
-            int iterations = 0;
-            synchronized (this) {
-                do {
-                    resetBucket(ringBuffer[currentBucket]);
-                    if (++currentBucket >= ringBuffer.length) {
-                        currentBucket = 0;
-                    }
-                    timeSinceLastRotateMillis -= durationBetweenRotatesMillis;
-                    lastRotateTimestampMillis += durationBetweenRotatesMillis;
-                } while (timeSinceLastRotateMillis >= durationBetweenRotatesMillis && ++iterations < ringBuffer.length);
-
-                resetAccumulatedHistogram();
-                accumulatedHistogramStale = true;
-            }
+            rotateIfDue();
         } finally {
-            rotating = 0;
+            ringBufferLock.unlock();
         }
     }
 
+    /**
+     * Called with the ring buffer held.
+     */
+    private void rotateIfDue() {
+        long timeSinceLastRotateMillis = clock.wallTime() - lastRotateTimestampMillis;
+        if (timeSinceLastRotateMillis < durationBetweenRotatesMillis) {
+            return;
+        }
+
+        int iterations = 0;
+        do {
+            resetBucket(ringBuffer[currentBucket]);
+            if (++currentBucket >= ringBuffer.length) {
+                currentBucket = 0;
+            }
+            timeSinceLastRotateMillis -= durationBetweenRotatesMillis;
+            lastRotateTimestampMillis += durationBetweenRotatesMillis;
+        } while (timeSinceLastRotateMillis >= durationBetweenRotatesMillis && ++iterations < ringBuffer.length);
+
+        // the accumulated histogram is reset by the next snapshot, which may be reading it now
+        rotatedSinceAccumulation = true;
+        accumulatedHistogramStale = true;
+    }
+
     protected U accumulatedHistogram() {
         return accumulatedHistogram;
     }
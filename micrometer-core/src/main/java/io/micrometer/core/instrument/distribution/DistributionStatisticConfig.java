@@ -40,6 +40,9 @@ public class DistributionStatisticConfig implements Mergeable<DistributionStatis
             .maximumExpectedValue(Long.MAX_VALUE)
             .expiry(Duration.ofMinutes(2))
             .bufferLength(3)
+            .stripedHistogram(false)
+            .percentileSketch(false)
+            .histogramIdleWindows(0)
             .build();
 
     public static final DistributionStatisticConfig NONE = builder().build();
@@ -68,6 +71,15 @@ public class DistributionStatisticConfig implements Mergeable<DistributionStatis
     @Nullable
     private Integer bufferLength;
 
+    @Nullable
+    private Boolean stripedHistogram;
+
+    @Nullable
+    private Boolean percentileSketch;
+
+    @Nullable
+    private Integer histogramIdleWindows;
+
     public static Builder builder() {
         return new Builder();
     }
@@ -90,6 +102,9 @@ public class DistributionStatisticConfig implements Mergeable<DistributionStatis
                 .maximumExpectedValue(this.maximumExpectedValue == null ? parent.maximumExpectedValue : this.maximumExpectedValue)
                 .expiry(this.expiry == null ? parent.expiry : this.expiry)
                 .bufferLength(this.bufferLength == null ? parent.bufferLength : this.bufferLength)
+                .stripedHistogram(this.stripedHistogram == null ? parent.stripedHistogram : this.stripedHistogram)
+                .percentileSketch(this.percentileSketch == null ? parent.percentileSketch : this.percentileSketch)
+                .histogramIdleWindows(this.histogramIdleWindows == null ? parent.histogramIdleWindows : this.histogramIdleWindows)
                 .build();
     }
 
@@ -208,6 +223,44 @@ public class DistributionStatisticConfig implements Mergeable<DistributionStatis
         return sla;
     }
 
+    /**
+     * Splits the counts of fixed boundary histograms into one stripe per processor, so that the cost of recording
+     * a sample stays flat as more threads record to the same timer or distribution summary at once, at the cost
+     * of more memory. Striped histograms rotate when they are published rather than when samples are recorded.
+     * Has no effect on histograms used to compute percentiles locally.
+     *
+     * @return Whether fixed boundary histogram counts are striped.
+     */
+    @Nullable
+    public Boolean isStripedHistogram() {
+        return stripedHistogram;
+    }
+
+    /**
+     * Computes percentiles from a compact sketch of logarithmically sized buckets rather than a high dynamic range
+     * histogram. Percentiles are accurate to within one part in 10 to the power of {@link #getPercentilePrecision()},
+     * and a sketch only grows to the range of values recorded, so it takes far less memory per timer or distribution
+     * summary.
+     *
+     * @return Whether percentiles are computed from a sketch.
+     */
+    @Nullable
+    public Boolean isPercentileSketch() {
+        return percentileSketch;
+    }
+
+    /**
+     * Histograms are only built once a sample is recorded. If set to a positive number, a histogram that then records
+     * nothing for this many {@link #expiry} periods is released, to be built again by the next sample. Zero, the
+     * default, keeps histograms for the life of the meter.
+     *
+     * @return The number of idle expiry periods after which a histogram is released.
+     */
+    @Nullable
+    public Integer getHistogramIdleWindows() {
+        return histogramIdleWindows;
+    }
+
     public static class Builder {
         private final DistributionStatisticConfig config = new DistributionStatisticConfig();
 
@@ -309,6 +362,47 @@ public class DistributionStatisticConfig implements Mergeable<DistributionStatis
             return this;
         }
 
+        /**
+         * Splits the counts of fixed boundary histograms into one stripe per processor, so that the cost of recording
+         * a sample stays flat as more threads record to the same timer or distribution summary at once, at the cost
+         * of more memory. Striped histograms rotate when they are published rather than when samples are recorded.
+         * Has no effect on histograms used to compute percentiles locally.
+         *
+         * @param enabled Whether fixed boundary histogram counts are striped.
+         * @return This builder.
+         */
+        public Builder stripedHistogram(@Nullable Boolean enabled) {
+            config.stripedHistogram = enabled;
+            return this;
+        }
+
+        /**
+         * Computes percentiles from a compact sketch of logarithmically sized buckets rather than a high dynamic range
+         * histogram. Percentiles are accurate to within one part in 10 to the power of {@link #percentilePrecision},
+         * and a sketch only grows to the range of values recorded, so it takes far less memory per timer or
+         * distribution summary.
+         *
+         * @param enabled Whether percentiles are computed from a sketch.
+         * @return This builder.
+         */
+        public Builder percentileSketch(@Nullable Boolean enabled) {
+            config.percentileSketch = enabled;
+            return this;
+        }
+
+        /**
+         * Histograms are only built once a sample is recorded. If set to a positive number, a histogram that then
+         * records nothing for this many {@link #expiry} periods is released, to be built again by the next sample.
+         * Zero, the default, keeps histograms for the life of the meter.
+         *
+         * @param idleWindows The number of idle expiry periods after which a histogram is released.
+         * @return This builder.
+         */
+        public Builder histogramIdleWindows(@Nullable Integer idleWindows) {
+            config.histogramIdleWindows = idleWindows;
+            return this;
+        }
+
         /**
          * @return A new immutable distribution configuration.
          */
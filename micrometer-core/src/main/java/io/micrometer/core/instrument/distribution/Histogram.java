@@ -17,6 +17,7 @@ package io.micrometer.core.instrument.distribution;
 
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.lang.Nullable;
 
 /**
  * The contract for histograms used to generate distribution statistics for {@link Timer}
@@ -32,6 +33,18 @@ public interface Histogram extends AutoCloseable {
 
     HistogramSnapshot takeSnapshot(long count, double total, double max);
 
+    /**
+     * @param count The number of samples recorded.
+     * @param total The sum of samples recorded, in the unit samples are recorded in.
+     * @param max   The largest sample recorded, in the unit samples are recorded in.
+     * @return A snapshot that can be encoded and merged with snapshots of the same meter on other instances, or
+     * {@code null} if this histogram doesn't keep a distribution of samples.
+     */
+    @Nullable
+    default MergeableHistogramSnapshot takeMergeableSnapshot(long count, double total, double max) {
+        return null;
+    }
+
     @Override
     default void close() {
     }
@@ -15,6 +15,8 @@
  */
 package io.micrometer.core.instrument.distribution;
 
+import io.micrometer.core.lang.Nullable;
+
 public interface HistogramSupport {
     /**
      * Summary statistics should be published off of a single snapshot instance so that, for example, there isn't
@@ -24,6 +26,18 @@ public interface HistogramSupport {
      */
     HistogramSnapshot takeSnapshot();
 
+    /**
+     * A snapshot of the distribution of samples that can be encoded and summed with snapshots of the same meter on
+     * other instances, to compute percentiles and histogram counts across all of them.
+     *
+     * @return A mergeable snapshot of the distribution at a point in time, or {@code null} if no percentiles or
+     * histogram are configured.
+     */
+    @Nullable
+    default MergeableHistogramSnapshot takeMergeableSnapshot() {
+        return null;
+    }
+
     /**
      * Summary statistics should be published off of a single snapshot instance so that, for example, there isn't
      * disagreement between the distribution's bucket counts because more events continue to stream in.
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.lang.Nullable;
+
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Defers building a histogram until the first sample is recorded, so that registered but idle timers and
+ * distribution summaries (common with per-endpoint or per-status tags) don't pay for histogram memory. Until then,
+ * snapshots report zero at every configured percentile and histogram bucket.
+ * <p>
+ * When {@link DistributionStatisticConfig#getHistogramIdleWindows()} is positive, a histogram that has recorded nothing
+ * for that many expiry periods, as observed when snapshots are taken, is released, and built again by the next sample.
+ * A sample recorded at the very moment of release may be left out of the histogram's statistics (but not out of the
+ * meter's count, total or max).
+ */
+public class LazyHistogram implements Histogram {
+    private final Clock clock;
+    private final DistributionStatisticConfig distributionStatisticConfig;
+    private final boolean supportsAggregablePercentiles;
+    private final Supplier<Histogram> histogramFactory;
+    private final long idleMillis;
+
+    @Nullable
+    private volatile Histogram histogram;
+
+    /**
+     * Whether a sample has been recorded since the last snapshot checked for idleness.
+     */
+    private volatile boolean recorded;
+
+    private volatile long lastActiveMillis;
+
+    /**
+     * @param clock                         The clock used to measure idleness.
+     * @param distributionStatisticConfig   The configuration the histogram is built from, validated right away.
+     * @param supportsAggregablePercentiles Whether the histogram reports percentile histogram buckets.
+     * @param histogramFactory              Builds the histogram.
+     */
+    public LazyHistogram(Clock clock, DistributionStatisticConfig distributionStatisticConfig,
+                         boolean supportsAggregablePercentiles, Supplier<Histogram> histogramFactory) {
+        this.clock = clock;
+        this.distributionStatisticConfig = AbstractTimeWindowHistogram.validateDistributionConfig(distributionStatisticConfig);
+        this.supportsAggregablePercentiles = supportsAggregablePercentiles;
+        this.histogramFactory = histogramFactory;
+
+        Integer idleWindows = distributionStatisticConfig.getHistogramIdleWindows();
+        this.idleMillis = idleWindows == null || idleWindows <= 0 ? 0 :
+                idleWindows * distributionStatisticConfig.getExpiry().toMillis();
+    }
+
+    @Override
+    public void recordLong(long value) {
+        Histogram h = histogram();
+        h.recordLong(value);
+        if (histogram != h) {
+            // released while recording
+            histogram().recordLong(value);
+        }
+        markRecorded();
+    }
+
+    @Override
+    public void recordDouble(double value) {
+        Histogram h = histogram();
+        h.recordDouble(value);
+        if (histogram != h) {
+            // released while recording
+            histogram().recordDouble(value);
+        }
+        markRecorded();
+    }
+
+    private Histogram histogram() {
+        Histogram h = histogram;
+        if (h == null) {
+            synchronized (this) {
+                h = histogram;
+                if (h == null) {
+                    h = histogramFactory.get();
+                    lastActiveMillis = clock.wallTime();
+                    histogram = h;
+                }
+            }
+        }
+        return h;
+    }
+
+    private void markRecorded() {
+        // read before writing so that recording threads don't keep invalidating each other's cache line
+        if (!recorded) {
+            recorded = true;
+        }
+    }
+
+    /**
+     * @return Whether a histogram is currently built.
+     */
+    public boolean isAllocated() {
+        return histogram != null;
+    }
+
+    @Override
+    public HistogramSnapshot takeSnapshot(long count, double total, double max) {
+        Histogram h = histogram;
+        if (h == null) {
+            return new HistogramSnapshot(count, total, max, emptyValues(), emptyCounts(), null);
+        }
+
+        HistogramSnapshot snapshot = h.takeSnapshot(count, total, max);
+        releaseIfIdle(h);
+        return snapshot;
+    }
+
+    /**
+     * @return A mergeable snapshot, or {@code null} if the histogram hasn't been built because nothing has been
+     * recorded.
+     */
+    @Nullable
+    @Override
+    public MergeableHistogramSnapshot takeMergeableSnapshot(long count, double total, double max) {
+        Histogram h = histogram;
+        return h == null ? null : h.takeMergeableSnapshot(count, total, max);
+    }
+
+    private void releaseIfIdle(Histogram h) {
+        if (idleMillis <= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            long now = clock.wallTime();
+            if (recorded) {
+                recorded = false;
+                lastActiveMillis = now;
+            } else if (now - lastActiveMillis >= idleMillis && histogram == h) {
+                histogram = null;
+                h.close();
+            }
+        }
+    }
+
+    @Nullable
+    private ValueAtPercentile[] emptyValues() {
+        double[] percentiles = distributionStatisticConfig.getPercentiles();
+        if (percentiles == null) {
+            return null;
+        }
+
+        ValueAtPercentile[] values = new ValueAtPercentile[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            values[i] = new ValueAtPercentile(percentiles[i], 0);
+        }
+        return values;
+    }
+
+    @Nullable
+    private CountAtBucket[] emptyCounts() {
+        if (!distributionStatisticConfig.isPublishingHistogram()) {
+            return null;
+        }
+
+        Set<Long> buckets = distributionStatisticConfig.getHistogramBuckets(supportsAggregablePercentiles);
+        CountAtBucket[] counts = new CountAtBucket[buckets.size()];
+        int i = 0;
+        for (long bucket : buckets) {
+            counts[i++] = new CountAtBucket(bucket, 0);
+        }
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        Histogram h = histogram;
+        if (h != null) {
+            h.close();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution;
+
+import io.micrometer.core.lang.Nullable;
+import org.HdrHistogram.DoubleHistogram;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+import java.util.zip.DataFormatException;
+
+/**
+ * The distribution of samples in a histogram's current window, in a form that can be encoded compactly, shipped
+ * elsewhere, and summed with the distributions of the same meter on other instances to compute fleet-wide
+ * percentiles and histogram counts.
+ * <p>
+ * Snapshots of fixed boundary histograms carry a count per bucket and can only be merged with snapshots of the
+ * same buckets. Snapshots of percentile histograms carry the whole high dynamic range histogram, and so can be merged
+ * with any other percentile histogram snapshot. Snapshots of {@link TimeWindowSketchHistogram sketch histograms} can
+ * be merged with sketches of the same precision.
+ * <p>
+ * Total and max are in the same unit as the recorded samples, e.g. nanoseconds for timers.
+ */
+public final class MergeableHistogramSnapshot {
+    private static final byte FIXED_BOUNDARY = 1;
+    private static final byte PERCENTILE = 2;
+    private static final byte SKETCH = 3;
+
+    private final long count;
+    private final double total;
+    private final double max;
+
+    /**
+     * The buckets histogram counts are reported at.
+     */
+    private final long[] buckets;
+
+    /**
+     * For fixed boundary histograms, the (non-cumulative) count of samples in each bucket. Otherwise null.
+     */
+    @Nullable
+    private final long[] bucketCounts;
+
+    /**
+     * For percentile histograms, all samples in the window. Otherwise null.
+     */
+    @Nullable
+    private final DoubleHistogram percentileHistogram;
+
+    /**
+     * For sketch histograms, all samples in the window. Otherwise null.
+     */
+    @Nullable
+    private final PercentileSketch sketch;
+
+    MergeableHistogramSnapshot(long count, double total, double max, long[] buckets, long[] bucketCounts) {
+        this(count, total, max, buckets, bucketCounts, null, null);
+    }
+
+    MergeableHistogramSnapshot(long count, double total, double max, long[] buckets, DoubleHistogram percentileHistogram) {
+        this(count, total, max, buckets, null, percentileHistogram, null);
+    }
+
+    MergeableHistogramSnapshot(long count, double total, double max, long[] buckets, PercentileSketch sketch) {
+        this(count, total, max, buckets, null, null, sketch);
+    }
+
+    private MergeableHistogramSnapshot(long count, double total, double max, long[] buckets, @Nullable long[] bucketCounts,
+                                       @Nullable DoubleHistogram percentileHistogram, @Nullable PercentileSketch sketch) {
+        this.count = count;
+        this.total = total;
+        this.max = max;
+        this.buckets = buckets;
+        this.bucketCounts = bucketCounts;
+        this.percentileHistogram = percentileHistogram;
+        this.sketch = sketch;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double total() {
+        return total;
+    }
+
+    public double max() {
+        return max;
+    }
+
+    /**
+     * @return Cumulative counts at each bucket.
+     */
+    public CountAtBucket[] histogramCounts() {
+        CountAtBucket[] counts = new CountAtBucket[buckets.length];
+        long cumulativeCount = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            if (bucketCounts != null) {
+                cumulativeCount += bucketCounts[i];
+            } else if (percentileHistogram != null) {
+                cumulativeCount = (long) percentileHistogram.getCountBetweenValues(0, buckets[i]);
+            } else if (sketch != null) {
+                cumulativeCount = (long) sketch.countAtValue(buckets[i]);
+            }
+            counts[i] = new CountAtBucket(buckets[i], cumulativeCount);
+        }
+        return counts;
+    }
+
+    /**
+     * @param percentile The percentile to compute, e.g. {@code 0.95}.
+     * @return The value at the percentile. For fixed boundary histograms, this is the least bucket containing the
+     * percentile of the samples counted by the buckets in the window, or the max if the window has none. The count
+     * of the meter is not used, as it can span more than the window.
+     */
+    public double percentile(double percentile) {
+        if (percentileHistogram != null) {
+            return percentileHistogram.getValueAtPercentile(percentile * 100);
+        }
+
+        if (sketch != null) {
+            return sketch.valueAtPercentile(percentile * 100);
+        }
+
+        if (bucketCounts != null) {
+            long windowCount = 0;
+            for (long bucketCount : bucketCounts) {
+                windowCount += bucketCount;
+            }
+
+            double rank = percentile * windowCount;
+            long cumulativeCount = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulativeCount += bucketCounts[i];
+                if (cumulativeCount > 0 && cumulativeCount >= rank) {
+                    return buckets[i];
+                }
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * @param other A snapshot of the same meter, typically taken on another instance.
+     * @return A new snapshot of the samples in both snapshots.
+     * @throws IllegalArgumentException if the snapshots come from different kinds of histograms, from fixed
+     *                                  boundary histograms with different buckets, or from sketches of different
+     *                                  precision.
+     */
+    public MergeableHistogramSnapshot merge(MergeableHistogramSnapshot other) {
+        long mergedCount = count + other.count;
+        double mergedTotal = total + other.total;
+        double mergedMax = Math.max(max, other.max);
+
+        if (percentileHistogram != null && other.percentileHistogram != null) {
+            // decoded histograms don't auto-resize, so add both to one that does
+            DoubleHistogram merged = new DoubleHistogram(Math.max(percentileHistogram.getNumberOfSignificantValueDigits(),
+                    other.percentileHistogram.getNumberOfSignificantValueDigits()));
+            merged.add(percentileHistogram);
+            merged.add(other.percentileHistogram);
+            return new MergeableHistogramSnapshot(mergedCount, mergedTotal, mergedMax, mergeBuckets(other), merged);
+        }
+
+        if (sketch != null && other.sketch != null) {
+            PercentileSketch merged = sketch.copy();
+            merged.add(other.sketch);
+            return new MergeableHistogramSnapshot(mergedCount, mergedTotal, mergedMax, mergeBuckets(other), merged);
+        }
+
+        if (bucketCounts != null && other.bucketCounts != null) {
+            if (!Arrays.equals(buckets, other.buckets)) {
+                throw new IllegalArgumentException("Fixed boundary histogram snapshots with different buckets cannot be merged");
+            }
+            long[] merged = new long[bucketCounts.length];
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] = bucketCounts[i] + other.bucketCounts[i];
+            }
+            return new MergeableHistogramSnapshot(mergedCount, mergedTotal, mergedMax, buckets, merged);
+        }
+
+        throw new IllegalArgumentException("Snapshots of different kinds of histograms cannot be merged");
+    }
+
+    /**
+     * Percentile histograms and sketches can report counts at any value, so a merge reports counts at the buckets of
+     * both.
+     */
+    private long[] mergeBuckets(MergeableHistogramSnapshot other) {
+        if (Arrays.equals(buckets, other.buckets)) {
+            return buckets;
+        }
+        return LongStream.concat(Arrays.stream(buckets), Arrays.stream(other.buckets))
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    /**
+     * Encodes the snapshot. Fixed boundary histograms are written as delta-encoded bucket boundaries followed by the
+     * non-zero bucket counts only, all as variable length integers. Percentile histograms are written in HdrHistogram's
+     * compressed format. Sketches are written as their relative accuracy, first bucket index, and the counts of the
+     * buckets they span.
+     *
+     * @return The encoded snapshot.
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(bucketCounts != null ? FIXED_BOUNDARY : sketch != null ? SKETCH : PERCENTILE);
+        writeVarLong(out, count);
+        writeDouble(out, total);
+        writeDouble(out, max);
+
+        writeVarLong(out, buckets.length);
+        long previousBucket = 0;
+        for (long bucket : buckets) {
+            writeVarLong(out, bucket - previousBucket);
+            previousBucket = bucket;
+        }
+
+        if (bucketCounts != null) {
+            int nonZero = 0;
+            for (long bucketCount : bucketCounts) {
+                if (bucketCount != 0) {
+                    nonZero++;
+                }
+            }
+
+            writeVarLong(out, nonZero);
+            int previousIndex = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                if (bucketCounts[i] != 0) {
+                    writeVarLong(out, i - previousIndex);
+                    writeVarLong(out, bucketCounts[i]);
+                    previousIndex = i;
+                }
+            }
+        } else if (sketch != null) {
+            writeDouble(out, sketch.getRelativeAccuracy());
+            writeVarLong(out, sketch.getZeroCount());
+
+            // trim the empty buckets the sketch keeps at either end to grow into
+            long[] counts = sketch.getCounts();
+            int first = 0;
+            while (first < counts.length && counts[first] == 0) {
+                first++;
+            }
+            int last = counts.length - 1;
+            while (last >= first && counts[last] == 0) {
+                last--;
+            }
+
+            int offset = sketch.getOffset() + first;
+            writeVarLong(out, ((long) offset << 1) ^ (offset >> 31)); // zig-zag, since offsets can be negative
+            writeVarLong(out, last - first + 1);
+            for (int i = first; i <= last; i++) {
+                writeVarLong(out, counts[i]);
+            }
+        } else if (percentileHistogram != null) {
+            ByteBuffer buffer = ByteBuffer.allocate(percentileHistogram.getNeededByteBufferCapacity());
+            int length = percentileHistogram.encodeIntoCompressedByteBuffer(buffer);
+            writeVarLong(out, length);
+            out.write(buffer.array(), 0, length);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * @param encoded A snapshot produced by {@link #encode()}.
+     * @return The decoded snapshot.
+     * @throws IllegalArgumentException if the bytes are not an encoded snapshot.
+     */
+    public static MergeableHistogramSnapshot decode(byte[] encoded) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(encoded);
+            byte kind = in.get();
+            long count = readVarLong(in);
+            double total = in.getDouble();
+            double max = in.getDouble();
+
+            long[] buckets = new long[readLength(in)];
+            long bucket = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                bucket += readVarLong(in);
+                buckets[i] = bucket;
+            }
+
+            switch (kind) {
+                case FIXED_BOUNDARY:
+                    long[] bucketCounts = new long[buckets.length];
+                    int nonZero = readLength(in);
+                    int index = 0;
+                    for (int i = 0; i < nonZero; i++) {
+                        index += readLength(in);
+                        bucketCounts[index] = readVarLong(in);
+                    }
+                    return new MergeableHistogramSnapshot(count, total, max, buckets, bucketCounts);
+                case PERCENTILE:
+                    // HdrHistogram decodes from the start of the buffer's backing array, so it can't be a slice
+                    byte[] histogram = new byte[readLength(in)];
+                    in.get(histogram);
+                    return new MergeableHistogramSnapshot(count, total, max, buckets,
+                            DoubleHistogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(histogram), 2));
+                case SKETCH:
+                    double relativeAccuracy = in.getDouble();
+                    long zeroCount = readVarLong(in);
+                    long zigZagOffset = readVarLong(in);
+                    int offset = (int) ((zigZagOffset >>> 1) ^ -(zigZagOffset & 1));
+                    long[] counts = new long[readLength(in)];
+                    for (int i = 0; i < counts.length; i++) {
+                        counts[i] = readVarLong(in);
+                    }
+                    return new MergeableHistogramSnapshot(count, total, max, buckets,
+                            new PercentileSketch(relativeAccuracy, counts, offset, zeroCount));
+                default:
+                    throw new IllegalArgumentException("Unknown histogram snapshot kind " + kind);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | DataFormatException e) {
+            throw new IllegalArgumentException("Malformed histogram snapshot", e);
+        }
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift));
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed histogram snapshot: variable length integer is too long");
+    }
+
+    private static int readLength(ByteBuffer in) {
+        long length = readVarLong(in);
+        if (length < 0 || length > in.capacity()) {
+            throw new IllegalArgumentException("Malformed histogram snapshot: length " + length + " is out of range");
+        }
+        return (int) length;
+    }
+}
@@ -29,6 +29,15 @@ public class PercentileHistogramBuckets {
     // Bucket values to use, see static block for initialization.
     private static final NavigableSet<Long> PERCENTILE_BUCKETS;
 
+    // The same bucket values, in order.
+    private static final long[] BUCKET_VALUES;
+
+    // For each power of 4, indexed by its exponent / DIGITS, the index of its first bucket and how many buckets
+    // it has. Every bucket of a power of 4 is in [4^n, 4^(n+1)), so a value's power of 4 and its offset from
+    // the first bucket of that power locate its bucket without searching.
+    private static final int[] POWER_OF_4_INDEX = new int[64 / DIGITS];
+    private static final int[] POWER_OF_4_COUNT = new int[64 / DIGITS];
+
     // The set of buckets is generated by using powers of 4 and incrementing by one-third of the
     // previous power of 4 in between as long as the value is less than the next power of 4 minus
     // the delta.
@@ -57,13 +66,17 @@ public class PercentileHistogramBuckets {
             long delta = current / 3;
             long next = (current << DIGITS) - delta;
 
+            POWER_OF_4_INDEX[exp / DIGITS] = PERCENTILE_BUCKETS.size();
             while (current < next) {
                 PERCENTILE_BUCKETS.add(current);
                 current += delta;
             }
+            POWER_OF_4_COUNT[exp / DIGITS] = PERCENTILE_BUCKETS.size() - POWER_OF_4_INDEX[exp / DIGITS];
             exp += DIGITS;
         }
         PERCENTILE_BUCKETS.add(Long.MAX_VALUE);
+
+        BUCKET_VALUES = PERCENTILE_BUCKETS.stream().mapToLong(Long::longValue).toArray();
     }
 
     /**
@@ -79,4 +92,32 @@ public class PercentileHistogramBuckets {
         return PERCENTILE_BUCKETS.subSet(distributionStatisticConfig.getMinimumExpectedValue(), true,
                 distributionStatisticConfig.getMaximumExpectedValue(), true);
     }
+
+    /**
+     * @param value A sample.
+     * @return The index of the least percentile bucket that is greater than or equal to the sample, found in constant
+     * time.
+     */
+    static int indexOf(long value) {
+        if (value <= 4) {
+            return value <= 1 ? 0 : (int) value - 1;
+        }
+
+        int exp = (63 - Long.numberOfLeadingZeros(value)) & -DIGITS;
+        long base = 1L << exp;
+        long delta = base / 3;
+
+        // the values of a power of 4 are base, base + delta, ...; any offset past the last of them falls to the
+        // first bucket of the next power of 4 (or Long.MAX_VALUE), which immediately follows
+        long offset = (value - base + delta - 1) / delta;
+        return POWER_OF_4_INDEX[exp / DIGITS] + (int) Math.min(offset, POWER_OF_4_COUNT[exp / DIGITS]);
+    }
+
+    /**
+     * @param index The index of a percentile bucket.
+     * @return The bucket's value.
+     */
+    static long get(int index) {
+        return BUCKET_VALUES[index];
+    }
 }
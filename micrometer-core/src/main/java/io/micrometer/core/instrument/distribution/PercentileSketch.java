@@ -0,0 +1,210 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution;
+
+import java.util.Arrays;
+
+/**
+ * A sketch of a distribution with bounded relative error, in the manner of DDSketch. Bucket {@code i} counts samples
+ * in {@code (gamma^(i-1), gamma^i]}, and reports them as a value within the sketch's relative accuracy of any of
+ * them. Counts are held in a dense array spanning only the buckets that have been recorded to, so samples between
+ * 1ms and 1s at 10% relative accuracy take about 35 counts, compared to the several kilobytes of a high dynamic range
+ * histogram.
+ * <p>
+ * Not thread-safe.
+ */
+final class PercentileSketch {
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * Smaller positive samples are counted with zero, which bounds how far the buckets of a sketch can spread.
+     */
+    private static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+    /**
+     * Buckets added beyond a recorded sample when the counts grow, so that nearby samples don't grow them again.
+     */
+    private static final int GROWTH_SLACK = 4;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    private long[] counts;
+
+    /**
+     * The bucket index of {@code counts[0]}.
+     */
+    private int offset;
+
+    private long zeroCount;
+    private long totalCount;
+
+    /**
+     * @param relativeAccuracy The largest relative difference between a sample and the value it is reported as.
+     */
+    PercentileSketch(double relativeAccuracy) {
+        this(relativeAccuracy, EMPTY, 0, 0);
+    }
+
+    PercentileSketch(double relativeAccuracy, long[] counts, int offset, long zeroCount) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("relativeAccuracy must be between 0 and 1, exclusive. Found " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.counts = counts;
+        this.offset = offset;
+        this.zeroCount = zeroCount;
+
+        long total = zeroCount;
+        for (long count : counts) {
+            total += count;
+        }
+        this.totalCount = total;
+    }
+
+    /**
+     * @param digitsOfPrecision Significant decimal digits, as configured for high dynamic range histograms.
+     * @return A relative accuracy of one part in {@code 10^digitsOfPrecision}.
+     */
+    static double relativeAccuracy(int digitsOfPrecision) {
+        return Math.pow(10, -Math.max(digitsOfPrecision, 1));
+    }
+
+    void record(double value) {
+        if (value < MIN_INDEXABLE_VALUE) {
+            zeroCount++;
+        } else {
+            int index = index(value);
+            ensureCapacity(index);
+            counts[index - offset]++;
+        }
+        totalCount++;
+    }
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private void ensureCapacity(int index) {
+        if (counts.length == 0) {
+            counts = new long[1 + 2 * GROWTH_SLACK];
+            offset = index - GROWTH_SLACK;
+        } else if (index < offset) {
+            int newOffset = index - GROWTH_SLACK;
+            long[] grown = new long[counts.length + offset - newOffset];
+            System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+            counts = grown;
+            offset = newOffset;
+        } else if (index >= offset + counts.length) {
+            counts = Arrays.copyOf(counts, index - offset + 1 + GROWTH_SLACK);
+        }
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     * @return The value at the percentile, or 0 if nothing has been recorded.
+     */
+    double valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        double rank = Math.min(Math.max(percentile, 0), 100) / 100 * (totalCount - 1);
+        long cumulativeCount = zeroCount;
+        if (cumulativeCount > rank) {
+            return 0;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            cumulativeCount += counts[i];
+            if (cumulativeCount > rank) {
+                return value(offset + i);
+            }
+        }
+        return value(offset + counts.length - 1);
+    }
+
+    /**
+     * @param value A histogram bucket.
+     * @return The number of samples in buckets less than or equal to the value.
+     */
+    double countAtValue(double value) {
+        long count = zeroCount;
+        if (value >= MIN_INDEXABLE_VALUE) {
+            int last = Math.min(index(value) - offset, counts.length - 1);
+            for (int i = 0; i <= last; i++) {
+                count += counts[i];
+            }
+        }
+        return count;
+    }
+
+    void reset() {
+        // keep the counts array, since samples in the next window are likely to land in the same buckets
+        Arrays.fill(counts, 0);
+        zeroCount = 0;
+        totalCount = 0;
+    }
+
+    /**
+     * @param other A sketch with the same relative accuracy.
+     * @throws IllegalArgumentException if the relative accuracies differ.
+     */
+    void add(PercentileSketch other) {
+        if (Double.compare(relativeAccuracy, other.relativeAccuracy) != 0) {
+            throw new IllegalArgumentException("Sketches with different relative accuracies cannot be merged");
+        }
+        if (other.counts.length > 0) {
+            ensureCapacity(other.offset);
+            ensureCapacity(other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+        zeroCount += other.zeroCount;
+        totalCount += other.totalCount;
+    }
+
+    PercentileSketch copy() {
+        return new PercentileSketch(relativeAccuracy, counts.clone(), offset, zeroCount);
+    }
+
+    double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    long[] getCounts() {
+        return counts;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    long getZeroCount() {
+        return zeroCount;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An array of counters that may be split into stripes, so that threads incrementing the same counter at the same
+ * time usually write to different cache lines. Each stripe holds every counter, laid out contiguously and padded
+ * from its neighbouring stripes, and a thread's stripe is chosen by its id. Reading a counter sums it over all
+ * stripes.
+ */
+final class StripedLongArray {
+    /**
+     * Longs of padding between stripes, enough to keep two stripes off of the same 64 byte cache line even with the
+     * adjacent line prefetching done by many CPUs.
+     */
+    private static final int PADDING = 16;
+
+    private static final int MAX_STRIPES = 64;
+
+    private final int length;
+    private final int stride;
+    private final int stripeMask;
+    private final AtomicLongArray counts;
+
+    /**
+     * @param length  The number of counters.
+     * @param striped Whether to split counters into one stripe per available processor (up to 64), rounded up to a
+     *                power of two. Otherwise there is a single stripe without padding.
+     */
+    StripedLongArray(int length, boolean striped) {
+        this(length, striped ? Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES) : 1);
+    }
+
+    /**
+     * @param length     The number of counters.
+     * @param minStripes The number of stripes, rounded up to a power of two.
+     */
+    StripedLongArray(int length, int minStripes) {
+        this.length = length;
+
+        int stripes = 1;
+        while (stripes < minStripes) {
+            stripes <<= 1;
+        }
+
+        this.stride = stripes == 1 ? length : length + PADDING;
+        this.stripeMask = stripes - 1;
+        this.counts = new AtomicLongArray(stripes == 1 ? length : PADDING + stripes * stride);
+    }
+
+    void increment(int index) {
+        if (stripeMask == 0) {
+            counts.incrementAndGet(index);
+        } else {
+            int stripe = (int) Thread.currentThread().getId() & stripeMask;
+            counts.incrementAndGet(PADDING + stripe * stride + index);
+        }
+    }
+
+    long get(int index) {
+        if (stripeMask == 0) {
+            return counts.get(index);
+        }
+
+        long sum = 0;
+        for (int offset = PADDING + index; offset < counts.length(); offset += stride) {
+            sum += counts.get(offset);
+        }
+        return sum;
+    }
+
+    int length() {
+        return length;
+    }
+
+    int stripes() {
+        return stripeMask + 1;
+    }
+}
@@ -16,6 +16,7 @@
 package io.micrometer.core.instrument.distribution;
 
 import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.lang.Nullable;
 
 import java.io.PrintStream;
 import java.util.Arrays;
@@ -28,6 +29,18 @@ import java.util.concurrent.atomic.AtomicLong;
  * A histogram implementation that does not support precomputed percentiles but supports
  * aggregable percentile histograms and SLA boundaries. There is no need for a high dynamic range
  * histogram and its more expensive memory footprint if all we are interested in is fixed histogram counts.
+ * <p>
+ * By default, each sample checks whether the ring buffer is due to rotate and is then recorded into every
+ * bucket of the ring buffer. When constructed with {@code rotateOnRecord} disabled, samples are instead recorded
+ * into a single array of cumulative counts without reading the clock, and the ring buffer holds the cumulative
+ * counts observed at each rotation. Windowed counts are the difference between the current cumulative counts and
+ * those of the oldest rotation. Because rotation then only happens when a snapshot is taken, samples recorded
+ * since the previous snapshot are attributed to the most recent rotation, so a window can extend past
+ * {@link DistributionStatisticConfig#getExpiry()} by up to the time between snapshots.
+ * <p>
+ * Histograms configured with {@link DistributionStatisticConfig#isStripedHistogram()} use this mode by default and
+ * split the cumulative counts into stripes, so that threads recording the same popular bucket at the same time
+ * don't contend on a single cache line.
  *
  * @author Jon Schneider
  * @since 1.0.3
@@ -36,7 +49,47 @@ public class TimeWindowFixedBoundaryHistogram
         extends AbstractTimeWindowHistogram<TimeWindowFixedBoundaryHistogram.FixedBoundaryHistogram, Void> {
     private final long[] buckets;
 
+    /**
+     * When the buckets include percentile histogram buckets, where to start looking for a sample's bucket, indexed by
+     * the position of the sample's percentile bucket relative to {@link #firstPercentileIndex}. Otherwise null, and
+     * samples are located by binary search.
+     */
+    @Nullable
+    private final int[] scanStarts;
+    private final int firstPercentileIndex;
+
+    /**
+     * Cumulative counts per bucket, or {@code null} when samples rotate the ring buffer and are recorded into each
+     * of its buckets.
+     */
+    @Nullable
+    private final StripedLongArray cumulativeCounts;
+
+    /**
+     * The cumulative counts read by the most recent snapshot.
+     */
+    private volatile long[] observedCounts;
+
+    /**
+     * The (non-cumulative) counts of each bucket in the window, as captured by the most recent snapshot.
+     */
+    private volatile long[] windowCounts;
+
     public TimeWindowFixedBoundaryHistogram(Clock clock, DistributionStatisticConfig config, boolean supportsAggregablePercentiles) {
+        this(clock, config, supportsAggregablePercentiles, !Boolean.TRUE.equals(config.isStripedHistogram()));
+    }
+
+    /**
+     * @param clock                         The clock used to rotate the ring buffer.
+     * @param config                        The distribution configuration.
+     * @param supportsAggregablePercentiles Whether to add the percentile histogram buckets.
+     * @param rotateOnRecord                Whether each sample checks for rotation and is recorded into every
+     *                                      bucket of the ring buffer. When {@code false}, samples are recorded into
+     *                                      a single array of cumulative counts and windowed counts are derived when
+     *                                      snapshots are taken, striped if the configuration says so.
+     */
+    public TimeWindowFixedBoundaryHistogram(Clock clock, DistributionStatisticConfig config, boolean supportsAggregablePercentiles,
+                                            boolean rotateOnRecord) {
         super(clock, config, FixedBoundaryHistogram.class, supportsAggregablePercentiles);
 
         NavigableSet<Long> histogramBuckets = distributionStatisticConfig.getHistogramBuckets(supportsAggregablePercentiles);
@@ -47,9 +100,58 @@ public class TimeWindowFixedBoundaryHistogram
         }
 
         this.buckets = histogramBuckets.stream().filter(Objects::nonNull).mapToLong(Long::longValue).toArray();
+
+        if (percentileHistogram != null && percentileHistogram && buckets.length > 0) {
+            // a sample falls between two consecutive percentile buckets, and only SLA boundaries and the minimum or
+            // maximum expected value can lie between them, so finding its bucket rarely takes more than one comparison
+            this.firstPercentileIndex = PercentileHistogramBuckets.indexOf(buckets[0]);
+            int lastPercentileIndex = PercentileHistogramBuckets.indexOf(buckets[buckets.length - 1]);
+            this.scanStarts = new int[lastPercentileIndex - firstPercentileIndex + 1];
+            int start = 0;
+            for (int i = 0; i < scanStarts.length; i++) {
+                int percentileIndex = firstPercentileIndex + i;
+                if (percentileIndex > 0) {
+                    long previous = PercentileHistogramBuckets.get(percentileIndex - 1);
+                    while (start < buckets.length && buckets[start] <= previous) {
+                        start++;
+                    }
+                }
+                scanStarts[i] = start;
+            }
+        } else {
+            this.firstPercentileIndex = 0;
+            this.scanStarts = null;
+        }
+
+        this.cumulativeCounts = rotateOnRecord ? null : new StripedLongArray(buckets.length,
+                Boolean.TRUE.equals(distributionStatisticConfig.isStripedHistogram()));
+        this.observedCounts = new long[buckets.length];
+        this.windowCounts = new long[buckets.length];
         initRingBuffer();
     }
 
+    @Override
+    public void recordLong(long value) {
+        if (cumulativeCounts == null) {
+            super.recordLong(value);
+            return;
+        }
+
+        int index = currentHistogram().leastLessThanOrEqualTo(value);
+        if (index > -1)
+            cumulativeCounts.increment(index);
+    }
+
+    @Override
+    public void recordDouble(double value) {
+        if (cumulativeCounts == null) {
+            super.recordDouble(value);
+            return;
+        }
+
+        recordLong((long) Math.ceil(value));
+    }
+
     @Override
     FixedBoundaryHistogram newBucket() {
         return new FixedBoundaryHistogram();
@@ -67,7 +169,29 @@ public class TimeWindowFixedBoundaryHistogram
 
     @Override
     void resetBucket(FixedBoundaryHistogram bucket) {
-        bucket.reset();
+        if (cumulativeCounts == null) {
+            bucket.reset();
+        } else {
+            // the bucket now marks the cumulative counts at this rotation, as best known
+            bucket.mark(observedCounts);
+        }
+    }
+
+    @Override
+    void capture() {
+        if (cumulativeCounts != null) {
+            long[] observed = new long[buckets.length];
+            for (int i = 0; i < observed.length; i++) {
+                observed[i] = cumulativeCounts.get(i);
+            }
+            observedCounts = observed;
+        }
+
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = bucketCount(i);
+        }
+        windowCounts = counts;
     }
 
     @Override
@@ -91,7 +215,28 @@ public class TimeWindowFixedBoundaryHistogram
 
     @Override
     double countAtValue(long value) {
-        return currentHistogram().countAtValue(value);
+        int index = Arrays.binarySearch(buckets, value);
+        if (index < 0)
+            return 0;
+        long[] counts = windowCounts;
+        long count = 0;
+        for (int i = 0; i <= index; i++)
+            count += counts[i];
+        return count;
+    }
+
+    @Override
+    MergeableHistogramSnapshot mergeableSnapshot(long count, double total, double max) {
+        return new MergeableHistogramSnapshot(count, total, max, buckets.clone(), windowCounts.clone());
+    }
+
+    /**
+     * @param i The index of a bucket.
+     * @return The (non-cumulative) count of the bucket in the current window.
+     */
+    private long bucketCount(int i) {
+        long count = currentHistogram().values[i].get();
+        return cumulativeCounts == null ? count : observedCounts[i] - count;
     }
 
     @Override
@@ -100,10 +245,11 @@ public class TimeWindowFixedBoundaryHistogram
 
         String bucketFormatString = "%14.1f %10d\n";
 
+        long[] counts = windowCounts;
         for (int i = 0; i < buckets.length; i++) {
             printStream.format(Locale.US, bucketFormatString,
                     buckets[i] / bucketScaling,
-                    currentHistogram().values[i].get());
+                    counts[i]);
         }
 
         printStream.write('\n');
@@ -112,7 +258,8 @@ public class TimeWindowFixedBoundaryHistogram
     class FixedBoundaryHistogram {
         /**
          * For recording efficiency, this is a normal histogram. We turn these values into
-         * cumulative counts only on calls to {@link #countAtValue(long)}.
+         * cumulative counts only on calls to {@link #countAtValue(long)}. When samples don't rotate
+         * the ring buffer, these are instead the cumulative counts at the bucket's last rotation.
          */
         final AtomicLong[] values;
 
@@ -122,20 +269,15 @@ public class TimeWindowFixedBoundaryHistogram
                 values[i] = new AtomicLong(0);
         }
 
-        long countAtValue(long value) {
-            int index = Arrays.binarySearch(buckets, value);
-            if (index < 0)
-                return 0;
-            long count = 0;
-            for (int i = 0; i <= index; i++)
-                count += values[i].get();
-            return count;
-        }
-
         void reset() {
             for (AtomicLong value : values) value.set(0);
         }
 
+        void mark(long[] cumulativeCounts) {
+            for (int i = 0; i < values.length; i++)
+                values[i].set(cumulativeCounts[i]);
+        }
+
         void record(long value) {
             int index = leastLessThanOrEqualTo(value);
             if (index > -1)
@@ -143,9 +285,31 @@ public class TimeWindowFixedBoundaryHistogram
         }
 
         /**
-         * The least bucket that is less than or equal to a sample.
+         * The least bucket that is greater than or equal to a sample, or -1 if the sample is greater than every bucket.
          */
         int leastLessThanOrEqualTo(long key) {
+            if (scanStarts == null) {
+                return binarySearch(key);
+            }
+
+            int i = PercentileHistogramBuckets.indexOf(key) - firstPercentileIndex;
+            if (i < 0) {
+                // the sample is no greater than the percentile bucket preceding the first bucket
+                return 0;
+            }
+            if (i >= scanStarts.length) {
+                // the sample is greater than the percentile bucket at or after the last bucket
+                return -1;
+            }
+
+            int index = scanStarts[i];
+            while (index < buckets.length && buckets[index] < key) {
+                index++;
+            }
+            return index < buckets.length ? index : -1;
+        }
+
+        int binarySearch(long key) {
             int low = 0;
             int high = buckets.length - 1;
 
@@ -159,7 +323,7 @@ public class TimeWindowFixedBoundaryHistogram
                     return mid; // exact match
             }
 
-            return low >= buckets.length - 1 ? -1 : low;
+            return low < buckets.length ? low : -1;
         }
     }
 }
\ No newline at end of file
@@ -19,27 +19,39 @@ import io.micrometer.core.instrument.Clock;
 import io.micrometer.core.instrument.util.TimeUtils;
 
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An implementation of a decaying maximum for a distribution based on a configurable ring buffer.
+ * <p>
+ * Samples are recorded into a single maximum without reading the clock, which usually takes a single read since most
+ * samples don't exceed it. Each poll swaps it for a spare, rotates the ring buffer, and folds the samples recorded
+ * since the previous poll into the current slot. So a sample counts as recorded when it is first polled, and can be
+ * reported for up to the time between polls past the expiry.
  *
  * @author Jon Schneider
  */
 public class TimeWindowMax {
-    @SuppressWarnings("rawtypes")
-    private static final AtomicIntegerFieldUpdater<TimeWindowMax> rotatingUpdater =
-            AtomicIntegerFieldUpdater.newUpdater(TimeWindowMax.class, "rotating");
-
     private final Clock clock;
     private final long durationBetweenRotatesMillis;
-    private AtomicLong[] ringBuffer;
+
+    /**
+     * The maximum of each slot of the ring buffer, as of the last poll. Guarded by this.
+     */
+    private final long[] ringBuffer;
     private int currentBucket;
-    private volatile long lastRotateTimestampMillis;
+    private long lastRotateTimestampMillis;
 
-    @SuppressWarnings({"unused", "FieldCanBeLocal"})
-    private volatile int rotating = 0; // 0 - not rotating, 1 - rotating
+    /**
+     * The maximum of the samples recorded since the last poll.
+     */
+    private volatile AtomicLong recording = new AtomicLong();
+
+    /**
+     * Swapped for {@link #recording} by each poll. A sample recorded into it just after it was swapped out is polled
+     * the next time it is swapped out. Guarded by this.
+     */
+    private AtomicLong spare = new AtomicLong();
 
     @SuppressWarnings("ConstantConditions")
     public TimeWindowMax(Clock clock, DistributionStatisticConfig config) {
@@ -51,11 +63,7 @@ public class TimeWindowMax {
         this.durationBetweenRotatesMillis = rotateFrequencyMillis;
         this.lastRotateTimestampMillis = clock.wallTime();
         this.currentBucket = 0;
-
-        this.ringBuffer = new AtomicLong[bufferLength];
-        for (int i = 0; i < bufferLength; i++) {
-            this.ringBuffer[i] = new AtomicLong();
-        }
+        this.ringBuffer = new long[bufferLength];
     }
 
     /**
@@ -65,11 +73,7 @@ public class TimeWindowMax {
      * @param timeUnit The unit of time of the incoming sample.
      */
     public void record(double sample, TimeUnit timeUnit) {
-        rotate();
-        final long sampleNanos = (long) TimeUtils.convert(sample, timeUnit, TimeUnit.NANOSECONDS);
-        for (AtomicLong max : ringBuffer) {
-            updateMax(max, sampleNanos);
-        }
+        updateMax(recording, (long) TimeUtils.convert(sample, timeUnit, TimeUnit.NANOSECONDS));
     }
 
     /**
@@ -77,20 +81,14 @@ public class TimeWindowMax {
      * @return A max scaled to the base unit of time. For use by timer implementations.
      */
     public double poll(TimeUnit timeUnit) {
-        rotate();
-        synchronized (this) {
-            return TimeUtils.nanosToUnit(ringBuffer[currentBucket].get(), timeUnit);
-        }
+        return TimeUtils.nanosToUnit(pollMax(), timeUnit);
     }
 
     /**
      * @return An unscaled max. For use by distribution summary implementations.
      */
     public double poll() {
-        rotate();
-        synchronized (this) {
-            return Double.longBitsToDouble(ringBuffer[currentBucket].get());
-        }
+        return Double.longBitsToDouble(pollMax());
     }
 
     /**
@@ -99,11 +97,8 @@ public class TimeWindowMax {
      * @param sample The value to record.
      */
     public void record(double sample) {
-        rotate();
-        long sampleLong = Double.doubleToLongBits(sample);
-        for (AtomicLong max : ringBuffer) {
-            updateMax(max, sampleLong);
-        }
+        // the bits of non-negative doubles order the same way as the doubles themselves
+        updateMax(recording, Double.doubleToLongBits(sample));
     }
 
     private void updateMax(AtomicLong max, long sample) {
@@ -114,32 +109,34 @@ public class TimeWindowMax {
         }
     }
 
-    private void rotate() {
-        long timeSinceLastRotateMillis = clock.wallTime() - lastRotateTimestampMillis;
-        if (timeSinceLastRotateMillis < durationBetweenRotatesMillis) {
-            // Need to wait more for next rotation.
-            return;
+    private synchronized long pollMax() {
+        rotate();
+
+        AtomicLong recorded = recording;
+        recording = spare;
+        spare = recorded;
+        ringBuffer[currentBucket] = Math.max(ringBuffer[currentBucket], recorded.getAndSet(0));
+
+        long max = 0;
+        for (long bucket : ringBuffer) {
+            max = Math.max(max, bucket);
         }
+        return max;
+    }
 
-        if (!rotatingUpdater.compareAndSet(this, 0, 1)) {
-            // Being rotated by other thread already.
+    private void rotate() {
+        long rotations = (clock.wallTime() - lastRotateTimestampMillis) / durationBetweenRotatesMillis;
+        if (rotations <= 0) {
+            // Need to wait more for next rotation.
             return;
         }
+        lastRotateTimestampMillis += rotations * durationBetweenRotatesMillis;
 
-        try {
-            int iterations = 0;
-            synchronized (this) {
-                do {
-                    ringBuffer[currentBucket].set(0);
-                    if (++currentBucket >= ringBuffer.length) {
-                        currentBucket = 0;
-                    }
-                    timeSinceLastRotateMillis -= durationBetweenRotatesMillis;
-                    lastRotateTimestampMillis += durationBetweenRotatesMillis;
-                } while (timeSinceLastRotateMillis >= durationBetweenRotatesMillis && ++iterations < ringBuffer.length);
+        for (long i = Math.min(rotations, ringBuffer.length); i > 0; i--) {
+            if (++currentBucket >= ringBuffer.length) {
+                currentBucket = 0;
             }
-        } finally {
-            rotating = 0;
+            ringBuffer[currentBucket] = 0;
         }
     }
 }
@@ -85,6 +85,11 @@ public class TimeWindowPercentileHistogram extends AbstractTimeWindowHistogram<D
         return accumulatedHistogram().getCountBetweenValues(0, value);
     }
 
+    @Override
+    MergeableHistogramSnapshot mergeableSnapshot(long count, double total, double max) {
+        return new MergeableHistogramSnapshot(count, total, max, monitoredBuckets(), accumulatedHistogram().copy());
+    }
+
     private int percentilePrecision(DistributionStatisticConfig config) {
         return config.getPercentilePrecision() == null ? 1 : config.getPercentilePrecision();
     }
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution;
+
+import io.micrometer.core.instrument.Clock;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * A histogram implementation that computes percentiles from a compact sketch of logarithmically sized buckets rather
+ * than a high dynamic range histogram. Percentiles are within one part in {@code 10^percentilePrecision} of the true
+ * value. A sketch only holds counts for the range of values actually recorded, so it typically takes a few hundred
+ * bytes per ring buffer slot where {@link TimeWindowPercentileHistogram} takes several kilobytes, at the cost of a
+ * short lock per slot when recording. Snapshots copy the current slot and compute percentiles from the copy.
+ */
+public class TimeWindowSketchHistogram extends AbstractTimeWindowHistogram<PercentileSketch, Void> {
+
+    /**
+     * The current slot, as captured by the most recent snapshot.
+     */
+    private volatile PercentileSketch captured;
+
+    public TimeWindowSketchHistogram(Clock clock, DistributionStatisticConfig distributionStatisticConfig,
+                                     boolean supportsAggregablePercentiles) {
+        super(clock, distributionStatisticConfig, PercentileSketch.class, supportsAggregablePercentiles);
+        initRingBuffer();
+        this.captured = newBucket();
+    }
+
+    @Override
+    PercentileSketch newBucket() {
+        Integer precision = distributionStatisticConfig.getPercentilePrecision();
+        return new PercentileSketch(PercentileSketch.relativeAccuracy(precision == null ? 1 : precision));
+    }
+
+    @Override
+    void recordLong(PercentileSketch bucket, long value) {
+        recordDouble(bucket, value);
+    }
+
+    @Override
+    void recordDouble(PercentileSketch bucket, double value) {
+        synchronized (bucket) {
+            bucket.record(value);
+        }
+    }
+
+    @Override
+    void resetBucket(PercentileSketch bucket) {
+        synchronized (bucket) {
+            bucket.reset();
+        }
+    }
+
+    @Override
+    Void newAccumulatedHistogram(PercentileSketch[] ringBuffer) {
+        return null;
+    }
+
+    @Override
+    void accumulate() {
+        // do nothing -- percentiles are read directly from the current bucket
+    }
+
+    @Override
+    void resetAccumulatedHistogram() {
+    }
+
+    @Override
+    void capture() {
+        PercentileSketch current = currentHistogram();
+        synchronized (current) {
+            captured = current.copy();
+        }
+    }
+
+    @Override
+    double valueAtPercentile(double percentile) {
+        return captured.valueAtPercentile(percentile);
+    }
+
+    @Override
+    double countAtValue(long value) {
+        return captured.countAtValue(value);
+    }
+
+    @Override
+    MergeableHistogramSnapshot mergeableSnapshot(long count, double total, double max) {
+        return new MergeableHistogramSnapshot(count, total, max, monitoredBuckets(), captured.copy());
+    }
+
+    @Override
+    void outputSummary(PrintStream out, double bucketScaling) {
+        out.format("%14s %10s\n\n", "Value", "Percentile");
+        for (double percentile : new double[]{50, 75, 90, 95, 99, 99.9, 100}) {
+            out.format(Locale.US, "%14.1f %10.3f\n", valueAtPercentile(percentile) / bucketScaling, percentile / 100);
+        }
+        out.write('\n');
+    }
+}
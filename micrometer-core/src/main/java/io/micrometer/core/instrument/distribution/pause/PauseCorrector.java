@@ -0,0 +1,213 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution.pause;
+
+import io.micrometer.core.lang.Nullable;
+import org.LatencyUtils.PauseDetectorListener;
+import org.LatencyUtils.SimplePauseDetector;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Compensates the timers sharing a {@link PauseDetector} for coordinated omission. When a pause is detected, each
+ * timer records the samples it would likely have recorded had it not been paused, given the interval between its
+ * recent samples.
+ * <p>
+ * A pause is only noted here rather than dispatched to every timer. Each timer applies the pauses it hasn't yet seen,
+ * as a batch, the next time it records a sample or is snapshotted, so that a pause costs the same however many
+ * timers there are, and timers that are no longer used never pay for it. A timer that falls more than
+ * {@value #PENDING_PAUSES} pauses behind skips the oldest.
+ * <p>
+ * The same recent pauses are left out of each timer's estimate of the interval between its samples, as LatencyUtils'
+ * pause-aware interval estimator does, so a pause is corrected with the same synthetic samples as when every timer
+ * listened to the detector itself.
+ * <p>
+ * Timers are corrected when their pause detector, as configured on the timer's builder or on the registry, is a
+ * {@link ClockDriftPauseDetector}. Timers configured with the same detector share a corrector.
+ */
+public class PauseCorrector implements PauseDetectorListener {
+    private static final Map<PauseDetector, PauseCorrector> correctors = new ConcurrentHashMap<>();
+
+    /**
+     * As many pauses as LatencyUtils' pause-aware interval estimator keeps track of.
+     */
+    static final int PENDING_PAUSES = 32;
+
+    /**
+     * The most recent pauses. Replaced, under this, on every pause.
+     */
+    private volatile Pauses recentPauses = new Pauses(0, new long[0], new long[0]);
+
+    private final LongAdder syntheticSamples = new LongAdder();
+
+    /**
+     * @param pauseDetector Detects the pauses to correct for.
+     */
+    PauseCorrector(org.LatencyUtils.PauseDetector pauseDetector) {
+        pauseDetector.addListener(this);
+    }
+
+    /**
+     * @param pauseDetector A pause detector configuration.
+     * @return The corrector shared by timers configured with the pause detector, or {@code null} if it doesn't
+     * detect pauses.
+     */
+    @Nullable
+    public static PauseCorrector forDetector(PauseDetector pauseDetector) {
+        if (!(pauseDetector instanceof ClockDriftPauseDetector)) {
+            return null;
+        }
+
+        return correctors.computeIfAbsent(pauseDetector, detector -> {
+            ClockDriftPauseDetector clockDriftPauseDetector = (ClockDriftPauseDetector) detector;
+            return new PauseCorrector(new SimplePauseDetector(clockDriftPauseDetector.getSleepInterval().toNanos(),
+                    clockDriftPauseDetector.getPauseThreshold().toNanos(), 1, false));
+        });
+    }
+
+    @Override
+    public synchronized void handlePauseEvent(long pauseLength, long pauseEndTime) {
+        recentPauses = recentPauses.add(pauseEndTime - pauseLength, pauseLength);
+    }
+
+    /**
+     * @return The number of pauses detected.
+     */
+    public long pauses() {
+        return recentPauses.end();
+    }
+
+    /**
+     * @return The number of samples recorded by timers to compensate for pauses.
+     */
+    public long syntheticSamples() {
+        return syntheticSamples.sum();
+    }
+
+    /**
+     * @param recorder Records a synthetic sample, in nanoseconds, into the timer.
+     * @return The correction of a new timer, which only applies pauses detected from now on.
+     */
+    public Correction newCorrection(LongConsumer recorder) {
+        return new Correction(recorder);
+    }
+
+    public final class Correction {
+        private final PauseExcludingIntervalEstimator intervalEstimator = new PauseExcludingIntervalEstimator();
+        private final LongConsumer recorder;
+
+        /**
+         * The first pause detected after the timer was created.
+         */
+        private final long firstPause = recentPauses.end();
+        private volatile long appliedPauses = firstPause;
+
+        private Correction(LongConsumer recorder) {
+            this.recorder = recorder;
+        }
+
+        /**
+         * Applies any pauses not yet seen, then notes that the timer recorded a sample.
+         *
+         * @param monotonicTime The time the sample was recorded, in nanoseconds.
+         */
+        public void recordInterval(long monotonicTime) {
+            apply();
+            intervalEstimator.recordInterval(monotonicTime);
+        }
+
+        /**
+         * Applies any pauses not yet seen.
+         */
+        public void apply() {
+            if (appliedPauses == recentPauses.end()) {
+                return;
+            }
+
+            synchronized (this) {
+                Pauses pauses = recentPauses;
+                // pauses detected before the timer was created are not part of its window
+                int from = (int) Math.max(0, firstPause - pauses.first);
+                for (long pause = Math.max(appliedPauses, pauses.first + from); pause < pauses.end(); pause++) {
+                    int i = (int) (pause - pauses.first);
+                    // each pause is corrected as it was when it was detected, knowing only of the pauses before it
+                    long pauseEndTime = pauses.startTimes[i] + pauses.lengths[i];
+                    correct(pauses.lengths[i], intervalEstimator.getEstimatedInterval(pauseEndTime,
+                            pauses.startTimes, pauses.lengths, from, i + 1));
+                }
+                appliedPauses = pauses.end();
+            }
+        }
+
+        private void correct(long pauseLength, long estimatedInterval) {
+            long observedLatencyMinbar = pauseLength - estimatedInterval;
+            if (observedLatencyMinbar < estimatedInterval) {
+                return;
+            }
+
+            recorder.accept(observedLatencyMinbar);
+            long samples = 1;
+            if (estimatedInterval > 0) {
+                for (long missingValue = observedLatencyMinbar - estimatedInterval;
+                     missingValue >= estimatedInterval;
+                     missingValue -= estimatedInterval) {
+                    recorder.accept(missingValue);
+                    samples++;
+                }
+            }
+            syntheticSamples.add(samples);
+        }
+    }
+
+    /**
+     * The start times and lengths of up to {@link #PENDING_PAUSES} consecutive pauses, oldest first.
+     */
+    private static final class Pauses {
+        /**
+         * The sequence number of the oldest pause.
+         */
+        final long first;
+        final long[] startTimes;
+        final long[] lengths;
+
+        Pauses(long first, long[] startTimes, long[] lengths) {
+            this.first = first;
+            this.startTimes = startTimes;
+            this.lengths = lengths;
+        }
+
+        /**
+         * @return The sequence number the next pause will have.
+         */
+        long end() {
+            return first + lengths.length;
+        }
+
+        Pauses add(long startTime, long length) {
+            int kept = Math.min(lengths.length, PENDING_PAUSES - 1);
+            long[] newStartTimes = new long[kept + 1];
+            long[] newLengths = new long[kept + 1];
+            System.arraycopy(startTimes, startTimes.length - kept, newStartTimes, 0, kept);
+            System.arraycopy(lengths, lengths.length - kept, newLengths, 0, kept);
+            newStartTimes[kept] = startTime;
+            newLengths[kept] = length;
+            return new Pauses(end() + 1 - (kept + 1), newStartTimes, newLengths);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution.pause;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A moving average of the interval between a timer's samples, over its most recent {@value #WINDOW_LENGTH} samples
+ * that fall within a time cap, with the time spent in pauses left out. This is the estimate LatencyUtils'
+ * {@link org.LatencyUtils.TimeCappedMovingAverageIntervalEstimator} makes when given a pause detector, except that
+ * the pauses are passed in by the caller rather than each estimator listening to the detector for them.
+ */
+class PauseExcludingIntervalEstimator {
+    static final int WINDOW_LENGTH = 128;
+    private static final int WINDOW_MASK = WINDOW_LENGTH - 1;
+    static final long TIME_CAP = 10000000000L;
+
+    private final long[] intervalEndTimes = new long[WINDOW_LENGTH];
+    private final AtomicLong count = new AtomicLong();
+
+    PauseExcludingIntervalEstimator() {
+        Arrays.fill(intervalEndTimes, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param when The time a sample was recorded, in nanoseconds.
+     */
+    void recordInterval(long when) {
+        intervalEndTimes[(int) (count.getAndIncrement() & WINDOW_MASK)] = when;
+    }
+
+    /**
+     * @param when            The time to estimate the interval at, in nanoseconds.
+     * @param pauseStartTimes The start times of recent pauses, oldest first.
+     * @param pauseLengths    The lengths of those pauses.
+     * @param from            The index of the first pause detected since the estimator was created.
+     * @param to              One past the index of the last pause detected by {@code when}.
+     * @return The estimated interval between samples, or {@link Long#MAX_VALUE} if there are too few samples in
+     * the window to estimate it.
+     */
+    long getEstimatedInterval(long when, long[] pauseStartTimes, long[] pauseLengths, int from, int to) {
+        while (true) {
+            long initialCount = count.get();
+            if (initialCount < WINDOW_LENGTH) {
+                return Long.MAX_VALUE;
+            }
+            int oldest = (int) (initialCount & WINDOW_MASK);
+
+            // pauses that started before the oldest sample in the window are never part of it
+            int first = from;
+            while (first < to && pauseStartTimes[first] < intervalEndTimes[oldest]) {
+                first++;
+            }
+
+            // the time cap is extended by the remaining pauses, dropping those that started before the time cap
+            long timeCap = TIME_CAP;
+            for (int i = first; i < to; i++) {
+                timeCap += pauseLengths[i];
+            }
+            int outside = positionsOutsideOfTimeCap(oldest, when - timeCap);
+            for (int i = first; i < to; i++) {
+                long earliest = outside == WINDOW_LENGTH ? Long.MAX_VALUE : intervalEndTimes[(oldest + outside) & WINDOW_MASK];
+                if (pauseStartTimes[i] >= Math.max(when - timeCap, earliest)) {
+                    break;
+                }
+                timeCap -= pauseLengths[i];
+                outside = positionsOutsideOfTimeCap(oldest, when - timeCap);
+            }
+            if (outside == WINDOW_LENGTH) {
+                return Long.MAX_VALUE;
+            }
+
+            long earliest = intervalEndTimes[(oldest + outside) & WINDOW_MASK];
+            long latest = intervalEndTimes[(oldest + WINDOW_LENGTH - 1) & WINDOW_MASK];
+            long windowTimeSpan = Math.max(latest, when) - earliest;
+            if (count.get() != initialCount || windowTimeSpan < 0) {
+                // a sample was recorded while estimating
+                continue;
+            }
+
+            int positionDelta = WINDOW_LENGTH - outside - 1;
+            if (positionDelta <= 0) {
+                return Long.MAX_VALUE;
+            }
+            long averageInterval = (windowTimeSpan - (timeCap - TIME_CAP)) / positionDelta;
+            return averageInterval > 0 ? averageInterval : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return The number of samples in the window, oldest first, that were recorded before the start of the time cap.
+     */
+    private int positionsOutsideOfTimeCap(int oldest, long timeCapStartTime) {
+        if (intervalEndTimes[oldest] >= timeCapStartTime) {
+            return 0;
+        }
+        int low = 0;
+        int high = WINDOW_LENGTH;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (intervalEndTimes[(oldest + mid) & WINDOW_MASK] < timeCapStartTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
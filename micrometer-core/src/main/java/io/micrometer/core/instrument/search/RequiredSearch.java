@@ -69,6 +69,7 @@ public final class RequiredSearch {
      */
     public RequiredSearch name(Predicate<String> nameMatches) {
         this.nameMatches = nameMatches;
+        this.exactNameMatch = null;
         return this;
     }
 
@@ -228,8 +229,9 @@ public final class RequiredSearch {
     }
 
     private Stream<Meter> meterStream() {
-        Stream<Meter> meterStream = registry.getMeters().stream()
-                .filter(m -> nameMatches == null || nameMatches.test(m.getId().getName()));
+        Stream<Meter> meterStream = exactNameMatch != null ?
+                registry.getMeters(exactNameMatch).stream() :
+                registry.getMeters().stream().filter(m -> nameMatches == null || nameMatches.test(m.getId().getName()));
 
         if (!requiredTags.isEmpty() || !requiredTagKeys.isEmpty()) {
             meterStream = meterStream.filter(m -> {
@@ -35,6 +35,9 @@ public final class Search {
     private final MeterRegistry registry;
     private final List<Tag> tags = new ArrayList<>();
     private Predicate<String> nameMatches = n -> true;
+
+    @Nullable
+    private String exactNameMatch;
     private final Set<String> requiredTagKeys = new HashSet<>();
 
     private Search(MeterRegistry registry) {
@@ -48,7 +51,9 @@ public final class Search {
      * @return This search.
      */
     public Search name(String exactName) {
-        return name(n -> n.equals(exactName));
+        this.nameMatches = n -> n.equals(exactName);
+        this.exactNameMatch = exactName;
+        return this;
     }
 
     /**
@@ -58,8 +63,10 @@ public final class Search {
      * @return This search.
      */
     public Search name(@Nullable Predicate<String> nameMatches) {
-        if(nameMatches != null)
+        if(nameMatches != null) {
             this.nameMatches = nameMatches;
+            this.exactNameMatch = null;
+        }
         return this;
     }
 
@@ -195,7 +202,9 @@ public final class Search {
     }
 
     private Stream<Meter> meterStream() {
-        Stream<Meter> meterStream = registry.getMeters().stream().filter(m -> nameMatches.test(m.getId().getName()));
+        Stream<Meter> meterStream = exactNameMatch != null ?
+                registry.getMeters(exactNameMatch).stream() :
+                registry.getMeters().stream().filter(m -> nameMatches.test(m.getId().getName()));
 
         if (!tags.isEmpty() || !requiredTagKeys.isEmpty()) {
             meterStream = meterStream.filter(m -> {
@@ -129,6 +129,12 @@ public class SimpleMeterRegistry extends MeterRegistry {
         return new CumulativeFunctionCounter<>(id, obj, countFunction);
     }
 
+    @Override
+    protected boolean recordedDuringStep(double count, double previousCount) {
+        // in step mode, counts only cover the last complete step
+        return config.mode() == CountingMode.STEP ? count > 0 : count != previousCount;
+    }
+
     @Override
     protected TimeUnit getBaseTimeUnit() {
         return TimeUnit.SECONDS;
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.step;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.lang.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Publishes batches of meters by serializing them on a pool of worker threads and handing each payload to a bounded
+ * pool of sender threads as soon as it is ready, so that serialization of one batch overlaps with the requests for
+ * others. Batches that have not been sent when the publish deadline passes are abandoned rather than delaying the
+ * next publish. Worker threads are created on demand and time out when idle, so a publisher costs no threads between
+ * publishes.
+ */
+public class BatchPublisher implements AutoCloseable {
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private final ThreadPoolExecutor serializers;
+    private final ThreadPoolExecutor senders;
+
+    /**
+     * @param threads       The number of threads serializing batches, which is also the maximum number of batches
+     *                      sent at once.
+     * @param threadFactory The factory for worker threads.
+     */
+    public BatchPublisher(int threads, ThreadFactory threadFactory) {
+        this(threads, threads, threadFactory);
+    }
+
+    /**
+     * @param serializerThreads  The number of threads serializing batches.
+     * @param maxConcurrentSends The maximum number of batches sent at once.
+     * @param threadFactory      The factory for worker threads.
+     */
+    public BatchPublisher(int serializerThreads, int maxConcurrentSends, ThreadFactory threadFactory) {
+        this.serializers = newPool(serializerThreads, threadFactory);
+        this.senders = newPool(maxConcurrentSends, threadFactory);
+    }
+
+    private static ThreadPoolExecutor newPool(int threads, ThreadFactory threadFactory) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("at least one thread is required");
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Serializes and sends every batch, returning once all of them have been sent or the deadline has passed.
+     * Failures to serialize or send a batch don't affect the others.
+     *
+     * @param batches    The batches to publish.
+     * @param serializer Serializes a batch into a payload, or returns {@code null} if the batch has nothing to send.
+     * @param sender     Sends a serialized batch to the backend.
+     * @param deadline   How long to wait for the batches to be sent.
+     * @param <T>        The type of serialized payloads.
+     * @return The outcome of the publish.
+     */
+    public <T> Result publish(List<List<Meter>> batches, Function<List<Meter>, T> serializer, Sender<T> sender,
+                              Duration deadline) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+
+        AtomicBoolean expired = new AtomicBoolean();
+        AtomicInteger completed = new AtomicInteger();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+
+        List<CompletableFuture<Void>> published = new ArrayList<>(batches.size());
+        for (List<Meter> batch : batches) {
+            published.add(CompletableFuture
+                    .supplyAsync(() -> expired.get() ? null : new Payload<>(serializer.apply(batch)), serializers)
+                    .thenAcceptAsync(payload -> {
+                        if (payload == null || expired.get()) {
+                            return;
+                        }
+                        if (payload.value != null) {
+                            try {
+                                sender.send(batch, payload.value);
+                            } catch (Exception e) {
+                                throw new CompletionException(e);
+                            }
+                        }
+                        completed.incrementAndGet();
+                    }, senders)
+                    .whenComplete((ignored, t) -> {
+                        if (t != null) {
+                            failures.add(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+                        }
+                    }));
+        }
+
+        try {
+            CompletableFuture.allOf(published.toArray(new CompletableFuture<?>[0]))
+                    .get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ignored) {
+            // recorded as a failure of the batch that caused it
+        } catch (TimeoutException e) {
+            expired.set(true);
+        } catch (InterruptedException e) {
+            expired.set(true);
+            Thread.currentThread().interrupt();
+        }
+
+        List<Throwable> failed;
+        synchronized (failures) {
+            failed = new ArrayList<>(failures);
+        }
+        int sent = completed.get();
+        return new Result(sent, failed, Math.max(0, batches.size() - sent - failed.size()));
+    }
+
+    @Override
+    public void close() {
+        serializers.shutdown();
+        senders.shutdown();
+    }
+
+    /**
+     * Sends a serialized batch of meters to a backend.
+     *
+     * @param <T> The type of serialized payloads.
+     */
+    @FunctionalInterface
+    public interface Sender<T> {
+        /**
+         * @param batch   The meters in the batch.
+         * @param payload The serialized batch.
+         * @throws Exception If the batch could not be sent.
+         */
+        void send(List<Meter> batch, T payload) throws Exception;
+    }
+
+    /**
+     * The outcome of a publish.
+     */
+    public static final class Result {
+        private final int sent;
+        private final List<Throwable> failures;
+        private final int abandoned;
+
+        Result(int sent, List<Throwable> failures, int abandoned) {
+            this.sent = sent;
+            this.failures = Collections.unmodifiableList(failures);
+            this.abandoned = abandoned;
+        }
+
+        /**
+         * @return The number of batches that were sent, or that had nothing to send.
+         */
+        public int sent() {
+            return sent;
+        }
+
+        /**
+         * @return The errors from batches that failed to serialize or send.
+         */
+        public List<Throwable> failures() {
+            return failures;
+        }
+
+        /**
+         * @return The number of batches that were not sent by the deadline.
+         */
+        public int abandoned() {
+            return abandoned;
+        }
+    }
+
+    /**
+     * Distinguishes a batch with nothing to send from one skipped because the deadline passed.
+     */
+    private static final class Payload<T> {
+        @Nullable
+        final T value;
+
+        Payload(@Nullable T value) {
+            this.value = value;
+        }
+    }
+}
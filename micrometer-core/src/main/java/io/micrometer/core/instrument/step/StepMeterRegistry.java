@@ -22,12 +22,22 @@ import io.micrometer.core.instrument.distribution.pause.PauseDetector;
 import io.micrometer.core.instrument.internal.DefaultGauge;
 import io.micrometer.core.instrument.internal.DefaultLongTaskTimer;
 import io.micrometer.core.instrument.internal.DefaultMeter;
+import io.micrometer.core.instrument.util.MeterPartition;
+import io.micrometer.core.ipc.http.DiskSpool;
+import io.micrometer.core.ipc.http.HttpSender;
+import io.micrometer.core.ipc.http.HttpUrlConnectionSender;
+import io.micrometer.core.ipc.http.RetryingHttpSender;
 import io.micrometer.core.lang.Nullable;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.ToDoubleFunction;
 import java.util.function.ToLongFunction;
 
@@ -42,6 +52,11 @@ public abstract class StepMeterRegistry extends MeterRegistry {
     @Nullable
     private ScheduledExecutorService scheduledExecutorService;
 
+    private ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+    @Nullable
+    private BatchPublisher batchPublisher;
+
     public StepMeterRegistry(StepRegistryConfig config, Clock clock) {
         super(clock);
         this.config = config;
@@ -55,6 +70,8 @@ public abstract class StepMeterRegistry extends MeterRegistry {
         if (scheduledExecutorService != null)
             stop();
 
+        this.threadFactory = threadFactory;
+
         if (config.enabled()) {
             scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(threadFactory);
             scheduledExecutorService.scheduleAtFixedRate(this::publish, config.step()
@@ -67,6 +84,7 @@ public abstract class StepMeterRegistry extends MeterRegistry {
             scheduledExecutorService.shutdown();
             scheduledExecutorService = null;
         }
+        closeBatchPublisher();
     }
 
     @Override
@@ -78,6 +96,76 @@ public abstract class StepMeterRegistry extends MeterRegistry {
 
     protected abstract void publish();
 
+    /**
+     * Serializes and sends every meter in batches of {@link StepRegistryConfig#batchSize()}, returning once all of
+     * them have been sent or {@link StepRegistryConfig#publishDeadline()} has passed.
+     *
+     * @param serializer Serializes a batch into a payload, or returns {@code null} if the batch has nothing to send.
+     * @param sender     Sends a serialized batch to the backend.
+     * @param <T>        The type of serialized payloads.
+     * @return The outcome of the publish.
+     */
+    protected <T> BatchPublisher.Result publishBatches(Function<List<Meter>, T> serializer, BatchPublisher.Sender<T> sender) {
+        return batchPublisher().publish(MeterPartition.partition(this, config.batchSize()), serializer, sender,
+                config.publishDeadline());
+    }
+
+    /**
+     * @param config The registry's configuration.
+     * @return The sender that HTTP-based registries use unless given another, which retries and spools failed
+     * requests as configured. A request spends at most half of {@link StepRegistryConfig#publishDeadline()} backing
+     * off, so that retrying one batch leaves time to send the others. The registry is responsible for closing it.
+     */
+    protected static HttpSender defaultHttpSender(StepRegistryConfig config) {
+        HttpSender sender = new HttpUrlConnectionSender(config.connectTimeout(), config.readTimeout());
+
+        DiskSpool spool = null;
+        String spoolDirectory = config.spoolDirectory();
+        if (spoolDirectory != null) {
+            try {
+                spool = new DiskSpool(Paths.get(spoolDirectory, config.prefix()), config.spoolMaxBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to open the spool directory '" + spoolDirectory + "'", e);
+            }
+        }
+
+        return config.maxRetries() > 0 || spool != null ?
+                new RetryingHttpSender(sender, config.maxRetries(), config.retryBackoff(),
+                        config.publishDeadline().dividedBy(2), spool) :
+                sender;
+    }
+
+    /**
+     * @param threadFactory The factory for the publisher's worker threads.
+     * @return The publisher used by {@link #publishBatches(Function, BatchPublisher.Sender)}. Override to plug in a
+     * different one.
+     */
+    protected BatchPublisher newBatchPublisher(ThreadFactory threadFactory) {
+        return new BatchPublisher(config.numThreads(), threadFactory);
+    }
+
+    private synchronized BatchPublisher batchPublisher() {
+        if (batchPublisher == null) {
+            batchPublisher = newBatchPublisher(threadFactory);
+        }
+        return batchPublisher;
+    }
+
+    private synchronized void closeBatchPublisher() {
+        if (batchPublisher != null) {
+            batchPublisher.close();
+            batchPublisher = null;
+        }
+    }
+
+    /**
+     * Counts reported by step meters only cover the last complete step, so any non-zero count is a recording.
+     */
+    @Override
+    protected boolean recordedDuringStep(double count, double previousCount) {
+        return count > 0;
+    }
+
     @Override
     protected <T> Gauge newGauge(Meter.Id id, @Nullable T obj, ToDoubleFunction<T> valueFunction) {
         return new DefaultGauge<>(id, obj, valueFunction);
@@ -16,6 +16,7 @@
 package io.micrometer.core.instrument.step;
 
 import io.micrometer.core.instrument.config.MeterRegistryConfig;
+import io.micrometer.core.lang.Nullable;
 
 import java.time.Duration;
 
@@ -43,8 +44,8 @@ public interface StepRegistryConfig extends MeterRegistryConfig {
     }
 
     /**
-     * @return The number of threads to use with the scheduler. The default is
-     * 2 threads.
+     * @return The number of threads used to serialize batches of measurements, which is also the
+     * maximum number of requests sent to the backend at once. The default is 2 threads.
      */
     default int numThreads() {
         String v = get(prefix() + ".numThreads");
@@ -78,4 +79,51 @@ public interface StepRegistryConfig extends MeterRegistryConfig {
         String v = get(prefix() + ".batchSize");
         return v == null ? 10000 : Integer.parseInt(v);
     }
+
+    /**
+     * @return How long a publish may take before batches that have not yet been sent are abandoned. The
+     * default is the step size, so that a slow backend doesn't cause publishes to pile up.
+     */
+    default Duration publishDeadline() {
+        String v = get(prefix() + ".publishDeadline");
+        return v == null ? step() : Duration.parse(v);
+    }
+
+    /**
+     * @return The number of times to retry a request that failed with a network error or a response indicating the
+     * backend is temporarily unavailable. Retries happen within the publish, so they stop once a request has spent
+     * half of {@link #publishDeadline()} backing off. The default is 0.
+     */
+    default int maxRetries() {
+        String v = get(prefix() + ".maxRetries");
+        return v == null ? 0 : Integer.parseInt(v);
+    }
+
+    /**
+     * @return The delay before the first retry of a failed request, which doubles with each further retry. The
+     * default is 1 second.
+     */
+    default Duration retryBackoff() {
+        String v = get(prefix() + ".retryBackoff");
+        return v == null ? Duration.ofSeconds(1) : Duration.parse(v);
+    }
+
+    /**
+     * @return A directory in which to keep requests that failed every retry, so that they can be sent once the
+     * backend recovers. Each registry spools to a subdirectory named after its prefix. The default is {@code null},
+     * in which case failed requests are dropped.
+     */
+    @Nullable
+    default String spoolDirectory() {
+        return get(prefix() + ".spoolDirectory");
+    }
+
+    /**
+     * @return The maximum number of bytes of failed requests to keep in the spool directory, beyond which the oldest
+     * are deleted. The default is 64 MiB.
+     */
+    default long spoolMaxBytes() {
+        String v = get(prefix() + ".spoolMaxBytes");
+        return v == null ? 64 * 1024 * 1024 : Long.parseLong(v);
+    }
 }
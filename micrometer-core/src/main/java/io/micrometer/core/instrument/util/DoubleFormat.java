@@ -71,6 +71,51 @@ public class DoubleFormat {
         return DECIMAL_OR_NAN.get().format(d);
     }
 
+    /**
+     * Appends the same representation as {@link #decimalOrNan(double)}, without going through a {@link NumberFormat}
+     * or allocating when the number is exact to six decimal places.
+     *
+     * @param sb Destination of the formatted number.
+     * @param d  Number to format.
+     * @return The destination.
+     */
+    public static StringBuilder appendDecimalOrNan(StringBuilder sb, double d) {
+        double scaled = d * 1e6;
+
+        // The product is correctly rounded, so while it is well short of 2^53 an integral product means that d lies
+        // within a tiny fraction of a millionth of it, and the formatter would round to exactly that value. Negative
+        // zero is left to the formatter, which writes it as "-0".
+        if (scaled == Math.rint(scaled) && Math.abs(scaled) < 1e15 && Double.doubleToRawLongBits(d) != Long.MIN_VALUE) {
+            long units = (long) scaled;
+            if (units < 0) {
+                sb.append('-');
+                units = -units;
+            }
+
+            sb.append(units / 1_000_000);
+
+            int fraction = (int) (units % 1_000_000);
+            if (fraction != 0) {
+                int digits = 6;
+                while (fraction % 10 == 0) {
+                    fraction /= 10;
+                    digits--;
+                }
+
+                sb.append('.');
+                for (int place = POWERS_OF_TEN[digits - 1]; place > fraction; place /= 10) {
+                    sb.append('0');
+                }
+                sb.append(fraction);
+            }
+            return sb;
+        }
+
+        return sb.append(decimalOrNan(d));
+    }
+
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000};
+
     /**
      * @param d Number to format.
      * @return A stringified version of the number that only uses a decimal representation if the number is not
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.util;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.NamingConvention;
+import io.micrometer.core.lang.Nullable;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Holds what a registry has derived from each meter's id for its wire format, such as the name and tags rendered
+ * with the registry's naming convention, so that they are computed once per meter rather than on every publish.
+ * A meter can have an encoding for each series it is published as, for example one per statistic. Encodings are
+ * dropped when their meter is removed from the registry, and recomputed when the registry's naming convention
+ * changes. A meter removed while it is being published can have its encodings added back by the publish, in which
+ * case they are dropped when the cache next holds more meters than the registry.
+ *
+ * @param <T> The type of an encoding.
+ */
+public class MeterEncodingCache<T> {
+    private static final Object METER = new Object();
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<Meter.Id, Encodings<T>> encodings = new ConcurrentHashMap<>();
+
+    public MeterEncodingCache(MeterRegistry registry) {
+        this.registry = registry;
+        registry.config().onMeterRemoved(meter -> encodings.remove(meter.getId()));
+    }
+
+    /**
+     * @param id      The id of a registered meter.
+     * @param encoder Encodes the meter with a naming convention, when it hasn't already been encoded with it.
+     * @return The meter's encoding for the registry's current naming convention.
+     */
+    public T get(Meter.Id id, Function<NamingConvention, T> encoder) {
+        return get(id, null, encoder);
+    }
+
+    /**
+     * @param id      The id of a registered meter.
+     * @param series  Distinguishes one of the series the meter is published as, such as a statistic or a name
+     *                suffix. Encodings of the same meter must use keys that are equal only for the same series.
+     * @param encoder Encodes the series with a naming convention, when it hasn't already been encoded with it.
+     * @return The series' encoding for the registry's current naming convention.
+     */
+    public T get(Meter.Id id, @Nullable Object series, Function<NamingConvention, T> encoder) {
+        NamingConvention convention = registry.config().namingConvention();
+
+        Encodings<T> meterEncodings = encodings.get(id);
+        if (meterEncodings == null || meterEncodings.convention != convention) {
+            meterEncodings = encodings.compute(id, (k, existing) -> existing == null || existing.convention != convention ?
+                    new Encodings<>(convention) : existing);
+            if (encodings.size() > registry.getMeters().size()) {
+                dropRemovedMeters();
+            }
+        }
+
+        Object key = series == null ? METER : series;
+        T encoded = meterEncodings.series.get(key);
+        if (encoded == null) {
+            encoded = encoder.apply(convention);
+            T existing = meterEncodings.series.putIfAbsent(key, encoded);
+            if (existing != null) {
+                encoded = existing;
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Drops the encodings of meters that were removed from the registry while they were being encoded.
+     */
+    private void dropRemovedMeters() {
+        Set<Meter.Id> registered = new HashSet<>();
+        for (Meter meter : registry.getMeters()) {
+            registered.add(meter.getId());
+        }
+        encodings.keySet().retainAll(registered);
+    }
+
+    /**
+     * @return The number of meters with encodings.
+     */
+    public int size() {
+        return encodings.size();
+    }
+
+    private static class Encodings<T> {
+        final NamingConvention convention;
+        final ConcurrentMap<Object, T> series = new ConcurrentHashMap<>(4);
+
+        Encodings(NamingConvention convention) {
+            this.convention = convention;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.ipc.http;
+
+import io.micrometer.core.lang.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A bounded, first-in first-out queue of records kept in memory-mapped segment files, so that records survive a
+ * restart of the application. Once the segments take up the maximum number of bytes, the oldest segment is deleted
+ * to make room for new records, so during a long outage the most recent records are kept.
+ * <p>
+ * Within a segment, each record is preceded by its length. The length is written after the record, so that a record
+ * only becomes visible once it is complete, and is negated once the record has been removed, so that a spool reopened
+ * after a restart resumes where it left off. A length of zero marks the end of the records in a segment.
+ * <p>
+ * A spool holds a lock on its directory until it is closed, so that two spools, in this process or another, can't
+ * share segment files.
+ */
+public class DiskSpool implements Closeable {
+    private static final String SUFFIX = ".spool";
+    private static final String LOCK_FILE = ".lock";
+    private static final int MIN_SEGMENT_BYTES = 64 * 1024;
+    private static final int MAX_SEGMENT_BYTES = 16 * 1024 * 1024;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    /**
+     * Oldest first. The last segment is the one being written to.
+     */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private long nextSegmentId;
+    private long evictedRecords;
+    private boolean closed;
+
+    /**
+     * @param directory The directory holding the segment files, which is created if it doesn't exist.
+     * @param maxBytes  The maximum number of bytes taken up by segment files. Segments are an eighth of this size, so
+     *                  records must be smaller than that.
+     * @throws IOException If the directory or its segments could not be opened.
+     */
+    public DiskSpool(Path directory, long maxBytes) throws IOException {
+        this(directory, maxBytes, (int) Math.max(MIN_SEGMENT_BYTES, Math.min(MAX_SEGMENT_BYTES, maxBytes / 8)));
+    }
+
+    /**
+     * @param directory    The directory holding the segment files, which is created if it doesn't exist.
+     * @param maxBytes     The maximum number of bytes taken up by segment files.
+     * @param segmentBytes The size of each segment file, which bounds the size of a record.
+     * @throws IOException If the directory or its segments could not be opened, or another spool has the directory
+     *                     open.
+     */
+    public DiskSpool(Path directory, long maxBytes, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        // one segment is being written to, so there must be at least one other holding complete records
+        this.maxSegments = (int) Math.max(2, maxBytes / segmentBytes);
+
+        Files.createDirectories(directory);
+
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another spool in this process
+            acquired = null;
+        }
+        if (acquired == null) {
+            lockChannel.close();
+            throw new IOException("The spool directory '" + directory + "' is in use by another spool");
+        }
+        this.lock = acquired;
+
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            files.forEach(existing::add);
+        }
+        existing.sort(null);
+        for (Path file : existing) {
+            Segment segment = new Segment(file, segmentId(file));
+            if (segment.records == 0 && segment.writePosition > 0) {
+                // fully consumed
+                segment.delete();
+            } else {
+                segments.addLast(segment);
+            }
+            nextSegmentId = Math.max(nextSegmentId, segment.id + 1);
+        }
+    }
+
+    private static long segmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Appends a record, evicting the oldest segment if the spool is full.
+     *
+     * @param record The record to append.
+     * @return {@code false} if the record is larger than a segment or the spool is closed, and the record was not
+     * appended.
+     */
+    public synchronized boolean offer(byte[] record) {
+        int required = record.length + 4;
+        // leave room for the end marker
+        if (closed || required + 4 > segmentBytes) {
+            return false;
+        }
+
+        try {
+            Segment tail = segments.peekLast();
+            if (tail == null || tail.writePosition + required + 4 > segmentBytes) {
+                if (segments.size() >= maxSegments) {
+                    Segment oldest = segments.removeFirst();
+                    evictedRecords += oldest.records;
+                    oldest.delete();
+                }
+                tail = new Segment(directory.resolve(String.format("%020d%s", nextSegmentId, SUFFIX)), nextSegmentId++);
+                segments.addLast(tail);
+            }
+            tail.append(record);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The oldest record, or {@code null} if the spool is empty.
+     */
+    @Nullable
+    public synchronized Record peek() {
+        if (closed) {
+            return null;
+        }
+        Segment head = head();
+        return head == null ? null : new Record(head.id, head.readPosition, head.read());
+    }
+
+    /**
+     * Removes a record previously returned by {@link #peek()}, if it is still the oldest record. It is not when
+     * another thread has removed it already, or when its segment was evicted to make room for newer records in the
+     * meantime.
+     *
+     * @param record The record to remove.
+     * @return {@code true} if the record was removed.
+     */
+    public synchronized boolean remove(Record record) {
+        Segment head = closed ? null : head();
+        if (head == null || head.id != record.segmentId || head.readPosition != record.position) {
+            return false;
+        }
+
+        head.consume();
+        if (head.records == 0 && head != segments.peekLast()) {
+            segments.removeFirst();
+            head.delete();
+        }
+        return true;
+    }
+
+    @Nullable
+    private Segment head() {
+        Segment head = segments.peekFirst();
+        while (head != null && head.records == 0 && head != segments.peekLast()) {
+            segments.removeFirst();
+            head.delete();
+            head = segments.peekFirst();
+        }
+        return head == null || head.records == 0 ? null : head;
+    }
+
+    /**
+     * @return The number of records in the spool.
+     */
+    public synchronized long size() {
+        if (closed) {
+            return 0;
+        }
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.records;
+        }
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return The number of records that were deleted to make room for newer ones.
+     */
+    public synchronized long evicted() {
+        return evictedRecords;
+    }
+
+    /**
+     * Flushes the segments to disk and releases the lock on the directory. Once closed, the spool accepts no more
+     * records and appears empty.
+     *
+     * @throws IOException If the lock on the directory could not be released.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        try {
+            lock.release();
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    /**
+     * A record as it was when peeked, and where it was in the spool.
+     */
+    public static final class Record {
+        private final long segmentId;
+        private final int position;
+        private final byte[] bytes;
+
+        private Record(long segmentId, int position, byte[] bytes) {
+            this.segmentId = segmentId;
+            this.position = position;
+            this.bytes = bytes;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    private class Segment {
+        final Path file;
+        final long id;
+        final MappedByteBuffer buffer;
+
+        /**
+         * The position of the length of the oldest record that hasn't been removed.
+         */
+        int readPosition;
+
+        int writePosition;
+
+        int records;
+
+        Segment(Path file, long id) throws IOException {
+            this.file = file;
+            this.id = id;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                // the mapping remains valid once the channel is closed
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            }
+
+            int position = 0;
+            int firstUnread = -1;
+            while (position + 4 <= segmentBytes) {
+                int length = buffer.getInt(position);
+                if (length == 0) {
+                    break;
+                }
+                if (length > 0) {
+                    records++;
+                    if (firstUnread < 0) {
+                        firstUnread = position;
+                    }
+                }
+                position += 4 + Math.abs(length);
+            }
+            this.writePosition = position;
+            this.readPosition = firstUnread < 0 ? position : firstUnread;
+        }
+
+        void append(byte[] record) {
+            int position = writePosition;
+            ByteBuffer slot = buffer.duplicate();
+            slot.position(position + 4);
+            slot.put(record);
+            buffer.putInt(position, record.length);
+            writePosition = position + 4 + record.length;
+            records++;
+        }
+
+        byte[] read() {
+            int length = buffer.getInt(readPosition);
+            byte[] record = new byte[length];
+            ByteBuffer slot = buffer.duplicate();
+            slot.position(readPosition + 4);
+            slot.get(record);
+            return record;
+        }
+
+        void consume() {
+            int length = buffer.getInt(readPosition);
+            buffer.putInt(readPosition, -length);
+            readPosition += 4 + length;
+            records--;
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // an orphaned segment holds no records, and is deleted when the spool is next opened
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.ipc.http;
+
+import io.micrometer.core.instrument.util.StringUtils;
+import io.micrometer.core.lang.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Sends requests to the HTTP APIs of monitoring systems, so that push registries don't each manage their own
+ * connections. Implementations are expected to reuse connections across requests, so that sending a batch doesn't
+ * cost a new connection and TLS handshake.
+ * <p>
+ * A registry closes its sender when the registry is closed.
+ */
+public interface HttpSender extends Closeable {
+    Response send(Request request) throws IOException;
+
+    /**
+     * Releases resources held by the sender. The default does nothing.
+     *
+     * @throws IOException If the resources could not be released.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+
+    default Request.Builder get(String uri) {
+        return newRequest(uri).withMethod(Method.GET);
+    }
+
+    default Request.Builder head(String uri) {
+        return newRequest(uri).withMethod(Method.HEAD);
+    }
+
+    default Request.Builder post(String uri) {
+        return newRequest(uri).withMethod(Method.POST);
+    }
+
+    default Request.Builder put(String uri) {
+        return newRequest(uri).withMethod(Method.PUT);
+    }
+
+    default Request.Builder newRequest(String uri) {
+        return new Request.Builder(uri, this);
+    }
+
+    enum Method {
+        GET, HEAD, POST, PUT
+    }
+
+    /**
+     * Writes a request body. Bodies are written straight to the connection rather than built up in memory first, and
+     * are written again each time a request is retried.
+     */
+    @FunctionalInterface
+    interface Body {
+        /**
+         * @param out The stream to write the body to. Implementations must not close it.
+         * @throws IOException If the body could not be written.
+         */
+        void writeTo(OutputStream out) throws IOException;
+
+        /**
+         * @return The length of the body in bytes, or -1 if it isn't known until it is written, in which case the
+         * body is sent with chunked transfer encoding.
+         */
+        default long contentLength() {
+            return -1;
+        }
+
+        static Body of(byte[] content) {
+            return new Body() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    out.write(content);
+                }
+
+                @Override
+                public long contentLength() {
+                    return content.length;
+                }
+            };
+        }
+    }
+
+    class Request {
+        private final URL url;
+        private final Method method;
+        private final Map<String, String> headers;
+
+        @Nullable
+        private final Body body;
+
+        private final boolean compressed;
+
+        Request(URL url, Method method, Map<String, String> headers, @Nullable Body body, boolean compressed) {
+            this.url = url;
+            this.method = method;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.body = body;
+            this.compressed = compressed;
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        /**
+         * @return Request headers, including the content type of the body.
+         */
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        @Nullable
+        public Body getBody() {
+            return body;
+        }
+
+        /**
+         * @return Whether the body should be gzipped as it is written.
+         */
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        public static class Builder {
+            private final String uri;
+            private final HttpSender sender;
+            private Method method = Method.GET;
+            private final Map<String, String> headers = new LinkedHashMap<>();
+
+            @Nullable
+            private Body body;
+
+            private boolean compressed;
+
+            Builder(String uri, HttpSender sender) {
+                this.uri = uri;
+                this.sender = sender;
+            }
+
+            public Builder withMethod(Method method) {
+                this.method = method;
+                return this;
+            }
+
+            public Builder withHeader(String name, String value) {
+                headers.put(name, value);
+                return this;
+            }
+
+            /**
+             * Authenticates the request with HTTP basic authentication, unless either the user name or password is blank.
+             */
+            public Builder withBasicAuthentication(@Nullable String user, @Nullable String password) {
+                if (StringUtils.isNotBlank(user) && StringUtils.isNotBlank(password)) {
+                    String encoded = Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+                    withHeader("Authorization", "Basic " + encoded);
+                }
+                return this;
+            }
+
+            public Builder withContent(String contentType, Body body) {
+                withHeader("Content-Type", contentType);
+                this.body = body;
+                return this;
+            }
+
+            public Builder withContent(String contentType, byte[] content) {
+                return withContent(contentType, Body.of(content));
+            }
+
+            public Builder withContent(String contentType, String content) {
+                return withContent(contentType, content.getBytes(StandardCharsets.UTF_8));
+            }
+
+            public Builder withJsonContent(String content) {
+                return withContent("application/json", content);
+            }
+
+            public Builder withPlainText(String content) {
+                return withContent("text/plain", content);
+            }
+
+            /**
+             * Gzips the body as it is written, and marks the request as such.
+             */
+            public Builder compress() {
+                return compressWhen(true);
+            }
+
+            public Builder compressWhen(boolean compress) {
+                this.compressed = compress;
+                if (compress) {
+                    withHeader("Content-Encoding", "gzip");
+                } else {
+                    headers.remove("Content-Encoding");
+                }
+                return this;
+            }
+
+            public Request build() {
+                try {
+                    return new Request(new URL(uri), method, new LinkedHashMap<>(headers), body, compressed);
+                } catch (MalformedURLException e) {
+                    throw new IllegalArgumentException("Malformed URL '" + uri + "'", e);
+                }
+            }
+
+            public Response send() throws IOException {
+                return sender.send(build());
+            }
+        }
+    }
+
+    class Response {
+        private final int code;
+        private final String body;
+
+        public Response(int code, @Nullable String body) {
+            this.code = code;
+            this.body = body == null ? "" : body;
+        }
+
+        public int code() {
+            return code;
+        }
+
+        /**
+         * @return The response body, or the error body for unsuccessful requests. Empty if there was none.
+         */
+        public String body() {
+            return body;
+        }
+
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+
+        public Response onSuccess(Consumer<Response> onSuccess) {
+            if (isSuccessful()) {
+                onSuccess.accept(this);
+            }
+            return this;
+        }
+
+        public Response onError(Consumer<Response> onError) {
+            if (!isSuccessful()) {
+                onError.accept(this);
+            }
+            return this;
+        }
+    }
+}
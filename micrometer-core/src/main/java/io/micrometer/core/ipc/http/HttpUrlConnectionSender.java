@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.ipc.http;
+
+import io.micrometer.core.lang.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The default {@link HttpSender}, built on {@link HttpURLConnection}. Rather than disconnecting after each request,
+ * it reads each response to the end and closes it, which returns the connection to the JDK's keep-alive cache so that
+ * the next request to the same host reuses it without a new TCP or TLS handshake. The number of idle connections kept
+ * per host is governed by the {@code http.maxConnections} system property, which defaults to 5.
+ */
+public class HttpUrlConnectionSender implements HttpSender {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    public HttpUrlConnectionSender(Duration connectTimeout, Duration readTimeout) {
+        this.connectTimeoutMs = (int) connectTimeout.toMillis();
+        this.readTimeoutMs = (int) readTimeout.toMillis();
+    }
+
+    public HttpUrlConnectionSender() {
+        this(Duration.ofSeconds(1), Duration.ofSeconds(10));
+    }
+
+    @Override
+    public Response send(Request request) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) request.getUrl().openConnection();
+        try {
+            con.setConnectTimeout(connectTimeoutMs);
+            con.setReadTimeout(readTimeoutMs);
+            con.setRequestMethod(request.getMethod().name());
+            con.setUseCaches(false);
+            request.getHeaders().forEach(con::setRequestProperty);
+
+            Body body = request.getBody();
+            if (body != null) {
+                con.setDoOutput(true);
+
+                // stream the body rather than letting the connection buffer it to learn its length
+                long length = request.isCompressed() ? -1 : body.contentLength();
+                if (length >= 0) {
+                    con.setFixedLengthStreamingMode(length);
+                } else {
+                    con.setChunkedStreamingMode(0);
+                }
+
+                try (OutputStream os = con.getOutputStream()) {
+                    if (request.isCompressed()) {
+                        GZIPOutputStream gz = new GZIPOutputStream(os, BUFFER_SIZE);
+                        body.writeTo(gz);
+                        gz.finish();
+                    } else {
+                        body.writeTo(os);
+                    }
+                }
+            }
+
+            int status = con.getResponseCode();
+            InputStream responseBody;
+            try {
+                responseBody = con.getInputStream();
+            } catch (IOException e) {
+                responseBody = con.getErrorStream();
+            }
+            return new Response(status, readFully(responseBody));
+        } catch (IOException e) {
+            // the connection may be in any state, so don't let it be reused
+            con.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Reading the response to the end and closing it is what allows the connection to be reused.
+     */
+    private static String readFully(@Nullable InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
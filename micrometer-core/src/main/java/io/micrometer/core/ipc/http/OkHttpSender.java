@@ -0,0 +1,102 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.ipc.http;
+
+import io.micrometer.core.lang.Nullable;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An {@link HttpSender} built on OkHttp, for applications that already tune an {@link OkHttpClient}'s connection pool,
+ * TLS configuration or interceptors and want metrics to be published through it.
+ */
+public class OkHttpSender implements HttpSender {
+    private final OkHttpClient client;
+
+    public OkHttpSender(OkHttpClient client) {
+        this.client = client;
+    }
+
+    public OkHttpSender() {
+        this(new OkHttpClient());
+    }
+
+    @Override
+    public Response send(Request request) throws IOException {
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder().url(request.getUrl());
+        request.getHeaders().forEach(builder::header);
+
+        Body body = request.getBody();
+        RequestBody requestBody = null;
+        if (body != null) {
+            requestBody = new StreamingRequestBody(MediaType.parse(request.getHeaders().getOrDefault("Content-Type", "")),
+                    body, request.isCompressed());
+        } else if (request.getMethod() == Method.POST || request.getMethod() == Method.PUT) {
+            requestBody = RequestBody.create(null, new byte[0]);
+        }
+        builder.method(request.getMethod().name(), requestBody);
+
+        try (okhttp3.Response response = client.newCall(builder.build()).execute()) {
+            ResponseBody responseBody = response.body();
+            return new Response(response.code(), responseBody == null ? null : responseBody.string());
+        }
+    }
+
+    private static class StreamingRequestBody extends RequestBody {
+        @Nullable
+        private final MediaType contentType;
+        private final Body body;
+        private final boolean compressed;
+
+        StreamingRequestBody(@Nullable MediaType contentType, Body body, boolean compressed) {
+            this.contentType = contentType;
+            this.body = body;
+            this.compressed = compressed;
+        }
+
+        @Override
+        @Nullable
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return compressed ? -1 : body.contentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // OkHttp owns the sink, so the stream is finished and flushed but not closed
+            OutputStream out = sink.outputStream();
+            if (compressed) {
+                GZIPOutputStream gz = new GZIPOutputStream(out);
+                body.writeTo(gz);
+                gz.finish();
+            } else {
+                body.writeTo(out);
+            }
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.ipc.http;
+
+import io.micrometer.core.lang.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decorates an {@link HttpSender} to retry requests that fail with a network error or with a response suggesting the
+ * backend is temporarily unavailable (408, 429 and 5xx), backing off exponentially between attempts. Requests that
+ * still fail are optionally written to a {@link DiskSpool}, and replayed oldest first once later requests succeed.
+ * <p>
+ * Retries and replays happen on the thread sending the request, so both are bounded: a request stops being retried
+ * once backing off again would exceed the maximum retry time, and each successful request replays at most one
+ * spooled request. The spool therefore drains at the rate requests are sent, without holding up any one of them for
+ * long.
+ * <p>
+ * Request bodies are written again for each attempt. Spooled requests include their URL and headers, which may hold
+ * credentials, so the spool directory should be readable only by the application.
+ */
+public class RetryingHttpSender implements HttpSender {
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Caps the exponential backoff at 64 times the initial backoff.
+     */
+    private static final int MAX_BACKOFF_DOUBLINGS = 6;
+
+    private final HttpSender delegate;
+    private final int maxRetries;
+    private final Duration backoff;
+    private final long maxRetryNanos;
+
+    @Nullable
+    private final DiskSpool spool;
+
+    /**
+     * Held while replaying spooled requests, so that concurrent senders don't replay the same request.
+     */
+    private final ReentrantLock replayLock = new ReentrantLock();
+
+    /**
+     * @param delegate   The sender to retry requests with.
+     * @param maxRetries The number of times to retry a failed request.
+     * @param backoff    The delay before the first retry, which doubles with each further retry.
+     */
+    public RetryingHttpSender(HttpSender delegate, int maxRetries, Duration backoff) {
+        this(delegate, maxRetries, backoff, Duration.ofNanos(Long.MAX_VALUE), null);
+    }
+
+    /**
+     * @param delegate     The sender to retry requests with.
+     * @param maxRetries   The number of times to retry a failed request.
+     * @param backoff      The delay before the first retry, which doubles with each further retry.
+     * @param maxRetryTime How long a request may spend backing off between retries in total.
+     * @param spool        Where to keep requests that failed every attempt until the backend recovers, or
+     *                     {@code null} to drop them. The spool is closed with this sender.
+     */
+    public RetryingHttpSender(HttpSender delegate, int maxRetries, Duration backoff, Duration maxRetryTime,
+                              @Nullable DiskSpool spool) {
+        this.delegate = delegate;
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.maxRetryNanos = maxRetryTime.toNanos();
+        this.spool = spool;
+    }
+
+    @Override
+    public Response send(Request request) throws IOException {
+        Response response;
+        try {
+            response = sendWithRetries(request);
+        } catch (IOException e) {
+            spool(request);
+            throw e;
+        }
+
+        if (isRetryable(response)) {
+            spool(request);
+        } else if (response.isSuccessful()) {
+            replaySpooled();
+        }
+        return response;
+    }
+
+    private Response sendWithRetries(Request request) throws IOException {
+        long start = System.nanoTime();
+        for (int attempt = 0; ; attempt++) {
+            boolean lastAttempt = attempt >= maxRetries;
+            try {
+                Response response = delegate.send(request);
+                if (!isRetryable(response) || lastAttempt || !backOff(attempt, start)) {
+                    return response;
+                }
+            } catch (IOException e) {
+                if (lastAttempt || !backOff(attempt, start)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param start When the first attempt was made.
+     * @return {@code false} if backing off would exceed the maximum retry time, or if interrupted while backing off.
+     */
+    private boolean backOff(int attempt, long start) {
+        long delay = backoff.toMillis() << Math.min(attempt, MAX_BACKOFF_DOUBLINGS);
+        // jitter keeps registries that failed at the same time from retrying in lockstep
+        long jittered = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        if (System.nanoTime() - start + TimeUnit.MILLISECONDS.toNanos(jittered) > maxRetryNanos) {
+            return false;
+        }
+        try {
+            Thread.sleep(jittered);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    static boolean isRetryable(Response response) {
+        return response.code() == 408 || response.code() == 429 || response.code() >= 500;
+    }
+
+    private void spool(Request request) throws IOException {
+        if (spool != null) {
+            spool.offer(serialize(request));
+        }
+    }
+
+    /**
+     * Sends the oldest spooled request, skipping any that can't be read. A request that fails in a way worth
+     * retrying stays in the spool to be replayed after the next successful request, while one the backend rejects
+     * is dropped, as it would have been had it been rejected when first sent.
+     */
+    private void replaySpooled() {
+        if (spool == null || spool.isEmpty() || !replayLock.tryLock()) {
+            return;
+        }
+        try {
+            DiskSpool.Record record;
+            while ((record = spool.peek()) != null) {
+                Request request;
+                try {
+                    request = deserialize(record.getBytes());
+                } catch (IOException | IllegalArgumentException e) {
+                    // unreadable, so it will never succeed
+                    spool.remove(record);
+                    continue;
+                }
+
+                if (!isRetryable(delegate.send(request))) {
+                    spool.remove(record);
+                }
+                return;
+            }
+        } catch (IOException e) {
+            // the backend is unavailable again, so leave it for the next successful request
+        } finally {
+            replayLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the spool, if any, and the sender requests are retried with.
+     *
+     * @throws IOException If either could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (spool != null) {
+                spool.close();
+            }
+        } finally {
+            delegate.close();
+        }
+    }
+
+    static byte[] serialize(Request request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeUTF(request.getMethod().name());
+            out.writeUTF(request.getUrl().toString());
+            out.writeInt(request.getHeaders().size());
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+            out.writeBoolean(request.isCompressed());
+
+            Body body = request.getBody();
+            if (body == null) {
+                out.writeInt(-1);
+            } else {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                body.writeTo(content);
+                out.writeInt(content.size());
+                content.writeTo(out);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static Request deserialize(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            int version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unknown spooled request format " + version);
+            }
+            Method method = Method.valueOf(in.readUTF());
+            URL url = new URL(in.readUTF());
+            int headerCount = in.readInt();
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (int i = 0; i < headerCount; i++) {
+                headers.put(in.readUTF(), in.readUTF());
+            }
+            boolean compressed = in.readBoolean();
+
+            Body body = null;
+            int length = in.readInt();
+            if (length >= 0) {
+                byte[] content = new byte[length];
+                in.readFully(content);
+                body = Body.of(content);
+            }
+            return new Request(url, method, headers, body, compressed);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachedClockTest {
+    private final MockClock mockClock = new MockClock();
+
+    @Test
+    void wallTimeIsRefreshedByTicker() throws InterruptedException {
+        try (CachedClock clock = new CachedClock(mockClock, Duration.ofMillis(1))) {
+            long start = clock.wallTime();
+            mockClock.add(Duration.ofSeconds(1));
+
+            for (int i = 0; i < 1000 && clock.wallTime() == start; i++) {
+                Thread.sleep(5);
+            }
+            assertThat(clock.wallTime()).isEqualTo(start + 1000);
+        }
+    }
+
+    @Test
+    void monotonicTimeIsReadEveryTime() {
+        try (CachedClock clock = new CachedClock(mockClock, Duration.ofHours(1))) {
+            mockClock.add(Duration.ofNanos(1));
+            assertThat(clock.monotonicTime()).isEqualTo(mockClock.monotonicTime());
+            assertThat(clock.wallTime()).isEqualTo(mockClock.wallTime());
+        }
+    }
+}
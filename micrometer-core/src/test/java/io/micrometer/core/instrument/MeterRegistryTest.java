@@ -25,6 +25,7 @@ import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
 import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -53,6 +54,97 @@ class MeterRegistryTest {
         assertThat(registry.find("my.counter").tags("k1", "v1").counter()).isNull();
     }
 
+    @Test
+    void repeatedLookupsResolveToSameMeter() {
+        registry.config().commonTags("common", "tag");
+
+        Counter counter = registry.counter("my.counter", "k1", "v1");
+        assertThat(registry.counter("my.counter", "k1", "v1")).isSameAs(counter);
+        assertThat(counter.getId().getTag("common")).isEqualTo("tag");
+    }
+
+    @Test
+    void addingMeterFilterInvalidatesPriorLookups() {
+        Counter counter = registry.counter("my.counter", "k1", "v1");
+
+        registry.config().commonTags("common", "tag");
+
+        Counter mapped = registry.counter("my.counter", "k1", "v1");
+        assertThat(mapped).isNotSameAs(counter);
+        assertThat(mapped.getId().getTag("common")).isEqualTo("tag");
+    }
+
+    @Test
+    void removeMeter() {
+        Counter counter = registry.counter("my.counter", "k1", "v1");
+
+        assertThat(registry.remove(counter)).isSameAs(counter);
+        assertThat(registry.find("my.counter").counter()).isNull();
+        assertThat(registry.remove(counter)).isNull();
+
+        assertThat(registry.counter("my.counter", "k1", "v1")).isNotSameAs(counter);
+    }
+
+    @Test
+    void removeMeterMappedByMeterFilter() {
+        registry.config().commonTags("common", "tag");
+
+        Counter counter = registry.counter("my.counter");
+        registry.remove(counter);
+
+        assertThat(registry.find("my.counter").counter()).isNull();
+        assertThat(registry.counter("my.counter")).isNotSameAs(counter);
+    }
+
+    @Test
+    void expireIdleMeters() {
+        Counter active = registry.counter("active");
+        registry.counter("idle");
+        registry.gauge("gauge", 1.0);
+
+        for (int step = 0; step < 3; step++) {
+            active.increment();
+            registry.expireIdleMeters(2);
+        }
+
+        assertThat(registry.find("active").counter()).isNotNull();
+        assertThat(registry.find("idle").counter()).isNull();
+        assertThat(registry.find("gauge").gauge()).isNotNull();
+    }
+
+    @Test
+    void lookupsMappedToOneMeterAreCachedBoundedly() {
+        registry.config().meterFilter(MeterFilter.ignoreTags("uri"));
+
+        Counter counter = registry.counter("http.requests", "uri", "/0");
+        for (int i = 1; i < 1000; i++) {
+            assertThat(registry.counter("http.requests", "uri", "/" + i)).isSameAs(counter);
+        }
+
+        assertThat(registry.getMeters()).hasSize(1);
+        assertThat(registry.preFilterIdCacheSize()).isLessThanOrEqualTo(16);
+    }
+
+    @Test
+    void idsMappedBeforeAFilterIsAddedAreNotCached() {
+        AtomicBoolean addCommonTags = new AtomicBoolean(true);
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public Meter.Id map(Meter.Id id) {
+                // a filter added by another thread while this id is being mapped
+                if (addCommonTags.getAndSet(false)) {
+                    registry.config().commonTags("k", "v");
+                }
+                return id;
+            }
+        });
+
+        Counter mappedWithoutCommonTags = registry.counter("my.counter");
+        assertThat(mappedWithoutCommonTags.getId().getTags()).isEmpty();
+
+        assertThat(registry.counter("my.counter").getId().getTags()).containsExactly(Tag.of("k", "v"));
+    }
+
     @Test
     void histogramConfigTransformingMeterFilter() {
         MeterRegistry registry = new SimpleMeterRegistry() {
@@ -62,6 +62,18 @@ class CompositeMeterRegistryTest {
         assertThat(simple.get("gauge").gauge().getId().getBaseUnit()).isEqualTo("bytes");
     }
 
+    @DisplayName("removing a meter from a composite removes it from the composite's registries")
+    @Test
+    void removeMeter() {
+        composite.add(simple);
+
+        Counter counter = composite.counter("counter");
+        composite.remove(counter);
+
+        assertThat(composite.find("counter").counter()).isNull();
+        assertThat(simple.find("counter").counter()).isNull();
+    }
+
     @DisplayName("metrics stop receiving updates when their registry parent is removed from a composite")
     @Test
     void metricAfterRegistryRemove() {
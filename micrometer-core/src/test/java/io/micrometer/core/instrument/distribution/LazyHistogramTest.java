@@ -0,0 +1,150 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution;
+
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.InvalidConfigurationException;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LazyHistogramTest {
+    private final MockClock clock = new MockClock();
+
+    @Test
+    void histogramIsBuiltOnFirstRecording() {
+        DistributionStatisticConfig config = DistributionStatisticConfig.builder()
+                .percentiles(0.5)
+                .build()
+                .merge(DistributionStatisticConfig.DEFAULT);
+
+        AtomicInteger built = new AtomicInteger();
+        LazyHistogram histogram = new LazyHistogram(clock, config, false, () -> {
+            built.incrementAndGet();
+            return new TimeWindowPercentileHistogram(clock, config, false);
+        });
+
+        histogram.takeSnapshot(0, 0, 0);
+        assertThat(histogram.isAllocated()).isFalse();
+        assertThat(histogram.takeMergeableSnapshot(0, 0, 0)).isNull();
+
+        histogram.recordLong(10);
+        histogram.recordDouble(20);
+        assertThat(histogram.isAllocated()).isTrue();
+        assertThat(built).hasValue(1);
+        assertThat(histogram.takeSnapshot(2, 30, 20).percentileValues()[0].value()).isBetween(9.0, 11.0);
+    }
+
+    @Test
+    void emptySnapshotHasConfiguredPercentilesAndBuckets() {
+        DistributionStatisticConfig config = DistributionStatisticConfig.builder()
+                .percentiles(0.5, 0.99)
+                .sla(5, 10)
+                .build()
+                .merge(DistributionStatisticConfig.DEFAULT);
+
+        LazyHistogram histogram = new LazyHistogram(clock, config, false,
+                () -> new TimeWindowPercentileHistogram(clock, config, false));
+        HistogramSnapshot empty = histogram.takeSnapshot(0, 0, 0);
+
+        histogram.recordLong(1);
+        HistogramSnapshot recorded = histogram.takeSnapshot(1, 1, 1);
+
+        assertThat(empty.percentileValues()).extracting(ValueAtPercentile::percentile)
+                .containsExactly(0.5, 0.99);
+        assertThat(empty.percentileValues()).extracting(ValueAtPercentile::value).containsOnly(0.0);
+        assertThat(empty.histogramCounts()).extracting(CountAtBucket::bucket)
+                .containsExactly(recorded.histogramCounts()[0].bucket(), recorded.histogramCounts()[1].bucket());
+        assertThat(empty.histogramCounts()).extracting(CountAtBucket::count).containsOnly(0.0);
+    }
+
+    @Test
+    void idleHistogramIsReleased() {
+        DistributionStatisticConfig config = DistributionStatisticConfig.builder()
+                .percentiles(0.5)
+                .expiry(Duration.ofMinutes(1))
+                .bufferLength(2)
+                .histogramIdleWindows(2)
+                .build()
+                .merge(DistributionStatisticConfig.DEFAULT);
+
+        LazyHistogram histogram = new LazyHistogram(clock, config, false,
+                () -> new TimeWindowPercentileHistogram(clock, config, false));
+
+        histogram.recordLong(10);
+        clock.add(Duration.ofMinutes(1));
+        histogram.takeSnapshot(1, 10, 10);
+        assertThat(histogram.isAllocated()).isTrue();
+
+        clock.add(Duration.ofMinutes(1));
+        histogram.takeSnapshot(1, 10, 10);
+        assertThat(histogram.isAllocated()).isTrue();
+
+        clock.add(Duration.ofMinutes(1));
+        histogram.takeSnapshot(1, 10, 10);
+        assertThat(histogram.isAllocated()).isFalse();
+
+        histogram.recordLong(10);
+        assertThat(histogram.isAllocated()).isTrue();
+    }
+
+    @Test
+    void histogramsAreKeptByDefault() {
+        DistributionStatisticConfig config = DistributionStatisticConfig.builder()
+                .percentiles(0.5)
+                .build()
+                .merge(DistributionStatisticConfig.DEFAULT);
+
+        LazyHistogram histogram = new LazyHistogram(clock, config, false,
+                () -> new TimeWindowPercentileHistogram(clock, config, false));
+
+        histogram.recordLong(10);
+        clock.add(Duration.ofDays(1));
+        histogram.takeSnapshot(1, 10, 10);
+        assertThat(histogram.isAllocated()).isTrue();
+    }
+
+    @Test
+    void configurationIsValidatedBeforeFirstRecording() {
+        assertThatThrownBy(() -> Timer.builder("my.timer")
+                .publishPercentiles(1.5)
+                .register(new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock)))
+                .isInstanceOf(InvalidConfigurationException.class);
+    }
+
+    @Test
+    void timersPublishPercentilesBeforeFirstRecording() {
+        Timer timer = Timer.builder("my.timer")
+                .publishPercentiles(0.5)
+                .sla(Duration.ofMillis(10))
+                .register(new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock));
+
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        assertThat(snapshot.percentileValues()).hasSize(1);
+        assertThat(snapshot.histogramCounts()).hasSize(1);
+
+        timer.record(5, TimeUnit.MILLISECONDS);
+        assertThat(timer.takeSnapshot().histogramCounts()[0].count()).isEqualTo(1);
+    }
+}
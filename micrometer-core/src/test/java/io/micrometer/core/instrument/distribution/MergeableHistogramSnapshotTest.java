@@ -0,0 +1,196 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution;
+
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class MergeableHistogramSnapshotTest {
+    private static final DistributionStatisticConfig FIXED = DistributionStatisticConfig.builder()
+            .percentilesHistogram(true)
+            .minimumExpectedValue(1_000L)
+            .maximumExpectedValue(1_000_000_000L)
+            .build()
+            .merge(DistributionStatisticConfig.DEFAULT);
+
+    private static final DistributionStatisticConfig PERCENTILES = DistributionStatisticConfig.builder()
+            .percentiles(0.5, 0.99)
+            .percentilePrecision(2)
+            .sla(10_000, 100_000)
+            .build()
+            .merge(DistributionStatisticConfig.DEFAULT);
+
+    @Test
+    void fixedBoundarySnapshotsRoundTripAndMerge() {
+        MergeableHistogramSnapshot a = fixedBoundarySnapshot(1, 100);
+        MergeableHistogramSnapshot b = fixedBoundarySnapshot(51, 150);
+
+        MergeableHistogramSnapshot merged = MergeableHistogramSnapshot.decode(a.encode())
+                .merge(MergeableHistogramSnapshot.decode(b.encode()));
+
+        assertThat(merged.count()).isEqualTo(200);
+        assertThat(merged.total()).isEqualTo(a.total() + b.total());
+        assertThat(merged.max()).isEqualTo(150_000);
+        assertThat(merged.histogramCounts()).isEqualTo(a.merge(b).histogramCounts());
+        assertThat(merged.percentile(0.5)).isBetween(75_000.0, 90_000.0);
+
+        CountAtBucket[] counts = merged.histogramCounts();
+        assertThat(counts[counts.length - 1].count()).isEqualTo(200);
+    }
+
+    @Test
+    void fixedBoundaryPercentilesAreOfTheSamplesInTheWindow() {
+        MockClock clock = new MockClock();
+        TimeWindowFixedBoundaryHistogram histogram = new TimeWindowFixedBoundaryHistogram(clock, FIXED, true);
+        for (int i = 0; i < 1000; i++) {
+            histogram.recordLong(1_000_000);
+        }
+
+        // the earlier samples have left the window, but are still part of the meter's count
+        for (int minute = 0; minute < 7; minute++) {
+            clock.add(Duration.ofMinutes(1));
+            histogram.takeMergeableSnapshot(1000, 1000 * 1_000_000L, 1_000_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.recordLong(100_000);
+        }
+        MergeableHistogramSnapshot snapshot = histogram.takeMergeableSnapshot(1010, 1000 * 1_000_000L + 10 * 100_000L,
+                1_000_000);
+
+        CountAtBucket[] counts = snapshot.histogramCounts();
+        assertThat(counts[counts.length - 1].count()).isEqualTo(10);
+        assertThat(snapshot.percentile(0.5)).isBetween(100_000.0, 120_000.0);
+        assertThat(snapshot.percentile(0.99)).isBetween(100_000.0, 120_000.0);
+    }
+
+    @Test
+    void fixedBoundarySnapshotsAreCompact() {
+        MergeableHistogramSnapshot snapshot = fixedBoundarySnapshot(1, 100);
+        int bucketCount = snapshot.histogramCounts().length;
+
+        // less than half of the 16 bytes per bucket taken by a boundary and a count as longs
+        assertThat(snapshot.encode().length).isLessThan(bucketCount * 8);
+    }
+
+    @Test
+    void percentileSnapshotsRoundTripAndMerge() {
+        MergeableHistogramSnapshot a = percentileSnapshot(1, 100);
+        MergeableHistogramSnapshot b = percentileSnapshot(101, 200);
+
+        MergeableHistogramSnapshot merged = MergeableHistogramSnapshot.decode(a.encode())
+                .merge(MergeableHistogramSnapshot.decode(b.encode()));
+
+        assertThat(merged.count()).isEqualTo(200);
+        assertThat(merged.max()).isEqualTo(200_000);
+        assertThat(merged.percentile(0.5)).isCloseTo(100_000, within(1_000.0));
+        assertThat(merged.percentile(0.99)).isCloseTo(198_000, within(2_000.0));
+        assertThat(merged.histogramCounts()).containsExactly(
+                new CountAtBucket(10_000, 10),
+                new CountAtBucket(100_000, 100)
+        );
+    }
+
+    @Test
+    void sketchSnapshotsRoundTripAndMerge() {
+        MergeableHistogramSnapshot a = sketchSnapshot(1, 100);
+        MergeableHistogramSnapshot b = sketchSnapshot(101, 200);
+
+        MergeableHistogramSnapshot merged = MergeableHistogramSnapshot.decode(a.encode())
+                .merge(MergeableHistogramSnapshot.decode(b.encode()));
+
+        assertThat(merged.count()).isEqualTo(200);
+        assertThat(merged.percentile(0.5)).isCloseTo(100_000, within(1_000.0));
+        assertThat(merged.percentile(0.99)).isCloseTo(198_000, within(2_000.0));
+        assertThat(merged.histogramCounts()[1].count()).isCloseTo(100, within(1.0));
+    }
+
+    @Test
+    void differentKindsOrBucketsCannotBeMerged() {
+        assertThatThrownBy(() -> fixedBoundarySnapshot(1, 10).merge(percentileSnapshot(1, 10)))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        MergeableHistogramSnapshot otherBuckets = new TimeWindowFixedBoundaryHistogram(new MockClock(),
+                DistributionStatisticConfig.builder().sla(5).build().merge(DistributionStatisticConfig.DEFAULT), false)
+                .takeMergeableSnapshot(0, 0, 0);
+        assertThatThrownBy(() -> fixedBoundarySnapshot(1, 10).merge(otherBuckets))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void malformedSnapshotsAreRejected() {
+        byte[] encoded = percentileSnapshot(1, 100).encode();
+        byte[] truncated = new byte[encoded.length / 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+
+        assertThatThrownBy(() -> MergeableHistogramSnapshot.decode(truncated))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MergeableHistogramSnapshot.decode(new byte[]{9, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void timersTakeMergeableSnapshotsInNanoseconds() {
+        Timer timer = Timer.builder("my.timer")
+                .publishPercentileHistogram()
+                .register(new SimpleMeterRegistry());
+        timer.record(Duration.ofMillis(10));
+
+        MergeableHistogramSnapshot snapshot = timer.takeMergeableSnapshot();
+        assertThat(snapshot).isNotNull();
+        assertThat(snapshot.count()).isEqualTo(1);
+        assertThat(snapshot.total()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertThat(Timer.builder("no.histogram").register(new SimpleMeterRegistry()).takeMergeableSnapshot()).isNull();
+    }
+
+    /**
+     * Records one sample per microsecond value in the inclusive range, in nanoseconds.
+     */
+    private MergeableHistogramSnapshot fixedBoundarySnapshot(int fromMicros, int toMicros) {
+        TimeWindowFixedBoundaryHistogram histogram = new TimeWindowFixedBoundaryHistogram(new MockClock(), FIXED, true);
+        return record(histogram, fromMicros, toMicros);
+    }
+
+    private MergeableHistogramSnapshot percentileSnapshot(int fromMicros, int toMicros) {
+        TimeWindowPercentileHistogram histogram = new TimeWindowPercentileHistogram(new MockClock(), PERCENTILES, false);
+        return record(histogram, fromMicros, toMicros);
+    }
+
+    private MergeableHistogramSnapshot sketchSnapshot(int fromMicros, int toMicros) {
+        TimeWindowSketchHistogram histogram = new TimeWindowSketchHistogram(new MockClock(), PERCENTILES, false);
+        return record(histogram, fromMicros, toMicros);
+    }
+
+    private MergeableHistogramSnapshot record(Histogram histogram, int fromMicros, int toMicros) {
+        long total = 0;
+        for (int micros = fromMicros; micros <= toMicros; micros++) {
+            histogram.recordLong(micros * 1000L);
+            total += micros * 1000L;
+        }
+        MergeableHistogramSnapshot snapshot = histogram.takeMergeableSnapshot(toMicros - fromMicros + 1, total, toMicros * 1000L);
+        assertThat(snapshot).isNotNull();
+        return snapshot;
+    }
+}
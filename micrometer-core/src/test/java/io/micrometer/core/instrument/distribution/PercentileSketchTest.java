@@ -0,0 +1,116 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution;
+
+import io.micrometer.core.instrument.MockClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.offset;
+
+class PercentileSketchTest {
+    @Test
+    void percentilesAreWithinRelativeAccuracy() {
+        for (int precision = 1; precision <= 3; precision++) {
+            double relativeAccuracy = PercentileSketch.relativeAccuracy(precision);
+            PercentileSketch sketch = new PercentileSketch(relativeAccuracy);
+
+            Random random = new Random(precision);
+            double[] samples = new double[10_000];
+            for (int i = 0; i < samples.length; i++) {
+                // log-uniform between 1 microsecond and 10 seconds, in nanoseconds
+                samples[i] = Math.pow(10, 3 + random.nextDouble() * 7);
+                sketch.record(samples[i]);
+            }
+            Arrays.sort(samples);
+
+            for (double percentile : new double[]{0, 10, 50, 90, 99, 99.9, 100}) {
+                double expected = samples[(int) (percentile / 100 * (samples.length - 1))];
+                assertThat(sketch.valueAtPercentile(percentile))
+                        .as("p%s at precision %d", percentile, precision)
+                        .isCloseTo(expected, offset(expected * relativeAccuracy));
+            }
+        }
+    }
+
+    @Test
+    void countsSpanOnlyRecordedRange() {
+        PercentileSketch sketch = new PercentileSketch(PercentileSketch.relativeAccuracy(1));
+        assertThat(sketch.getCounts()).isEmpty();
+
+        // 1ms to 1s, in nanoseconds
+        sketch.record(1e6);
+        sketch.record(1e9);
+        assertThat(sketch.getCounts().length).isLessThan(50);
+    }
+
+    @Test
+    void zeroAndNegativeSamples() {
+        PercentileSketch sketch = new PercentileSketch(0.01);
+        sketch.record(0);
+        sketch.record(-5);
+        sketch.record(100);
+
+        assertThat(sketch.valueAtPercentile(50)).isEqualTo(0);
+        assertThat(sketch.valueAtPercentile(100)).isCloseTo(100, offset(1.0));
+        assertThat(sketch.countAtValue(0)).isEqualTo(2);
+        assertThat(sketch.countAtValue(100)).isEqualTo(3);
+    }
+
+    @Test
+    void addCombinesCountsOfDisjointRanges() {
+        PercentileSketch low = new PercentileSketch(0.01);
+        PercentileSketch high = new PercentileSketch(0.01);
+        for (int i = 1; i <= 100; i++) {
+            low.record(i);
+            high.record(i * 1000);
+        }
+
+        PercentileSketch merged = high.copy();
+        merged.add(low);
+
+        assertThat(merged.getTotalCount()).isEqualTo(200);
+        assertThat(merged.countAtValue(100)).isEqualTo(100);
+        assertThat(merged.valueAtPercentile(25)).isCloseTo(50, offset(1.0));
+        assertThat(merged.valueAtPercentile(75)).isCloseTo(50_000, offset(500.0));
+
+        assertThatThrownBy(() -> merged.add(new PercentileSketch(0.1))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void sketchHistogramPublishesPercentilesAndSlaCounts() {
+        TimeWindowSketchHistogram histogram = new TimeWindowSketchHistogram(new MockClock(),
+                DistributionStatisticConfig.builder()
+                        .percentiles(0.5, 0.9)
+                        .percentilePrecision(2)
+                        .sla(500)
+                        .build()
+                        .merge(DistributionStatisticConfig.DEFAULT), false);
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordLong(i);
+        }
+
+        HistogramSnapshot snapshot = histogram.takeSnapshot(1000, 500_500, 1000);
+        assertThat(snapshot.percentileValues()[0].value()).isCloseTo(500, offset(5.0));
+        assertThat(snapshot.percentileValues()[1].value()).isCloseTo(900, offset(9.0));
+        assertThat(snapshot.histogramCounts()[0].count()).isCloseTo(500, offset(5.0));
+    }
+}
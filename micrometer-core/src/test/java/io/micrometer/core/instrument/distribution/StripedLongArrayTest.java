@@ -0,0 +1,51 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedLongArrayTest {
+    @Test
+    void stripesRoundUpToPowerOfTwo() {
+        assertThat(new StripedLongArray(3, 1).stripes()).isEqualTo(1);
+        assertThat(new StripedLongArray(3, 3).stripes()).isEqualTo(4);
+        assertThat(new StripedLongArray(3, false).stripes()).isEqualTo(1);
+    }
+
+    @Test
+    void countsSumAcrossStripes() throws InterruptedException {
+        StripedLongArray counts = new StripedLongArray(3, 4);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    counts.increment(j % 3);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(counts.get(0)).isEqualTo(8 * 334);
+        assertThat(counts.get(1)).isEqualTo(8 * 333);
+        assertThat(counts.get(2)).isEqualTo(8 * 333);
+    }
+}
@@ -19,6 +19,13 @@ import io.micrometer.core.instrument.Clock;
 import io.micrometer.core.instrument.MockClock;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class TimeWindowFixedBoundaryHistogramTest {
@@ -28,6 +35,8 @@ class TimeWindowFixedBoundaryHistogramTest {
         assertTailSearch(5, 1, 1L, 5L, 10L);
         assertTailSearch(3, 1, 1L, 4L, 5L, 10L);
         assertTailSearch(3, 2, 1L, 2L, 5L, 10L);
+        assertTailSearch(7, 2, 1L, 5L, 10L);
+        assertTailSearch(10, 2, 1L, 5L, 10L);
         assertTailSearch(11, -1, 1L, 5L, 10L);
     }
 
@@ -61,4 +70,134 @@ class TimeWindowFixedBoundaryHistogramTest {
                 new CountAtBucket(7, 2)
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void rotationFreeCountsExpireWithTheWindow() {
+        MockClock clock = new MockClock();
+        TimeWindowFixedBoundaryHistogram histogram = new TimeWindowFixedBoundaryHistogram(clock,
+                DistributionStatisticConfig.builder()
+                        .sla(3, 6, 7)
+                        .expiry(Duration.ofSeconds(3))
+                        .bufferLength(3)
+                        .build()
+                        .merge(DistributionStatisticConfig.DEFAULT), false, false);
+
+        histogram.recordDouble(3);
+        assertThat(histogram.takeSnapshot(0, 0, 0).histogramCounts()).contains(new CountAtBucket(3, 1));
+
+        clock.add(1, TimeUnit.SECONDS);
+        histogram.recordDouble(6);
+        assertThat(histogram.takeSnapshot(0, 0, 0).histogramCounts()).containsExactly(
+                new CountAtBucket(3, 1),
+                new CountAtBucket(6, 2),
+                new CountAtBucket(7, 2)
+        );
+
+        clock.add(2, TimeUnit.SECONDS);
+        assertThat(histogram.takeSnapshot(0, 0, 0).histogramCounts()).containsExactly(
+                new CountAtBucket(3, 0),
+                new CountAtBucket(6, 1),
+                new CountAtBucket(7, 1)
+        );
+
+        clock.add(1, TimeUnit.SECONDS);
+        assertThat(histogram.takeSnapshot(0, 0, 0).histogramCounts()).containsExactly(
+                new CountAtBucket(3, 0),
+                new CountAtBucket(6, 0),
+                new CountAtBucket(7, 0)
+        );
+    }
+
+    @Test
+    void rotationFreeCountsRecordedBetweenSnapshotsAreKept() {
+        MockClock clock = new MockClock();
+        TimeWindowFixedBoundaryHistogram histogram = new TimeWindowFixedBoundaryHistogram(clock,
+                DistributionStatisticConfig.builder()
+                        .sla(3, 6, 7)
+                        .expiry(Duration.ofSeconds(3))
+                        .bufferLength(3)
+                        .build()
+                        .merge(DistributionStatisticConfig.DEFAULT), false, false);
+
+        histogram.takeSnapshot(0, 0, 0);
+
+        // without a snapshot in between, the sample can't be placed in time, so it's treated as recent
+        clock.add(5, TimeUnit.SECONDS);
+        histogram.recordDouble(3);
+        assertThat(histogram.takeSnapshot(0, 0, 0).histogramCounts()).contains(new CountAtBucket(3, 1));
+    }
+
+    @Test
+    void stripedCountsSumAcrossRecordingThreads() throws InterruptedException {
+        TimeWindowFixedBoundaryHistogram histogram = new TimeWindowFixedBoundaryHistogram(new MockClock(),
+                DistributionStatisticConfig.builder()
+                        .sla(3, 6, 7)
+                        .stripedHistogram(true)
+                        .build()
+                        .merge(DistributionStatisticConfig.DEFAULT), false);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    histogram.recordLong(j % 2 == 0 ? 3 : 6);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(histogram.takeSnapshot(0, 0, 0).histogramCounts()).containsExactly(
+                new CountAtBucket(3, 4000),
+                new CountAtBucket(6, 8000),
+                new CountAtBucket(7, 8000)
+        );
+    }
+
+    @Test
+    void percentileBucketIndexMatchesCeiling() {
+        NavigableSet<Long> percentileBuckets = PercentileHistogramBuckets.buckets(DistributionStatisticConfig.DEFAULT);
+        List<Long> bucketList = new ArrayList<>(percentileBuckets);
+
+        for (long bucket : percentileBuckets) {
+            for (long value : new long[]{bucket - 1, bucket, bucket + 1}) {
+                if (value > 0 && value < Long.MAX_VALUE) {
+                    assertThat(PercentileHistogramBuckets.get(PercentileHistogramBuckets.indexOf(value)))
+                            .as("%d", value)
+                            .isEqualTo(percentileBuckets.ceiling(value));
+                }
+            }
+        }
+
+        Random random = new Random(0);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> random.nextInt(64);
+            assertThat(PercentileHistogramBuckets.indexOf(value))
+                    .as("%d", value)
+                    .isEqualTo(bucketList.indexOf(percentileBuckets.ceiling(value)));
+        }
+    }
+
+    @Test
+    void percentileHistogramBucketIndexMatchesBinarySearch() {
+        TimeWindowFixedBoundaryHistogram.FixedBoundaryHistogram hist = new TimeWindowFixedBoundaryHistogram(Clock.SYSTEM,
+                DistributionStatisticConfig.builder()
+                        .percentilesHistogram(true)
+                        .minimumExpectedValue(1_000L)
+                        .maximumExpectedValue(50_000_000L)
+                        .sla(3, 100_000, 100_001, 100_003, 40_000_000, 60_000_000)
+                        .build()
+                        .merge(DistributionStatisticConfig.DEFAULT), true).newBucket();
+
+        Random random = new Random(0);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextInt(70_000_000) - 10;
+            assertThat(hist.leastLessThanOrEqualTo(value)).as("%d", value).isEqualTo(hist.binarySearch(value));
+        }
+        for (long value = 99_990; value < 100_010; value++) {
+            assertThat(hist.leastLessThanOrEqualTo(value)).as("%d", value).isEqualTo(hist.binarySearch(value));
+        }
+    }
+}
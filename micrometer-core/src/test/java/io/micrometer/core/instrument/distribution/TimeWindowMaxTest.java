@@ -0,0 +1,72 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution;
+
+import io.micrometer.core.instrument.MockClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeWindowMaxTest {
+    private final MockClock clock = new MockClock();
+    private final TimeWindowMax max = new TimeWindowMax(clock, Duration.ofMinutes(1).toMillis(), 3);
+
+    @Test
+    void maxDecaysAfterBufferLengthRotations() {
+        max.record(10, TimeUnit.MILLISECONDS);
+        max.record(5, TimeUnit.MILLISECONDS);
+        assertThat(max.poll(TimeUnit.MILLISECONDS)).isEqualTo(10);
+
+        clock.add(Duration.ofMinutes(1));
+        assertThat(max.poll(TimeUnit.MILLISECONDS)).isEqualTo(10);
+        max.record(2, TimeUnit.MILLISECONDS);
+
+        clock.add(Duration.ofMinutes(2));
+        assertThat(max.poll(TimeUnit.MILLISECONDS)).isEqualTo(2);
+
+        // the second sample counts as recorded when it was polled
+        clock.add(Duration.ofMinutes(2));
+        assertThat(max.poll(TimeUnit.MILLISECONDS)).isEqualTo(2);
+
+        clock.add(Duration.ofMinutes(1));
+        assertThat(max.poll(TimeUnit.MILLISECONDS)).isEqualTo(0);
+    }
+
+    @Test
+    void samplesRecordedSincePreviousPollAreKept() {
+        max.poll();
+
+        clock.add(Duration.ofMinutes(10));
+        max.record(7);
+        assertThat(max.poll()).isEqualTo(7);
+
+        clock.add(Duration.ofMinutes(3));
+        assertThat(max.poll()).isEqualTo(0);
+    }
+
+    @Test
+    void singleSlotDecays() {
+        TimeWindowMax max = new TimeWindowMax(clock, Duration.ofMinutes(1).toMillis(), 1);
+        max.record(7);
+        assertThat(max.poll()).isEqualTo(7);
+
+        clock.add(Duration.ofMinutes(1));
+        assertThat(max.poll()).isEqualTo(0);
+    }
+}
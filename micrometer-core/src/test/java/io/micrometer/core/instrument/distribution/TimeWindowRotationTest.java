@@ -24,6 +24,8 @@ import org.junit.jupiter.params.provider.MethodSource;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -94,4 +96,28 @@ class TimeWindowRotationTest {
             .bufferLength(10)
             .build());
     }
+
+    @ParameterizedTest
+    @MethodSource("histogramTypes")
+    void recordingDueToRotateDoesNotWaitOnSnapshot(Class<? extends AbstractTimeWindowHistogram<?, ?>> histogramType) throws Exception {
+        MockClock clock = new MockClock();
+        AbstractTimeWindowHistogram<?, ?> histogram = newHistogram(histogramType, clock, DistributionStatisticConfig.builder()
+            .percentiles(0.5)
+            .sla(10L)
+            .expiry(Duration.ofMinutes(1))
+            .bufferLength(2)
+            .build()
+            .merge(DistributionStatisticConfig.DEFAULT));
+
+        histogram.recordLong(5);
+        clock.add(Duration.ofMinutes(1));
+
+        // snapshots lock the histogram while computing percentiles and counts
+        synchronized (histogram) {
+            CompletableFuture.runAsync(() -> histogram.recordLong(10)).get(10, TimeUnit.SECONDS);
+        }
+
+        // the first sample has expired
+        assertThat(histogram.takeSnapshot(0, 0, 0).histogramCounts()[0].count()).isEqualTo(1);
+    }
 }
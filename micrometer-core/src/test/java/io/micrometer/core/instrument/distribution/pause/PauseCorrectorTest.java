@@ -0,0 +1,182 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.distribution.pause;
+
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.LatencyUtils.IntervalEstimator;
+import org.LatencyUtils.PauseDetectorListener;
+import org.LatencyUtils.TimeCappedMovingAverageIntervalEstimator;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PauseCorrectorTest {
+    private final MockClock clock = new MockClock();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+
+    // long enough that no real pause is detected while testing
+    private final PauseDetector pauseDetector = new ClockDriftPauseDetector(Duration.ofSeconds(1), Duration.ofHours(1));
+    private final PauseCorrector corrector = PauseCorrector.forDetector(pauseDetector);
+
+    @Test
+    void pausesAreAppliedOnNextRecording() {
+        Timer timer = Timer.builder("corrected").pauseDetector(pauseDetector).register(registry);
+        Timer uncorrected = Timer.builder("uncorrected").pauseDetector(new NoPauseDetector()).register(registry);
+
+        // enough samples to estimate the interval between them
+        for (int i = 0; i < 200; i++) {
+            clock.add(1, TimeUnit.MILLISECONDS);
+            timer.record(1, TimeUnit.MILLISECONDS);
+            uncorrected.record(1, TimeUnit.MILLISECONDS);
+        }
+
+        long syntheticSamples = corrector.syntheticSamples();
+        clock.add(10, TimeUnit.MILLISECONDS);
+        corrector.handlePauseEvent(TimeUnit.MILLISECONDS.toNanos(10), clock.monotonicTime());
+        assertThat(timer.count()).isEqualTo(200);
+
+        timer.record(1, TimeUnit.MILLISECONDS);
+        uncorrected.record(1, TimeUnit.MILLISECONDS);
+
+        // samples of up to about 9ms would have been recorded during the pause
+        long injected = corrector.syntheticSamples() - syntheticSamples;
+        assertThat(injected).isBetween(5L, 9L);
+        assertThat(timer.count()).isEqualTo(201 + injected);
+        assertThat(timer.max(TimeUnit.MILLISECONDS)).isBetween(8.0, 9.0);
+        assertThat(uncorrected.count()).isEqualTo(201);
+    }
+
+    @Test
+    void pausesAreAppliedWhenSnapshotted() {
+        Timer timer = Timer.builder("corrected").pauseDetector(pauseDetector).register(registry);
+        for (int i = 0; i < 200; i++) {
+            clock.add(1, TimeUnit.MILLISECONDS);
+            timer.record(1, TimeUnit.MILLISECONDS);
+        }
+
+        clock.add(10, TimeUnit.MILLISECONDS);
+        corrector.handlePauseEvent(TimeUnit.MILLISECONDS.toNanos(10), clock.monotonicTime());
+        assertThat(timer.takeSnapshot().count()).isGreaterThan(200);
+    }
+
+    @Test
+    void timersOnlySeePausesAfterTheyAreCreated() {
+        corrector.handlePauseEvent(TimeUnit.MILLISECONDS.toNanos(10), clock.monotonicTime());
+
+        Timer timer = Timer.builder("corrected").pauseDetector(pauseDetector).register(registry);
+        timer.record(1, TimeUnit.MILLISECONDS);
+        assertThat(timer.count()).isEqualTo(1);
+    }
+
+    @Test
+    void noCorrectorWithoutPauseDetection() {
+        assertThat(PauseCorrector.forDetector(new NoPauseDetector())).isNull();
+        assertThat(PauseCorrector.forDetector(pauseDetector)).isSameAs(corrector);
+    }
+
+    @Test
+    void correctsPausesWithAsManySamplesAsEachTimerDidOnItsOwn() throws InterruptedException {
+        TriggeredPauseDetector detector = new TriggeredPauseDetector();
+        try {
+            PauseCorrector corrector = new PauseCorrector(detector);
+            AtomicLong corrected = new AtomicLong();
+            PauseCorrector.Correction correction = corrector.newCorrection(sample -> corrected.incrementAndGet());
+
+            // how a timer corrected its own pauses before corrections were shared
+            IntervalEstimator baselineEstimator = new TimeCappedMovingAverageIntervalEstimator(128, 10000000000L, detector);
+            AtomicLong baseline = new AtomicLong();
+            Semaphore notified = new Semaphore(0);
+            detector.addListener((pauseLength, pauseEndTime) -> {
+                long estimatedInterval = baselineEstimator.getEstimatedInterval(pauseEndTime);
+                long observedLatencyMinbar = pauseLength - estimatedInterval;
+                if (observedLatencyMinbar >= estimatedInterval) {
+                    baseline.incrementAndGet();
+                    for (long missingValue = observedLatencyMinbar - estimatedInterval;
+                         missingValue >= estimatedInterval;
+                         missingValue -= estimatedInterval) {
+                        baseline.incrementAndGet();
+                    }
+                }
+                notified.release();
+            });
+
+            // samples spanning more than the estimator's time cap, so that pauses change which are in its window
+            long time = TimeUnit.SECONDS.toNanos(100);
+            long[] intervalsMillis = {100, 100, 50, 200};
+            int[] samples = {128, 20, 10, 30};
+            long[] pauseLengthsMillis = {5000, 3000, 2000, 4000};
+            for (int p = 0; p < pauseLengthsMillis.length; p++) {
+                for (int i = 0; i < samples[p]; i++) {
+                    time += TimeUnit.MILLISECONDS.toNanos(intervalsMillis[p]);
+                    correction.recordInterval(time);
+                    baselineEstimator.recordInterval(time);
+                }
+
+                time += TimeUnit.MILLISECONDS.toNanos(pauseLengthsMillis[p]);
+                detector.pause(TimeUnit.MILLISECONDS.toNanos(pauseLengthsMillis[p]), time);
+                assertThat(notified.tryAcquire(10, TimeUnit.SECONDS)).isTrue();
+            }
+            correction.apply();
+
+            assertThat(baseline.get()).isGreaterThan(0);
+            assertThat(corrected.get()).isEqualTo(baseline.get());
+            assertThat(corrector.syntheticSamples()).isEqualTo(baseline.get());
+        } finally {
+            detector.shutdown();
+        }
+    }
+
+    @Test
+    void timersDoNotListenToThePauseDetector() {
+        TriggeredPauseDetector detector = new TriggeredPauseDetector();
+        try {
+            PauseCorrector corrector = new PauseCorrector(detector);
+            for (int i = 0; i < 10; i++) {
+                corrector.newCorrection(sample -> {
+                });
+            }
+            assertThat(detector.listeners).hasValue(1);
+        } finally {
+            detector.shutdown();
+        }
+    }
+
+    /**
+     * Reports pauses when told to rather than detecting them.
+     */
+    private static class TriggeredPauseDetector extends org.LatencyUtils.PauseDetector {
+        final AtomicInteger listeners = new AtomicInteger();
+
+        void pause(long pauseLength, long pauseEndTime) {
+            notifyListeners(pauseLength, pauseEndTime);
+        }
+
+        @Override
+        public synchronized void addListener(PauseDetectorListener listener, boolean isHighPriority) {
+            listeners.incrementAndGet();
+            super.addListener(listener, isHighPriority);
+        }
+    }
+}
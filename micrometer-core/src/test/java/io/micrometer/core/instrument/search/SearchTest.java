@@ -47,6 +47,11 @@ class SearchTest {
         assertThat(Search.in(registry).name(n -> n.startsWith("my")).timer()).isNotNull();
     }
 
+    @Test
+    void laterNamePredicateReplacesExactName() {
+        assertThat(Search.in(registry).name("my.counter").name(n -> n.startsWith("my")).meters()).hasSize(3);
+    }
+
     @Test
     void allMetersWithTag() {
         assertThat(Search.in(registry).tag("k2", "v2").meters()).hasSize(1);
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.step;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.core.instrument.util.MeterPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchPublisherTest {
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final BatchPublisher publisher = new BatchPublisher(2, 3, Executors.defaultThreadFactory());
+
+    @AfterEach
+    void close() {
+        publisher.close();
+    }
+
+    private List<List<Meter>> batches(int meters, int batchSize) {
+        for (int i = 0; i < meters; i++) {
+            registry.counter("counter" + i);
+        }
+        return MeterPartition.partition(registry, batchSize);
+    }
+
+    @Test
+    void sendsEveryBatchWithBoundedConcurrency() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ConcurrentHashMap<String, Boolean> sent = new ConcurrentHashMap<>();
+
+        BatchPublisher.Result result = publisher.publish(batches(100, 10),
+                batch -> batch.get(0).getId().getName(),
+                (batch, payload) -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    Thread.sleep(10);
+                    sent.put(payload, true);
+                    inFlight.decrementAndGet();
+                },
+                Duration.ofSeconds(10));
+
+        assertThat(result.sent()).isEqualTo(10);
+        assertThat(result.failures()).isEmpty();
+        assertThat(result.abandoned()).isZero();
+        assertThat(sent).hasSize(10);
+        assertThat(maxInFlight.get()).isBetween(1, 3);
+    }
+
+    @Test
+    void failedBatchesDontAffectOthers() {
+        AtomicInteger sends = new AtomicInteger();
+
+        BatchPublisher.Result result = publisher.publish(batches(30, 10), batch -> batch,
+                (batch, payload) -> {
+                    if (sends.getAndIncrement() == 0) {
+                        throw new IllegalStateException("rejected");
+                    }
+                },
+                Duration.ofSeconds(10));
+
+        assertThat(result.sent()).isEqualTo(2);
+        assertThat(result.failures()).hasSize(1);
+        assertThat(result.failures().get(0)).hasMessage("rejected");
+    }
+
+    @Test
+    void batchesWithNothingToSendAreNotSent() {
+        AtomicInteger sends = new AtomicInteger();
+
+        BatchPublisher.Result result = publisher.publish(batches(30, 10), batch -> null,
+                (batch, payload) -> sends.incrementAndGet(), Duration.ofSeconds(10));
+
+        assertThat(result.sent()).isEqualTo(3);
+        assertThat(sends).hasValue(0);
+    }
+
+    @Test
+    void abandonsBatchesNotSentByTheDeadline() throws InterruptedException {
+        CountDownLatch backendResponds = new CountDownLatch(1);
+        AtomicInteger sends = new AtomicInteger();
+
+        BatchPublisher.Result result = publisher.publish(batches(100, 10), batch -> batch,
+                (batch, payload) -> {
+                    sends.incrementAndGet();
+                    backendResponds.await();
+                },
+                Duration.ofMillis(100));
+
+        assertThat(result.sent()).isZero();
+        assertThat(result.abandoned()).isEqualTo(10);
+
+        // batches queued behind the stuck requests are skipped rather than sent late
+        backendResponds.countDown();
+        Thread.sleep(200);
+        assertThat(sends).hasValue(3);
+    }
+}
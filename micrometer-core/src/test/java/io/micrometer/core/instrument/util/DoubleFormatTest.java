@@ -18,6 +18,8 @@ package io.micrometer.core.instrument.util;
 import io.micrometer.core.Issue;
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class DoubleFormatTest {
@@ -30,6 +32,28 @@ class DoubleFormatTest {
         assertThat(DoubleFormat.decimalOrNan(0.123)).isEqualTo("0.123");
     }
 
+    @Test
+    void appendDecimalOrNanMatchesDecimalOrNan() {
+        double[] values = {0, -0.0, 1, -1, 0.5, 0.000001, 0.0000004, 0.0000005, 0.0000015, 17.25, -17.25, 0.1, 0.123,
+                123456.1234567, 4.6875392E7, 1e14, 1e20, -1e-300, Double.NaN, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.MAX_VALUE, Double.MIN_VALUE, Long.MAX_VALUE};
+        for (double d : values) {
+            assertThat(DoubleFormat.appendDecimalOrNan(new StringBuilder(), d).toString())
+                    .as("%s", d)
+                    .isEqualTo(DoubleFormat.decimalOrNan(d));
+        }
+
+        Random random = new Random(0);
+        for (int i = 0; i < 100_000; i++) {
+            double d = i % 2 == 0 ?
+                    random.nextInt(100_000_000) / 1e6 :
+                    (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 8);
+            assertThat(DoubleFormat.appendDecimalOrNan(new StringBuilder(), d).toString())
+                    .as("%s", d)
+                    .isEqualTo(DoubleFormat.decimalOrNan(d));
+        }
+    }
+
     @Test
     void decimalOrWhole() {
         assertThat(DoubleFormat.decimalOrWhole(123456.1234567)).isEqualTo("123456.123457");
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.instrument.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Statistic;
+import io.micrometer.core.instrument.config.NamingConvention;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MeterEncodingCacheTest {
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final MeterEncodingCache<String> cache = new MeterEncodingCache<>(registry);
+    private final AtomicInteger encodings = new AtomicInteger();
+
+    private String encode(Counter counter, NamingConvention convention) {
+        encodings.incrementAndGet();
+        return counter.getId().getConventionName(convention);
+    }
+
+    @Test
+    void encodesEachMeterOnce() {
+        Counter counter = registry.counter("my.counter");
+
+        assertThat(cache.get(counter.getId(), convention -> encode(counter, convention))).isEqualTo("my_counter");
+        assertThat(cache.get(counter.getId(), convention -> encode(counter, convention))).isEqualTo("my_counter");
+        assertThat(encodings).hasValue(1);
+    }
+
+    @Test
+    void encodesEachSeriesOnce() {
+        Counter counter = registry.counter("my.counter");
+
+        assertThat(cache.get(counter.getId(), "total", convention -> "total")).isEqualTo("total");
+        assertThat(cache.get(counter.getId(), Statistic.COUNT, convention -> "count")).isEqualTo("count");
+        assertThat(cache.get(counter.getId(), convention -> "meter")).isEqualTo("meter");
+        assertThat(cache.get(counter.getId(), "total", convention -> "other")).isEqualTo("total");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void reencodesWhenNamingConventionChanges() {
+        Counter counter = registry.counter("my.counter");
+        cache.get(counter.getId(), convention -> encode(counter, convention));
+
+        registry.config().namingConvention(NamingConvention.camelCase);
+
+        assertThat(cache.get(counter.getId(), convention -> encode(counter, convention))).isEqualTo("myCounter");
+        assertThat(encodings).hasValue(2);
+    }
+
+    @Test
+    void dropsEncodingsOfRemovedMeters() {
+        Counter counter = registry.counter("my.counter");
+        cache.get(counter.getId(), convention -> encode(counter, convention));
+        assertThat(cache.size()).isEqualTo(1);
+
+        registry.remove(counter);
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void dropsEncodingsAddedBackForMetersRemovedWhileBeingEncoded() {
+        Counter removed = registry.counter("removed");
+        Counter other = registry.counter("other");
+
+        cache.get(removed.getId(), "count", convention -> {
+            registry.remove(removed);
+            return "count";
+        });
+        // the rest of the removed meter's series are still published
+        cache.get(removed.getId(), "rate", convention -> "rate");
+
+        cache.get(other.getId(), convention -> encode(other, convention));
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get(other.getId(), convention -> encode(other, convention))).isEqualTo("other");
+        assertThat(encodings).hasValue(1);
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.ipc.http;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DiskSpoolTest {
+    private final Path directory;
+
+    DiskSpoolTest() throws IOException {
+        directory = Files.createTempDirectory("spool");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static byte[] record(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(DiskSpool.Record record) {
+        return new String(record.getBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void removeOldest(DiskSpool spool) {
+        assertThat(spool.remove(spool.peek())).isTrue();
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".spool")).count();
+        }
+    }
+
+    @Test
+    void firstInFirstOut() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 1024 * 1024);
+        assertThat(spool.peek()).isNull();
+
+        spool.offer(record("a"));
+        spool.offer(record("b"));
+
+        assertThat(read(spool.peek())).isEqualTo("a");
+        removeOldest(spool);
+        assertThat(read(spool.peek())).isEqualTo("b");
+        removeOldest(spool);
+        assertThat(spool.peek()).isNull();
+        assertThat(spool.isEmpty()).isTrue();
+    }
+
+    @Test
+    void resumesAfterReopening() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 1024 * 1024);
+        spool.offer(record("a"));
+        spool.offer(record("b"));
+        spool.offer(record("c"));
+        removeOldest(spool);
+        spool.close();
+
+        DiskSpool reopened = new DiskSpool(directory, 1024 * 1024);
+        assertThat(reopened.size()).isEqualTo(2);
+        assertThat(read(reopened.peek())).isEqualTo("b");
+
+        reopened.offer(record("d"));
+        removeOldest(reopened);
+        removeOldest(reopened);
+        assertThat(read(reopened.peek())).isEqualTo("d");
+    }
+
+    @Test
+    void evictsOldestSegmentWhenFull() throws IOException {
+        // two segments, each with room for three records
+        DiskSpool spool = new DiskSpool(directory, 2048, 1024);
+
+        for (int i = 0; i < 9; i++) {
+            byte[] record = new byte[300];
+            Arrays.fill(record, (byte) ('0' + i));
+            assertThat(spool.offer(record)).isTrue();
+        }
+
+        assertThat(spool.evicted()).isEqualTo(3);
+        assertThat(spool.size()).isEqualTo(6);
+        assertThat(spool.peek().getBytes()[0]).isEqualTo((byte) '3');
+        assertThat(segmentFiles()).isEqualTo(2);
+    }
+
+    @Test
+    void deletesConsumedSegments() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 4096, 1024);
+        for (int i = 0; i < 6; i++) {
+            spool.offer(new byte[300]);
+        }
+        for (int i = 0; i < 6; i++) {
+            removeOldest(spool);
+        }
+
+        assertThat(spool.isEmpty()).isTrue();
+        assertThat(segmentFiles()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsRecordsLargerThanASegment() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 4096, 1024);
+        assertThat(spool.offer(new byte[1024])).isFalse();
+        assertThat(spool.isEmpty()).isTrue();
+    }
+
+    @Test
+    void doesNotRemoveARecordWhoseSegmentWasEvicted() throws IOException {
+        // two segments, each with room for three records
+        DiskSpool spool = new DiskSpool(directory, 2048, 1024);
+        for (int i = 0; i < 6; i++) {
+            byte[] record = new byte[300];
+            Arrays.fill(record, (byte) ('0' + i));
+            spool.offer(record);
+        }
+
+        // as a replay would, while another thread spools enough records to evict the oldest segment
+        DiskSpool.Record replayed = spool.peek();
+        assertThat(replayed.getBytes()[0]).isEqualTo((byte) '0');
+        spool.offer(new byte[300]);
+        assertThat(spool.evicted()).isEqualTo(3);
+
+        assertThat(spool.remove(replayed)).isFalse();
+        assertThat(spool.size()).isEqualTo(4);
+        assertThat(spool.peek().getBytes()[0]).isEqualTo((byte) '3');
+    }
+
+    @Test
+    void doesNotRemoveARecordTwice() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 1024 * 1024);
+        spool.offer(record("a"));
+        spool.offer(record("b"));
+
+        DiskSpool.Record a = spool.peek();
+        assertThat(spool.remove(a)).isTrue();
+        assertThat(spool.remove(a)).isFalse();
+        assertThat(read(spool.peek())).isEqualTo("b");
+    }
+
+    @Test
+    void directoryCanOnlyBeOpenedByOneSpool() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 1024 * 1024);
+        assertThatThrownBy(() -> new DiskSpool(directory, 1024 * 1024))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("in use");
+
+        spool.close();
+        new DiskSpool(directory, 1024 * 1024).close();
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.ipc.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpSenderTest {
+    private HttpServer server;
+    private String uri;
+
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<>());
+
+    static Stream<HttpSender> senders() {
+        return Stream.of(new HttpUrlConnectionSender(), new OkHttpSender());
+    }
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+
+            InputStream in = exchange.getRequestBody();
+            if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            received.add(exchange.getRequestMethod() + " " + read(in));
+
+            byte[] response = (exchange.getRequestURI().getPath().equals("/error") ? "rejected" : "ok")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(exchange.getRequestURI().getPath().equals("/error") ? 400 : 200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        uri = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @ParameterizedTest
+    @MethodSource("senders")
+    void reusesConnections(HttpSender sender) throws IOException {
+        for (int i = 0; i < 3; i++) {
+            assertThat(sender.post(uri + "/write").withPlainText("batch" + i).send().body()).isEqualTo("ok");
+        }
+
+        assertThat(received).containsExactly("POST batch0", "POST batch1", "POST batch2");
+        assertThat(clientPorts).hasSize(1);
+    }
+
+    @ParameterizedTest
+    @MethodSource("senders")
+    void streamsCompressedBodies(HttpSender sender) throws IOException {
+        HttpSender.Response response = sender.post(uri + "/write")
+                .withContent("text/plain", out -> {
+                    for (int i = 0; i < 1000; i++) {
+                        out.write(("line" + i + "\n").getBytes(StandardCharsets.UTF_8));
+                    }
+                })
+                .compress()
+                .send();
+
+        assertThat(response.isSuccessful()).isTrue();
+        assertThat(received).hasSize(1);
+        assertThat(received.get(0)).startsWith("POST line0\nline1\n").endsWith("line999\n");
+    }
+
+    @ParameterizedTest
+    @MethodSource("senders")
+    void errorResponses(HttpSender sender) throws IOException {
+        StringBuilder errors = new StringBuilder();
+
+        sender.put(uri + "/error").withJsonContent("{}").send()
+                .onSuccess(response -> errors.append("unexpected success"))
+                .onError(response -> errors.append(response.code()).append(' ').append(response.body()));
+
+        assertThat(errors.toString()).isEqualTo("400 rejected");
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Copyright 2017 Pivotal Software, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.core.ipc.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryingHttpSenderTest {
+    private HttpServer server;
+    private String uri;
+    private Path spoolDirectory;
+
+    /**
+     * The status the stub responds with while it is failing.
+     */
+    private volatile int failureStatus = 503;
+    private final AtomicInteger failuresRemaining = new AtomicInteger();
+    private final List<String> accepted = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            InputStream in = exchange.getRequestBody();
+            if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            String body = read(in);
+            if (failuresRemaining.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(failureStatus, -1);
+            } else {
+                accepted.add(body);
+                exchange.sendResponseHeaders(204, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+        uri = "http://localhost:" + server.getAddress().getPort() + "/write";
+        spoolDirectory = Files.createTempDirectory("spool");
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.stop(0);
+        try (Stream<Path> files = Files.walk(spoolDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void retriesUntilTheBackendRecovers() throws IOException {
+        failuresRemaining.set(2);
+        HttpSender sender = new RetryingHttpSender(new HttpUrlConnectionSender(), 3, Duration.ofMillis(1));
+
+        assertThat(sender.post(uri).withPlainText("batch").send().isSuccessful()).isTrue();
+        assertThat(requests).hasValue(3);
+        assertThat(accepted).containsExactly("batch");
+    }
+
+    @Test
+    void givesUpAfterMaxRetries() throws IOException {
+        failuresRemaining.set(10);
+        HttpSender sender = new RetryingHttpSender(new HttpUrlConnectionSender(), 2, Duration.ofMillis(1));
+
+        assertThat(sender.post(uri).withPlainText("batch").send().code()).isEqualTo(503);
+        assertThat(requests).hasValue(3);
+    }
+
+    @Test
+    void doesNotRetryRejectedRequests() throws IOException {
+        failureStatus = 400;
+        failuresRemaining.set(1);
+        DiskSpool spool = new DiskSpool(spoolDirectory, 1024 * 1024);
+        HttpSender sender = new RetryingHttpSender(new HttpUrlConnectionSender(), 3, Duration.ofMillis(1), Duration.ofSeconds(10), spool);
+
+        assertThat(sender.post(uri).withPlainText("batch").send().code()).isEqualTo(400);
+        assertThat(requests).hasValue(1);
+        assertThat(spool.isEmpty()).isTrue();
+    }
+
+    @Test
+    void spoolsFailedRequestsAndReplaysThemOnRecovery() throws IOException {
+        DiskSpool spool = new DiskSpool(spoolDirectory, 1024 * 1024);
+        HttpSender sender = new RetryingHttpSender(new HttpUrlConnectionSender(), 0, Duration.ofMillis(1), Duration.ofSeconds(10), spool);
+
+        failuresRemaining.set(2);
+        sender.post(uri).withPlainText("batch1").send();
+        sender.post(uri).withPlainText("batch2").compress().send();
+        assertThat(spool.size()).isEqualTo(2);
+        assertThat(accepted).isEmpty();
+
+        // each successful request replays one spooled request
+        assertThat(sender.post(uri).withPlainText("batch3").send().isSuccessful()).isTrue();
+        assertThat(accepted).containsExactly("batch3", "batch1");
+        assertThat(spool.size()).isEqualTo(1);
+
+        assertThat(sender.post(uri).withPlainText("batch4").send().isSuccessful()).isTrue();
+        assertThat(accepted).containsExactly("batch3", "batch1", "batch4", "batch2");
+        assertThat(spool.isEmpty()).isTrue();
+    }
+
+    @Test
+    void spoolsRequestsWhenTheBackendIsUnreachable() throws IOException {
+        DiskSpool spool = new DiskSpool(spoolDirectory, 1024 * 1024);
+        HttpSender sender = new RetryingHttpSender(new HttpUrlConnectionSender(), 1, Duration.ofMillis(1), Duration.ofSeconds(10), spool);
+        server.stop(0);
+
+        assertThatThrownBy(() -> sender.post(uri).withPlainText("batch").send()).isInstanceOf(IOException.class);
+        assertThat(spool.size()).isEqualTo(1);
+
+        HttpSender.Request spooled = RetryingHttpSender.deserialize(spool.peek().getBytes());
+        assertThat(spooled.getUrl().toString()).isEqualTo(uri);
+        assertThat(spooled.getMethod()).isEqualTo(HttpSender.Method.POST);
+        assertThat(spooled.getHeaders()).containsEntry("Content-Type", "text/plain");
+    }
+
+    /**
+     * A sender that responds with each of the given statuses in turn, then with 204, and records the bodies of the
+     * requests it sends.
+     */
+    private HttpSender scripted(Integer... statuses) {
+        Queue<Integer> responses = new ConcurrentLinkedQueue<>(Arrays.asList(statuses));
+        return request -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            request.getBody().writeTo(body);
+            requests.incrementAndGet();
+
+            Integer status = responses.poll();
+            int code = status == null ? 204 : status;
+            if (code == 204) {
+                accepted.add(new String(body.toByteArray(), StandardCharsets.UTF_8));
+            }
+            return new HttpSender.Response(code, null);
+        };
+    }
+
+    @Test
+    void doesNotReplayAfterRejectedRequests() throws IOException {
+        DiskSpool spool = new DiskSpool(spoolDirectory, 1024 * 1024);
+        HttpSender sender = new RetryingHttpSender(scripted(503, 401), 0, Duration.ofMillis(1), Duration.ofSeconds(10), spool);
+
+        sender.post(uri).withPlainText("batch1").send();
+        assertThat(sender.post(uri).withPlainText("batch2").send().code()).isEqualTo(401);
+
+        assertThat(requests).hasValue(2);
+        assertThat(spool.size()).isEqualTo(1);
+    }
+
+    private static String body(DiskSpool.Record record) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        RetryingHttpSender.deserialize(record.getBytes()).getBody().writeTo(body);
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void keepsSpooledRequestsThatFailWhenReplayed() throws IOException {
+        DiskSpool spool = new DiskSpool(spoolDirectory, 1024 * 1024);
+        HttpSender sender = new RetryingHttpSender(scripted(503, 204, 503), 0, Duration.ofMillis(1), Duration.ofSeconds(10), spool);
+
+        sender.post(uri).withPlainText("batch1").send();
+        sender.post(uri).withPlainText("batch2").send();
+
+        assertThat(requests).hasValue(3);
+        assertThat(accepted).containsExactly("batch2");
+        assertThat(spool.size()).isEqualTo(1);
+        assertThat(body(spool.peek())).isEqualTo("batch1");
+    }
+
+    @Test
+    void dropsSpooledRequestsThatAreRejectedWhenReplayed() throws IOException {
+        DiskSpool spool = new DiskSpool(spoolDirectory, 1024 * 1024);
+        HttpSender sender = new RetryingHttpSender(scripted(503, 503, 204, 400, 204), 0, Duration.ofMillis(1),
+                Duration.ofSeconds(10), spool);
+
+        sender.post(uri).withPlainText("batch1").send();
+        sender.post(uri).withPlainText("batch2").send();
+        assertThat(spool.size()).isEqualTo(2);
+
+        // batch1 is rejected when replayed, so the next success replays batch2 rather than batch1 again
+        sender.post(uri).withPlainText("batch3").send();
+        assertThat(spool.size()).isEqualTo(1);
+        assertThat(body(spool.peek())).isEqualTo("batch2");
+
+        sender.post(uri).withPlainText("batch4").send();
+        assertThat(accepted).containsExactly("batch3", "batch4", "batch2");
+        assertThat(spool.isEmpty()).isTrue();
+    }
+
+    @Test
+    void stopsRetryingOnceTheMaxRetryTimeWouldBeExceeded() throws IOException {
+        HttpSender sender = new RetryingHttpSender(scripted(503, 503, 503, 503), 3, Duration.ofMillis(200),
+                Duration.ofMillis(50), null);
+
+        assertThat(sender.post(uri).withPlainText("batch").send().code()).isEqualTo(503);
+        assertThat(requests).hasValue(1);
+    }
+
+    @Test
+    void replayedRequestEvictedWhileBeingSentIsNotRemovedTwice() throws IOException {
+        // two segments, each with room for two requests
+        DiskSpool spool = new DiskSpool(spoolDirectory, 2048, 1024);
+        HttpSender spooling = scripted(503, 503, 503, 503);
+        HttpSender sender = new RetryingHttpSender(spooling, 0, Duration.ofMillis(1), Duration.ofSeconds(10), spool);
+        for (int i = 1; i <= 4; i++) {
+            sender.post(uri).withPlainText(padded("spooled" + i)).send();
+        }
+        assertThat(spool.size()).isEqualTo(4);
+
+        // while the oldest request is replayed, another thread spools a request, evicting the segment it is in
+        HttpSender evictingDuringReplay = request -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            request.getBody().writeTo(body);
+            accepted.add(new String(body.toByteArray(), StandardCharsets.UTF_8).trim());
+            if (accepted.size() == 2) {
+                spool.offer(RetryingHttpSender.serialize(spooling.post(uri).withPlainText(padded("spooled5")).build()));
+            }
+            return new HttpSender.Response(204, null);
+        };
+        HttpSender replaying = new RetryingHttpSender(evictingDuringReplay, 0, Duration.ofMillis(1), Duration.ofSeconds(10), spool);
+        replaying.post(uri).withPlainText("live").send();
+
+        assertThat(accepted).containsExactly("live", "spooled1");
+        assertThat(spool.evicted()).isEqualTo(2);
+        // spooled3 was never sent, so it must still be the oldest request
+        assertThat(spool.size()).isEqualTo(3);
+        assertThat(body(spool.peek()).trim()).isEqualTo("spooled3");
+    }
+
+    /**
+     * @return The text padded so that only two requests fit in a 1KB segment.
+     */
+    private static String padded(String text) {
+        StringBuilder padded = new StringBuilder(text);
+        while (padded.length() < 300) {
+            padded.append(' ');
+        }
+        return padded.toString();
+    }
+}
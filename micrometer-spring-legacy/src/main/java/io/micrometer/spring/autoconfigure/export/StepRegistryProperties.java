@@ -47,10 +47,17 @@ public abstract class StepRegistryProperties {
     private Duration readTimeout;
 
     /**
-     * Number of threads to use with the metrics publishing scheduler.
+     * Number of threads used to serialize measurements, and the maximum number of
+     * concurrent requests to this backend.
      */
     private Integer numThreads;
 
+    /**
+     * How long a publish may take before unsent batches are abandoned. Defaults to the
+     * step size.
+     */
+    private Duration publishDeadline;
+
     /**
      * Number of measurements per request to use for this backend. If more measurements
      * are found, then multiple requests will be made.
@@ -97,6 +104,14 @@ public abstract class StepRegistryProperties {
         this.numThreads = numThreads;
     }
 
+    public Duration getPublishDeadline() {
+        return this.publishDeadline;
+    }
+
+    public void setPublishDeadline(Duration publishDeadline) {
+        this.publishDeadline = publishDeadline;
+    }
+
     public Integer getBatchSize() {
         return this.batchSize;
     }
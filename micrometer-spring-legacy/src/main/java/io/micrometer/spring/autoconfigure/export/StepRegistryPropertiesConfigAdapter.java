@@ -68,6 +68,11 @@ public abstract class StepRegistryPropertiesConfigAdapter<T extends StepRegistry
         return get(T::getNumThreads, StepRegistryConfig.super::numThreads);
     }
 
+    @Override
+    public Duration publishDeadline() {
+        return get(T::getPublishDeadline, StepRegistryConfig.super::publishDeadline);
+    }
+
     @Override
     public int batchSize() {
         return get(T::getBatchSize, StepRegistryConfig.super::batchSize);